@@ -0,0 +1,113 @@
+package bench;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataRow;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import port.FisDatasetPipe;
+import port.FisDatasetWriter;
+
+/**
+ * Export time of the dataset handed to the FisPro tools (loadDataset of the
+ * nodes): buffered writer, FIFO and the string concatenation used by
+ * previous versions
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DatasetExportBenchmark {
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public long rows;
+
+	private ExecutionContext mExec;
+	private BufferedDataTable mTable;
+	private File mDir;
+	private File mFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mExec = SyntheticTable.context();
+		mTable = SyntheticTable.table(mExec, rows, 10, 42);
+		mDir = SyntheticTable.directory();
+		mFile = new File(mDir, "data");
+		System.setProperty(FisDatasetPipe.PIPE_PROPERTY, "bench");
+	}
+
+	@TearDown(Level.Invocation)
+	public void deleteFile() {
+		mFile.delete();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		SyntheticTable.delete(mDir);
+	}
+
+	@Benchmark
+	public long file() throws Exception {
+		return FisDatasetWriter.write(mTable, mFile, false, mExec);
+	}
+
+	@Benchmark
+	public long pipe() throws Exception {
+		FisDatasetPipe pipe = FisDatasetPipe.open(mTable, mFile, false, mExec, "bench");
+		// read the FIFO as the tool would
+		long bytes = 0;
+		byte[] buf = new byte[1 << 16];
+		try (InputStream in = new FileInputStream(pipe.getFile())) {
+			for (int n = in.read(buf); n >= 0; n = in.read(buf))
+				bytes += n;
+		}
+		if (!pipe.finish())
+			throw new IllegalStateException("Dataset NOT streamed.");
+		return bytes;
+	}
+
+	@Benchmark
+	public long legacy() throws Exception {
+		PrintStream write = new PrintStream(new FileOutputStream(mFile));
+		long n = 0;
+		CloseableRowIterator it = mTable.iterator();
+		while (it.hasNext()) {
+			String rowStr = "";
+			DataRow row = it.next();
+			for (int i = 0; i < row.getNumCells(); i++) {
+				if (i == 0)
+					rowStr += row.getCell(i).toString();
+				else
+					rowStr += "," + row.getCell(i).toString();
+			}
+			write.println(rowStr);
+			n++;
+		}
+		write.close();
+		return n;
+	}
+}
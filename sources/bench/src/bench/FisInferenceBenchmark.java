@@ -0,0 +1,89 @@
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import port.CompiledFis;
+import port.FisCompiler;
+import port.FisEngine;
+import port.FisLookup;
+import port.FisSystem;
+
+/**
+ * Inference time of a table: {@link FisEngine} interpreting the rule base
+ * against the class generated by {@link FisCompiler}, and against the MF
+ * degrees interpolated in the tables of {@link FisLookup}
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FisInferenceBenchmark {
+
+	@Param({ "100", "1000", "10000" })
+	public int rules;
+
+	@Param({ "10000" })
+	public int rows;
+
+	private FisSystem mSystem;
+	private FisEngine mEngine;
+	private FisEngine mLookup;
+	private CompiledFis mCompiled;
+	private double[][] mRows;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mSystem = SyntheticFis.model(10, 5, rules, 42).getSystem();
+		mEngine = new FisEngine(mSystem);
+		mLookup = new FisEngine(mSystem, new FisLookup(mSystem, FisLookup.DEFAULT_RESOLUTION));
+		mCompiled = FisCompiler.compile(mSystem, 0);
+		if (mCompiled == null)
+			throw new IllegalStateException("Model NOT compiled.");
+		mRows = SyntheticFis.rows(rows, 10, 7);
+	}
+
+	@Benchmark
+	public double interpreted() {
+		double sum = 0.0;
+		for (double[] x : mRows) {
+			mEngine.infer(x);
+			sum += mEngine.getInferred(0);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double lookup() {
+		double sum = 0.0;
+		for (double[] x : mRows) {
+			mLookup.infer(x);
+			sum += mLookup.getInferred(0);
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public double compiled() {
+		double sum = 0.0;
+		for (double[] x : mRows)
+			sum += mCompiled.infer(x);
+		return sum;
+	}
+}
@@ -0,0 +1,76 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import port.FisModel;
+import port.FisSystem;
+
+/**
+ * Construction time of {@link FisModel} from the .fis file written by a
+ * learner, with and without parsing the rule base
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FisModelBenchmark {
+
+	@Param({ "100", "10000", "100000" })
+	public int rules;
+
+	private String mContent;
+	private File mDir;
+	private File mFis;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mContent = SyntheticFis.fis(10, 5, rules, 42);
+		mDir = SyntheticTable.directory();
+		mFis = new File(mDir, "model.fis");
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(mFis))) {
+			out.write(mContent);
+		}
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		SyntheticTable.delete(mDir);
+	}
+
+	@Benchmark
+	public FisModel fromFile() {
+		return new FisModel(mFis, "Synthetic");
+	}
+
+	@Benchmark
+	public FisSystem fromFileAndParse() throws Exception {
+		return new FisModel(mFis, "Synthetic").getSystem();
+	}
+
+	@Benchmark
+	public FisSystem parse() throws Exception {
+		return FisSystem.parse(mContent);
+	}
+}
@@ -0,0 +1,104 @@
+package bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.knime.core.data.util.NonClosableOutputStream;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.port.PortObjectZipInputStream;
+import org.knime.core.node.port.PortObjectZipOutputStream;
+import org.knime.core.node.port.PortUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import port.FisModel;
+import port.FisModelPortObject;
+import port.FisModelPortObjectSpec;
+
+/**
+ * Save and load time of {@link FisModelPortObject}: binary layout against the
+ * Java serialization used by previous versions
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FisModelPortObjectBenchmark {
+
+	@Param({ "100", "10000", "100000" })
+	public int rules;
+
+	private final FisModelPortObject.Serializer mSerializer = new FisModelPortObject.Serializer();
+	private final ExecutionMonitor mExec = new ExecutionMonitor();
+	private FisModelPortObject mPort;
+	private byte[] mBinary;
+	private byte[] mLegacy;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		FisModel model = SyntheticFis.model(10, 5, rules, 42);
+		mPort = new FisModelPortObject(model, new FisModelPortObjectSpec());
+		mBinary = saveBinary();
+		mLegacy = saveLegacy();
+	}
+
+	@Benchmark
+	public byte[] saveBinary() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PortObjectZipOutputStream out = PortUtil.getPortObjectZipOutputStream(bytes);
+		mSerializer.savePortObject(mPort, out, mExec);
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public byte[] saveLegacy() throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		PortObjectZipOutputStream out = PortUtil.getPortObjectZipOutputStream(bytes);
+		out.putNextEntry(new ZipEntry("fismodel.objectout"));
+		ObjectOutputStream oo = new ObjectOutputStream(new NonClosableOutputStream.Zip(out));
+		oo.writeObject(mPort.getFisModel());
+		oo.close();
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	@Benchmark
+	public FisModelPortObject loadBinary() throws Exception {
+		return load(mBinary);
+	}
+
+	@Benchmark
+	public Object loadBinaryAndParse() throws Exception {
+		return load(mBinary).getFisModel().getSystem();
+	}
+
+	@Benchmark
+	public Object loadLegacy() throws Exception {
+		return load(mLegacy).getFisModel().getSystem();
+	}
+
+	private FisModelPortObject load(byte[] bytes) throws Exception {
+		PortObjectZipInputStream in = PortUtil.getPortObjectZipInputStream(new ByteArrayInputStream(bytes));
+		FisModelPortObject port = mSerializer.loadPortObject(in, mPort.getSpec(), mExec);
+		in.close();
+		return port;
+	}
+}
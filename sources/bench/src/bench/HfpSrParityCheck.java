@@ -0,0 +1,247 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.ExecutionMonitor;
+
+import port.FisDatasetWriter;
+import port.FisHierarchy;
+import port.FisSystem;
+import port.FisVariable;
+
+/**
+ * Parity check of the partitions made in the JVM against the FisPro hfpsr
+ * tool
+ *
+ * The k-means and regular hierarchies of a synthetic dataset are made by
+ * hfpsr and by {@link FisHierarchy}: the partitions of the .fis files are
+ * compared, and the .hfp and .vertex files, read by hfpfis, are compared key
+ * by key and vertex by vertex. The hfpsr tool is read from the FisPro bin
+ * folder in the FIS_BIN_PATH environment variable, the check is skipped if it
+ * is not set.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class HfpSrParityCheck {
+
+	private static final double TOLERANCE = 1e-3;
+	private static final int ROWS = 2000;
+	private static final int INPUTS = 3;
+	private static final int MFS = 3;
+	private static final String DATA = "dataset.csv";
+	private static final String FIS = "hfp-sr.fis";
+
+	private HfpSrParityCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String bin = System.getenv("FIS_BIN_PATH");
+		if (bin == null) {
+			System.out.println("FIS_BIN_PATH is not set, hfpsr parity check skipped.");
+			return;
+		}
+		int[][] samples = {
+				// input hierarchy, output fuzzy sets, output hierarchy
+				{ FisHierarchy.KMEANS, MFS, FisHierarchy.REGULAR }, { FisHierarchy.REGULAR, MFS, FisHierarchy.REGULAR },
+				{ FisHierarchy.KMEANS, MFS, FisHierarchy.KMEANS }, { FisHierarchy.REGULAR, 0, FisHierarchy.REGULAR } };
+
+		File dir = SyntheticTable.directory();
+		boolean ok = true;
+		try {
+			double[][] rows = SyntheticFis.rows(ROWS, INPUTS, 42);
+			String[] names = new String[INPUTS + 1];
+			for (int i = 0; i < INPUTS; i++)
+				names[i] = "x" + (i + 1);
+			names[INPUTS] = "y";
+			try (FisDatasetWriter out = new FisDatasetWriter(new FileOutputStream(new File(dir, DATA)))) {
+				out.writeHeader(names);
+				for (double[] row : rows)
+					out.writeRow(row);
+			}
+			double[][] columns = new double[INPUTS + 1][ROWS];
+			for (int r = 0; r < ROWS; r++)
+				for (int c = 0; c <= INPUTS; c++)
+					columns[c][r] = rows[r][c];
+
+			for (int[] sample : samples) {
+				String defuz = sample[1] > 0 ? "MeanMax" : "sugeno";
+				hfpsr(bin, dir, sample[0], sample[1], sample[2], defuz);
+
+				int[] types = new int[INPUTS + 1];
+				int[] nMfs = new int[INPUTS + 1];
+				double[] tolerances = new double[INPUTS + 1];
+				Arrays.fill(types, sample[0]);
+				Arrays.fill(nMfs, MFS);
+				Arrays.fill(tolerances, FisHierarchy.DEFAULT_TOLERANCE);
+				types[INPUTS] = sample[1] > 0 ? sample[2] : FisHierarchy.REGULAR;
+				nMfs[INPUTS] = sample[1];
+				double[][] partitions = FisHierarchy.partitions(columns, nMfs, types, INPUTS + 1,
+						new ExecutionMonitor());
+
+				List<String> diffs = new ArrayList<String>();
+				compareFis(FisSystem.parse(read(dir, FIS)),
+						FisSystem.parse(FisHierarchy.fis(DATA, names, partitions, defuz, "sum", false)), diffs);
+				compareSections(read(dir, DATA + ".hfp"),
+						FisHierarchy.hfp(DATA, names, partitions, types, tolerances, defuz, "sum", false), diffs);
+				compareVertices(read(dir, DATA + ".vertex"), FisHierarchy.vertex(partitions), diffs);
+				ok &= diffs.isEmpty();
+				System.out.println(Arrays.toString(sample) + ": " + (diffs.isEmpty() ? "same" : "MISMATCH"));
+				for (String diff : diffs)
+					System.out.println("  " + diff);
+			}
+		} finally {
+			SyntheticTable.delete(dir);
+		}
+		if (!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Run hfpsr with the default tolerances, as the HFP-SR node does
+	 */
+	private static void hfpsr(String bin, File dir, int inType, int outSets, int outType, String defuz)
+			throws IOException, InterruptedException {
+
+		StringBuilder sets = new StringBuilder();
+		for (int i = 0; i < INPUTS; i++)
+			sets.append(i > 0 ? " " : "").append(MFS);
+		String tol = Double.toString(FisHierarchy.DEFAULT_TOLERANCE);
+		int code = new ProcessBuilder(new File(bin, "hfpsr").getPath(), DATA, sets.toString(),
+				Integer.toString(inType), tol, Integer.toString(outSets), Integer.toString(outType), defuz, "sum", tol,
+				"-o" + FIS).directory(dir).inheritIO().start().waitFor();
+		if (code != 0 || !new File(dir, FIS).exists())
+			throw new IllegalStateException("hfpsr fis NOT created.");
+	}
+
+	private static String read(File dir, String name) throws IOException {
+		return new String(Files.readAllBytes(new File(dir, name).toPath()), Charset.defaultCharset());
+	}
+
+	/**
+	 * Compare the ranges and the MFs of the variables
+	 */
+	private static void compareFis(FisSystem expected, FisSystem actual, List<String> diffs) {
+
+		if (expected.getNumInputs() != actual.getNumInputs() || expected.getNumOutputs() != actual.getNumOutputs()) {
+			diffs.add("fis: " + expected.getNumInputs() + "/" + expected.getNumOutputs() + " variables instead of "
+					+ actual.getNumInputs() + "/" + actual.getNumOutputs());
+			return;
+		}
+		for (int v = 0; v < expected.getNumInputs() + expected.getNumOutputs(); v++) {
+			boolean in = v < expected.getNumInputs();
+			FisVariable e = in ? expected.getInput(v) : expected.getOutput(v - expected.getNumInputs());
+			FisVariable a = in ? actual.getInput(v) : actual.getOutput(v - expected.getNumInputs());
+			String var = "fis " + e.getName();
+			compare(var + " range", new double[] { e.getRangeMin(), e.getRangeMax() },
+					new double[] { a.getRangeMin(), a.getRangeMax() }, diffs);
+			if (e.getNumMfs() != a.getNumMfs()) {
+				diffs.add(var + ": " + e.getNumMfs() + " MFs instead of " + a.getNumMfs());
+				continue;
+			}
+			for (int k = 0; k < e.getNumMfs(); k++) {
+				if (e.getMfType(k) != a.getMfType(k))
+					diffs.add(var + " MF" + (k + 1) + ": type " + e.getMfType(k) + " instead of " + a.getMfType(k));
+				else
+					compare(var + " MF" + (k + 1), e.getMfParams(k), a.getMfParams(k), diffs);
+			}
+		}
+	}
+
+	/**
+	 * Compare two configuration files key by key, the numbers with the
+	 * tolerance
+	 */
+	private static void compareSections(String expected, String actual, List<String> diffs) {
+
+		Map<String, String> e = keys(expected);
+		Map<String, String> a = keys(actual);
+		for (Map.Entry<String, String> entry : e.entrySet()) {
+			String key = entry.getKey();
+			if (!a.containsKey(key))
+				diffs.add("hfp " + key + ": missing");
+			else if (!sameValue(entry.getValue(), a.get(key)))
+				diffs.add("hfp " + key + ": " + a.get(key) + " instead of " + entry.getValue());
+		}
+		for (String key : a.keySet())
+			if (!e.containsKey(key))
+				diffs.add("hfp " + key + ": not written by hfpsr");
+	}
+
+	/**
+	 * @return the values by "[section]key", the names of the MFs left out
+	 */
+	private static Map<String, String> keys(String content) {
+
+		Map<String, String> keys = new LinkedHashMap<String, String>();
+		String section = "";
+		for (String line : content.split("\r?\n")) {
+			line = line.trim();
+			if (line.startsWith("["))
+				section = line;
+			int eq = line.indexOf('=');
+			if (eq > 0) {
+				String value = line.substring(eq + 1).trim();
+				if (line.startsWith("MF"))
+					value = value.replaceFirst("^'[^']*',", "");
+				keys.put(section + line.substring(0, eq).trim(), value);
+			}
+		}
+		return keys;
+	}
+
+	private static boolean sameValue(String expected, String actual) {
+
+		String[] e = expected.replaceAll("[\\[\\]']", " ").trim().split("[\\s,]+");
+		String[] a = actual.replaceAll("[\\[\\]']", " ").trim().split("[\\s,]+");
+		if (e.length != a.length)
+			return false;
+		for (int i = 0; i < e.length; i++) {
+			try {
+				if (Math.abs(Double.parseDouble(e[i]) - Double.parseDouble(a[i])) > TOLERANCE)
+					return false;
+			} catch (NumberFormatException ex) {
+				if (!e[i].equalsIgnoreCase(a[i]))
+					return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Compare the vertices of each variable
+	 */
+	private static void compareVertices(String expected, String actual, List<String> diffs) {
+
+		String[] e = expected.split("\r?\n", -1);
+		String[] a = actual.split("\r?\n", -1);
+		if (e.length != a.length)
+			diffs.add("vertex: " + a.length + " lines instead of " + e.length);
+		for (int i = 0; i < Math.min(e.length, a.length); i++)
+			if (!sameValue(e[i], a[i]))
+				diffs.add("vertex line " + (i + 1) + ": '" + a[i] + "' instead of '" + e[i] + "'");
+	}
+
+	private static void compare(String what, double[] expected, double[] actual, List<String> diffs) {
+
+		if (expected.length != actual.length) {
+			diffs.add(what + ": " + actual.length + " values instead of " + expected.length);
+			return;
+		}
+		for (int i = 0; i < expected.length; i++) {
+			if (Math.abs(expected[i] - actual[i]) > TOLERANCE) {
+				diffs.add(what + ": " + Arrays.toString(actual) + " instead of " + Arrays.toString(expected));
+				return;
+			}
+		}
+	}
+}
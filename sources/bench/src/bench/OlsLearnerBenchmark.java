@@ -0,0 +1,105 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import port.FisDatasetWriter;
+import port.FisSystem;
+import port.OrthogonalLeastSquares;
+
+/**
+ * OLS learning of a table: {@link OrthogonalLeastSquares} in the JVM, on one
+ * thread and on every core, against the external ols tool (export of the
+ * dataset and process). The tool is the FisPro binary of the folder in the
+ * FIS_BIN_PATH environment variable, {@link StubFisPro} if it is not set.
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OlsLearnerBenchmark {
+
+	@Param({ "1000", "10000", "100000", "1000000" })
+	public long rows;
+
+	@Param({ "3", "6" })
+	public int inputs;
+
+	private ExecutionContext mExec;
+	private BufferedDataTable mTable;
+	private FisSystem mConfig;
+	private File mDir;
+	private File mData;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mExec = SyntheticTable.context();
+		mTable = SyntheticTable.table(mExec, rows, inputs, 42);
+		mConfig = SyntheticFis.model(inputs, 3, 1, 42).getSystem();
+		mDir = SyntheticTable.directory();
+		try (PrintStream out = new PrintStream(new FileOutputStream(new File(mDir, "cfg.fis")))) {
+			out.print(SyntheticFis.fis(inputs, 3, 1, 42));
+		}
+		mData = new File(mDir, "dataset.csv");
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		SyntheticTable.delete(mDir);
+	}
+
+	@Benchmark
+	public FisSystem javaSingle() throws Exception {
+		return OrthogonalLeastSquares.learn(mConfig, mTable, OrthogonalLeastSquares.DEFAULT_TOLERANCE, 1, mExec);
+	}
+
+	@Benchmark
+	public FisSystem javaParallel() throws Exception {
+		return OrthogonalLeastSquares.learn(mConfig, mTable, OrthogonalLeastSquares.DEFAULT_TOLERANCE,
+				Runtime.getRuntime().availableProcessors(), mExec);
+	}
+
+	@Benchmark
+	public int fispro() throws Exception {
+		FisDatasetWriter.write(mTable, mData, false, mExec);
+		String[] args = { mData.getPath(), "-fcfg.fis", "-cols.fis" };
+		String bin = System.getenv("FIS_BIN_PATH");
+		List<String> cmd;
+		if (bin != null) {
+			cmd = new ArrayList<String>();
+			cmd.add(new File(bin, "ols").getPath());
+			for (String arg : args)
+				cmd.add(arg);
+		} else {
+			cmd = StubFisPro.command("ols", args);
+		}
+		int code = new ProcessBuilder(cmd).directory(mDir).inheritIO().start().waitFor();
+		if (code != 0)
+			throw new IllegalStateException("Model ols.fis NOT created.");
+		return code;
+	}
+}
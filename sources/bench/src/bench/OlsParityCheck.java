@@ -0,0 +1,118 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+
+import port.FisCommand;
+import port.FisDatasetWriter;
+import port.FisEngine;
+import port.FisSystem;
+import port.OrthogonalLeastSquares;
+
+/**
+ * Parity check of the rules learned in the JVM against the FisPro ols tool
+ *
+ * The rules of a synthetic dataset are learned by ols and by
+ * {@link OrthogonalLeastSquares} from the same configuration model, with the
+ * default tolerance of the OLS node: the numbers of rules are compared, and
+ * the values inferred by both models on the rows of the dataset. The ols tool
+ * is read from the FisPro bin folder in the FIS_BIN_PATH environment
+ * variable, the check is skipped if it is not set.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class OlsParityCheck {
+
+	private static final double TOLERANCE = 1e-3;
+	private static final int ROWS = 2000;
+	private static final int INPUTS = 3;
+	private static final int[] MFS = { 2, 3, 5 };
+	private static final String DATA = "dataset.csv";
+	private static final String CFG = "cfg.fis";
+	private static final String FIS = "ols.fis";
+
+	private OlsParityCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String bin = System.getenv("FIS_BIN_PATH");
+		if (bin == null) {
+			System.out.println("FIS_BIN_PATH is not set, ols parity check skipped.");
+			return;
+		}
+
+		File dir = SyntheticTable.directory();
+		boolean ok = true;
+		try {
+			// the table and the rows hold the same values
+			ExecutionContext exec = SyntheticTable.context();
+			BufferedDataTable table = SyntheticTable.table(exec, ROWS, INPUTS, 42);
+			double[][] rows = SyntheticFis.rows(ROWS, INPUTS, 42);
+			// no header line, as the OLS node writes the dataset
+			try (FisDatasetWriter out = new FisDatasetWriter(new FileOutputStream(new File(dir, DATA)))) {
+				for (double[] row : rows)
+					out.writeRow(row);
+			}
+
+			for (int nMfs : MFS) {
+				String cfg = SyntheticFis.fis(INPUTS, nMfs, 1, 7);
+				Files.write(new File(dir, CFG).toPath(), cfg.getBytes(Charset.defaultCharset()));
+				FisSystem expected = ols(bin, dir);
+				FisSystem actual = OrthogonalLeastSquares.learn(FisSystem.parse(cfg), table,
+						OrthogonalLeastSquares.DEFAULT_TOLERANCE, 1, exec);
+
+				double diff = compare(expected, actual, rows);
+				boolean same = expected.getNumRules() == actual.getNumRules() && diff <= TOLERANCE;
+				ok &= same;
+				System.out.println(nMfs + " MFs: " + actual.getNumRules() + " rules instead of "
+						+ expected.getNumRules() + ", max difference " + diff + (same ? "" : " MISMATCH"));
+			}
+		} finally {
+			SyntheticTable.delete(dir);
+		}
+		if (!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Run ols, as the OLS node does
+	 */
+	private static FisSystem ols(String bin, File dir) throws IOException, InterruptedException {
+
+		new File(dir, FIS).delete();
+		int code = new ProcessBuilder(FisCommand.ols(bin, DATA, CFG, FIS)).directory(dir).inheritIO().start()
+				.waitFor();
+		if (code != 0 || !new File(dir, FIS).exists())
+			throw new IllegalStateException("ols fis NOT created.");
+		return FisSystem.parse(new String(Files.readAllBytes(new File(dir, FIS).toPath()), Charset.defaultCharset()));
+	}
+
+	/**
+	 * Largest difference between the values inferred by the models learned by
+	 * ols and in the JVM, both NaN counting as equal
+	 */
+	private static double compare(FisSystem expected, FisSystem actual, double[][] rows) {
+
+		FisEngine e = new FisEngine(expected);
+		FisEngine a = new FisEngine(actual);
+		double diff = 0;
+		for (double[] row : rows) {
+			e.infer(row);
+			a.infer(row);
+			double x = e.getInferred(0);
+			double y = a.getInferred(0);
+			if (Double.isNaN(x) != Double.isNaN(y))
+				return Double.POSITIVE_INFINITY;
+			if (!Double.isNaN(x))
+				diff = Math.max(diff, Math.abs(x - y));
+		}
+		return diff;
+	}
+}
@@ -0,0 +1,195 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import perf.PerfResReader;
+import perf.PerfTable;
+import port.CompiledFis;
+import port.FisCompiler;
+import port.FisDatasetWriter;
+import port.FisEngine;
+import port.FisSystem;
+
+/**
+ * Parity check of the inference in the JVM against the FisPro perf tool
+ *
+ * Sample models covering the crisp and fuzzy outputs, the defuzzifications,
+ * both disjunctions and the missing values policies are inferred on the same
+ * rows by perf and by {@link FisEngine} and {@link CompiledFis}; the INF
+ * column of perf.res is compared with the inferred values. The perf tool is
+ * read from the FisPro bin folder in the FIS_BIN_PATH environment variable,
+ * the check is skipped if it is not set. Rows with a missing value are not
+ * compared for the 'random' policy.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class PerfParityCheck {
+
+	private static final double TOLERANCE = 1e-6;
+	private static final int ROWS = 2000;
+	private static final int INPUTS = 3;
+	private static final int MFS = 3;
+	private static final int RULES = 15;
+
+	private PerfParityCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String bin = System.getenv("FIS_BIN_PATH");
+		if (bin == null) {
+			System.out.println("FIS_BIN_PATH is not set, perf parity check skipped.");
+			return;
+		}
+		String[][] samples = {
+				// nature, defuzzification, disjunction, missing values
+				{ "crisp", "sugeno", "sum", "random" }, { "crisp", "sugeno", "max", "random" },
+				{ "fuzzy", "area", "max", "random" }, { "fuzzy", "area", "sum", "random" },
+				{ "fuzzy", "MeanMax", "max", "random" }, { "fuzzy", "MeanMax", "sum", "random" },
+				{ "crisp", "sugeno", "sum", "mean" }, { "fuzzy", "area", "max", "mean" } };
+
+		File dir = SyntheticTable.directory();
+		boolean ok = true;
+		try {
+			double[][] rows = rows(42);
+			File data = new File(dir, "dataset.csv");
+			try (FisDatasetWriter out = new FisDatasetWriter(new FileOutputStream(data))) {
+				for (double[] row : rows)
+					out.writeRow(row);
+			}
+			for (String[] sample : samples) {
+				String fis = fis(sample[0], sample[1], sample[2], sample[3], 7);
+				Files.write(new File(dir, "model.fis").toPath(), fis.getBytes(Charset.defaultCharset()));
+				double[] inf = perf(bin, dir, data.getName());
+				double diff = compare(FisSystem.parse(fis), rows, inf, sample[3].equals("random"));
+				boolean same = diff <= TOLERANCE;
+				ok &= same;
+				System.out.println(Arrays.toString(sample) + ": max difference " + diff + (same ? "" : " MISMATCH"));
+			}
+		} finally {
+			SyntheticTable.delete(dir);
+		}
+		if (!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Run perf and read the INF column of perf.res
+	 */
+	private static double[] perf(String bin, File dir, String data) throws IOException, InterruptedException {
+
+		int code = new ProcessBuilder(new File(bin, "perf").getPath(), "model.fis", data).directory(dir)
+				.inheritIO().start().waitFor();
+		if (code != 0)
+			throw new IllegalStateException("perf.res NOT created.");
+		try (PerfResReader res = new PerfResReader(new File(dir, "perf.res"))) {
+			int inf = Arrays.asList(res.getColumnNames()).indexOf(PerfTable.INF);
+			if (inf < 0)
+				throw new IllegalStateException("perf.res has no " + PerfTable.INF + " column.");
+			double[] values = new double[res.getColumnNames().length];
+			double[] col = new double[ROWS];
+			for (int r = 0; r < ROWS; r++) {
+				if (res.readRow(values) < 0)
+					throw new IllegalStateException("perf.res has " + r + " rows instead of " + ROWS + ".");
+				col[r] = values[inf];
+			}
+			return col;
+		}
+	}
+
+	/**
+	 * Largest difference between the values inferred by perf and by the
+	 * engines of the JVM, both NaN counting as equal
+	 */
+	private static double compare(FisSystem sys, double[][] rows, double[] inf, boolean skipMissing) {
+
+		FisEngine engine = new FisEngine(sys);
+		CompiledFis compiled = FisCompiler.compile(sys, 0);
+		double diff = 0;
+		for (int r = 0; r < rows.length; r++) {
+			if (skipMissing && hasMissing(rows[r]))
+				continue;
+			engine.infer(rows[r]);
+			diff = Math.max(diff, difference(inf[r], engine.getInferred(0)));
+			if (compiled != null)
+				diff = Math.max(diff, difference(inf[r], compiled.infer(rows[r])));
+		}
+		return diff;
+	}
+
+	private static double difference(double a, double b) {
+		if (Double.isNaN(a) || Double.isNaN(b))
+			return Double.isNaN(a) && Double.isNaN(b) ? 0 : Double.POSITIVE_INFINITY;
+		return Math.abs(a - b);
+	}
+
+	private static boolean hasMissing(double[] row) {
+		for (int i = 0; i < INPUTS; i++)
+			if (Double.isNaN(row[i]))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Rows of uniform values in [0,1], one input in twenty missing, the last
+	 * column is the observed output
+	 */
+	private static double[][] rows(long seed) {
+
+		Random rnd = new Random(seed);
+		double[][] rows = SyntheticFis.rows(ROWS, INPUTS, seed);
+		for (double[] row : rows)
+			for (int i = 0; i < INPUTS; i++)
+				if (rnd.nextInt(20) == 0)
+					row[i] = Double.NaN;
+		return rows;
+	}
+
+	/**
+	 * Generate a sample model, the inputs being partitioned as in
+	 * {@link SyntheticFis}; a fuzzy output has a regular partition of
+	 * triangular MFs on [0,1]
+	 */
+	private static String fis(String nature, String defuz, String disj, String missing, long seed) {
+
+		String fis = SyntheticFis.fis(INPUTS, MFS, RULES, seed).replace("MissingValues='random'",
+				"MissingValues='" + missing + "'");
+		int output = fis.indexOf("\n[Output1]");
+		StringBuilder sb = new StringBuilder(fis.substring(0, output));
+		sb.append("\n[Output1]\nNature='").append(nature).append("'\nDefuzzification='").append(defuz)
+				.append("'\nDisjunction='").append(disj).append("'\nDefaultValue=0.0\nClassif='no'\nActive='yes'\n"
+						+ "Name='y'\nRange=[0.0,1.0]\n");
+		boolean fuzzy = nature.equals("fuzzy");
+		if (fuzzy) {
+			double step = 1.0 / (MFS - 1);
+			sb.append("NMFs=").append(MFS).append('\n');
+			for (int k = 0; k < MFS; k++)
+				sb.append("MF").append(k + 1).append("='y_").append(k + 1).append("','triangular',[")
+						.append((k - 1) * step).append(',').append(k * step).append(',').append((k + 1) * step)
+						.append("]\n");
+		} else {
+			sb.append("NMFs=0\n");
+		}
+
+		// same premises, the conclusion of a fuzzy output is a MF index
+		Random rnd = new Random(seed);
+		sb.append("\n[Rules]\n");
+		for (int r = 0; r < RULES; r++) {
+			for (int i = 0; i < INPUTS; i++)
+				sb.append(rnd.nextInt(MFS) + 1).append(", ");
+			double c = rnd.nextDouble();
+			if (fuzzy)
+				sb.append(Math.min(MFS, (int) (c * MFS) + 1)).append(",\n");
+			else
+				sb.append(c).append(",\n");
+		}
+		sb.append("\n[Exceptions]\n");
+		return sb.toString();
+	}
+}
@@ -0,0 +1,88 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import perf.PerfTable;
+import port.FisDatasetWriter;
+
+/**
+ * Whole FisPro path of the PERF node, run against {@link StubFisPro}: export
+ * of the dataset, external process, parsing of perf.res and appending of the
+ * inferred column. The process alone is measured by {@link #process()}.
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PerfProcessBenchmark {
+
+	@Param({ "1000", "100000", "1000000" })
+	public long rows;
+
+	private ExecutionContext mExec;
+	private BufferedDataTable mTable;
+	private File mDir;
+	private File mModel;
+	private File mData;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mExec = SyntheticTable.context();
+		mTable = SyntheticTable.table(mExec, rows, 10, 42);
+		mDir = SyntheticTable.directory();
+		mModel = new File(mDir, "model.fis");
+		try (PrintStream out = new PrintStream(new FileOutputStream(mModel))) {
+			out.print(SyntheticFis.fis(10, 5, 100, 42));
+		}
+		mData = new File(mDir, "data");
+		FisDatasetWriter.write(mTable, mData, false, mExec);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		SyntheticTable.delete(mDir);
+	}
+
+	@Benchmark
+	public int process() throws Exception {
+		return run();
+	}
+
+	@Benchmark
+	public BufferedDataTable perf() throws Exception {
+		FisDatasetWriter.write(mTable, mData, false, mExec);
+		if (run() != 0)
+			throw new IllegalStateException("Perf files NOT Created.");
+		BufferedDataTable perf = PerfTable.read(new File(mDir, "perf.res"), 0, mExec);
+		return PerfTable.append(mTable, perf, mExec);
+	}
+
+	private int run() throws Exception {
+		Process p = new ProcessBuilder(StubFisPro.command("perf", mModel.getPath(), mData.getPath()))
+				.directory(mDir).inheritIO().start();
+		return p.waitFor();
+	}
+}
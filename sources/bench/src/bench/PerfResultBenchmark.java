@@ -0,0 +1,148 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.StringCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.ExecutionContext;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import perf.PerfResReader;
+import perf.PerfTable;
+import port.FisDatasetWriter;
+
+/**
+ * Time spent by the PERF node on the results of the perf tool: parsing of
+ * perf.res (perfToTable) and appending of the inferred column to the input
+ * table (appendColumn), against the code of previous versions
+ *
+ * @author Antonio Di Mauro
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PerfResultBenchmark {
+
+	@Param({ "1000", "100000", "1000000", "10000000" })
+	public long rows;
+
+	private ExecutionContext mExec;
+	private BufferedDataTable mTable;
+	private BufferedDataTable mPerf;
+	private File mDir;
+	private File mRes;
+
+	@Setup(Level.Trial)
+	public void setup() throws Exception {
+		mExec = SyntheticTable.context();
+		mTable = SyntheticTable.table(mExec, rows, 10, 42);
+		mDir = SyntheticTable.directory();
+		File model = new File(mDir, "model.fis");
+		try (PrintStream out = new PrintStream(new FileOutputStream(model))) {
+			out.print(SyntheticFis.fis(10, 5, 100, 42));
+		}
+		File data = new File(mDir, "data");
+		FisDatasetWriter.write(mTable, data, false, mExec);
+		StubFisPro.perf(model, data, mDir);
+		mRes = new File(mDir, "perf.res");
+		mPerf = PerfTable.read(mRes, 0, mExec);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() throws Exception {
+		SyntheticTable.delete(mDir);
+	}
+
+	@Benchmark
+	public double parse() throws Exception {
+		double sum = 0.0;
+		try (PerfResReader reader = new PerfResReader(mRes)) {
+			double[] values = new double[reader.getColumnNames().length];
+			while (reader.readRow(values) >= 0)
+				sum += values[1];
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public BufferedDataTable perfToTable() throws Exception {
+		return PerfTable.read(mRes, 0, mExec);
+	}
+
+	@Benchmark
+	public BufferedDataTable perfToTableLegacy() throws Exception {
+		DataColumnSpec[] allColSpecs = new DataColumnSpec[6];
+		String[] names = { "OBS", "INF", "Al", "ERR", "Bl", "CERR2" };
+		for (int i = 0; i < names.length; i++)
+			allColSpecs[i] = new DataColumnSpecCreator(names[i], StringCell.TYPE).createSpec();
+		BufferedDataContainer container = mExec.createDataContainer(new DataTableSpec(allColSpecs));
+		try (Scanner s = new Scanner(mRes)) {
+			int n = 0;
+			while (s.hasNextLine()) {
+				String line = s.nextLine();
+				if (n > 0)
+					container.addRowToTable(new DefaultRow("Row" + n, line.trim().split(" +")));
+				n++;
+			}
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	@Benchmark
+	public BufferedDataTable appendColumn() throws Exception {
+		return PerfTable.append(mTable, mPerf, mExec);
+	}
+
+	@Benchmark
+	public BufferedDataTable appendColumnLegacy() throws Exception {
+		int l = mTable.getDataTableSpec().getNumColumns() + 1;
+		DataColumnSpec[] allColSpecs = new DataColumnSpec[l];
+		for (int i = 0; i < l - 1; i++)
+			allColSpecs[i] = mTable.getDataTableSpec().getColumnSpec(i);
+		allColSpecs[l - 1] = PerfTable.createInfSpec();
+		BufferedDataContainer container = mExec.createDataContainer(new DataTableSpec(allColSpecs));
+		int inf = mPerf.getSpec().findColumnIndex(PerfTable.INF);
+		CloseableRowIterator itData = mTable.iterator();
+		CloseableRowIterator itPerf = mPerf.iterator();
+		int n = 0;
+		while (itData.hasNext() && itPerf.hasNext()) {
+			double[] vett = new double[l];
+			DataRow dataR = itData.next();
+			DataRow perfR = itPerf.next();
+			for (int i = 0; i < l - 1; i++)
+				vett[i] = Double.parseDouble(dataR.getCell(i).toString());
+			vett[l - 1] = ((DoubleCell) perfR.getCell(inf)).getDoubleValue();
+			container.addRowToTable(new DefaultRow("Row" + n++, vett));
+		}
+		container.close();
+		return container.getTable();
+	}
+}
@@ -0,0 +1,543 @@
+package bench;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stand-in for the FisPro binaries, so that the nodes and the benchmarks run
+ * without a FisPro installation
+ *
+ * The stub reads the same arguments and inputs as the FisPro tool and writes
+ * output files of the same shape (.fis, .hfp, .vertex, perf.res), with
+ * deterministic values: it measures the integration around the tool, not the
+ * tool itself. The launchers in the 'stub' folder of this project have the
+ * names of the FisPro tools, so the folder can be used as FIS_BIN_PATH.
+ * Usage:
+ *
+ * <pre>
+ * java -cp CLASSPATH bench.StubFisPro TOOL ARGS...
+ * </pre>
+ *
+ * The environment variables {@value #LATENCY_ENV} (milliseconds spent by
+ * each run), {@value #RULES_ENV} (rules of the generated models, default one
+ * for each row up to 1000) and {@value #MFS_ENV} (MFs of each variable
+ * without a partition, default 3) tune the runs.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class StubFisPro {
+
+	/**
+	 * Environment variables read by the stub
+	 */
+	public static final String LATENCY_ENV = "FIS_STUB_LATENCY";
+	public static final String RULES_ENV = "FIS_STUB_RULES";
+	public static final String MFS_ENV = "FIS_STUB_MFS";
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+	private static final int DEFAULT_RULES = 1000;
+	private static final int DEFAULT_MFS = 3;
+
+	private static final String PERF_RES = "perf.res";
+	private static final String RESULT_PERF = "result.perf";
+
+	private StubFisPro() {
+	}
+
+	public static void main(String[] args) {
+
+		if (args.length == 0) {
+			System.err.println("Usage: StubFisPro TOOL ARGS...");
+			System.exit(1);
+		}
+		File dir = new File(System.getProperty("user.dir"));
+		String tool = args[0];
+		String[] pos = positional(args);
+		try {
+			sleep(getInt(LATENCY_ENV, 0));
+			if (tool.equals("perf") && pos.length >= 2)
+				perf(new File(pos[0]), new File(pos[1]), dir);
+			else if (tool.equals("wm") && pos.length >= 2)
+				learn(new File(pos[0]), new File(pos[1]), file(dir, option(args, "-o", "wm.fis")));
+			else if (tool.equals("fpa") && pos.length >= 2)
+				learn(new File(pos[0]), new File(pos[1]), file(dir, "configfpa.fis"));
+			else if (tool.equals("fistree") && pos.length >= 2) {
+				learn(new File(pos[0]), new File(pos[1]), file(dir, new File(pos[0]).getName() + ".tree.fis"));
+				System.out.println("Tree built, output " + option(args, "-o", "1"));
+			} else if (tool.equals("genrules") && pos.length >= 1)
+				genrules(new File(pos[0]), file(dir, option(args, "-f", "genrules.fis")));
+			else if (tool.equals("ols") && pos.length >= 1)
+				ols(new File(pos[0]), file(dir, option(args, "-f", "cfg.fis")), file(dir, option(args, "-c", "ols.fis")));
+			else if (tool.equals("hfpsr") && pos.length >= 1)
+				hfpsr(new File(pos[0]), pos, file(dir, option(args, "-o", "hfp-sr.fis")), dir, hasFlag(args, "-f"));
+			else if (tool.equals("hfpfis") && pos.length >= 2)
+				hfpfis(new File(pos[0]), new File(pos[1]), file(dir, option(args, "-o", "hfpfis.fis")));
+			else {
+				System.err.println("Unknown tool or arguments: " + tool);
+				System.exit(1);
+			}
+		} catch (IOException e) {
+			System.err.println(tool + ": " + e.getMessage());
+			System.exit(2);
+		}
+	}
+
+	/**
+	 * Build the command running a stub tool in a new JVM
+	 *
+	 * @param tool
+	 *            FisPro tool name
+	 * @param args
+	 *            tool arguments
+	 *
+	 * @return command line
+	 */
+	public static List<String> command(String tool, String... args) {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+		cmd.add("-cp");
+		cmd.add(System.getProperty("java.class.path"));
+		cmd.add(StubFisPro.class.getName());
+		cmd.add(tool);
+		for (String arg : args)
+			cmd.add(arg);
+		return cmd;
+	}
+
+	/**
+	 * Stub of the perf tool: for each row of the dataset the inferred value is
+	 * the first input and the observed value is the last column
+	 *
+	 * @param model
+	 *            fis model, only checked for existence
+	 * @param data
+	 *            csv dataset without header, a file or a FIFO
+	 * @param dir
+	 *            directory of perf.res and result.perf
+	 *
+	 * @return number of rows
+	 *
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 */
+	public static long perf(File model, File data, File dir) throws IOException {
+
+		if (!model.isFile())
+			throw new IOException("Model NOT found: " + model);
+		long n = 0;
+		double sse = 0.0;
+		double maxErr = 0.0;
+		try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(data), CHARSET));
+				Writer out = new BufferedWriter(
+						new OutputStreamWriter(new FileOutputStream(new File(dir, PERF_RES)), CHARSET))) {
+			out.write("OBS INF Al ERR Bl CERR2\n");
+			String line;
+			while ((line = in.readLine()) != null) {
+				if (line.isEmpty())
+					continue;
+				int first = line.indexOf(',');
+				double inf = parse(first < 0 ? line : line.substring(0, first));
+				double obs = parse(line.substring(line.lastIndexOf(',') + 1));
+				double err = Math.abs(inf - obs);
+				sse += err * err;
+				maxErr = Math.max(maxErr, err);
+				n++;
+				out.write(obs + " " + inf + " 0 " + err + " 0 " + sse + "\n");
+			}
+		}
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, RESULT_PERF)), CHARSET)) {
+			out.write("PI " + (n > 0 ? Math.sqrt(sse / n) : 0.0) + " Coverage 1 MaxErr " + maxErr + " Rows " + n
+					+ "\n");
+		}
+		return n;
+	}
+
+	/**
+	 * Stub of the learners with a configuration (wm, fpa, fistree): the
+	 * partitions of the configuration and a rule for each of the first rows of
+	 * the dataset
+	 */
+	private static void learn(File cfg, File data, File out) throws IOException {
+		Partition p = Partition.read(cfg);
+		Dataset d = Dataset.read(data, getInt(RULES_ENV, DEFAULT_RULES));
+		write(out, p.fis(d.rows, d.rows.size(), rules(d)));
+		System.out.println(out.getName() + ": " + d.count + " rows, " + rules(d) + " rules");
+	}
+
+	/**
+	 * Stub of genrules: rules drawn from the partitions of the configuration
+	 */
+	private static void genrules(File cfg, File out) throws IOException {
+		Partition p = Partition.read(cfg);
+		int nRules = getInt(RULES_ENV, DEFAULT_RULES);
+		List<double[]> rows = new ArrayList<double[]>();
+		for (int r = 0; r < nRules; r++) {
+			double[] row = new double[p.names.length];
+			for (int i = 0; i < row.length; i++)
+				row[i] = p.min[i] + (p.max[i] - p.min[i]) * ((r * 31 + i * 17) % 101) / 100.0;
+			rows.add(row);
+		}
+		write(out, p.fis(rows, rows.size(), nRules));
+	}
+
+	/**
+	 * Stub of ols: the partitions of the dataset and a rule for each of the
+	 * first rows
+	 */
+	private static void ols(File data, File cfg, File out) throws IOException {
+		Dataset d = Dataset.read(data, getInt(RULES_ENV, DEFAULT_RULES));
+		Partition p = d.partition(getInt(MFS_ENV, DEFAULT_MFS), 0);
+		write(cfg, p.fis(d.rows, 0, 0));
+		write(out, p.fis(d.rows, d.rows.size(), rules(d)));
+	}
+
+	/**
+	 * Stub of hfpsr: the fis, the hfp configuration and the vertices of the
+	 * dataset partitions
+	 *
+	 * @param pos
+	 *            positional arguments: dataset, number of fuzzy sets of the
+	 *            inputs, input hierarchy, tolerance, number of fuzzy sets of
+	 *            the output...
+	 */
+	private static void hfpsr(File data, String[] pos, File out, File dir, boolean classif) throws IOException {
+
+		Dataset d = Dataset.read(data, getInt(RULES_ENV, DEFAULT_RULES));
+		int nMfs = getInt(MFS_ENV, DEFAULT_MFS);
+		if (pos.length > 1) {
+			// number of fuzzy sets of the first input, "3 3 3" or 3
+			double sets = parse(pos[1].replace("\"", "").trim().split(" +")[0]);
+			if (sets >= 2)
+				nMfs = (int) sets;
+		}
+		int outMfs = pos.length > 4 ? (int) Math.max(0, parse(pos[4])) : 0;
+		Partition p = d.partition(nMfs, outMfs);
+		p.classif = classif;
+		write(out, p.fis(d.rows, d.rows.size(), rules(d)));
+		write(new File(dir, data.getName() + ".hfp"),
+				p.hfp(d.rows, pos.length > 2 ? pos[2] : "3", pos.length > 3 ? pos[3] : "0.01"));
+		write(new File(dir, data.getName() + ".vertex"), p.vertex());
+	}
+
+	/**
+	 * Stub of hfpfis: the partitions of the hfp configuration and a rule for
+	 * each of the first rows of the dataset
+	 */
+	private static void hfpfis(File data, File hfp, File out) throws IOException {
+		Partition p = Partition.read(hfp);
+		Dataset d = Dataset.read(data, getInt(RULES_ENV, DEFAULT_RULES));
+		write(out, p.fis(d.rows, d.rows.size(), rules(d)));
+	}
+
+	private static int rules(Dataset d) {
+		return d.rows.isEmpty() ? 0 : getInt(RULES_ENV, Math.min(d.rows.size(), DEFAULT_RULES));
+	}
+
+	/**
+	 * Partitions of the variables of a model, the last variable is the output
+	 */
+	private static class Partition {
+
+		private final String[] names;
+		private final double[] min;
+		private final double[] max;
+		private final int[] nMfs;
+		private boolean classif;
+
+		private Partition(int n) {
+			names = new String[n];
+			min = new double[n];
+			max = new double[n];
+			nMfs = new int[n];
+		}
+
+		/**
+		 * Read the variables of a .fis or .hfp file: name, range and number of
+		 * MFs
+		 */
+		private static Partition read(File file) throws IOException {
+
+			List<String[]> vars = new ArrayList<String[]>();
+			String[] var = null;
+			for (String line : Files.readAllLines(file.toPath(), CHARSET)) {
+				line = line.trim();
+				if (line.startsWith("[Input") || line.startsWith("[Output")) {
+					var = new String[] { "x" + (vars.size() + 1), "0", "1", "0" };
+					vars.add(var);
+				} else if (line.startsWith("["))
+					var = null;
+				else if (var != null && line.startsWith("Name="))
+					var[0] = line.substring(5).replace("'", "");
+				else if (var != null && line.startsWith("Range=")) {
+					String[] range = line.substring(6).replace("[", "").replace("]", "").split(",");
+					var[1] = range[0];
+					var[2] = range[range.length - 1];
+				} else if (var != null && line.startsWith("NMFs="))
+					var[3] = line.substring(line.indexOf('=') + 1);
+			}
+			if (vars.size() < 2)
+				throw new IOException("No variables in " + file);
+			Partition p = new Partition(vars.size());
+			for (int i = 0; i < vars.size(); i++) {
+				p.names[i] = vars.get(i)[0];
+				p.min[i] = parse(vars.get(i)[1]);
+				p.max[i] = parse(vars.get(i)[2]);
+				p.nMfs[i] = (int) parse(vars.get(i)[3]);
+			}
+			return p;
+		}
+
+		/**
+		 * Write the model: a regular partition of triangular MFs for each
+		 * variable and a rule for each row
+		 *
+		 * @param rows
+		 *            rows giving the premises and the conclusion of the rules
+		 * @param nRows
+		 *            number of rows to use
+		 * @param nRules
+		 *            number of rules, the rows are repeated if fewer
+		 */
+		private String fis(List<double[]> rows, int nRows, int nRules) {
+
+			int nInputs = names.length - 1;
+			int o = nInputs;
+			boolean fuzzy = nMfs[o] > 0;
+			StringBuilder sb = new StringBuilder();
+			sb.append("[System]\nName='stub'\nNinputs=").append(nInputs).append("\nNoutputs=1\nNrules=")
+					.append(nRows > 0 ? nRules : 0)
+					.append("\nNexceptions=0\nConjunction='min'\nMissingValues='random'\n");
+			for (int i = 0; i < nInputs; i++) {
+				sb.append("\n[Input").append(i + 1).append("]\nActive='yes'\nName='").append(names[i])
+						.append("'\nRange=[").append(min[i]).append(',').append(max[i]).append("]\nNMFs=")
+						.append(Math.max(nMfs[i], 1)).append('\n');
+				mfs(sb, i);
+			}
+			sb.append("\n[Output1]\nNature='").append(fuzzy ? "fuzzy" : "crisp").append("'\nDefuzzification='")
+					.append(fuzzy ? "area" : "sugeno").append("'\nDisjunction='").append(fuzzy ? "max" : "sum")
+					.append("'\nDefaultValue=").append(min[o]).append("\nClassif='").append(classif ? "yes" : "no")
+					.append("'\nActive='yes'\nName='").append(names[o]).append("'\nRange=[").append(min[o])
+					.append(',').append(max[o]).append("]\nNMFs=").append(nMfs[o]).append('\n');
+			if (fuzzy)
+				mfs(sb, o);
+
+			sb.append("\n[Rules]\n");
+			for (int r = 0; r < nRules && nRows > 0; r++) {
+				double[] row = rows.get(r % nRows);
+				for (int i = 0; i < nInputs; i++)
+					sb.append(mf(i, row[i])).append(", ");
+				double y = row[o];
+				if (fuzzy)
+					sb.append(mf(o, y)).append(",\n");
+				else
+					sb.append(Double.isNaN(y) ? min[o] : y).append(",\n");
+			}
+			sb.append("\n[Exceptions]\n");
+			return sb.toString();
+		}
+
+		private void mfs(StringBuilder sb, int i) {
+			int n = Math.max(nMfs[i], 1);
+			double step = n > 1 ? (max[i] - min[i]) / (n - 1) : Math.max(max[i] - min[i], 1.0);
+			for (int k = 0; k < n; k++) {
+				double c = min[i] + k * step;
+				sb.append("MF").append(k + 1).append("='").append(names[i]).append('_').append(k + 1)
+						.append("','triangular',[").append(c - step).append(',').append(c).append(',')
+						.append(c + step).append("]\n");
+			}
+		}
+
+		/**
+		 * @return index from 1 of the MF closest to the value
+		 */
+		private int mf(int i, double v) {
+			int n = Math.max(nMfs[i], 1);
+			if (Double.isNaN(v) || n == 1 || max[i] <= min[i])
+				return 1;
+			long k = Math.round((v - min[i]) / (max[i] - min[i]) * (n - 1));
+			return (int) Math.max(0, Math.min(n - 1, k)) + 1;
+		}
+
+		/**
+		 * Write the hfp configuration: the configuration model, each variable
+		 * also giving its hierarchy type and tolerance
+		 */
+		private String hfp(List<double[]> rows, String hierarchy, String tolerance) {
+			StringBuilder sb = new StringBuilder();
+			boolean var = false;
+			for (String line : fis(rows, 0, 0).split("\n")) {
+				if (line.startsWith("[")) {
+					// before the empty line ending the variable
+					if (var) {
+						sb.setLength(sb.length() - 1);
+						sb.append("Hierarchy=").append(hierarchy).append("\nTolerance=").append(tolerance)
+								.append("\n\n");
+					}
+					var = line.startsWith("[Input") || line.startsWith("[Output");
+				}
+				sb.append(line).append('\n');
+			}
+			return sb.toString();
+		}
+
+		private String vertex() {
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i < names.length; i++) {
+				int n = nMfs[i];
+				for (int k = 0; k < n; k++)
+					sb.append(k > 0 ? " " : "").append(n > 1 ? min[i] + k * (max[i] - min[i]) / (n - 1) : min[i]);
+				sb.append('\n');
+			}
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Dataset read in a single pass, as a FIFO allows: column names and
+	 * ranges, number of rows and the first rows
+	 */
+	private static class Dataset {
+
+		private String[] names;
+		private double[] min;
+		private double[] max;
+		private long count;
+		private final List<double[]> rows = new ArrayList<double[]>();
+
+		/**
+		 * @param data
+		 *            csv dataset, the first line is a header if it does not
+		 *            start with a number
+		 * @param keep
+		 *            number of rows kept
+		 */
+		private static Dataset read(File data, int keep) throws IOException {
+
+			Dataset d = new Dataset();
+			try (BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(data), CHARSET))) {
+				String line;
+				while ((line = in.readLine()) != null) {
+					if (line.trim().isEmpty())
+						continue;
+					String[] tokens = line.split(",");
+					if (d.names == null) {
+						d.names = new String[tokens.length];
+						d.min = new double[tokens.length];
+						d.max = new double[tokens.length];
+						Arrays.fill(d.min, Double.POSITIVE_INFINITY);
+						Arrays.fill(d.max, Double.NEGATIVE_INFINITY);
+						boolean header = Double.isNaN(parse(tokens[0])) && !tokens[0].trim().equals("?");
+						for (int i = 0; i < tokens.length; i++)
+							d.names[i] = header ? tokens[i].trim() : "x" + (i + 1);
+						if (header)
+							continue;
+					}
+					double[] row = new double[d.names.length];
+					for (int i = 0; i < row.length; i++) {
+						row[i] = i < tokens.length ? parse(tokens[i]) : Double.NaN;
+						if (row[i] < d.min[i])
+							d.min[i] = row[i];
+						if (row[i] > d.max[i])
+							d.max[i] = row[i];
+					}
+					if (d.rows.size() < keep)
+						d.rows.add(row);
+					d.count++;
+				}
+			}
+			if (d.names == null || d.names.length < 2)
+				throw new IOException("Dataset without inputs: " + data);
+			return d;
+		}
+
+		private Partition partition(int nMfs, int outMfs) {
+			Partition p = new Partition(names.length);
+			for (int i = 0; i < names.length; i++) {
+				p.names[i] = names[i];
+				p.min[i] = min[i] <= max[i] ? min[i] : 0.0;
+				p.max[i] = min[i] <= max[i] ? max[i] : 1.0;
+				p.nMfs[i] = nMfs;
+			}
+			p.nMfs[names.length - 1] = outMfs;
+			return p;
+		}
+	}
+
+	/**
+	 * @return the arguments that are not options, without the tool name
+	 */
+	private static String[] positional(String[] args) {
+		List<String> pos = new ArrayList<String>();
+		for (int i = 1; i < args.length; i++)
+			if (!args[i].trim().startsWith("-") || !Double.isNaN(parse(args[i])))
+				pos.add(args[i]);
+		return pos.toArray(new String[pos.size()]);
+	}
+
+	/**
+	 * @return the value of an option written as -xVALUE, or the default value
+	 */
+	private static String option(String[] args, String name, String def) {
+		for (int i = 1; i < args.length; i++)
+			if (args[i].startsWith(name) && args[i].length() > name.length())
+				return args[i].substring(name.length());
+		return def;
+	}
+
+	private static boolean hasFlag(String[] args, String name) {
+		for (int i = 1; i < args.length; i++)
+			if (args[i].trim().equals(name))
+				return true;
+		return false;
+	}
+
+	private static File file(File dir, String name) {
+		File f = new File(name);
+		return f.isAbsolute() ? f : new File(dir, name);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		try (Writer out = new OutputStreamWriter(new FileOutputStream(file), CHARSET)) {
+			out.write(content);
+		}
+	}
+
+	private static int getInt(String env, int def) {
+		String v = System.getenv(env);
+		try {
+			return v == null ? def : Integer.parseInt(v.trim());
+		} catch (NumberFormatException e) {
+			return def;
+		}
+	}
+
+	private static void sleep(int ms) {
+		if (ms <= 0)
+			return;
+		try {
+			Thread.sleep(ms);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static double parse(String s) {
+		try {
+			return Double.parseDouble(s.trim());
+		} catch (NumberFormatException e) {
+			return Double.NaN;
+		}
+	}
+}
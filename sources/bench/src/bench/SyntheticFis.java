@@ -0,0 +1,108 @@
+package bench;
+
+import java.io.IOException;
+import java.util.Random;
+
+import port.FisModel;
+import port.FisSystem;
+
+/**
+ * Synthetic FisPro models used by the benchmarks
+ *
+ * Every input is partitioned by a regular strong fuzzy partition of
+ * triangular MFs on [0,1], the output is crisp (sugeno) and the rules are
+ * drawn at random with a fixed seed.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class SyntheticFis {
+
+	private SyntheticFis() {
+	}
+
+	/**
+	 * Generate the content of a .fis file
+	 *
+	 * @param nInputs
+	 *            number of inputs
+	 * @param nMfs
+	 *            number of MFs per input
+	 * @param nRules
+	 *            number of rules
+	 * @param seed
+	 *            random seed
+	 *
+	 * @return .fis content
+	 */
+	public static String fis(int nInputs, int nMfs, int nRules, long seed) {
+
+		Random rnd = new Random(seed);
+		StringBuilder sb = new StringBuilder();
+		sb.append("[System]\nName='synthetic'\nNinputs=").append(nInputs).append("\nNoutputs=1\nNrules=")
+				.append(nRules).append("\nNexceptions=0\nConjunction='min'\nMissingValues='random'\n");
+
+		double step = 1.0 / (nMfs - 1);
+		for (int i = 0; i < nInputs; i++) {
+			sb.append("\n[Input").append(i + 1).append("]\nActive='yes'\nName='x").append(i + 1)
+					.append("'\nRange=[0.0,1.0]\nNMFs=").append(nMfs).append('\n');
+			for (int k = 0; k < nMfs; k++) {
+				double c = k * step;
+				sb.append("MF").append(k + 1).append("='x").append(i + 1).append('_').append(k + 1);
+				if (k == 0)
+					sb.append("','SemiTrapezoidalInf',[").append(-step).append(',').append(c).append(',')
+							.append(c + step);
+				else if (k == nMfs - 1)
+					sb.append("','SemiTrapezoidalSup',[").append(c - step).append(',').append(c).append(',')
+							.append(c + step);
+				else
+					sb.append("','triangular',[").append(c - step).append(',').append(c).append(',')
+							.append(c + step);
+				sb.append("]\n");
+			}
+		}
+
+		sb.append("\n[Output1]\nNature='crisp'\nDefuzzification='sugeno'\nDisjunction='sum'\nDefaultValue=0.0\n"
+				+ "Classif='no'\nActive='yes'\nName='y'\nRange=[0.0,1.0]\nNMFs=0\n");
+
+		sb.append("\n[Rules]\n");
+		for (int r = 0; r < nRules; r++) {
+			for (int i = 0; i < nInputs; i++)
+				sb.append(rnd.nextInt(nMfs) + 1).append(", ");
+			sb.append(rnd.nextDouble()).append(",\n");
+		}
+		sb.append("\n[Exceptions]\n");
+		return sb.toString();
+	}
+
+	/**
+	 * Generate a parsed model
+	 *
+	 * @see #fis(int, int, int, long)
+	 */
+	public static FisModel model(int nInputs, int nMfs, int nRules, long seed) throws IOException {
+		return new FisModel(FisSystem.parse(fis(nInputs, nMfs, nRules, seed)), "Synthetic");
+	}
+
+	/**
+	 * Generate a row-major table of uniform values in [0,1], the last column
+	 * is the observed output
+	 *
+	 * @param nRows
+	 *            number of rows
+	 * @param nInputs
+	 *            number of inputs
+	 * @param seed
+	 *            random seed
+	 *
+	 * @return rows of nInputs + 1 values
+	 */
+	public static double[][] rows(int nRows, int nInputs, long seed) {
+
+		Random rnd = new Random(seed);
+		double[][] rows = new double[nRows][nInputs + 1];
+		for (double[] row : rows)
+			for (int i = 0; i < row.length; i++)
+				row[i] = rnd.nextDouble();
+		return rows;
+	}
+}
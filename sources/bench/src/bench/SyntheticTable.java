@@ -0,0 +1,112 @@
+package bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.ContainerTable;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.DefaultNodeProgressMonitor;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.Node;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.workflow.SingleNodeContainer;
+
+import perf.PERFNodeFactory;
+
+/**
+ * Synthetic KNIME tables used by the benchmarks, outside of a workflow
+ *
+ * @author Antonio Di Mauro
+ */
+public final class SyntheticTable {
+
+	private SyntheticTable() {
+	}
+
+	/**
+	 * Create an execution context detached from any workflow, the tables are
+	 * kept in memory while small and swapped to disk otherwise
+	 *
+	 * @return execution context
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static ExecutionContext context() {
+		NodeFactory<NodeModel> factory = (NodeFactory) new PERFNodeFactory();
+		return new ExecutionContext(new DefaultNodeProgressMonitor(), new Node(factory),
+				SingleNodeContainer.MemoryPolicy.CacheSmallInMemory, new HashMap<Integer, ContainerTable>());
+	}
+
+	/**
+	 * Generate a table of uniform values in [0,1], the inputs x1..xn followed
+	 * by the observed output y
+	 *
+	 * @param exec
+	 *            execution context
+	 * @param nRows
+	 *            number of rows
+	 * @param nInputs
+	 *            number of inputs
+	 * @param seed
+	 *            random seed
+	 *
+	 * @return data table
+	 */
+	public static BufferedDataTable table(ExecutionContext exec, long nRows, int nInputs, long seed) {
+
+		DataColumnSpec[] specs = new DataColumnSpec[nInputs + 1];
+		for (int i = 0; i < nInputs; i++)
+			specs[i] = new DataColumnSpecCreator("x" + (i + 1), DoubleCell.TYPE).createSpec();
+		specs[nInputs] = new DataColumnSpecCreator("y", DoubleCell.TYPE).createSpec();
+		BufferedDataContainer container = exec.createDataContainer(new DataTableSpec(specs));
+		Random rnd = new Random(seed);
+		for (long n = 0; n < nRows; n++) {
+			DataCell[] cells = new DataCell[specs.length];
+			for (int i = 0; i < cells.length; i++)
+				cells[i] = new DoubleCell(rnd.nextDouble());
+			container.addRowToTable(new DefaultRow(new RowKey("Row" + n), cells));
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * Create an empty working directory, like the ones of the nodes
+	 *
+	 * @return directory
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public static File directory() throws IOException {
+		File dir = File.createTempFile("fisbench", "");
+		if (!dir.delete() || !dir.mkdirs())
+			throw new IOException("Directory NOT created: " + dir);
+		return dir;
+	}
+
+	/**
+	 * Delete a working directory
+	 *
+	 * @param dir
+	 *            directory, ignored if null
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be deleted
+	 */
+	public static void delete(File dir) throws IOException {
+		if (dir != null)
+			FileUtils.deleteDirectory(dir);
+	}
+}
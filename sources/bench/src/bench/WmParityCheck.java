@@ -0,0 +1,140 @@
+package bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import port.FisCommand;
+import port.FisDatasetWriter;
+import port.FisSystem;
+import port.WangMendel;
+
+/**
+ * Parity check of the rules learned in the JVM against the FisPro wm tool
+ *
+ * The rules of a synthetic dataset are learned by wm and by
+ * {@link WangMendel} from the same configuration model: the premises of the
+ * rules and their conclusions are compared rule by rule. The wm tool is read
+ * from the FisPro bin folder in the FIS_BIN_PATH environment variable, the
+ * check is skipped if it is not set.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class WmParityCheck {
+
+	private static final double TOLERANCE = 1e-6;
+	private static final int ROWS = 2000;
+	private static final int INPUTS = 3;
+	private static final int[] MFS = { 2, 3, 5 };
+	private static final String DATA = "dataset.csv";
+	private static final String CFG = "cfg.fis";
+	private static final String FIS = "wm.fis";
+
+	private WmParityCheck() {
+	}
+
+	public static void main(String[] args) throws Exception {
+
+		String bin = System.getenv("FIS_BIN_PATH");
+		if (bin == null) {
+			System.out.println("FIS_BIN_PATH is not set, wm parity check skipped.");
+			return;
+		}
+
+		File dir = SyntheticTable.directory();
+		boolean ok = true;
+		try {
+			double[][] rows = SyntheticFis.rows(ROWS, INPUTS, 42);
+			// no header line, as the WM node writes the dataset
+			try (FisDatasetWriter out = new FisDatasetWriter(new FileOutputStream(new File(dir, DATA)))) {
+				for (double[] row : rows)
+					out.writeRow(row);
+			}
+			int[] index = new int[ROWS];
+			for (int r = 0; r < ROWS; r++)
+				index[r] = r;
+
+			for (int nMfs : MFS) {
+				String cfg = SyntheticFis.fis(INPUTS, nMfs, 0, 7);
+				Files.write(new File(dir, CFG).toPath(), cfg.getBytes(Charset.defaultCharset()));
+				FisSystem expected = wm(bin, dir);
+
+				WangMendel wm = new WangMendel(FisSystem.parse(cfg));
+				wm.add(rows, index);
+				List<String> diffs = new ArrayList<String>();
+				compare(expected, wm.getSystem(), diffs);
+				ok &= diffs.isEmpty();
+				System.out.println(nMfs + " MFs: " + expected.getNumRules() + " rules, "
+						+ (diffs.isEmpty() ? "same" : "MISMATCH"));
+				for (String diff : diffs)
+					System.out.println("  " + diff);
+			}
+		} finally {
+			SyntheticTable.delete(dir);
+		}
+		if (!ok)
+			System.exit(1);
+	}
+
+	/**
+	 * Run wm, as the WM node does
+	 */
+	private static FisSystem wm(String bin, File dir) throws IOException, InterruptedException {
+
+		new File(dir, FIS).delete();
+		int code = new ProcessBuilder(FisCommand.wm(bin, CFG, DATA, FIS)).directory(dir).inheritIO().start()
+				.waitFor();
+		if (code != 0 || !new File(dir, FIS).exists())
+			throw new IllegalStateException("wm fis NOT created.");
+		return FisSystem.parse(new String(Files.readAllBytes(new File(dir, FIS).toPath()), Charset.defaultCharset()));
+	}
+
+	/**
+	 * Compare the conclusions of the rules with the same premise
+	 */
+	private static void compare(FisSystem expected, FisSystem actual, List<String> diffs) {
+
+		Map<String, double[]> e = rules(expected);
+		Map<String, double[]> a = rules(actual);
+		for (Map.Entry<String, double[]> entry : e.entrySet()) {
+			double[] conclusions = a.get(entry.getKey());
+			if (conclusions == null) {
+				diffs.add("rule " + entry.getKey() + ": missing");
+				continue;
+			}
+			for (int o = 0; o < conclusions.length; o++) {
+				if (Math.abs(conclusions[o] - entry.getValue()[o]) > TOLERANCE) {
+					diffs.add("rule " + entry.getKey() + ": output" + (o + 1) + " " + conclusions[o]
+							+ " instead of " + entry.getValue()[o]);
+				}
+			}
+		}
+		for (String premise : a.keySet())
+			if (!e.containsKey(premise))
+				diffs.add("rule " + premise + ": not learned by wm");
+	}
+
+	/**
+	 * @return the conclusions of the rules by premise
+	 */
+	private static Map<String, double[]> rules(FisSystem sys) {
+
+		Map<String, double[]> rules = new LinkedHashMap<String, double[]>();
+		for (int r = 0; r < sys.getNumRules(); r++) {
+			StringBuilder premise = new StringBuilder();
+			for (int i = 0; i < sys.getNumInputs(); i++)
+				premise.append(i > 0 ? "," : "").append(sys.getPremise(r, i));
+			double[] conclusions = new double[sys.getNumOutputs()];
+			for (int o = 0; o < conclusions.length; o++)
+				conclusions[o] = sys.getConclusion(r, o);
+			rules.put(premise.toString(), conclusions);
+		}
+		return rules;
+	}
+}
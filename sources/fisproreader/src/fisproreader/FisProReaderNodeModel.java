@@ -45,6 +45,8 @@ public class FisProReaderNodeModel extends NodeModel {
 	 */
 	private final SettingsModelString FIS_DIR = new SettingsModelString(FisProReaderNodeModel.FIS_DIR_STR, null);
 
+	private final String FIS_FUNC = "Unknown";
+
 	private FisModel mModel;
 
 	/**
@@ -67,8 +69,8 @@ public class FisProReaderNodeModel extends NodeModel {
 		File fis = new File(fisDir);
 
 		if (fis.exists()) {
-			mModel = new FisModel(fis, "Unknown");
-			out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
+			mModel = new FisModel(fis, FIS_FUNC);
+			out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
 			if (DEBUG)
 				LOGGER.error("Model Summary: " + mModel.getSum());
 		} else {
@@ -83,7 +85,11 @@ public class FisProReaderNodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the fis file is small, it is read to know the variables of the model
+		String fisDir = FIS_DIR.getStringValue();
+		if (fisDir != null && new File(fisDir).isFile())
+			return new PortObjectSpec[] { new FisModelPortObjectSpec(new FisModel(new File(fisDir), FIS_FUNC)) };
+		return new PortObjectSpec[] { new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -7,6 +7,8 @@ import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
 import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
 import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
+import port.FisCommand;
+
 /**
  * <code>NodeDialog</code> for the "FISTREE" Node.
  * 
@@ -32,35 +34,44 @@ public class FISTREENodeDialog extends DefaultNodeSettingsPane {
 		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.OUT_NUM_STR, 0),
 				"Output number (default=0, first output):", Integer.valueOf(1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.MEMB_THRES_STR, 0.2D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.MEMB_THRES_STR,
+				FisCommand.FISTREE_MEMB_THRES),
 				"Membership significance threshold for data items (default=0.2):", Double.valueOf(0.1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MIN_LEAF_STR, 10),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MIN_LEAF_STR,
+				FisCommand.FISTREE_MIN_LEAF),
 				"Minimum leaf cardinality (default=min(10,#rows/10)):", Integer.valueOf(1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.TOL_STR, 0.1D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.TOL_STR,
+				FisCommand.FISTREE_TOL),
 				"Tolerance in case of ambiguous classification at node (default=0.1):", Double.valueOf(0.1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MAX_DEPTH_STR, 0),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MAX_DEPTH_STR,
+				FisCommand.FISTREE_MAX_DEPTH),
 				"Maximum tree depth (default=0, maximum depth):", Integer.valueOf(1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MIN_GAIN_STR, 1),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FISTREENodeModel.MIN_GAIN_STR,
+				FisCommand.FISTREE_MIN_GAIN),
 				"Minimum relative entropy/deviance gain for splitting nodes (default=1e-6):", Integer.valueOf(1)));
 
 		addDialogComponent(
-				new DialogComponentStringSelection(new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR, "0"),
+				new DialogComponentStringSelection(new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR,
+						FisCommand.FISTREE_GAIN_TYPE),
 						"Entropy gain type (0=absolute entropy gain, 1=relative entropy gain (default=absolute)):",
 						new String[] { "0", "1" }));
 
 		addDialogComponent(
-				new DialogComponentStringSelection(new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR, "0"),
+				new DialogComponentStringSelection(new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR,
+						FisCommand.FISTREE_PRUNING_TYPE),
 						"Tree pruning type (0=no pruning, 1=pruning using performance criterion-full split removal, 2=pruning using performance criterion-leaf pruning (default=no pruning)):",
 						new String[] { "0", "1", "2" }));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.PERF_LOSS_STR, 0.0D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.PERF_LOSS_STR,
+				FisCommand.FISTREE_PERF_LOSS),
 				"Relative performance loss tolerated during pruning (default=0.0):", Double.valueOf(0.1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.COV_LEVEL_STR, 0.90D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FISTREENodeModel.COV_LEVEL_STR,
+				FisCommand.FISTREE_COV_LEVEL),
 				"Minimum coverage level required during pruning (default=0.90):", Double.valueOf(0.01)));
 	}
 }
@@ -1,27 +1,27 @@
 package fistree;
 
-import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintStream;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisCommand;
+import port.FisDatasetPipe;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisResultCache;
+import port.FisWorkspace;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -63,19 +63,27 @@ public class FISTREENodeModel extends NodeModel {
 	 * Settings information by key
 	 */
 	private final SettingsModelInteger OUT_NUM = new SettingsModelInteger(FISTREENodeModel.OUT_NUM_STR, 0);
-	private final SettingsModelDouble MEMB_THRES = new SettingsModelDouble(FISTREENodeModel.MEMB_THRES_STR, 0.2D);
-	private final SettingsModelInteger MIN_LEAF = new SettingsModelInteger(FISTREENodeModel.MIN_LEAF_STR, 10);
-	private final SettingsModelDouble TOL = new SettingsModelDouble(FISTREENodeModel.TOL_STR, 0.1D);
-	private final SettingsModelInteger MAX_DEPTH = new SettingsModelInteger(FISTREENodeModel.MAX_DEPTH_STR, 0);
-	private final SettingsModelInteger MIN_GAIN = new SettingsModelInteger(FISTREENodeModel.MIN_GAIN_STR, 1);
-	private final SettingsModelString GAIN_TYPE = new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR, "0");
-	private final SettingsModelString PRUNING_TYPE = new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR, "0");
-	private final SettingsModelDouble PERF_LOSS = new SettingsModelDouble(FISTREENodeModel.PERF_LOSS_STR, 0.0D);
-	private final SettingsModelDouble COV_LEVEL = new SettingsModelDouble(FISTREENodeModel.COV_LEVEL_STR, 0.90D);
-
-	private final String TABLE_SEP = ",";
+	private final SettingsModelDouble MEMB_THRES =
+			new SettingsModelDouble(FISTREENodeModel.MEMB_THRES_STR, FisCommand.FISTREE_MEMB_THRES);
+	private final SettingsModelInteger MIN_LEAF =
+			new SettingsModelInteger(FISTREENodeModel.MIN_LEAF_STR, FisCommand.FISTREE_MIN_LEAF);
+	private final SettingsModelDouble TOL = new SettingsModelDouble(FISTREENodeModel.TOL_STR, FisCommand.FISTREE_TOL);
+	private final SettingsModelInteger MAX_DEPTH =
+			new SettingsModelInteger(FISTREENodeModel.MAX_DEPTH_STR, FisCommand.FISTREE_MAX_DEPTH);
+	private final SettingsModelInteger MIN_GAIN =
+			new SettingsModelInteger(FISTREENodeModel.MIN_GAIN_STR, FisCommand.FISTREE_MIN_GAIN);
+	private final SettingsModelString GAIN_TYPE =
+			new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR, FisCommand.FISTREE_GAIN_TYPE);
+	private final SettingsModelString PRUNING_TYPE =
+			new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR, FisCommand.FISTREE_PRUNING_TYPE);
+	private final SettingsModelDouble PERF_LOSS =
+			new SettingsModelDouble(FISTREENodeModel.PERF_LOSS_STR, FisCommand.FISTREE_PERF_LOSS);
+	private final SettingsModelDouble COV_LEVEL =
+			new SettingsModelDouble(FISTREENodeModel.COV_LEVEL_STR, FisCommand.FISTREE_COV_LEVEL);
+
 	private final String CFG_FIS = "cfg.fis";
 	private final String FISTREE_FIS = CFG_FIS + ".tree.fis";
+	private final String FIS_FUNC = "FisTree";
 	private final String DATA_NAME = "dataset.csv";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
 
@@ -84,6 +92,7 @@ public class FISTREENodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 	private String fistreeStdout;
 
 	/**
@@ -116,18 +125,16 @@ public class FISTREENodeModel extends NodeModel {
 		double perfLoss = PERF_LOSS.getDoubleValue();
 		double covLevel = COV_LEVEL.getDoubleValue();
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("FISTREE");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -141,39 +148,58 @@ public class FISTREENodeModel extends NodeModel {
 					 * Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(table, homeDir, DATA_NAME)) {
-						if (fistreeFunction(fisDir, homeDir, DATA_NAME, outNum, membThres, minLeaf, tol, maxDepth,
-								minGain, gainType, pruningType, perfLoss, covLevel)) {
-							File fis = new File(homeDir, FISTREE_FIS);
-							// creation of the modelPortObject from the fis
-							// file
-							mModel = new FisModel(fis, "FisTree");
-							if (DEBUG)
-								LOGGER.error("Model Summary: " + mModel.getSum());
-							out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
-							timeEnd = System.currentTimeMillis();
+					timeQueue = 0;
+					FisResultCache.Key key = FisResultCache.key(fisDir, "fistree").add(cfg.getFisModel())
+							.add(OUT_NUM, MEMB_THRES, MIN_LEAF, TOL, MAX_DEPTH, MIN_GAIN, GAIN_TYPE, PRUNING_TYPE)
+							.add(PERF_LOSS, COV_LEVEL).add(table, exec);
+					mModel = FisResultCache.get(key);
+					if (mModel != null) {
+						// unchanged inputs, the model created before is used
+						timeCommandStart = timeCommandEnd = 0;
+						fistreeStdout = "(cached result)";
+						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+						timeEnd = System.currentTimeMillis();
+					} else {
+						FisDatasetPipe dataset = loadDataset(table, homeDir, DATA_NAME, exec);
+						if (dataset != null) {
+							try {
+								boolean created = fistreeFunction(fisDir, homeDir, DATA_NAME, outNum, membThres,
+										minLeaf, tol, maxDepth, minGain, gainType, pruningType, perfLoss, covLevel,
+										exec);
+								if (dataset.finish() && created) {
+									File fis = new File(homeDir, FISTREE_FIS);
+									// creation of the modelPortObject from the fis
+									// file
+									mModel = new FisModel(fis, FIS_FUNC);
+									FisResultCache.put(key, mModel);
+									if (DEBUG)
+										LOGGER.error("Model Summary: " + mModel.getSum());
+									out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+									timeEnd = System.currentTimeMillis();
+								}
+							} finally {
+								dataset.close();
+							}
 						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms\n\nStandard output:\n" + fistreeStdout;
+						+ " ms\nQueue wait time: " + timeQueue + " ms\n\nStandard output:\n" + fistreeStdout;
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -181,7 +207,7 @@ public class FISTREENodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -219,37 +245,33 @@ public class FISTREENodeModel extends NodeModel {
 	 *            workspace home path
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
 	private boolean fistreeFunction(String fisDir, String homeDir, String dataName, int outNum, double membThres,
 			int minLeaf, double tol, int maxDepth, int minGain, String gainType, String pruningType, double perfLoss,
-			double covLevel) {
+			double covLevel, ExecutionMonitor exec) throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File fistree = new File(fisDir, "fistree");
 		File data = new File(homeDir, dataName);
 		File cfgFis = new File(homeDir, CFG_FIS);
 		File fistreeFis = new File(homeDir, FISTREE_FIS);
-		String args = "-o" + outNum + " -s" + membThres + " -x" + minLeaf + " -t" + tol + " -d" + maxDepth + " -g"
-				+ minGain + "e-6 -e" + gainType + " -p" + pruningType + " -l" + perfLoss + " -c" + covLevel;
+		String[] cmd = FisCommand.fistree(fisDir, cfgFis.getPath(), data.getPath(), outNum, membThres, minLeaf, tol,
+				maxDepth, minGain, gainType, pruningType, perfLoss, covLevel);
 		if (DEBUG)
-			LOGGER.error("args: " + args);
+			LOGGER.error("args: " + String.join(" ", cmd));
 		try {
-			String[] cmd = { fistree.getPath(), cfgFis.getPath(), data.getPath(), "-o" + outNum, "-s" + membThres,
-					"-x" + minLeaf, "-t" + tol, "-d" + maxDepth, "-g" + minGain + "e-6", "-e" + gainType,
-					"-p" + pruningType, "-l" + perfLoss, "-c" + covLevel };
 			timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			String line = "";
-			String in = "";
-			BufferedReader input = new BufferedReader(new InputStreamReader(p.getInputStream()));
-			while ((in = input.readLine()) != null) {
-				line += in;
-			}
-			input.close();
-			fistreeStdout = line;
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			// the lines of the standard output are joined
+			fistreeStdout = p.getStdout().replaceAll("\r?\n", "");
+			int control = p.getExitCode();
 			timeCommandEnd = System.currentTimeMillis();
 			if (control == 0) {
 				if (!fistreeFis.exists())
@@ -263,20 +285,7 @@ public class FISTREENodeModel extends NodeModel {
 	}
 
 	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "FISTREE");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
-	}
-
-	/**
-	 * Create csv file from BufferedDataTable
+	 * Create csv file, or FIFO, from BufferedDataTable
 	 * 
 	 * @param t
 	 *            data table
@@ -284,38 +293,24 @@ public class FISTREENodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
+	 * 
+	 * @return the dataset streamed or written for fistree, null if creation failed
 	 * 
-	 * @return true if creation is successful, else false
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private FisDatasetPipe loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
-			if (!file.exists())
-				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+			return FisDatasetPipe.open(t, file, false, exec, "fistree");
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
-			return false;
+			return null;
 		}
-		return file.exists();
 	}
 
 	/**
@@ -323,7 +318,9 @@ public class FISTREENodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the learned model has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -0,0 +1,78 @@
+package fistree;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentString;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "FISTREETUNE" Node. Grid search of the
+ * FisTree settings
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Antonio Di Mauro
+ */
+public class FISTREETUNENodeDialog extends DefaultNodeSettingsPane {
+
+	/**
+	 * New pane for configuring FISTREETUNE node dialog. This is just a
+	 * suggestion to demonstrate possible default dialog components.
+	 */
+	protected FISTREETUNENodeDialog() {
+		super();
+
+		createNewGroup("Grid (values separated by comma, or start:step:end)");
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.OUT_NUM_STR, FISTREETUNENodeModel.DEFAULT_OUT_NUM),
+				"Output number (default=0, first output):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.MEMB_THRES_STR, FISTREETUNENodeModel.DEFAULT_MEMB_THRES),
+				"Membership significance threshold for data items (default=0.2):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.MIN_LEAF_STR, FISTREETUNENodeModel.DEFAULT_MIN_LEAF),
+				"Minimum leaf cardinality (default=10):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.TOL_STR, FISTREETUNENodeModel.DEFAULT_TOL),
+				"Tolerance in case of ambiguous classification at node (default=0.1):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.MAX_DEPTH_STR, FISTREETUNENodeModel.DEFAULT_MAX_DEPTH),
+				"Maximum tree depth (default=0, maximum depth):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.MIN_GAIN_STR, FISTREETUNENodeModel.DEFAULT_MIN_GAIN),
+				"Minimum relative entropy/deviance gain for splitting nodes, in 1e-6 (default=1):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR, FISTREETUNENodeModel.DEFAULT_GAIN_TYPE),
+				"Entropy gain type (0=absolute, 1=relative (default=absolute)):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR, FISTREETUNENodeModel.DEFAULT_PRUNING_TYPE),
+				"Tree pruning type (0=no pruning, 1=full split removal, 2=leaf pruning (default=no pruning)):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.PERF_LOSS_STR, FISTREETUNENodeModel.DEFAULT_PERF_LOSS),
+				"Relative performance loss tolerated during pruning (default=0.0):"));
+
+		addDialogComponent(new DialogComponentString(
+				new SettingsModelString(FISTREENodeModel.COV_LEVEL_STR, FISTREETUNENodeModel.DEFAULT_COV_LEVEL),
+				"Minimum coverage level required during pruning (default=0.9):"));
+
+		createNewGroup("Execution");
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(FISTREETUNENodeModel.PARALLELISM_STR,
+						FISTREETUNENodeModel.DEFAULT_PARALLELISM),
+				"Concurrent fistree runs (default=number of cores):", Integer.valueOf(1)));
+	}
+}
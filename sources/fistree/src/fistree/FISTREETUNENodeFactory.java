@@ -0,0 +1,57 @@
+package fistree;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "FISTREETUNE" Node.
+ * 
+ *
+ * @author Antonio Di Mauro
+ */
+public class FISTREETUNENodeFactory 
+        extends NodeFactory<FISTREETUNENodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public FISTREETUNENodeModel createNodeModel() {
+        return new FISTREETUNENodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<FISTREETUNENodeModel> createNodeView(final int viewIndex,
+            final FISTREETUNENodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new FISTREETUNENodeDialog();
+    }
+
+}
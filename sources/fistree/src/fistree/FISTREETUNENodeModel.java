@@ -0,0 +1,524 @@
+package fistree;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import port.FisCommand;
+import port.FisDatasetWriter;
+import port.FisModel;
+import port.FisModelPortObject;
+import port.FisModelPortObjectSpec;
+import port.FisPerformance;
+import port.FisProcess;
+import port.FisSystem;
+import port.FisWorkspace;
+
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * This is the model implementation of FisTree Tune. Grid search of the FisTree
+ * settings
+ *
+ * Each setting of {@link FISTREENodeModel} is a list of values ("0.1, 0.2")
+ * or a range ("0.1:0.05:0.3", start:step:end). The training dataset is
+ * exported once and a fistree run is made for each combination of the values,
+ * the runs being concurrent. Each tree is scored in the JVM on the validation
+ * table; the node outputs the settings and the performance of every run, and
+ * the tree with the lowest RMSE (the fewest rules on a tie).
+ *
+ * @author Antonio Di Mauro
+ */
+public class FISTREETUNENodeModel extends NodeModel {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FISTREETUNENodeModel.class);
+
+	/**
+	 * Keys used by {@link fistree.FISTREETUNENodeDialog} to store settings,
+	 * the grid uses the keys of {@link FISTREENodeModel}
+	 */
+	public static final String PARALLELISM_STR = "parallelism_str";
+
+	/**
+	 * Default values of the grid, the defaults of the FisTree node
+	 */
+	public static final String DEFAULT_OUT_NUM = "0";
+	public static final String DEFAULT_MEMB_THRES = "0.2";
+	public static final String DEFAULT_MIN_LEAF = "10";
+	public static final String DEFAULT_TOL = "0.1";
+	public static final String DEFAULT_MAX_DEPTH = "0";
+	public static final String DEFAULT_MIN_GAIN = "1";
+	public static final String DEFAULT_GAIN_TYPE = "0";
+	public static final String DEFAULT_PRUNING_TYPE = "0";
+	public static final String DEFAULT_PERF_LOSS = "0.0";
+	public static final String DEFAULT_COV_LEVEL = "0.9";
+
+	/**
+	 * Default number of concurrent fistree runs
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Maximum number of combinations of the grid
+	 */
+	public static final int MAX_RUNS = 10000;
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString OUT_NUM = new SettingsModelString(FISTREENodeModel.OUT_NUM_STR,
+			DEFAULT_OUT_NUM);
+	private final SettingsModelString MEMB_THRES = new SettingsModelString(FISTREENodeModel.MEMB_THRES_STR,
+			DEFAULT_MEMB_THRES);
+	private final SettingsModelString MIN_LEAF = new SettingsModelString(FISTREENodeModel.MIN_LEAF_STR,
+			DEFAULT_MIN_LEAF);
+	private final SettingsModelString TOL = new SettingsModelString(FISTREENodeModel.TOL_STR, DEFAULT_TOL);
+	private final SettingsModelString MAX_DEPTH = new SettingsModelString(FISTREENodeModel.MAX_DEPTH_STR,
+			DEFAULT_MAX_DEPTH);
+	private final SettingsModelString MIN_GAIN = new SettingsModelString(FISTREENodeModel.MIN_GAIN_STR,
+			DEFAULT_MIN_GAIN);
+	private final SettingsModelString GAIN_TYPE = new SettingsModelString(FISTREENodeModel.GAIN_TYPE_STR,
+			DEFAULT_GAIN_TYPE);
+	private final SettingsModelString PRUNING_TYPE = new SettingsModelString(FISTREENodeModel.PRUNING_TYPE_STR,
+			DEFAULT_PRUNING_TYPE);
+	private final SettingsModelString PERF_LOSS = new SettingsModelString(FISTREENodeModel.PERF_LOSS_STR,
+			DEFAULT_PERF_LOSS);
+	private final SettingsModelString COV_LEVEL = new SettingsModelString(FISTREENodeModel.COV_LEVEL_STR,
+			DEFAULT_COV_LEVEL);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(FISTREETUNENodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+
+	/**
+	 * The grid in the order of the fistree options and of the result columns
+	 */
+	private final SettingsModelString[] GRID = { OUT_NUM, MEMB_THRES, MIN_LEAF, TOL, MAX_DEPTH, MIN_GAIN, GAIN_TYPE,
+			PRUNING_TYPE, PERF_LOSS, COV_LEVEL };
+	private final String[] GRID_NAMES = { "Output number", "Membership threshold", "Minimum leaf", "Tolerance",
+			"Maximum depth", "Minimum gain (1e-6)", "Gain type", "Pruning type", "Performance loss",
+			"Coverage level" };
+	private final boolean[] GRID_INTEGER = { true, false, true, false, true, true, true, true, false, false };
+
+	private final String CFG_FIS = "cfg.fis";
+	private final String FISTREE_FIS = CFG_FIS + ".tree.fis";
+	private final String FIS_FUNC = "FisTree";
+	private final String DATA_NAME = "dataset.csv";
+	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
+
+	private FisModel mBest;
+	private FisPerformance mBestPerf;
+	private int mBestRun;
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected FISTREETUNENodeModel() {
+		// configuration, training and validation datasets
+		super(new PortType[] { FisModelPortObject.TYPE, BufferedDataTable.TYPE, BufferedDataTable.TYPE },
+				new PortType[] { BufferedDataTable.TYPE, FisModelPortObject.TYPE });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+
+		FisModelPortObject cfg = (FisModelPortObject) inData[0];
+		BufferedDataTable train = (BufferedDataTable) inData[1];
+		BufferedDataTable valid = (BufferedDataTable) inData[2];
+
+		final double[][] grid = parseGrid();
+		final String fisDir;
+		try {
+			fisDir = peekFlowVariableString(FIS_BIN_PATH);
+		} catch (NoSuchElementException e) {
+			throw new InvalidSettingsException("Set the flow variable " + FIS_BIN_PATH + " to the FisPro bin path");
+		}
+		FisSystem sys = cfg.getFisModel().getSystem();
+		for (double outNum : grid[0]) {
+			if (outNum < 0 || outNum >= sys.getNumOutputs())
+				throw new InvalidSettingsException(GRID_NAMES[0] + ": the model has no output " + (int) outNum);
+		}
+		final double[][] rows = FisPerformance.readRows(valid, sys.getNumInputs() + sys.getNumOutputs(),
+				exec.createSubProgress(0.05));
+
+		final int nRuns = countRuns(grid);
+		final double[][] values = new double[nRuns][];
+		final FisPerformance[] perf = new FisPerformance[nRuns];
+		mBest = null;
+		mBestPerf = null;
+
+		// scratch directory, reused from previous executions
+		final File baseDir = FisWorkspace.acquire("FISTREETUNE");
+		long timeStart = System.currentTimeMillis();
+		ExecutorService pool = null;
+		try {
+			// the dataset is exported once and read by every run
+			final File data = new File(baseDir, DATA_NAME);
+			FisDatasetWriter.write(train, data, false, exec.createSubProgress(0.05));
+			final File cfgFis = cfg.getFisModel().getFis(new File(baseDir, CFG_FIS).getPath());
+			if (!cfgFis.exists())
+				throw new IOException("Model " + CFG_FIS + " NOT created.");
+
+			final ExecutionMonitor runs = exec.createSubProgress(0.9);
+			pool = Executors.newFixedThreadPool(Math.max(1, Math.min(PARALLELISM.getIntValue(), nRuns)));
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int k = 0; k < nRuns; k++) {
+				values[k] = combination(grid, k);
+				final int run = k;
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						perf[run] = fistreeRun(fisDir, baseDir, cfgFis, data, run, values[run], rows, runs);
+						return null;
+					}
+				}));
+			}
+			pool.shutdown();
+			int done = 0;
+			for (Future<Void> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof CanceledExecutionException)
+						throw (CanceledExecutionException) e.getCause();
+					LOGGER.warn("FisTree run NOT completed: " + e.getCause());
+				}
+				runs.setProgress((double) ++done / nRuns, done + "/" + nRuns + " runs");
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+			FisWorkspace.release(baseDir);
+		}
+		LOGGER.info(nRuns + " FisTree runs in " + (System.currentTimeMillis() - timeStart) + " ms, best: "
+				+ mBestPerf);
+
+		BufferedDataTable table = createResultTable(values, perf, exec);
+		if (mBest == null)
+			throw new IOException("Model " + FISTREE_FIS + " NOT created by any run.");
+		return new PortObject[] { table, new FisModelPortObject(mBest, new FisModelPortObjectSpec(mBest)) };
+	}
+
+	/**
+	 * Execute fistree for a combination of the settings, in its own directory,
+	 * and score the tree
+	 *
+	 * e.g. fistree ../cfg.fis ../dataset -o0 -s0.2 -x10 -t0.1 -d0 -g1e-6 -e0
+	 * -p0 -l0.0 -c0.9
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param baseDir
+	 *            scratch directory of the node
+	 * @param cfgFis
+	 *            configuration file
+	 * @param data
+	 *            exported training dataset
+	 * @param run
+	 *            index of the combination
+	 * @param values
+	 *            value of each setting
+	 * @param rows
+	 *            validation rows
+	 * @param exec
+	 *            execution monitor checked for cancellation
+	 *
+	 * @return performance of the tree on the validation rows, null if the
+	 *         tree is not created
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	private FisPerformance fistreeRun(String fisDir, File baseDir, File cfgFis, File data, int run, double[] values,
+			double[][] rows, ExecutionMonitor exec) throws CanceledExecutionException {
+
+		File home = new File(baseDir, "run" + run);
+		// the tree is written next to the configuration
+		File runCfg = new File(home, CFG_FIS);
+		File fistreeFis = new File(home, FISTREE_FIS);
+		try {
+			if (!home.mkdirs())
+				throw new IOException("cannot create " + home);
+			Files.copy(cfgFis.toPath(), runCfg.toPath());
+			String[] cmd = FisCommand.fistree(fisDir, runCfg.getPath(), data.getPath(), (int) values[0], values[1],
+					(int) values[2], values[3], (int) values[4], (int) values[5], "" + (int) values[6],
+					"" + (int) values[7], values[8], values[9]);
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			if (p.getExitCode() != 0 || !fistreeFis.exists()) {
+				LOGGER.warn("Model " + FISTREE_FIS + " NOT created (run " + run + "): " + p);
+				return null;
+			}
+			FisModel model = new FisModel(fistreeFis, FIS_FUNC);
+			FisPerformance perf = FisPerformance.score(model.getSystem(), rows, (int) values[0]);
+			synchronized (this) {
+				if (mBestPerf == null || isBetter(perf, mBestPerf, run < mBestRun)) {
+					mBest = model;
+					mBestPerf = perf;
+					mBestRun = run;
+				}
+			}
+			return perf;
+		} catch (IOException | InterruptedException | IllegalArgumentException e) {
+			LOGGER.warn("Model " + FISTREE_FIS + " NOT created (run " + run + "): " + e);
+			return null;
+		} finally {
+			FileUtils.deleteQuietly(home);
+		}
+	}
+
+	/**
+	 * @return true if the first tree has a lower RMSE, or the same RMSE and
+	 *         fewer rules, or the same performance and comes first in the grid,
+	 *         so the best tree does not depend on the order the runs end
+	 */
+	private static boolean isBetter(FisPerformance a, FisPerformance b, boolean first) {
+		if (Double.isNaN(a.getRmse()) != Double.isNaN(b.getRmse()))
+			return Double.isNaN(b.getRmse());
+		if (a.getRmse() != b.getRmse() && !Double.isNaN(a.getRmse()))
+			return a.getRmse() < b.getRmse();
+		if (a.getNumRules() != b.getNumRules())
+			return a.getNumRules() < b.getNumRules();
+		return first;
+	}
+
+	/**
+	 * Parse the values of every setting of the grid
+	 *
+	 * @return values of each setting, in the order of {@link #GRID}
+	 *
+	 * @throws InvalidSettingsException
+	 *             if a list or a range is not valid, or the grid is too large
+	 */
+	private double[][] parseGrid() throws InvalidSettingsException {
+
+		double[][] grid = new double[GRID.length][];
+		for (int g = 0; g < GRID.length; g++) {
+			grid[g] = parseValues(GRID_NAMES[g], GRID[g].getStringValue());
+			for (double v : grid[g]) {
+				if (GRID_INTEGER[g] && v != Math.rint(v))
+					throw new InvalidSettingsException(GRID_NAMES[g] + ": " + v + " is not an integer");
+			}
+		}
+		countRuns(grid);
+		return grid;
+	}
+
+	/**
+	 * Parse a list of values ("0.1, 0.2 0.3") or ranges ("0.1:0.05:0.3")
+	 */
+	private static double[] parseValues(String name, String s) throws InvalidSettingsException {
+
+		List<Double> values = new ArrayList<Double>();
+		for (String token : s.trim().split("[,;\\s]+")) {
+			if (token.isEmpty())
+				continue;
+			try {
+				String[] range = token.split(":");
+				if (range.length == 1) {
+					values.add(Double.parseDouble(range[0]));
+				} else if (range.length == 3) {
+					double start = Double.parseDouble(range[0]);
+					double step = Double.parseDouble(range[1]);
+					double end = Double.parseDouble(range[2]);
+					if (step <= 0 || end < start)
+						throw new InvalidSettingsException(name + ": invalid range '" + token + "'");
+					// the end is included despite the rounding of the steps
+					long n = (long) Math.floor((end - start) / step + 1e-9);
+					if (n >= MAX_RUNS)
+						throw new InvalidSettingsException(name + ": too many values in '" + token + "'");
+					for (long i = 0; i <= n; i++)
+						values.add(Math.round((start + i * step) * 1e9) / 1e9);
+				} else {
+					throw new InvalidSettingsException(name + ": invalid range '" + token + "'");
+				}
+			} catch (NumberFormatException e) {
+				throw new InvalidSettingsException(name + ": not a number in '" + token + "'");
+			}
+		}
+		if (values.isEmpty())
+			throw new InvalidSettingsException(name + ": no value");
+		double[] v = new double[values.size()];
+		for (int i = 0; i < v.length; i++)
+			v[i] = values.get(i);
+		return v;
+	}
+
+	/**
+	 * @return number of combinations of the grid
+	 *
+	 * @throws InvalidSettingsException
+	 *             if the grid is too large
+	 */
+	private static int countRuns(double[][] grid) throws InvalidSettingsException {
+		long n = 1;
+		for (double[] values : grid) {
+			n *= values.length;
+			if (n > MAX_RUNS)
+				throw new InvalidSettingsException("The grid has more than " + MAX_RUNS + " combinations");
+		}
+		return (int) n;
+	}
+
+	/**
+	 * @return the k-th combination of the grid, the last setting varying
+	 *         fastest
+	 */
+	private static double[] combination(double[][] grid, int k) {
+		double[] values = new double[grid.length];
+		for (int g = grid.length - 1; g >= 0; g--) {
+			values[g] = grid[g][k % grid[g].length];
+			k /= grid[g].length;
+		}
+		return values;
+	}
+
+	/**
+	 * @return spec of the result table: the settings followed by the
+	 *         performance of the tree
+	 */
+	private DataTableSpec createResultSpec() {
+
+		List<DataColumnSpec> specs = new ArrayList<DataColumnSpec>();
+		for (int g = 0; g < GRID.length; g++)
+			specs.add(new DataColumnSpecCreator(GRID_NAMES[g], GRID_INTEGER[g] ? IntCell.TYPE : DoubleCell.TYPE)
+					.createSpec());
+		specs.add(new DataColumnSpecCreator("Rules", IntCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator("RMSE", DoubleCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator("Mean error", DoubleCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator("Coverage", DoubleCell.TYPE).createSpec());
+		return new DataTableSpec(specs.toArray(new DataColumnSpec[specs.size()]));
+	}
+
+	/**
+	 * Create the table of the settings and the performance of every run, the
+	 * performance of the failed runs is missing
+	 */
+	private BufferedDataTable createResultTable(double[][] values, FisPerformance[] perf, ExecutionContext exec) {
+
+		BufferedDataContainer container = exec.createDataContainer(createResultSpec());
+		for (int k = 0; k < values.length; k++) {
+			DataCell[] cells = new DataCell[GRID.length + 4];
+			for (int g = 0; g < GRID.length; g++)
+				cells[g] = GRID_INTEGER[g] ? new IntCell((int) values[k][g]) : new DoubleCell(values[k][g]);
+			FisPerformance p = perf[k];
+			cells[GRID.length] = p == null ? DataType.getMissingCell() : new IntCell(p.getNumRules());
+			cells[GRID.length + 1] = cell(p == null ? Double.NaN : p.getRmse());
+			cells[GRID.length + 2] = cell(p == null ? Double.NaN : p.getMeanError());
+			cells[GRID.length + 3] = cell(p == null ? Double.NaN : p.getCoverage());
+			container.addRowToTable(new DefaultRow(new RowKey("Row" + k), cells));
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	private static DataCell cell(double v) {
+		return Double.isNaN(v) ? DataType.getMissingCell() : new DoubleCell(v);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+		parseGrid();
+		// the best tree has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { createResultSpec(),
+				cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+		mBest = null;
+		mBestPerf = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		for (SettingsModelString s : GRID)
+			s.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		for (SettingsModelString s : GRID)
+			s.loadSettingsFrom(settings);
+		PARALLELISM.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		for (SettingsModelString s : GRID)
+			s.validateSettings(settings);
+		PARALLELISM.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+}
@@ -9,6 +9,8 @@ import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 import fpa.FPANodeModel;
 
+import port.FisCommand;
+
 /**
  * <code>NodeDialog</code> for the "FPA" Node. Fpa's FisPro Function Learner
  *
@@ -30,17 +32,21 @@ public class FPANodeDialog extends DefaultNodeSettingsPane {
 
 		createNewGroup("Insert parameters");
 
-		addDialogComponent(new DialogComponentStringSelection(new SettingsModelString(FPANodeModel.STRATEGY_STR, "1"),
+		addDialogComponent(new DialogComponentStringSelection(new SettingsModelString(FPANodeModel.STRATEGY_STR,
+				FisCommand.FPA_STRATEGY),
 				"Strategy to determine the data subset used to initialize the rule conclusion, 0 for MIN, 1 for DEC (default value):",
 				new String[] { "0", "1" }));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FPANodeModel.MIN_DEGREE_STR, 0.3D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FPANodeModel.MIN_DEGREE_STR,
+				FisCommand.FPA_MIN_DEGREE),
 				"Minimum matching degree for rule generation (default value: 0.3):", Double.valueOf(0.1D)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FPANodeModel.MIN_CARD_STR, 3),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(FPANodeModel.MIN_CARD_STR,
+				FisCommand.FPA_MIN_CARD),
 				"Minimum cardinality (default value: 3):", Integer.valueOf(1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FPANodeModel.THRESHOLD_STR, 0.1D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(FPANodeModel.THRESHOLD_STR,
+				FisCommand.FPA_THRESHOLD),
 				"Activity threshold for performance computation (default value: 0.1):", Double.valueOf(0.1D)));
 	}
 }
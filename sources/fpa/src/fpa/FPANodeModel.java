@@ -8,18 +8,20 @@ import java.io.PrintStream;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisCommand;
+import port.FisDatasetPipe;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisResultCache;
+import port.FisWorkspace;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -54,15 +56,19 @@ public class FPANodeModel extends NodeModel {
 	/**
 	 * Settings information by key
 	 */
-	private final SettingsModelString STRATEGY = new SettingsModelString(FPANodeModel.STRATEGY_STR, "1");
-	private final SettingsModelDouble MIN_DEGREE = new SettingsModelDouble(FPANodeModel.MIN_DEGREE_STR, 0.3D);
-	private final SettingsModelInteger MIN_CARD = new SettingsModelInteger(FPANodeModel.MIN_CARD_STR, 3);
-	private final SettingsModelDouble THRESHOLD = new SettingsModelDouble(FPANodeModel.THRESHOLD_STR, 0.1D);
+	private final SettingsModelString STRATEGY =
+			new SettingsModelString(FPANodeModel.STRATEGY_STR, FisCommand.FPA_STRATEGY);
+	private final SettingsModelDouble MIN_DEGREE =
+			new SettingsModelDouble(FPANodeModel.MIN_DEGREE_STR, FisCommand.FPA_MIN_DEGREE);
+	private final SettingsModelInteger MIN_CARD =
+			new SettingsModelInteger(FPANodeModel.MIN_CARD_STR, FisCommand.FPA_MIN_CARD);
+	private final SettingsModelDouble THRESHOLD =
+			new SettingsModelDouble(FPANodeModel.THRESHOLD_STR, FisCommand.FPA_THRESHOLD);
 
-	private final String TABLE_SEP = ",";
 	private final String CFG_FIS = "cfg.fis";
 	private final String GEN_CFG_FIS = "genconfig.fis";
 	private final String FPA_FIS = "configfpa.fis";
+	private final String FIS_FUNC = "FPA";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
 
 	private FisModel mModel;
@@ -70,6 +76,7 @@ public class FPANodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandGen;
 	private double timeCommandFpa;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -96,18 +103,16 @@ public class FPANodeModel extends NodeModel {
 		int minCard = MIN_CARD.getIntValue();
 		double threshold = THRESHOLD.getDoubleValue();
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("FPA");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -121,40 +126,57 @@ public class FPANodeModel extends NodeModel {
 					 * Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(table, homeDir, dataName)) {
-						if (genrulesFunction(fisDir, homeDir)) {
-							if (fpaFunction(fisDir, homeDir, dataName, strategy, minDegree, minCard, threshold)) {
-								File fis = new File(homeDir, FPA_FIS);
-								// creation of the modelPortObject from the fis
-								// file
-								mModel = new FisModel(fis, "FPA");
-								if (DEBUG)
-									LOGGER.error("Model Summary: " + mModel.getSum());
-								out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
-								timeEnd = System.currentTimeMillis();
+					timeQueue = 0;
+					FisResultCache.Key key = FisResultCache.key(fisDir, "genrules", "fpa").add(cfg.getFisModel())
+							.add(STRATEGY, MIN_DEGREE, MIN_CARD, THRESHOLD).add(table, exec);
+					mModel = FisResultCache.get(key);
+					if (mModel != null) {
+						// unchanged inputs, the model created before is used
+						timeCommandGen = timeCommandFpa = 0;
+						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+						timeEnd = System.currentTimeMillis();
+					} else {
+						FisDatasetPipe dataset = loadDataset(table, homeDir, dataName, exec);
+						if (dataset != null) {
+							try {
+								// genrules does not read the dataset, only fpa does
+								boolean created = genrulesFunction(fisDir, homeDir, exec)
+										&& fpaFunction(fisDir, homeDir, dataName, strategy, minDegree, minCard,
+												threshold, exec);
+								if (dataset.finish() && created) {
+									File fis = new File(homeDir, FPA_FIS);
+									// creation of the modelPortObject from the fis
+									// file
+									mModel = new FisModel(fis, FIS_FUNC);
+									FisResultCache.put(key, mModel);
+									if (DEBUG)
+										LOGGER.error("Model Summary: " + mModel.getSum());
+									out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+									timeEnd = System.currentTimeMillis();
+								}
+							} finally {
+								dataset.close();
 							}
 						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = timeCommandGen + timeCommandFpa;
+				double timeCommand = timeCommandGen + timeCommandFpa - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -162,7 +184,7 @@ public class FPANodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -209,27 +231,30 @@ public class FPANodeModel extends NodeModel {
 	 *            minimum cardinality
 	 * @param threshold
 	 *            activity threshold for performance computation
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
 	private boolean fpaFunction(String fisDir, String homeDir, String dataName, String strategy, double minDegree,
-			int minCard, double threshold) {
+			int minCard, double threshold, ExecutionMonitor exec) throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File fpa = new File(fisDir, "fpa");
 		File data = new File(homeDir, dataName);
 		File cfgFis = new File(homeDir, GEN_CFG_FIS);
 		File fpaFis = new File(homeDir, FPA_FIS);
-		String args = "-s" + strategy + " -d" + Double.toString(minDegree) + " -e" + Integer.toString(minCard) + " -u"
-				+ Double.toString(threshold);
+		String[] cmd = FisCommand.fpa(fisDir, cfgFis.getPath(), data.getPath(), strategy, minDegree, minCard,
+				threshold);
 		if (DEBUG)
-			LOGGER.error("args: " + args);
+			LOGGER.error("args: " + String.join(" ", cmd));
 		try {
-			String[] cmd = { fpa.getPath(), cfgFis.getPath(), data.getPath(), "-s" + strategy, "-d" + minDegree,
-					"-e" + minCard, "-u" + threshold };
 			double timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			int control = p.getExitCode();
 			double timeCommandEnd = System.currentTimeMillis();
 			timeCommandFpa = timeCommandEnd - timeCommandStart;
 			if (control == 0) {
@@ -250,20 +275,26 @@ public class FPANodeModel extends NodeModel {
 	 *            FisPro bin path
 	 * @param homeDir
 	 *            working directory
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean genrulesFunction(String fisDir, String homeDir) {
+	private boolean genrulesFunction(String fisDir, String homeDir, ExecutionMonitor exec)
+			throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File gen = new File(fisDir, "genrules");
 		File cfgFis = new File(homeDir, CFG_FIS);
 		File genFis = new File(homeDir, GEN_CFG_FIS);
 		try {
-			String[] cmd = { gen.getPath(), cfgFis.getPath(), "-f" + GEN_CFG_FIS };
+			String[] cmd = FisCommand.genrules(fisDir, cfgFis.getPath(), GEN_CFG_FIS);
 			double timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			int control = p.getExitCode();
 			double timeCommandEnd = System.currentTimeMillis();
 			timeCommandGen = timeCommandEnd - timeCommandStart;
 			if (control == 0) {
@@ -278,20 +309,7 @@ public class FPANodeModel extends NodeModel {
 	}
 
 	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "FPA");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
-	}
-
-	/**
-	 * Create csv file from BufferedDataTable
+	 * Create csv file, or FIFO, from BufferedDataTable
 	 * 
 	 * @param t
 	 *            data table
@@ -299,38 +317,24 @@ public class FPANodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
+	 * 
+	 * @return the dataset streamed or written for fpa, null if creation failed
 	 * 
-	 * @return true if creation is successful, else false
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private FisDatasetPipe loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
-			if (!file.exists())
-				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+			return FisDatasetPipe.open(t, file, false, exec, "fpa");
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
-			return false;
+			return null;
 		}
-		return file.exists();
 	}
 
 	/**
@@ -338,7 +342,9 @@ public class FPANodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the learned model has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -11,6 +11,8 @@ import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 import hfpfis.HFPFISNodeModel;
 
+import port.FisCommand;
+
 /**
  * <code>NodeDialog</code> for the "HFPFIS" Node. HFPFIS' FisPro Learner
  *
@@ -32,21 +34,26 @@ public class HFPFISNodeDialog extends DefaultNodeSettingsPane {
 
 		createNewGroup("Insert parameters");
 
-		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(HFPFISNodeModel.SET_WM_STR, false),
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(HFPFISNodeModel.SET_WM_STR,
+				FisCommand.HFPFIS_SET_WM),
 				"Choose wm as rule induction method (default: fpa is used)"));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HFPFISNodeModel.MIN_WEIGHT_STR, 0.0D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HFPFISNodeModel.MIN_WEIGHT_STR,
+				FisCommand.HFPFIS_MIN_WEIGHT),
 				"Minimum cumulated weight for a rule to be generated (0.0 default value):", Double.valueOf(0.1)));
 
 		addDialogComponent(
-				new DialogComponentStringSelection(new SettingsModelString(HFPFISNodeModel.CARD_STRATEGY_STR, "1"),
+				new DialogComponentStringSelection(new SettingsModelString(HFPFISNodeModel.CARD_STRATEGY_STR,
+						FisCommand.HFPFIS_CARD_STRATEGY),
 						"Strategy to determine the data subset used to initialize the rule conclusion, 0 for MIN, 1 for DEC (default value):",
 						new String[] { "0", "1" }));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HFPFISNodeModel.MIN_DEGREE_STR, 0.3D),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelDouble(HFPFISNodeModel.MIN_DEGREE_STR,
+				FisCommand.HFPFIS_MIN_DEGREE),
 				"Minimum matching degree (default value: 0.3):", Double.valueOf(0.1)));
 
-		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HFPFISNodeModel.MIN_CARD_STR, 3),
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HFPFISNodeModel.MIN_CARD_STR,
+				FisCommand.HFPFIS_MIN_CARD),
 				"Minimum cardinality (default value: 3):", Integer.valueOf(1)));
 
 		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(HFPFISNodeModel.OUT_NUM_STR, 0),
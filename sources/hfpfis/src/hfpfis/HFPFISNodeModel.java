@@ -8,18 +8,19 @@ import java.io.PrintStream;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisCommand;
+import port.FisDatasetWriter;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisWorkspace;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -57,15 +58,20 @@ public class HFPFISNodeModel extends NodeModel {
 	/**
 	 * Settings information by key
 	 */
-	private final SettingsModelBoolean SET_WM = new SettingsModelBoolean(HFPFISNodeModel.SET_WM_STR, false);
-	private final SettingsModelDouble MIN_WEIGHT = new SettingsModelDouble(HFPFISNodeModel.MIN_WEIGHT_STR, 0.0D);
-	private final SettingsModelString CARD_STRATEGY = new SettingsModelString(HFPFISNodeModel.CARD_STRATEGY_STR, "1");
-	private final SettingsModelDouble MIN_DEGREE = new SettingsModelDouble(HFPFISNodeModel.MIN_DEGREE_STR, 0.3D);
-	private final SettingsModelInteger MIN_CARD = new SettingsModelInteger(HFPFISNodeModel.MIN_CARD_STR, 3);
+	private final SettingsModelBoolean SET_WM =
+			new SettingsModelBoolean(HFPFISNodeModel.SET_WM_STR, FisCommand.HFPFIS_SET_WM);
+	private final SettingsModelDouble MIN_WEIGHT =
+			new SettingsModelDouble(HFPFISNodeModel.MIN_WEIGHT_STR, FisCommand.HFPFIS_MIN_WEIGHT);
+	private final SettingsModelString CARD_STRATEGY =
+			new SettingsModelString(HFPFISNodeModel.CARD_STRATEGY_STR, FisCommand.HFPFIS_CARD_STRATEGY);
+	private final SettingsModelDouble MIN_DEGREE =
+			new SettingsModelDouble(HFPFISNodeModel.MIN_DEGREE_STR, FisCommand.HFPFIS_MIN_DEGREE);
+	private final SettingsModelInteger MIN_CARD =
+			new SettingsModelInteger(HFPFISNodeModel.MIN_CARD_STR, FisCommand.HFPFIS_MIN_CARD);
 	private final SettingsModelInteger OUT_NUM = new SettingsModelInteger(HFPFISNodeModel.OUT_NUM_STR, 0);
 
-	private final String TABLE_SEP = ",";
 	private final String HFPFIS_FIS = "hfpfis.fis";
+	private final String FIS_FUNC = "HFPFIS";
 	private final String DATA_NAME = "dataset.csv";
 	private final String VERTEX_NAME = DATA_NAME + ".vertex";
 	private final String HFP_NAME = DATA_NAME + ".hfp";
@@ -76,6 +82,7 @@ public class HFPFISNodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -103,18 +110,16 @@ public class HFPFISNodeModel extends NodeModel {
 		int minCard = MIN_CARD.getIntValue();
 		int outNum = OUT_NUM.getIntValue();
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("HFPFIS");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -130,39 +135,38 @@ public class HFPFISNodeModel extends NodeModel {
 					 * Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(table, homeDir, DATA_NAME)) {
+					timeQueue = 0;
+					if (loadDataset(table, homeDir, DATA_NAME, exec)) {
 						if (hfpfisFunction(fisDir, homeDir, DATA_NAME, cfgHfp.getPath(), vertex.getPath(), setWm,
-								minWeight, cardStrategy, minDegree, minCard, outNum)) {
+								minWeight, cardStrategy, minDegree, minCard, outNum, exec)) {
 							File fis = new File(homeDir, HFPFIS_FIS);
 							// creation of the modelPortObject from the fis
 							// file
-							mModel = new FisModel(fis, "HFPFIS");
+							mModel = new FisModel(fis, FIS_FUNC);
 							if (DEBUG)
 								LOGGER.error("Model Summary: " + mModel.getSum());
-							out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
+							out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
 							timeEnd = System.currentTimeMillis();
 						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -170,7 +174,7 @@ public class HFPFISNodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -225,14 +229,19 @@ public class HFPFISNodeModel extends NodeModel {
 	 *            minimum cardinality
 	 * @param outNum
 	 *            output number
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
 	private boolean hfpfisFunction(String fisDir, String homeDir, String dataName, String hfp, String vert,
-			boolean setWm, double minWeight, String cardStrategy, double minDegree, int minCard, int outNum) {
+			boolean setWm, double minWeight, String cardStrategy, double minDegree, int minCard, int outNum,
+			ExecutionMonitor exec) throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File hfpfis = new File(fisDir, "hfpfis");
 		File data = new File(homeDir, dataName);
 		File cfgHfp = new File(hfp);
 		File vertex = new File(vert);
@@ -247,13 +256,12 @@ public class HFPFISNodeModel extends NodeModel {
 		try {
 			if (DEBUG)
 				LOGGER.error("trying hfpfis command for Linux...");
-			String[] cmd = { "/bin/sh", "-c",
-					hfpfis.getPath() + " " + DATA_NAME + " " + HFP_NAME + (setWm ? " -r" : "") + " -s" + minWeight
-							+ " -t" + cardStrategy + " -m" + minDegree + " -e" + minCard + " -o" + HFPFIS_FIS + " -p"
-							+ outNum + " -l" + VERTEX_NAME };
+			String[] cmd = { "/bin/sh", "-c", String.join(" ", FisCommand.hfpfis(fisDir, DATA_NAME, HFP_NAME,
+					VERTEX_NAME, setWm, minWeight, cardStrategy, minDegree, minCard, HFPFIS_FIS, outNum)) };
 			timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			int control = p.getExitCode();
 			timeCommandEnd = System.currentTimeMillis();
 			if (control == 0) {
 				if (!hfpfisFis.exists())
@@ -263,17 +271,14 @@ public class HFPFISNodeModel extends NodeModel {
 			if (DEBUG)
 				LOGGER.error("trying hfpfis command for Win...");
 			try {
-				String[] cmd = { hfpfis.getPath(), data.getPath(), cfgHfp.getPath(), "-l" + vertex.getPath(),
-						(setWm ? "-r" : ""), "-s" + minWeight, "-t" + cardStrategy, "-m" + minDegree, "-e" + minCard,
-						"-o" + HFPFIS_FIS, "-p" + outNum };
-				if (DEBUG) {
-					String args = (setWm ? "-r " : "") + "-s" + minWeight + " -t" + cardStrategy + " -m" + minDegree
-							+ " -e" + minCard + " -o" + HFPFIS_FIS + " -p" + outNum;
-					LOGGER.error("args:" + args);
-				}
+				String[] cmd = FisCommand.hfpfis(fisDir, data.getPath(), cfgHfp.getPath(), vertex.getPath(), setWm,
+						minWeight, cardStrategy, minDegree, minCard, HFPFIS_FIS, outNum);
+				if (DEBUG)
+					LOGGER.error("args:" + String.join(" ", cmd));
 				timeCommandStart = System.currentTimeMillis();
-				Process p = Runtime.getRuntime().exec(cmd, null, home);
-				int control = p.waitFor();
+				FisProcess p = FisProcess.run(cmd, home, exec);
+				timeQueue += p.getQueueTime();
+				int control = p.getExitCode();
 				timeCommandEnd = System.currentTimeMillis();
 				if (control == 0) {
 					if (!hfpfisFis.exists())
@@ -287,19 +292,6 @@ public class HFPFISNodeModel extends NodeModel {
 		return hfpfisFis.exists();
 	}
 
-	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "HFPFIS");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
-	}
-
 	/**
 	 * Create csv file from BufferedDataTable
 	 * 
@@ -309,34 +301,23 @@ public class HFPFISNodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
 	 * 
 	 * @return true if creation is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
+			FisDatasetWriter.write(t, file, false, exec);
 			if (!file.exists())
 				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
 			return false;
 		}
@@ -348,7 +329,9 @@ public class HFPFISNodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the learned model has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
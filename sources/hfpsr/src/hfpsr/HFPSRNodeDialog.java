@@ -67,6 +67,14 @@ public class HFPSRNodeDialog extends DefaultNodeSettingsPane {
 		addDialogComponent(
 				new DialogComponentBoolean(new SettingsModelBoolean(HFPSRNodeModel.CLASSIF_OUTPUT_STR, false),
 						"Sets the Classif='yes' output option (Valid only when #output mf=0)"));
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(HFPSRNodeModel.ENGINE_STR, HFPSRNodeModel.ENGINE_FISPRO), "Partition engine:",
+				new String[] { HFPSRNodeModel.ENGINE_JAVA, HFPSRNodeModel.ENGINE_FISPRO }));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(HFPSRNodeModel.PARALLELISM_STR, HFPSRNodeModel.DEFAULT_PARALLELISM),
+				"Parallel workers (default=number of cores):", Integer.valueOf(1)));
 	}
 
 }
@@ -5,13 +5,11 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
@@ -22,9 +20,15 @@ import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisDatasetWriter;
+import port.FisHierarchy;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisResultCache;
+import port.FisSystem;
+import port.FisWorkspace;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -58,6 +62,19 @@ public class HFPSRNodeModel extends NodeModel {
 	public static final String DISJ_OP_STR = "disj_op_str";
 	public static final String TOLERANCE_OUTPUT_STR = "tolerance_output_str";
 	public static final String CLASSIF_OUTPUT_STR = "classif_output_str";
+	public static final String ENGINE_STR = "engine_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+
+	/**
+	 * Partition engines
+	 */
+	public static final String ENGINE_JAVA = "Java";
+	public static final String ENGINE_FISPRO = "FisPro hfpsr";
+
+	/**
+	 * Default number of parallel workers
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
 
 	/**
 	 * Settings information by key
@@ -66,19 +83,22 @@ public class HFPSRNodeModel extends NodeModel {
 			HFPSRNodeModel.FUZZY_SETS_STRING_INPUT_STR, "3 3 3 3");
 	private final SettingsModelString HY_TYPE_INPUT = new SettingsModelString(HFPSRNodeModel.HY_TYPE_INPUT_STR, "1");
 	private final SettingsModelDouble TOLERANCE_INPUT = new SettingsModelDouble(HFPSRNodeModel.TOLERANCE_INPUT_STR,
-			0.01D);
+			FisHierarchy.DEFAULT_TOLERANCE);
 	private final SettingsModelInteger FUZZY_SETS_NUMBER_OUTPUT = new SettingsModelInteger(
 			HFPSRNodeModel.FUZZY_SETS_NUMBER_OUTPUT_STR, 3);
 	private final SettingsModelString HY_TYPE_OUTPUT = new SettingsModelString(HFPSRNodeModel.HY_TYPE_OUTPUT_STR, "3");
 	private final SettingsModelString DEFUZ_OP = new SettingsModelString(HFPSRNodeModel.DEFUZ_OP_STR, "MeanMax");
 	private final SettingsModelString DISJ_OP = new SettingsModelString(HFPSRNodeModel.DISJ_OP_STR, "sum");
 	private final SettingsModelDouble TOLERANCE_OUTPUT = new SettingsModelDouble(HFPSRNodeModel.TOLERANCE_OUTPUT_STR,
-			0.01D);
+			FisHierarchy.DEFAULT_TOLERANCE);
 	private final SettingsModelBoolean CLASSIF_OUTPUT = new SettingsModelBoolean(HFPSRNodeModel.CLASSIF_OUTPUT_STR,
 			false);
+	private final SettingsModelString ENGINE = new SettingsModelString(HFPSRNodeModel.ENGINE_STR, ENGINE_FISPRO);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(HFPSRNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
 
-	private final String TABLE_SEP = ",";
 	private final String HFPSR_FIS = "hfp-sr.fis";
+	private final String FIS_FUNC = "HFPSR";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
 	private final String CLASSIF_YES = "Classif='yes'";
 	private final String CLASSIF_NO = "Classif='no'";
@@ -88,6 +108,7 @@ public class HFPSRNodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -120,18 +141,34 @@ public class HFPSRNodeModel extends NodeModel {
 		double outToleranceValue = TOLERANCE_OUTPUT.getDoubleValue();
 		boolean classifOutput = CLASSIF_OUTPUT.getBooleanValue();
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		int[] types = hierarchyTypes(table.getDataTableSpec().getNumColumns(), inHierarchyType, outFuzzySets,
+				outHierarchyType);
+		if (ENGINE_JAVA.equals(ENGINE.getStringValue()) && types != null) {
+			// k-means and regular partitions made in the JVM, no dataset
+			// export nor FisPro binary
+			timeStart = System.currentTimeMillis();
+			mModel = javaHfpSr(table, inFuzzySets, types, outFuzzySets, defuzOp, disjOp, classifOutput, exec);
+			if (mModel != null) {
+				timeEnd = System.currentTimeMillis();
+				if (DEBUG)
+					LOGGER.error("Integration execution time: " + (timeEnd - timeStart) + " ms");
+				return new PortObject[] { new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel)) };
+			}
+			// too many values for the heap
+			LOGGER.warn("The columns need more than " + (FisHierarchy.getMaxMemory() >> 20)
+					+ " MB in the JVM, the partitions are made by " + ENGINE_FISPRO + ".");
+		}
+
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("HFPSR");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -143,10 +180,20 @@ public class HFPSRNodeModel extends NodeModel {
 				 * file .fis from a dataset
 				 */
 				timeStart = System.currentTimeMillis();
-				if (loadDataset(table, homeDir, DATA_NAME)) {
+				timeQueue = 0;
+				FisResultCache.Key key = FisResultCache.key(fisDir, "hfpsr").add(DATA_NAME)
+						.add(FUZZY_SETS_STRING_INPUT, HY_TYPE_INPUT, TOLERANCE_INPUT, FUZZY_SETS_NUMBER_OUTPUT)
+						.add(HY_TYPE_OUTPUT, DEFUZ_OP, DISJ_OP, TOLERANCE_OUTPUT, CLASSIF_OUTPUT).add(table, exec);
+				mModel = FisResultCache.get(key);
+				if (mModel != null) {
+					// unchanged inputs, the model created before is used
+					timeCommandStart = timeCommandEnd = 0;
+					out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+					timeEnd = System.currentTimeMillis();
+				} else if (loadDataset(table, homeDir, DATA_NAME, exec)) {
 					if (hfpSrFunction(fisDir, homeDir, DATA_NAME, nInput, inFuzzySets, inHierarchyType,
 							inToleranceValue, outFuzzySets, outHierarchyType, defuzOp, disjOp, outToleranceValue,
-							classifOutput)) {
+							classifOutput, exec)) {
 						File fis = new File(homeDir, HFPSR_FIS);
 						File hfp = new File(homeDir, HFP_NAME);
 						File vertex = new File(homeDir, VERTEX_NAME);
@@ -161,34 +208,33 @@ public class HFPSRNodeModel extends NodeModel {
 
 						// creation of the modelPortObject from the fis
 						// file
-						mModel = new FisModel(fis, "HFPSR");
+						mModel = new FisModel(fis, FIS_FUNC);
 						mModel.setHfp(hfp);
 						mModel.setVertex(vertex);
+						FisResultCache.put(key, mModel);
 						if (DEBUG)
 							LOGGER.error("Model Summary: " + mModel.getSum());
-						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
+						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
 						timeEnd = System.currentTimeMillis();
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -196,11 +242,100 @@ public class HFPSRNodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
 
+	/**
+	 * Hierarchy type of each variable, for the Java engine
+	 * 
+	 * @param nCols
+	 *            number of variables, the last one being the output
+	 * @param inType
+	 *            input hierarchy type
+	 * @param outSets
+	 *            number of output fuzzy sets, 0 for a crisp output
+	 * @param outType
+	 *            output hierarchy type
+	 * 
+	 * @return the types, null if the hfp hierarchy, made only by FisPro, is
+	 *         used
+	 */
+	private int[] hierarchyTypes(int nCols, String inType, int outSets, String outType) {
+
+		int in = Integer.parseInt(inType.trim());
+		int out = outSets > 0 ? Integer.parseInt(outType.trim()) : FisHierarchy.REGULAR;
+		if (in == FisHierarchy.HFP || out == FisHierarchy.HFP)
+			return null;
+		int[] types = new int[nCols];
+		Arrays.fill(types, in);
+		types[nCols - 1] = out;
+		return types;
+	}
+
+	/**
+	 * Make the configuration model in the JVM, as hfpsr does for the k-means
+	 * and regular hierarchies: the columns are read once and the partitions of
+	 * the variables are computed in parallel
+	 * 
+	 * @param table
+	 *            dataset, the last column being the output
+	 * @param inFuzzySets
+	 *            number of fuzzy sets of each input, separated by spaces
+	 * @param types
+	 *            hierarchy type of each variable
+	 * @param outFuzzySets
+	 *            number of output fuzzy sets, 0 for a crisp output
+	 * @param defuzOp
+	 *            defuzzification operator
+	 * @param disjOp
+	 *            disjunction operator
+	 * @param classif
+	 *            true for a classification output
+	 * @param exec
+	 *            execution context for progress and cancellation
+	 * 
+	 * @return the configuration model, with its hfp and vertex contents, null
+	 *         if the columns do not fit in the memory of the JVM
+	 * 
+	 * @throws Exception
+	 *             if the settings do not fit the table or the execution is
+	 *             canceled
+	 */
+	private FisModel javaHfpSr(BufferedDataTable table, String inFuzzySets, int[] types, int outFuzzySets,
+			String defuzOp, String disjOp, boolean classif, ExecutionContext exec) throws Exception {
+
+		if (outFuzzySets == 0 && !defuzOp.equals("sugeno"))
+			throw new InvalidSettingsException("Output crisp (Number of fuzzy sets for each output variable) "
+					+ "defuzzification " + defuzOp + " not allowed! Please select 'sugeno' defuz. operator!");
+		int nCols = types.length;
+		String[] sets = inFuzzySets.trim().split("\\s+");
+		if (sets.length < nCols - 1)
+			throw new InvalidSettingsException(
+					"The number of fuzzy sets is set for " + sets.length + " inputs, the table has " + (nCols - 1));
+		int[] nMfs = new int[nCols];
+		for (int i = 0; i < nCols - 1; i++)
+			nMfs[i] = Integer.parseInt(sets[i]);
+		nMfs[nCols - 1] = outFuzzySets;
+		String[] names = table.getDataTableSpec().getColumnNames();
+		int threads = Math.max(1, PARALLELISM.getIntValue());
+		if (FisHierarchy.getMemory(table.size(), nCols, threads) > FisHierarchy.getMaxMemory())
+			return null;
+
+		double[][] columns = FisHierarchy.readColumns(table, exec.createSubProgress(0.5));
+		double[][] partitions = FisHierarchy.partitions(columns, nMfs, types, threads, exec.createSubProgress(0.5));
+		String name = table.getSpec().getName();
+		FisModel model = new FisModel(
+				FisSystem.parse(FisHierarchy.fis(name, names, partitions, defuzOp, disjOp, classif)), FIS_FUNC);
+		double[] tolerances = new double[nCols];
+		Arrays.fill(tolerances, TOLERANCE_INPUT.getDoubleValue());
+		tolerances[nCols - 1] = TOLERANCE_OUTPUT.getDoubleValue();
+		model.setHfpContent(FisHierarchy.hfp(name, names, partitions, types, tolerances, defuzOp, disjOp, classif));
+		model.setVertexContent(FisHierarchy.vertex(partitions));
+		return model;
+	}
+
 	/**
 	 * Save statistics to a file
 	 * 
@@ -287,13 +422,19 @@ public class HFPSRNodeModel extends NodeModel {
 	 *            output tolerance value
 	 * @param classifOutput
 	 *            classification output
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
 	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * 
 	 */
 	private boolean hfpSrFunction(String fisDir, String homeDir, String dataName, int nInput, String inFuzzySets,
 			String inHierarchyType, double inToleranceValue, int outFuzzySets, String outHierarchyType, String defuzOp,
-			String disjOp, double outToleranceValue, boolean classifOutput) {
+			String disjOp, double outToleranceValue, boolean classifOutput, ExecutionMonitor exec)
+			throws CanceledExecutionException {
 
 		File home = new File(homeDir);
 		File hfpsr = new File(fisDir, "hfpsr");
@@ -320,8 +461,9 @@ public class HFPSRNodeModel extends NodeModel {
 					LOGGER.error("trying hfpsr command for Linux...");
 				String[] cmd = { "/bin/sh", "-c", hfpsr.getPath() + " " + data.getPath() + " " + arg };
 				timeCommandStart = System.currentTimeMillis();
-				Process p = Runtime.getRuntime().exec(cmd, null, home);
-				int control = p.waitFor();
+				FisProcess p = FisProcess.run(cmd, home, exec);
+				timeQueue += p.getQueueTime();
+				int control = p.getExitCode();
 				timeCommandEnd = System.currentTimeMillis();
 				if (control == 0) {
 					if (!hfpsrFis.exists())
@@ -336,8 +478,9 @@ public class HFPSRNodeModel extends NodeModel {
 						disjOp, Double.toString(outToleranceValue), "-o" + HFPSR_FIS, (classifOutput ? " -f" : "") };
 				try {
 					timeCommandStart = System.currentTimeMillis();
-					Process p = Runtime.getRuntime().exec(cmd, null, home);
-					int control = p.waitFor();
+					FisProcess p = FisProcess.run(cmd, home, exec);
+					timeQueue += p.getQueueTime();
+					int control = p.getExitCode();
 					timeCommandEnd = System.currentTimeMillis();
 					if (control == 0) {
 						if (!hfpsrFis.exists())
@@ -355,19 +498,6 @@ public class HFPSRNodeModel extends NodeModel {
 		return hfpsrFis.exists();
 	}
 
-	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "HFPSR");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
-	}
-
 	/**
 	 * Create dataset file from BufferedDataTable
 	 * 
@@ -377,44 +507,23 @@ public class HFPSRNodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            dataset file name
+	 * @param exec
+	 *            execution context
 	 * 
 	 * @return true if creation is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
-
-		String[] names = t.getDataTableSpec().getColumnNames();
-		String header = "";
-		for (int i = 0; i < names.length; i++) {
-			if (i + 1 != names.length)
-				header += names[i] + TABLE_SEP;
-			else
-				header += names[i];
-		}
+	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-			write.println(header);
-
-			// write data cell's rows in dataset file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
+			FisDatasetWriter.write(t, file, true, exec);
 			if (!file.exists())
 				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
 			return false;
 		}
@@ -426,7 +535,18 @@ public class HFPSRNodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the tolerances group the values of the hfp hierarchy, the Java
+		// engine makes only the other ones
+		if (ENGINE_JAVA.equals(ENGINE.getStringValue())
+				&& !HY_TYPE_INPUT.getStringValue().trim().equals(Integer.toString(FisHierarchy.HFP))
+				&& (FUZZY_SETS_NUMBER_OUTPUT.getIntValue() == 0
+						|| !HY_TYPE_OUTPUT.getStringValue().trim().equals(Integer.toString(FisHierarchy.HFP)))
+				&& (TOLERANCE_INPUT.getDoubleValue() != FisHierarchy.DEFAULT_TOLERANCE
+						|| TOLERANCE_OUTPUT.getDoubleValue() != FisHierarchy.DEFAULT_TOLERANCE))
+			throw new InvalidSettingsException("The " + ENGINE_JAVA + " engine needs the default tolerances ("
+					+ FisHierarchy.DEFAULT_TOLERANCE + "), please select the " + ENGINE_FISPRO + " engine");
+		// the variables are known only when the hierarchy is built
+		return new PortObjectSpec[] { new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -450,6 +570,8 @@ public class HFPSRNodeModel extends NodeModel {
 		DISJ_OP.saveSettingsTo(settings);
 		TOLERANCE_OUTPUT.saveSettingsTo(settings);
 		CLASSIF_OUTPUT.saveSettingsTo(settings);
+		ENGINE.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
 	}
 
 	/**
@@ -466,6 +588,15 @@ public class HFPSRNodeModel extends NodeModel {
 		DISJ_OP.loadSettingsFrom(settings);
 		TOLERANCE_OUTPUT.loadSettingsFrom(settings);
 		CLASSIF_OUTPUT.loadSettingsFrom(settings);
+		// nodes saved before the settings existed ran FisPro hfpsr
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.loadSettingsFrom(settings);
+		else
+			ENGINE.setStringValue(ENGINE_FISPRO);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.loadSettingsFrom(settings);
+		else
+			PARALLELISM.setIntValue(DEFAULT_PARALLELISM);
 	}
 
 	/**
@@ -482,6 +613,10 @@ public class HFPSRNodeModel extends NodeModel {
 		DISJ_OP.validateSettings(settings);
 		TOLERANCE_OUTPUT.validateSettings(settings);
 		CLASSIF_OUTPUT.validateSettings(settings);
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.validateSettings(settings);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.validateSettings(settings);
 	}
 
 	/**
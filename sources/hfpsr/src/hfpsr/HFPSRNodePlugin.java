@@ -4,9 +4,14 @@
  */
 package hfpsr;
 
+import java.io.IOException;
+
 import org.eclipse.core.runtime.Plugin;
+import org.knime.core.node.NodeLogger;
 import org.osgi.framework.BundleContext;
 
+import port.FisWorkspace;
+
 /**
  * This is the eclipse bundle activator.
  * Note: KNIME node developers probably won't have to do anything in here, 
@@ -37,7 +42,12 @@ public class HFPSRNodePlugin extends Plugin {
     @Override
     public void start(final BundleContext context) throws Exception {
         super.start(context);
-
+        // scratch directories of the FisPro nodes, the ones of crashed runs are deleted
+        try {
+            FisWorkspace.start();
+        } catch (IOException e) {
+            NodeLogger.getLogger(HFPSRNodePlugin.class).warn("Workspace NOT created: " + e);
+        }
     }
 
     /**
@@ -48,6 +58,7 @@ public class HFPSRNodePlugin extends Plugin {
      */
     @Override
     public void stop(final BundleContext context) throws Exception {
+        FisWorkspace.stop();
         super.stop(context);
         plugin = null;
     }
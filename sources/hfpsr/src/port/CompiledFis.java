@@ -0,0 +1,163 @@
+package port;
+
+/**
+ * Inference of one output of a Fuzzy Inference System by a class generated
+ * for the model by {@link FisCompiler}
+ *
+ * The generated subclass evaluates the input MFs with their parameters as
+ * constants and the rule premises as straight-line code, without the MF type
+ * dispatch and the rule loops of {@link FisEngine}. The result is the same as
+ * {@link FisEngine#getInferred(int)} up to rounding. An instance is not
+ * thread safe: use {@link #copy()} to get one per thread.
+ *
+ * @author Antonio Di Mauro
+ */
+public abstract class CompiledFis {
+
+	/**
+	 * Membership degree of every input MF, filled by {@link #degrees}
+	 */
+	protected final double[] mDeg;
+
+	/**
+	 * Aggregated activation of every class of the output
+	 */
+	protected final double[] mAgg;
+
+	/**
+	 * Distinct conclusions of a crisp output, by class
+	 */
+	protected final double[] mValues;
+
+	/**
+	 * Weighted sum of the conclusions and sum of the activations, when a
+	 * sugeno output is accumulated inline
+	 */
+	protected double mNum;
+	protected double mDen;
+
+	private final FisEngine mEngine;
+	private final int mNumInputs;
+	private final int mOut;
+	private final boolean mInline;
+
+	/**
+	 * @param engine
+	 *            engine of the model, used for the tables and the
+	 *            defuzzification
+	 * @param o
+	 *            output index
+	 */
+	protected CompiledFis(FisEngine engine, int o) {
+
+		FisSystem sys = engine.getSystem();
+		int n = 0;
+		for (int i = 0; i < sys.getNumInputs(); i++)
+			n += sys.getInput(i).getNumMfs();
+		mDeg = new double[n];
+		mAgg = new double[engine.getNumClasses(o)];
+		mValues = engine.getClassValues(o);
+		mEngine = engine;
+		mNumInputs = sys.getNumInputs();
+		mOut = o;
+		mInline = FisCompiler.isInlineSugeno(sys.getOutput(o));
+	}
+
+	/**
+	 * Compute the membership degree of every input MF into {@link #mDeg}
+	 *
+	 * @param x
+	 *            input values
+	 */
+	protected abstract void degrees(double[] x);
+
+	/**
+	 * Compute the rule activations and aggregate them into {@link #mAgg}, or
+	 * into {@link #mNum} and {@link #mDen}
+	 */
+	protected abstract void rules();
+
+	/**
+	 * Infer the output for a data item
+	 *
+	 * @param x
+	 *            input values (at least one per input, NaN for missing)
+	 *
+	 * @return inferred value
+	 */
+	public final double infer(double[] x) {
+
+		degrees(x);
+		for (int i = 0; i < x.length && i < mNumInputs; i++) {
+			if (x[i] != x[i]) {
+				mEngine.missingDegrees(x, mDeg);
+				break;
+			}
+		}
+		if (mInline) {
+			mNum = 0.0;
+			mDen = 0.0;
+			rules();
+			if (mDen <= 0)
+				return mEngine.getSystem().getOutput(mOut).getDefaultValue();
+			return mNum / mDen;
+		}
+		for (int k = 0; k < mAgg.length; k++)
+			mAgg[k] = 0.0;
+		rules();
+		mEngine.defuzzify(mOut, mAgg);
+		return mEngine.getInferred(mOut);
+	}
+
+	/**
+	 * @return a new instance of the same compiled model, for another thread
+	 */
+	public CompiledFis copy() {
+		try {
+			return getClass().getConstructor(FisEngine.class, int.class)
+					.newInstance(new FisEngine(mEngine.getSystem()), mOut);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/*
+	 * Membership functions called by the generated code with constant
+	 * parameters, the degrees of a missing value are replaced by the engine
+	 */
+
+	protected static double trapezoidal(double a, double b, double c, double d, double x) {
+		if (x != x)
+			return 1.0;
+		if (x <= a || x >= d)
+			return (x >= b && x <= c) ? 1.0 : 0.0;
+		if (x < b)
+			return (x - a) / (b - a);
+		if (x <= c)
+			return 1.0;
+		return (d - x) / (d - c);
+	}
+
+	protected static double semiTrapezoidInf(double b, double c, double x) {
+		if (x != x || x <= b)
+			return 1.0;
+		return x >= c ? 0.0 : (c - x) / (c - b);
+	}
+
+	protected static double semiTrapezoidSup(double a, double b, double x) {
+		if (x != x || x >= b)
+			return 1.0;
+		return x <= a ? 0.0 : (x - a) / (b - a);
+	}
+
+	protected static double gaussian(double mean, double std, double x) {
+		if (x != x)
+			return 1.0;
+		double d = (x - mean) / std;
+		return Math.exp(-0.5 * d * d);
+	}
+
+	protected static double discrete(double v, double x) {
+		return (x != x || x == v) ? 1.0 : 0.0;
+	}
+}
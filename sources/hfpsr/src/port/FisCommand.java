@@ -0,0 +1,221 @@
+package port;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Command lines of the FisPro learners, shared by their nodes and by the
+ * nodes learning many models (Bagging, CrossVal)
+ *
+ * The defaults are the ones of the node dialogs, used when a learner is run
+ * with the default settings of its node.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisCommand {
+
+	/**
+	 * Default settings of the FPA node
+	 */
+	public static final String FPA_STRATEGY = "1";
+	public static final double FPA_MIN_DEGREE = 0.3;
+	public static final int FPA_MIN_CARD = 3;
+	public static final double FPA_THRESHOLD = 0.1;
+
+	/**
+	 * Default settings of the FisTree node
+	 */
+	public static final double FISTREE_MEMB_THRES = 0.2;
+	public static final int FISTREE_MIN_LEAF = 10;
+	public static final double FISTREE_TOL = 0.1;
+	public static final int FISTREE_MAX_DEPTH = 0;
+	public static final int FISTREE_MIN_GAIN = 1;
+	public static final String FISTREE_GAIN_TYPE = "0";
+	public static final String FISTREE_PRUNING_TYPE = "0";
+	public static final double FISTREE_PERF_LOSS = 0.0;
+	public static final double FISTREE_COV_LEVEL = 0.9;
+
+	/**
+	 * Default settings of the HFPFIS node
+	 */
+	public static final boolean HFPFIS_SET_WM = false;
+	public static final double HFPFIS_MIN_WEIGHT = 0.0;
+	public static final String HFPFIS_CARD_STRATEGY = "1";
+	public static final double HFPFIS_MIN_DEGREE = 0.3;
+	public static final int HFPFIS_MIN_CARD = 3;
+
+	private FisCommand() {
+	}
+
+	private static String tool(String fisDir, String name) {
+		return new File(fisDir, name).getPath();
+	}
+
+	/**
+	 * e.g. wm cfg.fis dataset.csv -owm.fis
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param cfgFis
+	 *            configuration fis
+	 * @param data
+	 *            dataset
+	 * @param outFis
+	 *            learned fis, in the working directory
+	 *
+	 * @return command line
+	 */
+	public static String[] wm(String fisDir, String cfgFis, String data, String outFis) {
+		return new String[] { tool(fisDir, "wm"), cfgFis, data, "-o" + outFis };
+	}
+
+	/**
+	 * e.g. ols dataset.csv -fcfg.fis -cols.fis
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param data
+	 *            dataset
+	 * @param cfgFis
+	 *            configuration fis
+	 * @param outFis
+	 *            learned fis, in the working directory
+	 *
+	 * @return command line
+	 */
+	public static String[] ols(String fisDir, String data, String cfgFis, String outFis) {
+		return new String[] { tool(fisDir, "ols"), data, "-f" + cfgFis, "-c" + outFis };
+	}
+
+	/**
+	 * e.g. genrules cfg.fis -fgenconfig.fis
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param cfgFis
+	 *            configuration fis
+	 * @param outFis
+	 *            fis with the generated rules, in the working directory
+	 *
+	 * @return command line
+	 */
+	public static String[] genrules(String fisDir, String cfgFis, String outFis) {
+		return new String[] { tool(fisDir, "genrules"), cfgFis, "-f" + outFis };
+	}
+
+	/**
+	 * e.g. fpa genconfig.fis dataset.csv -s1 -d0.3 -e3 -u0.1
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param cfgFis
+	 *            fis with the rules generated by genrules
+	 * @param data
+	 *            dataset
+	 * @param strategy
+	 *            strategy to determine the data subset used to initialize the
+	 *            rule conclusion
+	 * @param minDegree
+	 *            minimum matching degree for rule generation
+	 * @param minCard
+	 *            minimum cardinality
+	 * @param threshold
+	 *            activity threshold for performance computation
+	 *
+	 * @return command line
+	 */
+	public static String[] fpa(String fisDir, String cfgFis, String data, String strategy, double minDegree,
+			int minCard, double threshold) {
+		return new String[] { tool(fisDir, "fpa"), cfgFis, data, "-s" + strategy, "-d" + minDegree, "-e" + minCard,
+				"-u" + threshold };
+	}
+
+	/**
+	 * e.g. fistree cfg.fis dataset.csv -o0 -s0.2 -x10 -t0.1 -d0 -g1e-6 -e0
+	 * -p0 -l0.0 -c0.9
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param cfgFis
+	 *            configuration fis
+	 * @param data
+	 *            dataset
+	 * @param outNum
+	 *            output number
+	 * @param membThres
+	 *            membership threshold
+	 * @param minLeaf
+	 *            minimum cardinality of a leaf
+	 * @param tol
+	 *            tolerance
+	 * @param maxDepth
+	 *            maximum depth, 0 for none
+	 * @param minGain
+	 *            minimum gain, in millionths
+	 * @param gainType
+	 *            gain type
+	 * @param pruningType
+	 *            pruning type
+	 * @param perfLoss
+	 *            allowed performance loss of the pruning
+	 * @param covLevel
+	 *            coverage level
+	 *
+	 * @return command line
+	 */
+	public static String[] fistree(String fisDir, String cfgFis, String data, int outNum, double membThres,
+			int minLeaf, double tol, int maxDepth, int minGain, String gainType, String pruningType,
+			double perfLoss, double covLevel) {
+		return new String[] { tool(fisDir, "fistree"), cfgFis, data, "-o" + outNum, "-s" + membThres,
+				"-x" + minLeaf, "-t" + tol, "-d" + maxDepth, "-g" + minGain + "e-6", "-e" + gainType,
+				"-p" + pruningType, "-l" + perfLoss, "-c" + covLevel };
+	}
+
+	/**
+	 * e.g. hfpfis dataset.csv dataset.csv.hfp -ldataset.csv.vertex -s0.0 -t1
+	 * -m0.3 -e3 -ohfpfis.fis -p0
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param data
+	 *            dataset
+	 * @param hfp
+	 *            hfp configuration of an HFP-SR node
+	 * @param vertex
+	 *            vertex file of an HFP-SR node
+	 * @param setWm
+	 *            true to induce the rules by Wang and Mendel instead of fpa
+	 * @param minWeight
+	 *            minimum rule weight
+	 * @param cardStrategy
+	 *            cardinality strategy of fpa
+	 * @param minDegree
+	 *            minimum matching degree of fpa
+	 * @param minCard
+	 *            minimum cardinality of fpa
+	 * @param outFis
+	 *            learned fis, in the working directory
+	 * @param outNum
+	 *            output number
+	 *
+	 * @return command line
+	 */
+	public static String[] hfpfis(String fisDir, String data, String hfp, String vertex, boolean setWm,
+			double minWeight, String cardStrategy, double minDegree, int minCard, String outFis, int outNum) {
+		List<String> cmd = new ArrayList<String>();
+		cmd.add(tool(fisDir, "hfpfis"));
+		cmd.add(data);
+		cmd.add(hfp);
+		cmd.add("-l" + vertex);
+		if (setWm)
+			cmd.add("-r");
+		cmd.add("-s" + minWeight);
+		cmd.add("-t" + cardStrategy);
+		cmd.add("-m" + minDegree);
+		cmd.add("-e" + minCard);
+		cmd.add("-o" + outFis);
+		cmd.add("-p" + outNum);
+		return cmd.toArray(new String[cmd.size()]);
+	}
+}
@@ -0,0 +1,617 @@
+package port;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Compiler of a Fuzzy Inference System into a JVM class
+ *
+ * For one output of the model a subclass of {@link CompiledFis} is generated
+ * directly as bytecode: the input MFs are evaluated one by one with their
+ * parameters as constants, each rule premise is straight-line code on the MF
+ * degrees and, for sugeno outputs, the weighted average is accumulated while
+ * the rules are evaluated. The generated code has no branches, the rules are
+ * split in several methods to respect the JVM method size limit.
+ *
+ * Generated classes are cached by the digest of the model content, so scoring
+ * the same model again does not compile it again.
+ *
+ * @author Antonio Di Mauro
+ */
+public class FisCompiler {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisCompiler.class);
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int CACHE_SIZE = 16;
+
+	// class file layout: version 49 needs no stack map frames
+	private static final int MAGIC = 0xCAFEBABE;
+	private static final int VERSION = 49;
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PRIVATE = 0x0002;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+	private static final int MAX_CODE = 7000;
+	private static final int MAX_STACK = 16;
+
+	// opcodes
+	private static final int DCONST_0 = 0x0e;
+	private static final int DCONST_1 = 0x0f;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC2_W = 0x14;
+	private static final int ILOAD = 0x15;
+	private static final int DLOAD = 0x18;
+	private static final int ALOAD = 0x19;
+	private static final int DALOAD = 0x31;
+	private static final int DSTORE = 0x39;
+	private static final int ASTORE = 0x3a;
+	private static final int DASTORE = 0x52;
+	private static final int DUP = 0x59;
+	private static final int DUP2 = 0x5c;
+	private static final int DADD = 0x63;
+	private static final int DSUB = 0x67;
+	private static final int DMUL = 0x6b;
+	private static final int ISHL = 0x78;
+	private static final int IOR = 0x80;
+	private static final int RETURN = 0xb1;
+	private static final int GETFIELD = 0xb4;
+	private static final int PUTFIELD = 0xb5;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	private static final String BASE = "port/CompiledFis";
+	private static final String D = "[D";
+
+	private static final Map<String, Class<?>> CACHE = new LinkedHashMap<String, Class<?>>(CACHE_SIZE, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Class<?>> eldest) {
+			return size() > CACHE_SIZE;
+		}
+	};
+	private static int sCount;
+
+	private FisCompiler() {
+	}
+
+	/**
+	 * Compile one output of a system, or get the class compiled before for
+	 * the same model content
+	 *
+	 * @param sys
+	 *            parsed fuzzy inference system
+	 * @param o
+	 *            output index
+	 *
+	 * @return a new instance of the compiled model, null if the model cannot
+	 *         be compiled (it must be inferred by {@link FisEngine})
+	 */
+	public static CompiledFis compile(FisSystem sys, int o) {
+
+		String key = digest(sys) + "#" + o;
+		try {
+			Class<?> c;
+			synchronized (CACHE) {
+				c = CACHE.get(key);
+				if (c == null) {
+					c = define(sys, o);
+					if (c == null)
+						return null;
+					CACHE.put(key, c);
+				}
+			}
+			return (CompiledFis) c.getConstructor(FisEngine.class, int.class).newInstance(new FisEngine(sys), o);
+		} catch (IOException | ReflectiveOperationException | LinkageError e) {
+			LOGGER.warn("Fis NOT compiled, it is interpreted: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * @return true if the weighted average of a sugeno output is accumulated
+	 *         while the rules are evaluated
+	 */
+	static boolean isInlineSugeno(FisVariable out) {
+		return !out.isFuzzy() && !out.isClassif() && !out.getDefuzzification().equalsIgnoreCase("MaxCrisp")
+				&& !out.getDisjunction().equalsIgnoreCase("max");
+	}
+
+	/**
+	 * Digest of the model content, key of the compiled classes
+	 */
+	private static String digest(FisSystem sys) {
+
+		try {
+			byte[] d = MessageDigest.getInstance("SHA-256").digest(sys.toString().getBytes(UTF8));
+			StringBuilder sb = new StringBuilder();
+			for (byte b : d)
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		} catch (NoSuchAlgorithmException e) {
+			return sys.toString();
+		}
+	}
+
+	/**
+	 * Generate and load the class of a model
+	 */
+	private static Class<?> define(FisSystem sys, int o) throws IOException {
+
+		String name = "port/GeneratedFis" + (++sCount);
+		byte[] bytes = new ClassWriter(sys, o, name).toBytes();
+		if (bytes == null) {
+			LOGGER.warn("Fis too large to be compiled, it is interpreted.");
+			return null;
+		}
+		return new Loader(CompiledFis.class.getClassLoader()).define(name.replace('/', '.'), bytes);
+	}
+
+	/**
+	 * One loader per class, so that a class evicted from the cache can be
+	 * unloaded
+	 */
+	private static class Loader extends ClassLoader {
+
+		Loader(ClassLoader parent) {
+			super(parent);
+		}
+
+		Class<?> define(String name, byte[] b) {
+			return defineClass(name, b, 0, b.length);
+		}
+	}
+
+	/**
+	 * Writer of the class file of a model
+	 */
+	private static class ClassWriter {
+
+		private final FisSystem mSys;
+		private final int mOut;
+		private final String mName;
+		private final FisEngine mEngine;
+		private final int[] mMfOffset;
+
+		private final List<Object[]> mPool = new ArrayList<Object[]>();
+		private final Map<String, Integer> mPoolIndex = new HashMap<String, Integer>();
+		private int mPoolSize = 1;
+
+		private final List<byte[]> mMethods = new ArrayList<byte[]>();
+		private ByteArrayOutputStream mCode;
+
+		ClassWriter(FisSystem sys, int o, String name) {
+			mSys = sys;
+			mOut = o;
+			mName = name;
+			mEngine = new FisEngine(sys);
+			mMfOffset = new int[sys.getNumInputs() + 1];
+			for (int i = 0; i < sys.getNumInputs(); i++)
+				mMfOffset[i + 1] = mMfOffset[i] + sys.getInput(i).getNumMfs();
+		}
+
+		/**
+		 * @return class file, null if the constant pool overflows
+		 */
+		byte[] toBytes() throws IOException {
+
+			writeConstructor();
+			writeDegrees();
+			writeRules();
+			int thisClass = classRef(mName);
+			int superClass = classRef(BASE);
+			if (mPoolSize > 0xFFFF)
+				return null;
+
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeInt(MAGIC);
+			out.writeShort(0);
+			out.writeShort(VERSION);
+			writePool(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(mMethods.size());
+			for (byte[] m : mMethods)
+				out.write(m);
+			out.writeShort(0); // attributes
+			out.flush();
+			return bytes.toByteArray();
+		}
+
+		/**
+		 * public GeneratedFis(FisEngine engine, int o)
+		 */
+		private void writeConstructor() throws IOException {
+			begin();
+			op(ALOAD, 0);
+			op(ALOAD, 1);
+			op(ILOAD, 2);
+			op(INVOKESPECIAL);
+			u2(methodRef(BASE, "<init>", "(Lport/FisEngine;I)V"));
+			op(RETURN);
+			end(ACC_PUBLIC, "<init>", "(Lport/FisEngine;I)V", 3);
+		}
+
+		/**
+		 * protected void degrees(double[] x): mDeg[j] = mf(x[i]) for every MF
+		 */
+		private void writeDegrees() throws IOException {
+
+			begin();
+			op(ALOAD, 0);
+			op(GETFIELD);
+			u2(fieldRef(BASE, "mDeg", D));
+			op(ASTORE, 2);
+			for (int i = 0; i < mSys.getNumInputs(); i++) {
+				FisVariable in = mSys.getInput(i);
+				op(ALOAD, 1);
+				pushInt(i);
+				op(DALOAD);
+				op(DSTORE, 3);
+				for (int k = 0; k < in.getNumMfs(); k++) {
+					op(ALOAD, 2);
+					pushInt(mMfOffset[i] + k);
+					writeMf(in.getMfType(k), in.getMfParams(k));
+				}
+			}
+			op(RETURN);
+			end(ACC_PUBLIC, "degrees", "([D)V", 5);
+		}
+
+		/**
+		 * Push the degree of x (local 3) for a MF, with its parameters as
+		 * constants, and store it
+		 */
+		private void writeMf(int type, double[] p) {
+
+			String desc;
+			String name;
+			switch (type) {
+			case FisVariable.MF_TRAPEZOIDAL:
+				pushDoubles(p[0], p[1], p[2], p[3]);
+				name = "trapezoidal";
+				desc = "(DDDDD)D";
+				break;
+			case FisVariable.MF_TRIANGULAR:
+				pushDoubles(p[0], p[1], p[1], p[2]);
+				name = "trapezoidal";
+				desc = "(DDDDD)D";
+				break;
+			case FisVariable.MF_SEMI_TRAPEZOID_INF:
+				pushDoubles(p[1], p[2]);
+				name = "semiTrapezoidInf";
+				desc = "(DDD)D";
+				break;
+			case FisVariable.MF_SEMI_TRAPEZOID_SUP:
+				pushDoubles(p[0], p[1]);
+				name = "semiTrapezoidSup";
+				desc = "(DDD)D";
+				break;
+			case FisVariable.MF_GAUSSIAN:
+				pushDoubles(p[0], p[1]);
+				name = "gaussian";
+				desc = "(DDD)D";
+				break;
+			case FisVariable.MF_DISCRETE:
+				pushDoubles(p[0]);
+				name = "discrete";
+				desc = "(DD)D";
+				break;
+			default:
+				// unknown MF: degree 0, as FisVariable.degree
+				op(DCONST_0);
+				op(DASTORE);
+				return;
+			}
+			op(DLOAD, 3);
+			op(INVOKESTATIC);
+			u2(methodRef(BASE, name, desc));
+			op(DASTORE);
+		}
+
+		/**
+		 * protected void rules(), calling a method for each chunk of rules
+		 */
+		private void writeRules() throws IOException {
+
+			int nInputs = mSys.getNumInputs();
+			int perRule = 40 + 24 * nInputs;
+			int chunk = Math.max(1, MAX_CODE / perRule);
+			int nChunks = (mSys.getNumRules() + chunk - 1) / chunk;
+			for (int c = 0; c < nChunks; c++)
+				writeRuleChunk("rules" + c, c * chunk, Math.min(mSys.getNumRules(), (c + 1) * chunk));
+
+			begin();
+			for (int c = 0; c < nChunks; c++) {
+				op(ALOAD, 0);
+				op(INVOKEVIRTUAL);
+				u2(methodRef(mName, "rules" + c, "()V"));
+			}
+			op(RETURN);
+			end(ACC_PUBLIC, "rules", "()V", 1);
+		}
+
+		/**
+		 * Straight-line code of the rules [from, to)
+		 *
+		 * locals: 1 mDeg, 2 mAgg, 3 mValues, 4 activation, 6 num, 8 den
+		 */
+		private void writeRuleChunk(String method, int from, int to) throws IOException {
+
+			String conj = mSys.getConjunction();
+			boolean prod = conj.equalsIgnoreCase("prod");
+			boolean luka = conj.equalsIgnoreCase("luka");
+			FisVariable out = mSys.getOutput(mOut);
+			boolean inline = isInlineSugeno(out);
+			boolean max = out.getDisjunction().equalsIgnoreCase("max");
+
+			begin();
+			loadField("mDeg", D, 1);
+			loadField("mAgg", D, 2);
+			loadField("mValues", D, 3);
+			op(DCONST_0);
+			op(DSTORE, 6);
+			op(DCONST_0);
+			op(DSTORE, 8);
+
+			for (int r = from; r < to; r++) {
+				int k = mEngine.getRuleClass(mOut, r);
+				if (k < 0)
+					continue;
+
+				// activation: 1.0 combined with every premise
+				op(DCONST_1);
+				for (int i = 0; i < mSys.getNumInputs(); i++) {
+					int p = mSys.getPremise(r, i);
+					if (p == 0 || !mSys.getInput(i).isActive())
+						continue;
+					if (p > 0) {
+						loadDegree(mMfOffset[i] + p - 1);
+					} else {
+						op(DCONST_1);
+						loadDegree(mMfOffset[i] - p - 1);
+						op(DSUB);
+					}
+					if (prod) {
+						op(DMUL);
+					} else if (luka) {
+						op(DADD);
+						op(DCONST_1);
+						op(DSUB);
+						op(DCONST_0);
+						op(INVOKESTATIC);
+						u2(methodRef("java/lang/Math", "max", "(DD)D"));
+					} else {
+						op(INVOKESTATIC);
+						u2(methodRef("java/lang/Math", "min", "(DD)D"));
+					}
+				}
+				if (mSys.getWeight(r) != 1.0) {
+					pushDoubles(mSys.getWeight(r));
+					op(DMUL);
+				}
+				op(DSTORE, 4);
+
+				if (inline) {
+					// num += a * value; den += a
+					op(DLOAD, 6);
+					op(DLOAD, 4);
+					op(ALOAD, 3);
+					pushInt(k);
+					op(DALOAD);
+					op(DMUL);
+					op(DADD);
+					op(DSTORE, 6);
+					op(DLOAD, 8);
+					op(DLOAD, 4);
+					op(DADD);
+					op(DSTORE, 8);
+				} else {
+					// agg[k] += a, or agg[k] = max(agg[k], a)
+					op(ALOAD, 2);
+					pushInt(k);
+					op(DUP2);
+					op(DALOAD);
+					op(DLOAD, 4);
+					if (max) {
+						op(INVOKESTATIC);
+						u2(methodRef("java/lang/Math", "max", "(DD)D"));
+					} else {
+						op(DADD);
+					}
+					op(DASTORE);
+				}
+			}
+
+			if (inline) {
+				addToField("mNum", 6);
+				addToField("mDen", 8);
+			}
+			op(RETURN);
+			end(ACC_PRIVATE, method, "()V", 10);
+		}
+
+		private void loadField(String field, String desc, int local) {
+			op(ALOAD, 0);
+			op(GETFIELD);
+			u2(fieldRef(BASE, field, desc));
+			op(ASTORE, local);
+		}
+
+		/**
+		 * this.field += local
+		 */
+		private void addToField(String field, int local) {
+			op(ALOAD, 0);
+			op(DUP);
+			op(GETFIELD);
+			u2(fieldRef(BASE, field, "D"));
+			op(DLOAD, local);
+			op(DADD);
+			op(PUTFIELD);
+			u2(fieldRef(BASE, field, "D"));
+		}
+
+		private void loadDegree(int j) {
+			op(ALOAD, 1);
+			pushInt(j);
+			op(DALOAD);
+		}
+
+		private void pushDoubles(double... values) {
+			for (double v : values) {
+				if (Double.doubleToRawLongBits(v) == 0L) {
+					op(DCONST_0);
+				} else if (v == 1.0) {
+					op(DCONST_1);
+				} else {
+					op(LDC2_W);
+					u2(doubleRef(v));
+				}
+			}
+		}
+
+		/**
+		 * Push a non negative int without using the constant pool
+		 */
+		private void pushInt(int v) {
+			if (v <= Short.MAX_VALUE) {
+				op(SIPUSH);
+				u2(v);
+			} else {
+				op(SIPUSH);
+				u2(v >> 15);
+				op(BIPUSH, 15);
+				op(ISHL);
+				op(SIPUSH);
+				u2(v & 0x7FFF);
+				op(IOR);
+			}
+		}
+
+		/*
+		 * code buffer
+		 */
+
+		private void begin() {
+			mCode = new ByteArrayOutputStream();
+		}
+
+		private void op(int opcode) {
+			mCode.write(opcode);
+		}
+
+		private void op(int opcode, int arg) {
+			mCode.write(opcode);
+			mCode.write(arg);
+		}
+
+		private void u2(int v) {
+			mCode.write(v >> 8);
+			mCode.write(v);
+		}
+
+		private void end(int access, String name, String desc, int maxLocals) throws IOException {
+
+			byte[] code = mCode.toByteArray();
+			if (code.length > 0xFFFF)
+				throw new IOException("Method " + name + " too large");
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeShort(access);
+			out.writeShort(utf8(name));
+			out.writeShort(utf8(desc));
+			out.writeShort(1);
+			out.writeShort(utf8("Code"));
+			out.writeInt(12 + code.length);
+			out.writeShort(MAX_STACK);
+			out.writeShort(maxLocals);
+			out.writeInt(code.length);
+			out.write(code);
+			out.writeShort(0); // exception table
+			out.writeShort(0); // attributes
+			out.flush();
+			mMethods.add(bytes.toByteArray());
+			mCode = null;
+		}
+
+		/*
+		 * constant pool
+		 */
+
+		private int add(String key, Object[] entry, int slots) {
+			Integer index = mPoolIndex.get(key);
+			if (index != null)
+				return index;
+			index = mPoolSize;
+			mPoolSize += slots;
+			mPool.add(entry);
+			mPoolIndex.put(key, index);
+			// the index of an overflowing pool is never written
+			return index & 0xFFFF;
+		}
+
+		private int utf8(String s) {
+			return add("U" + s, new Object[] { 1, s }, 1);
+		}
+
+		private int classRef(String name) {
+			return add("C" + name, new Object[] { 7, utf8(name) }, 1);
+		}
+
+		private int nameAndType(String name, String desc) {
+			return add("N" + name + ":" + desc, new Object[] { 12, utf8(name), utf8(desc) }, 1);
+		}
+
+		private int fieldRef(String owner, String name, String desc) {
+			return add("F" + owner + "." + name + ":" + desc,
+					new Object[] { 9, classRef(owner), nameAndType(name, desc) }, 1);
+		}
+
+		private int methodRef(String owner, String name, String desc) {
+			return add("M" + owner + "." + name + desc, new Object[] { 10, classRef(owner), nameAndType(name, desc) },
+					1);
+		}
+
+		private int doubleRef(double v) {
+			return add("D" + Double.doubleToRawLongBits(v), new Object[] { 6, v }, 2);
+		}
+
+		private void writePool(DataOutputStream out) throws IOException {
+			out.writeShort(mPoolSize);
+			for (Object[] e : mPool) {
+				int tag = (Integer) e[0];
+				out.writeByte(tag);
+				if (tag == 1)
+					out.writeUTF((String) e[1]);
+				else if (tag == 6)
+					out.writeDouble((Double) e[1]);
+				else if (tag == 7)
+					out.writeShort((Integer) e[1]);
+				else {
+					out.writeShort((Integer) e[1]);
+					out.writeShort((Integer) e[2]);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package port;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Dataset handed to a FisPro binary, either streamed through a named pipe
+ * (FIFO) or written in full to a temporary file
+ *
+ * With a FIFO the rows are written by a background thread while the binary
+ * reads them, so export and computation overlap and no disk space is used.
+ * The FIFO is used only for the tools listed in the system property
+ * {@value #PIPE_PROPERTY} (e.g. -Dfis4knime.pipe=wm,ols,perf): a tool that
+ * reads its dataset more than once, or seeks in it, must use the temporary
+ * file, which is also the fallback when the FIFO cannot be created.
+ *
+ * @author Antonio Di Mauro
+ */
+public class FisDatasetPipe implements Closeable {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisDatasetPipe.class);
+
+	/**
+	 * System property listing the tools that read the dataset from a FIFO,
+	 * "*" for all the tools that support it
+	 */
+	public static final String PIPE_PROPERTY = "fis4knime.pipe";
+
+	private final BufferedDataTable mTable;
+	private final File mFile;
+	private final boolean mHeader;
+	private final ExecutionMonitor mExec;
+	private Thread mWriter;
+	private volatile boolean mDone;
+	private volatile Exception mError;
+
+	private FisDatasetPipe(BufferedDataTable t, File file, boolean header, ExecutionMonitor exec) {
+		mTable = t;
+		mFile = file;
+		mHeader = header;
+		mExec = exec;
+	}
+
+	/**
+	 * Prepare the dataset for a FisPro tool
+	 *
+	 * When the tool streams its input the FIFO is created and the rows are
+	 * written as soon as the tool opens it, otherwise the file is written
+	 * before returning.
+	 *
+	 * @param t
+	 *            data table
+	 * @param file
+	 *            dataset path passed to the tool
+	 * @param header
+	 *            true to write the column names as first line
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 * @param tool
+	 *            name of the FisPro tool reading the dataset
+	 *
+	 * @return the dataset, call {@link #finish()} when the tool has exited
+	 *
+	 * @throws IOException
+	 *             if the temporary file cannot be written
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static FisDatasetPipe open(BufferedDataTable t, File file, boolean header, ExecutionMonitor exec,
+			String tool) throws IOException, CanceledExecutionException {
+
+		FisDatasetPipe pipe = new FisDatasetPipe(t, file, header, exec);
+		if (isEnabled(tool) && mkfifo(file)) {
+			pipe.mWriter = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					pipe.stream();
+				}
+			}, "FisDatasetPipe-" + tool);
+			pipe.mWriter.setDaemon(true);
+			pipe.mWriter.start();
+		} else {
+			FisDatasetWriter.write(t, file, header, exec);
+			pipe.mDone = true;
+		}
+		return pipe;
+	}
+
+	/**
+	 * Write the rows into the FIFO, run by the writer thread
+	 */
+	private void stream() {
+
+		try {
+			// blocks until the tool opens the FIFO for reading
+			try (FisDatasetWriter write = new FisDatasetWriter(new FileOutputStream(mFile))) {
+				if (mHeader)
+					write.writeHeader(mTable.getDataTableSpec().getColumnNames());
+				write.writeRows(mTable, mExec);
+			}
+			mDone = true;
+		} catch (IOException | CanceledExecutionException e) {
+			mError = e;
+		}
+	}
+
+	/**
+	 * @param tool
+	 *            name of the FisPro tool
+	 *
+	 * @return true if the tool reads its dataset from a FIFO
+	 */
+	public static boolean isEnabled(String tool) {
+
+		if (File.separatorChar == '\\')
+			return false;
+		String tools = System.getProperty(PIPE_PROPERTY, "");
+		for (String s : tools.split(","))
+			if (s.trim().equals("*") || s.trim().equals(tool))
+				return true;
+		return false;
+	}
+
+	/**
+	 * Create a FIFO with the mkfifo command
+	 */
+	private static boolean mkfifo(File file) {
+
+		try {
+			Process p = new ProcessBuilder("mkfifo", file.getPath()).redirectErrorStream(true).start();
+			p.getInputStream().close();
+			if (p.waitFor() == 0)
+				return true;
+		} catch (IOException e) {
+			// fall back to the temporary file
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		LOGGER.warn("FIFO " + file.getPath() + " NOT created, the dataset is written to a file.");
+		return false;
+	}
+
+	/**
+	 * @return true if the rows are streamed through a FIFO
+	 */
+	public boolean isStreaming() {
+		return mWriter != null;
+	}
+
+	/**
+	 * @return dataset path passed to the tool
+	 */
+	public File getFile() {
+		return mFile;
+	}
+
+	/**
+	 * Wait until all the rows have been written, to be called when the tool
+	 * has exited
+	 *
+	 * @return true if the tool received the whole dataset
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution was canceled while streaming
+	 */
+	public boolean finish() throws CanceledExecutionException {
+
+		close();
+		if (mError instanceof CanceledExecutionException)
+			throw (CanceledExecutionException) mError;
+		if (mError != null)
+			LOGGER.error("Dataset NOT streamed to " + mFile.getName() + ": " + mError.getMessage());
+		return mDone;
+	}
+
+	/**
+	 * Stop the writer if the tool exited before reading the whole dataset
+	 */
+	@Override
+	public void close() {
+
+		if (mWriter == null)
+			return;
+		try {
+			mWriter.join(100);
+			if (mWriter.isAlive()) {
+				/*
+				 * the tool is gone: opening the FIFO read-write never blocks,
+				 * it releases a writer waiting for a reader and, once closed,
+				 * makes its pending writes fail
+				 */
+				new RandomAccessFile(mFile, "rw").close();
+				mWriter.join();
+			}
+		} catch (IOException e) {
+			LOGGER.error("FIFO " + mFile.getPath() + " NOT closed.");
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,347 @@
+package port;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Buffered writer of the dataset files read by the FisPro binaries
+ *
+ * Numeric cells are formatted straight into the output buffer (up to 15
+ * significant digits) so that exporting a table does not build a String per
+ * cell or per row. A value that does not read back exactly from 15 digits is
+ * written by {@link Double#toString(double)}: the file holds the same doubles
+ * as the table.
+ *
+ * @author Antonio Di Mauro
+ */
+public class FisDatasetWriter implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final int DIGITS = 15;
+	private static final char SEP = ',';
+	private static final byte[] MISSING = { '?' };
+	private static final Charset CHARSET = Charset.defaultCharset();
+
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10.0;
+	}
+
+	private final OutputStream mOut;
+	private final byte[] mBuf = new byte[BUFFER_SIZE];
+	private final byte[] mDigits = new byte[DIGITS + 5];
+	private int mPos;
+
+	/**
+	 * @param out
+	 *            destination stream, closed by {@link #close()}
+	 */
+	public FisDatasetWriter(OutputStream out) {
+		mOut = out;
+	}
+
+	/**
+	 * Write a whole table as a csv file
+	 *
+	 * @param t
+	 *            data table
+	 * @param file
+	 *            destination file
+	 * @param header
+	 *            true to write the column names as first line
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return number of rows written
+	 *
+	 * @throws IOException
+	 *             if the file cannot be written
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static long write(BufferedDataTable t, File file, boolean header, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+
+		try (FisDatasetWriter write = new FisDatasetWriter(new FileOutputStream(file))) {
+			if (header)
+				write.writeHeader(t.getDataTableSpec().getColumnNames());
+			return write.writeRows(t, exec);
+		}
+	}
+
+	/**
+	 * Write the column names line
+	 *
+	 * @param names
+	 *            column names
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void writeHeader(String[] names) throws IOException {
+		for (int i = 0; i < names.length; i++) {
+			if (i > 0)
+				writeByte(SEP);
+			writeBytes(names[i].getBytes(CHARSET));
+		}
+		writeByte('\n');
+	}
+
+	/**
+	 * Write all the rows of a table
+	 *
+	 * @param t
+	 *            data table
+	 * @param exec
+	 *            execution monitor for progress and cancellation, may be
+	 *            null
+	 *
+	 * @return number of rows written
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public long writeRows(Iterable<DataRow> t, ExecutionMonitor exec) throws IOException, CanceledExecutionException {
+
+		long size = t instanceof BufferedDataTable ? ((BufferedDataTable) t).size() : 0;
+		long n = 0;
+		Iterator<DataRow> it = t.iterator();
+		try {
+			while (it.hasNext()) {
+				writeRow(it.next());
+				n++;
+				if (exec != null && (n & 0x3FF) == 0) {
+					exec.checkCanceled();
+					if (size > 0)
+						exec.setProgress((double) n / size, "Exporting dataset");
+				}
+			}
+		} finally {
+			if (it instanceof CloseableRowIterator)
+				((CloseableRowIterator) it).close();
+		}
+		return n;
+	}
+
+	/**
+	 * Write a row as a csv line
+	 *
+	 * @param row
+	 *            data row
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void writeRow(DataRow row) throws IOException {
+		int n = row.getNumCells();
+		for (int i = 0; i < n; i++) {
+			if (i > 0)
+				writeByte(SEP);
+			writeCell(row.getCell(i));
+		}
+		writeByte('\n');
+	}
+
+	/**
+	 * Write a single cell, missing cells are written as '?'
+	 */
+	private void writeCell(DataCell cell) throws IOException {
+		if (cell.isMissing())
+			writeBytes(MISSING);
+		else if (cell instanceof DoubleValue)
+			writeDouble(((DoubleValue) cell).getDoubleValue());
+		else
+			writeBytes(cell.toString().getBytes(CHARSET));
+	}
+
+	/**
+	 * Write a row of values as a csv line
+	 *
+	 * @param values
+	 *            row values
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void writeRow(double[] values) throws IOException {
+		for (int i = 0; i < values.length; i++) {
+			if (i > 0)
+				writeByte(SEP);
+			writeDouble(values[i]);
+		}
+		writeByte('\n');
+	}
+
+	/**
+	 * Write a double, without allocating if up to 15 significant digits read
+	 * it back exactly
+	 *
+	 * @param v
+	 *            value
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void writeDouble(double v) throws IOException {
+
+		if (Double.isNaN(v) || Double.isInfinite(v)) {
+			writeBytes(MISSING);
+			return;
+		}
+		if (mPos + 32 > mBuf.length)
+			flushBuffer();
+		if (v < 0 || (v == 0 && 1 / v < 0)) {
+			mBuf[mPos++] = '-';
+			v = -v;
+		}
+		if (v == 0) {
+			mBuf[mPos++] = '0';
+			return;
+		}
+		if (v < 1e15 && v == Math.rint(v)) {
+			writeLong((long) v);
+			return;
+		}
+
+		// mantissa with DIGITS significant digits and decimal exponent
+		int exp = (int) Math.floor(Math.log10(v));
+		if (exp > 290 || exp < -290) {
+			// rare, keep the exact representation near the double limits
+			writeBytes(Double.toString(v).getBytes(CHARSET));
+			return;
+		}
+		int shift = DIGITS - 1 - exp;
+		double scaled = shift >= 0 ? v * pow10(shift) : v / pow10(-shift);
+		long mant = Math.round(scaled);
+		if (mant >= (long) POW10[DIGITS]) {
+			mant /= 10;
+			exp++;
+		} else if (mant < (long) POW10[DIGITS - 1]) {
+			mant = Math.round(scaled * 10);
+			exp--;
+		}
+		// the mantissa and the power of ten are exact doubles, so a single
+		// division or product is correctly rounded, as the parsing of the
+		// digits: the value is kept only if it reads back the same
+		shift = DIGITS - 1 - exp;
+		if (shift > 22 || shift < -22 || (shift >= 0 ? mant / POW10[shift] : mant * POW10[-shift]) != v) {
+			writeBytes(Double.toString(v).getBytes(CHARSET));
+			return;
+		}
+
+		// significant digits, most significant first, without trailing zeros
+		for (int k = DIGITS - 1; k >= 0; k--) {
+			mDigits[k] = (byte) ('0' + mant % 10);
+			mant /= 10;
+		}
+		int nd = DIGITS;
+		while (nd > 1 && mDigits[nd - 1] == '0')
+			nd--;
+
+		if (exp >= 0 && exp < DIGITS) {
+			// d.ddd with exp + 1 digits before the point
+			for (int k = 0; k <= exp; k++)
+				mBuf[mPos++] = k < nd ? mDigits[k] : (byte) '0';
+			if (nd > exp + 1) {
+				mBuf[mPos++] = '.';
+				for (int k = exp + 1; k < nd; k++)
+					mBuf[mPos++] = mDigits[k];
+			}
+		} else if (exp < 0 && exp >= -6) {
+			// 0.000ddd
+			mBuf[mPos++] = '0';
+			mBuf[mPos++] = '.';
+			for (int k = -1; k > exp; k--)
+				mBuf[mPos++] = '0';
+			for (int k = 0; k < nd; k++)
+				mBuf[mPos++] = mDigits[k];
+		} else {
+			// d.dddE-x
+			mBuf[mPos++] = mDigits[0];
+			if (nd > 1) {
+				mBuf[mPos++] = '.';
+				for (int k = 1; k < nd; k++)
+					mBuf[mPos++] = mDigits[k];
+			}
+			mBuf[mPos++] = 'E';
+			if (exp < 0) {
+				mBuf[mPos++] = '-';
+				exp = -exp;
+			}
+			writeLong(exp);
+		}
+	}
+
+	private static double pow10(int n) {
+		return n < POW10.length ? POW10[n] : Math.pow(10, n);
+	}
+
+	private void writeLong(long v) {
+		int nd = 0;
+		do {
+			mDigits[nd++] = (byte) ('0' + v % 10);
+			v /= 10;
+		} while (v > 0);
+		while (nd > 0)
+			mBuf[mPos++] = mDigits[--nd];
+	}
+
+	private void writeByte(char c) throws IOException {
+		if (mPos == mBuf.length)
+			flushBuffer();
+		mBuf[mPos++] = (byte) c;
+	}
+
+	private void writeBytes(byte[] b) throws IOException {
+		if (mPos + b.length > mBuf.length)
+			flushBuffer();
+		if (b.length > mBuf.length) {
+			mOut.write(b);
+			return;
+		}
+		System.arraycopy(b, 0, mBuf, mPos, b.length);
+		mPos += b.length;
+	}
+
+	private void flushBuffer() throws IOException {
+		mOut.write(mBuf, 0, mPos);
+		mPos = 0;
+	}
+
+	/**
+	 * Flush the buffer to the stream
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		mOut.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			mOut.close();
+		}
+	}
+}
@@ -0,0 +1,540 @@
+package port;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * In-JVM inference engine for a FisPro Fuzzy Inference System
+ * 
+ * All buffers are allocated once in the constructor so that inference does not
+ * allocate per row. An engine is not thread safe: use one instance per thread.
+ * 
+ * A missing input value is handled by the MissingValues option of the system,
+ * as FisPro does: 'mean' gives the degree 1/n to each of the n MFs of the
+ * input, 'random' gives random degrees summing to 1 (drawn by the engine, so
+ * not the same values as FisPro). The random degrees are derived from the
+ * input values of the row, so a row gets the same degrees whatever the
+ * engine or the thread inferring it.
+ * 
+ * The area defuzzification is the centre of gravity of the possibility
+ * distribution of the output: the union of the MFs clipped by their
+ * activation for the max disjunction, their sum for the sum disjunction.
+ * 
+ * @author Antonio Di Mauro
+ */
+public class FisEngine {
+
+	/**
+	 * Alarm codes reported in the "Al" column
+	 */
+	public static final int NO_ALARM = 0;
+	public static final int ALARM_NO_RULE = 1;
+	public static final int ALARM_AMBIGUITY = 2;
+
+	/**
+	 * Number of perf metrics: OBS, INF, Al, ERR, Bl, CERR2
+	 */
+	public static final int PERF_SIZE = 6;
+
+	private static final int CONJ_MIN = 0;
+	private static final int CONJ_PROD = 1;
+	private static final int CONJ_LUKA = 2;
+
+	private final FisSystem mSys;
+	private final FisLookup mLookup;
+	private final boolean mMeanMissing;
+	private final int mNumInputs;
+	private final int mNumOutputs;
+	private final int mNumRules;
+	private final int mConj;
+
+	private final int[] mMfOffset;
+	private final double[] mDegrees;
+	private final double[] mAlpha;
+
+	private final int[][] mRuleClass;
+	private final double[][] mClassValues;
+	private final double[][] mAgg;
+	private final double[][][] mTrap;
+	private final boolean[] mMaxDisj;
+
+	// area defuzzification: breakpoints of the clipped MFs, values of each MF
+	// at the ends of a segment, crossings of two MFs in a segment
+	private final double[] mBreaks;
+	private final double[] mLeft;
+	private final double[] mRight;
+	private final double[] mCross;
+
+	private final double[] mInferred;
+	private final int[] mAlarm;
+	private boolean mBlank;
+	private double mCErr2;
+
+	/**
+	 * Create an engine for a system
+	 * 
+	 * @param sys
+	 *            parsed fuzzy inference system
+	 */
+	public FisEngine(FisSystem sys) {
+		this(sys, null);
+	}
+
+	/**
+	 * Create an engine for a system, the input MF degrees being read from
+	 * lookup tables
+	 * 
+	 * @param sys
+	 *            parsed fuzzy inference system
+	 * @param lookup
+	 *            tables of the input MFs of the system, null to evaluate the
+	 *            MFs exactly
+	 */
+	public FisEngine(FisSystem sys, FisLookup lookup) {
+
+		sys.checkMfTypes();
+		mSys = sys;
+		mLookup = lookup;
+		mMeanMissing = sys.getMissingValues().equalsIgnoreCase("mean");
+		mNumInputs = sys.getNumInputs();
+		mNumOutputs = sys.getNumOutputs();
+		mNumRules = sys.getNumRules();
+
+		String conj = sys.getConjunction();
+		if (conj.equalsIgnoreCase("prod"))
+			mConj = CONJ_PROD;
+		else if (conj.equalsIgnoreCase("luka"))
+			mConj = CONJ_LUKA;
+		else
+			mConj = CONJ_MIN;
+
+		mMfOffset = new int[mNumInputs + 1];
+		for (int i = 0; i < mNumInputs; i++)
+			mMfOffset[i + 1] = mMfOffset[i] + sys.getInput(i).getNumMfs();
+		mDegrees = new double[mMfOffset[mNumInputs]];
+		mAlpha = new double[mNumRules];
+
+		mRuleClass = new int[mNumOutputs][mNumRules];
+		mClassValues = new double[mNumOutputs][];
+		mAgg = new double[mNumOutputs][];
+		mTrap = new double[mNumOutputs][][];
+		mMaxDisj = new boolean[mNumOutputs];
+		for (int o = 0; o < mNumOutputs; o++) {
+			FisVariable out = sys.getOutput(o);
+			mMaxDisj[o] = out.getDisjunction().equalsIgnoreCase("max");
+			if (out.isFuzzy()) {
+				int n = out.getNumMfs();
+				mTrap[o] = new double[n][];
+				for (int k = 0; k < n; k++)
+					mTrap[o][k] = out.trapezoidOf(k);
+				for (int r = 0; r < mNumRules; r++) {
+					int k = (int) sys.getConclusion(r, o) - 1;
+					mRuleClass[o][r] = (k >= 0 && k < n) ? k : -1;
+				}
+				mClassValues[o] = new double[0];
+				mAgg[o] = new double[n];
+			} else {
+				// crisp output: group the rules by distinct conclusion
+				List<Double> values = new ArrayList<Double>();
+				for (int r = 0; r < mNumRules; r++) {
+					Double v = sys.getConclusion(r, o);
+					int k = values.indexOf(v);
+					if (k < 0) {
+						k = values.size();
+						values.add(v);
+					}
+					mRuleClass[o][r] = k;
+				}
+				mClassValues[o] = new double[values.size()];
+				for (int k = 0; k < values.size(); k++)
+					mClassValues[o][k] = values.get(k);
+				mAgg[o] = new double[values.size()];
+			}
+		}
+
+		int maxMfs = 0;
+		for (int o = 0; o < mNumOutputs; o++)
+			maxMfs = Math.max(maxMfs, sys.getOutput(o).isFuzzy() ? sys.getOutput(o).getNumMfs() : 0);
+		mBreaks = new double[4 * maxMfs];
+		mLeft = new double[maxMfs];
+		mRight = new double[maxMfs];
+		mCross = new double[maxMfs * (maxMfs - 1) / 2 + 2];
+
+		mInferred = new double[mNumOutputs];
+		mAlarm = new int[mNumOutputs];
+	}
+
+	public FisSystem getSystem() {
+		return mSys;
+	}
+
+	/**
+	 * Infer all the outputs for a data item
+	 * 
+	 * @param x
+	 *            input values (at least one per input, NaN for missing)
+	 * 
+	 * @return number of fired rules
+	 */
+	public int infer(double[] x) {
+
+		// membership degrees of every input MF
+		for (int i = 0; i < mNumInputs; i++) {
+			FisVariable in = mSys.getInput(i);
+			int off = mMfOffset[i];
+			double v = x[i];
+			if (Double.isNaN(v))
+				missingDegrees(x, i, mDegrees, off);
+			else if (mLookup == null || !mLookup.degrees(i, v, mDegrees, off)) {
+				for (int k = 0; k < mMfOffset[i + 1] - off; k++)
+					mDegrees[off + k] = in.degree(k, v);
+			}
+		}
+
+		// rule activations
+		int fired = 0;
+		for (int r = 0; r < mNumRules; r++) {
+			double a = 1.0;
+			for (int i = 0; i < mNumInputs && a > 0; i++) {
+				int p = mSys.getPremise(r, i);
+				if (p == 0 || !mSys.getInput(i).isActive())
+					continue;
+				double mu = p > 0 ? mDegrees[mMfOffset[i] + p - 1] : 1.0 - mDegrees[mMfOffset[i] - p - 1];
+				if (mConj == CONJ_MIN)
+					a = mu < a ? mu : a;
+				else if (mConj == CONJ_PROD)
+					a *= mu;
+				else
+					a = Math.max(0.0, a + mu - 1.0);
+			}
+			a *= mSys.getWeight(r);
+			mAlpha[r] = a;
+			if (a > 0)
+				fired++;
+		}
+
+		for (int o = 0; o < mNumOutputs; o++)
+			inferOutput(o);
+		mBlank = fired == 0;
+		return fired;
+	}
+
+	/**
+	 * Set the degrees of the MFs of an input whose value is missing, by the
+	 * MissingValues option of the system
+	 * 
+	 * @param x
+	 *            input values of the row, NaN for missing
+	 * @param i
+	 *            input index
+	 * @param deg
+	 *            degrees of all the input MFs, laid out as {@link #infer}
+	 *            fills them
+	 * @param off
+	 *            index of the first MF of the input in deg
+	 */
+	void missingDegrees(double[] x, int i, double[] deg, int off) {
+
+		int n = mMfOffset[i + 1] - mMfOffset[i];
+		if (mMeanMissing) {
+			for (int k = 0; k < n; k++)
+				deg[off + k] = 1.0 / n;
+			return;
+		}
+		// seed from the input values of the row
+		long seed = mix(i);
+		for (int j = 0; j < mNumInputs; j++)
+			seed = mix(seed ^ Double.doubleToLongBits(x[j]));
+		double sum = 0.0;
+		for (int k = 0; k < n; k++) {
+			deg[off + k] = (mix(seed + (k + 1) * 0x9E3779B97F4A7C15L) >>> 11) * 0x1.0p-53;
+			sum += deg[off + k];
+		}
+		for (int k = 0; k < n && sum > 0; k++)
+			deg[off + k] /= sum;
+	}
+
+	/**
+	 * Replace the degrees of the missing input values, for degrees computed
+	 * outside the engine
+	 * 
+	 * @param x
+	 *            input values, NaN for missing
+	 * @param deg
+	 *            degrees of all the input MFs
+	 */
+	void missingDegrees(double[] x, double[] deg) {
+		for (int i = 0; i < mNumInputs; i++) {
+			if (Double.isNaN(x[i]))
+				missingDegrees(x, i, deg, mMfOffset[i]);
+		}
+	}
+
+	/**
+	 * SplitMix64 finalizer, spreading the bits of a value
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/**
+	 * Aggregate the rule activations of one output
+	 */
+	private void inferOutput(int o) {
+
+		double[] agg = mAgg[o];
+		int[] cls = mRuleClass[o];
+		for (int k = 0; k < agg.length; k++)
+			agg[k] = 0.0;
+		for (int r = 0; r < mNumRules; r++) {
+			int k = cls[r];
+			if (k < 0 || mAlpha[r] <= 0)
+				continue;
+			if (mMaxDisj[o])
+				agg[k] = mAlpha[r] > agg[k] ? mAlpha[r] : agg[k];
+			else
+				agg[k] += mAlpha[r];
+		}
+		defuzzify(o, agg);
+	}
+
+	/**
+	 * Defuzzify one output from the aggregated activation of its classes
+	 * 
+	 * @param o
+	 *            output index
+	 * @param agg
+	 *            activation of each class of the output, see
+	 *            {@link #getRuleClass(int, int)}
+	 */
+	void defuzzify(int o, double[] agg) {
+
+		FisVariable out = mSys.getOutput(o);
+		double sum = 0.0;
+		int best = -1;
+		int nBest = 0;
+		for (int k = 0; k < agg.length; k++) {
+			sum += agg[k];
+			if (best < 0 || agg[k] > agg[best]) {
+				best = k;
+				nBest = 1;
+			} else if (agg[k] == agg[best])
+				nBest++;
+		}
+
+		mAlarm[o] = NO_ALARM;
+		if (sum <= 0) {
+			mInferred[o] = out.getDefaultValue();
+			mAlarm[o] = ALARM_NO_RULE;
+			return;
+		}
+
+		String defuz = out.getDefuzzification();
+		if (!out.isFuzzy()) {
+			if (out.isClassif() || defuz.equalsIgnoreCase("MaxCrisp")) {
+				mInferred[o] = mClassValues[o][best];
+				if (nBest > 1)
+					mAlarm[o] = ALARM_AMBIGUITY;
+			} else {
+				double num = 0.0;
+				for (int k = 0; k < agg.length; k++)
+					num += agg[k] * mClassValues[o][k];
+				mInferred[o] = num / sum;
+			}
+		} else if (defuz.equalsIgnoreCase("MeanMax")) {
+			double h = Math.min(1.0, agg[best]);
+			double mid = 0.0;
+			int last = -1;
+			for (int k = 0; k < agg.length; k++) {
+				if (agg[k] != agg[best])
+					continue;
+				double[] t = mTrap[o][k];
+				mid += (t[0] + h * (t[1] - t[0]) + t[3] - h * (t[3] - t[2])) / 2.0;
+				if (last >= 0 && k != last + 1)
+					mAlarm[o] = ALARM_AMBIGUITY;
+				last = k;
+			}
+			mInferred[o] = mid / nBest;
+		} else {
+			mInferred[o] = area(o, agg, best);
+		}
+	}
+
+	/**
+	 * Centre of gravity of the possibility distribution of a fuzzy output: the
+	 * MFs clipped by their activation are combined by max (union) or by sum
+	 * depending on the disjunction. The distribution is linear between the
+	 * breakpoints of the clipped MFs and, for the union, the crossings of two
+	 * MFs, so the integrals are exact.
+	 * 
+	 * @return the centre of gravity, the kernel of the best MF if the
+	 *         distribution is empty
+	 */
+	private double area(int o, double[] agg, int best) {
+
+		double[][] trap = mTrap[o];
+		boolean max = mMaxDisj[o];
+		int nBreaks = 0;
+		for (int k = 0; k < agg.length; k++) {
+			double h = Math.min(1.0, agg[k]);
+			if (h <= 0)
+				continue;
+			double[] t = trap[k];
+			mBreaks[nBreaks++] = t[0];
+			mBreaks[nBreaks++] = t[0] + h * (t[1] - t[0]);
+			mBreaks[nBreaks++] = t[3] - h * (t[3] - t[2]);
+			mBreaks[nBreaks++] = t[3];
+		}
+		Arrays.sort(mBreaks, 0, nBreaks);
+
+		double area = 0.0;
+		double moment = 0.0;
+		for (int b = 1; b < nBreaks; b++) {
+			double a = mBreaks[b - 1];
+			double z = mBreaks[b];
+			if (z <= a)
+				continue;
+			// each clipped MF is linear in the segment: its values at the ends
+			// are extrapolated from two inner points, a vertical side of a MF
+			// being at an end
+			double m1 = a + (z - a) / 3.0;
+			double m2 = a + 2.0 * (z - a) / 3.0;
+			for (int k = 0; k < agg.length; k++) {
+				double h = Math.min(1.0, agg[k]);
+				double y1 = h > 0 ? Math.min(h, FisVariable.degree(FisVariable.MF_TRAPEZOIDAL, trap[k], m1)) : 0.0;
+				double y2 = h > 0 ? Math.min(h, FisVariable.degree(FisVariable.MF_TRAPEZOIDAL, trap[k], m2)) : 0.0;
+				mLeft[k] = 2.0 * y1 - y2;
+				mRight[k] = 2.0 * y2 - y1;
+			}
+			int nCross = 0;
+			mCross[nCross++] = 0.0;
+			if (max) {
+				for (int j = 0; j < agg.length; j++) {
+					for (int k = j + 1; k < agg.length; k++) {
+						double dl = mLeft[j] - mLeft[k];
+						double dr = mRight[j] - mRight[k];
+						if (dl * dr < 0)
+							mCross[nCross++] = dl / (dl - dr);
+					}
+				}
+				Arrays.sort(mCross, 1, nCross);
+			}
+			mCross[nCross++] = 1.0;
+			// the distribution is linear between two crossings
+			double x0 = a;
+			double f0 = distribution(agg.length, 0.0, max);
+			for (int c = 1; c < nCross; c++) {
+				double x1 = a + mCross[c] * (z - a);
+				double f1 = distribution(agg.length, mCross[c], max);
+				double dx = x1 - x0;
+				area += dx * (f0 + f1) / 2.0;
+				moment += dx * (x0 * (2.0 * f0 + f1) + x1 * (f0 + 2.0 * f1)) / 6.0;
+				x0 = x1;
+				f0 = f1;
+			}
+		}
+		return area > 0 ? moment / area : trap[best][1];
+	}
+
+	/**
+	 * Value of the distribution at a fraction of the current segment
+	 */
+	private double distribution(int n, double t, boolean max) {
+
+		double f = 0.0;
+		for (int k = 0; k < n; k++) {
+			double y = mLeft[k] + t * (mRight[k] - mLeft[k]);
+			f = max ? Math.max(f, y) : f + y;
+		}
+		return f;
+	}
+
+	/**
+	 * @return class of the conclusion of a rule for an output: the index of
+	 *         the MF for fuzzy outputs, the index of the distinct value for
+	 *         crisp outputs, -1 if the rule has no valid conclusion
+	 */
+	int getRuleClass(int o, int r) {
+		return mRuleClass[o][r];
+	}
+
+	/**
+	 * @return number of classes of an output
+	 */
+	int getNumClasses(int o) {
+		return mAgg[o].length;
+	}
+
+	/**
+	 * @return distinct rule conclusions of a crisp output, by class
+	 */
+	double[] getClassValues(int o) {
+		return mClassValues[o];
+	}
+
+	/**
+	 * @return inferred value of an output after the last {@link #infer}
+	 */
+	public double getInferred(int o) {
+		return mInferred[o];
+	}
+
+	/**
+	 * @return alarm code of an output after the last {@link #infer}
+	 */
+	public int getAlarm(int o) {
+		return mAlarm[o];
+	}
+
+	/**
+	 * @return true if no rule fired in the last {@link #infer}
+	 */
+	public boolean isBlank() {
+		return mBlank;
+	}
+
+	/**
+	 * Reset the cumulative error of {@link #perf}
+	 */
+	public void resetPerf() {
+		mCErr2 = 0.0;
+	}
+
+	/**
+	 * Compute the perf metrics of a data item, as written by FisPro perf
+	 * 
+	 * @param row
+	 *            inputs followed by the observed outputs (if any)
+	 * @param outNum
+	 *            output number (0 based)
+	 * @param res
+	 *            array of at least {@link #PERF_SIZE} values filled with OBS,
+	 *            INF, Al, ERR, Bl, CERR2
+	 */
+	public void perf(double[] row, int outNum, double[] res) {
+
+		infer(row);
+		int obsIdx = mNumInputs + outNum;
+		double obs = obsIdx < row.length ? row[obsIdx] : Double.NaN;
+		double inf = mInferred[outNum];
+		double err;
+		if (Double.isNaN(obs))
+			err = Double.NaN;
+		else if (mSys.getOutput(outNum).isClassif())
+			err = obs == inf ? 0.0 : 1.0;
+		else
+			err = Math.abs(obs - inf);
+		if (!Double.isNaN(err))
+			mCErr2 += err * err;
+
+		res[0] = obs;
+		res[1] = inf;
+		res[2] = mAlarm[outNum];
+		res[3] = err;
+		res[4] = mBlank ? 1.0 : 0.0;
+		res[5] = mCErr2;
+	}
+}
@@ -0,0 +1,439 @@
+package port;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * In-JVM k-means and regular fuzzy partitions of the variables of a table,
+ * as made by hfpsr for the k-means and regular hierarchy types
+ *
+ * The table is read once into a primitive array for each column. The
+ * vertices of each variable are computed on its sorted values: the regular
+ * partition spans the range of the values, the k-means partition has the
+ * centers of a one dimensional k-means, whose iterations only need binary
+ * searches and prefix sums on the sorted values. The variables are processed
+ * at the same time, and each one is sorted in parallel.
+ *
+ * The configuration is written as hfpsr does: the .fis and the .hfp files
+ * are FisPro configurations, the .hfp one giving the hierarchy type and the
+ * tolerance of each variable, and the .vertex file has a line of vertices
+ * for each variable. The tolerances are only used by the hfp hierarchy.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisHierarchy {
+
+	/**
+	 * Hierarchy types, as numbered by hfpsr
+	 */
+	public static final int HFP = 1;
+	public static final int KMEANS = 2;
+	public static final int REGULAR = 3;
+
+	/**
+	 * Default tolerance of hfpsr
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.01;
+
+	private static final int MAX_ITERATIONS = 300;
+	private static final int HEAP_FRACTION = 2;
+
+	private FisHierarchy() {
+	}
+
+	/**
+	 * Memory needed to partition a table in the JVM
+	 *
+	 * @param rows
+	 *            number of rows
+	 * @param cols
+	 *            number of columns
+	 * @param threads
+	 *            number of worker threads
+	 *
+	 * @return bytes of the columns, and of the sorted values and prefix sums
+	 *         of the variables partitioned at the same time
+	 */
+	public static long getMemory(long rows, int cols, int threads) {
+		return 8 * rows * (cols + 2L * Math.max(1, Math.min(threads, cols)));
+	}
+
+	/**
+	 * @return largest memory of the partitions in bytes, half of the maximum
+	 *         heap
+	 */
+	public static long getMaxMemory() {
+		return Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+	}
+
+	/**
+	 * Read the columns of a table, missing and non numeric cells as NaN
+	 *
+	 * @param t
+	 *            data table
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return the values of each column
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws IllegalArgumentException
+	 *             if the table has more rows than an array
+	 */
+	public static double[][] readColumns(BufferedDataTable t, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+
+		int nCols = t.getDataTableSpec().getNumColumns();
+		if (t.size() > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("The table has " + t.size() + " rows, too many for the JVM");
+		int nRows = (int) t.size();
+		double[][] columns = new double[nCols][nRows];
+		CloseableRowIterator it = t.iterator();
+		try {
+			for (int n = 0; n < nRows && it.hasNext(); n++) {
+				DataRow row = it.next();
+				for (int c = 0; c < nCols; c++) {
+					DataCell cell = row.getCell(c);
+					columns[c][n] = cell instanceof DoubleValue ? ((DoubleValue) cell).getDoubleValue() : Double.NaN;
+				}
+				if ((n & 0x3FF) == 0) {
+					exec.setProgress((double) n / nRows);
+					exec.checkCanceled();
+				}
+			}
+		} finally {
+			it.close();
+		}
+		return columns;
+	}
+
+	/**
+	 * Compute the partition of each variable
+	 *
+	 * @param columns
+	 *            values of each variable
+	 * @param nMfs
+	 *            number of fuzzy sets of each variable, 0 for none
+	 * @param types
+	 *            hierarchy type of each variable, {@link #KMEANS} or
+	 *            {@link #REGULAR}
+	 * @param threads
+	 *            number of worker threads
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return the range (min, max) followed by the vertices of each variable,
+	 *         fewer vertices than fuzzy sets if the variable has fewer
+	 *         distinct values
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 */
+	public static double[][] partitions(final double[][] columns, final int[] nMfs, final int[] types, int threads,
+			ExecutionMonitor exec) throws CanceledExecutionException, InterruptedException {
+
+		final double[][] result = new double[columns.length][];
+		int workers = Math.max(1, Math.min(threads, columns.length));
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		try {
+			List<Future<?>> results = new ArrayList<Future<?>>();
+			for (int v = 0; v < columns.length; v++) {
+				final int var = v;
+				results.add(pool.submit(new Runnable() {
+					@Override
+					public void run() {
+						result[var] = partition(columns[var], nMfs[var], types[var]);
+					}
+				}));
+			}
+			pool.shutdown();
+			int done = 0;
+			for (Future<?> f : results) {
+				while (!f.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				f.get();
+				exec.setProgress((double) ++done / columns.length);
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalArgumentException(e.getCause().getMessage(), e.getCause());
+		} finally {
+			pool.shutdownNow();
+		}
+		return result;
+	}
+
+	/**
+	 * Partition of a variable: its range followed by its vertices
+	 */
+	static double[] partition(double[] column, int nMfs, int type) {
+
+		// the missing values are left out
+		double[] x = new double[column.length];
+		int m = 0;
+		for (double v : column) {
+			if (!Double.isNaN(v))
+				x[m++] = v;
+		}
+		if (m == 0)
+			throw new IllegalArgumentException("A column has no numeric value");
+		x = Arrays.copyOf(x, m);
+		Arrays.parallelSort(x);
+		double[] vertices;
+		if (nMfs <= 0)
+			vertices = new double[0];
+		else if (type == KMEANS)
+			vertices = kmeans(x, nMfs);
+		else
+			vertices = regular(x[0], x[m - 1], nMfs);
+		double[] p = new double[vertices.length + 2];
+		p[0] = x[0];
+		p[1] = x[m - 1];
+		System.arraycopy(vertices, 0, p, 2, vertices.length);
+		return p;
+	}
+
+	/**
+	 * @return n vertices evenly spaced from min to max, the center of the
+	 *         range for one vertex
+	 */
+	static double[] regular(double min, double max, int n) {
+
+		double[] c = new double[n];
+		if (n == 1) {
+			c[0] = (min + max) / 2;
+			return c;
+		}
+		for (int k = 0; k < n; k++)
+			c[k] = min + k * (max - min) / (n - 1);
+		c[n - 1] = max;
+		return c;
+	}
+
+	/**
+	 * One dimensional k-means of sorted values, the centers starting at the
+	 * quantiles. A cluster is a run of the sorted values, bounded by the
+	 * midpoints of the centers, and its mean is read from the prefix sums.
+	 *
+	 * @param x
+	 *            sorted values
+	 * @param n
+	 *            number of clusters
+	 *
+	 * @return the sorted centers, the distinct values if there are at most n
+	 */
+	static double[] kmeans(double[] x, int n) {
+
+		int m = x.length;
+		int distinct = 1;
+		for (int i = 1; i < m && distinct <= n; i++) {
+			if (x[i] != x[i - 1])
+				distinct++;
+		}
+		if (distinct <= n) {
+			double[] c = new double[distinct];
+			c[0] = x[0];
+			for (int i = 1, k = 1; i < m; i++) {
+				if (x[i] != x[i - 1])
+					c[k++] = x[i];
+			}
+			return c;
+		}
+		double[] sum = new double[m + 1];
+		for (int i = 0; i < m; i++)
+			sum[i + 1] = sum[i] + x[i];
+		double[] c = new double[n];
+		for (int k = 0; k < n; k++)
+			c[k] = x[(int) ((k + 0.5) * m / n)];
+		int[] bound = new int[n + 1];
+		bound[n] = m;
+		for (int it = 0; it < MAX_ITERATIONS; it++) {
+			for (int k = 1; k < n; k++)
+				bound[k] = upperBound(x, (c[k - 1] + c[k]) / 2);
+			boolean moved = false;
+			for (int k = 0; k < n; k++) {
+				int size = bound[k + 1] - bound[k];
+				// an empty cluster keeps its center
+				if (size <= 0)
+					continue;
+				double mean = (sum[bound[k + 1]] - sum[bound[k]]) / size;
+				if (mean != c[k]) {
+					c[k] = mean;
+					moved = true;
+				}
+			}
+			if (!moved)
+				break;
+		}
+		return c;
+	}
+
+	/**
+	 * @return index of the first value greater than v
+	 */
+	private static int upperBound(double[] x, double v) {
+		int lo = 0;
+		int hi = x.length;
+		while (lo < hi) {
+			int mid = (lo + hi) >>> 1;
+			if (x[mid] <= v)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+		return lo;
+	}
+
+	/**
+	 * Write the configuration system: the standardized fuzzy partition of
+	 * each variable (semi-trapezoids at the ends, triangles inside, the
+	 * vertices being the kernels), the last variable being the output, and no
+	 * rule
+	 *
+	 * @param name
+	 *            system name
+	 * @param names
+	 *            variable names
+	 * @param partitions
+	 *            range and vertices of each variable, see
+	 *            {@link #partitions}
+	 * @param defuz
+	 *            defuzzification of the output, sugeno for a crisp output
+	 * @param disj
+	 *            disjunction of the output
+	 * @param classif
+	 *            true for a classification output
+	 *
+	 * @return the .fis content
+	 */
+	public static String fis(String name, String[] names, double[][] partitions, String defuz, String disj,
+			boolean classif) {
+		return config(name, names, partitions, null, null, defuz, disj, classif);
+	}
+
+	/**
+	 * Write the hfp configuration: the configuration system, each variable
+	 * also giving its hierarchy type and tolerance
+	 *
+	 * @param name
+	 *            system name
+	 * @param names
+	 *            variable names, the last one being the output
+	 * @param partitions
+	 *            range and vertices of each variable
+	 * @param types
+	 *            hierarchy type of each variable
+	 * @param tolerances
+	 *            tolerance of each variable
+	 * @param defuz
+	 *            defuzzification of the output, sugeno for a crisp output
+	 * @param disj
+	 *            disjunction of the output
+	 * @param classif
+	 *            true for a classification output
+	 *
+	 * @return the .hfp content
+	 */
+	public static String hfp(String name, String[] names, double[][] partitions, int[] types, double[] tolerances,
+			String defuz, String disj, boolean classif) {
+		return config(name, names, partitions, types, tolerances, defuz, disj, classif);
+	}
+
+	private static String config(String name, String[] names, double[][] partitions, int[] types,
+			double[] tolerances, String defuz, String disj, boolean classif) {
+
+		int nInputs = names.length - 1;
+		double[] out = partitions[nInputs];
+		boolean fuzzy = out.length > 2;
+		StringBuilder sb = new StringBuilder();
+		sb.append("[System]\nName='").append(name).append("'\nNinputs=").append(nInputs)
+				.append("\nNoutputs=1\nNrules=0\nNexceptions=0\nConjunction='min'\nMissingValues='random'\n");
+		for (int i = 0; i < nInputs; i++) {
+			sb.append("\n[Input").append(i + 1).append("]\nActive='yes'\nName='").append(names[i]).append("'\n");
+			mfs(sb, names[i], partitions[i]);
+			hierarchy(sb, types, tolerances, i);
+		}
+		sb.append("\n[Output1]\nNature='").append(fuzzy ? "fuzzy" : "crisp").append("'\nDefuzzification='")
+				.append(fuzzy ? defuz : "sugeno").append("'\nDisjunction='").append(disj).append("'\nDefaultValue=")
+				.append(format(out[0])).append("\nClassif='").append(classif ? "yes" : "no")
+				.append("'\nActive='yes'\nName='").append(names[nInputs]).append("'\n");
+		mfs(sb, names[nInputs], out);
+		hierarchy(sb, types, tolerances, nInputs);
+		sb.append("\n[Rules]\n\n[Exceptions]\n");
+		return sb.toString();
+	}
+
+	private static void hierarchy(StringBuilder sb, int[] types, double[] tolerances, int i) {
+		if (types != null)
+			sb.append("Hierarchy=").append(types[i]).append("\nTolerance=").append(format(tolerances[i])).append('\n');
+	}
+
+	private static void mfs(StringBuilder sb, String name, double[] p) {
+
+		int n = p.length - 2;
+		sb.append("Range=[").append(format(p[0])).append(',').append(format(p[1])).append("]\nNMFs=").append(n)
+				.append('\n');
+		for (int k = 0; k < n; k++) {
+			double v = p[k + 2];
+			sb.append("MF").append(k + 1).append("='").append(name).append('_').append(k + 1).append("',");
+			if (n == 1)
+				sb.append("'trapezoidal',[").append(format(p[0])).append(',').append(format(p[0])).append(',')
+						.append(format(p[1])).append(',').append(format(p[1]));
+			else if (k == 0)
+				sb.append("'SemiTrapezoidalInf',[").append(format(p[0])).append(',').append(format(v)).append(',')
+						.append(format(p[k + 3]));
+			else if (k == n - 1)
+				sb.append("'SemiTrapezoidalSup',[").append(format(p[k + 1])).append(',').append(format(v))
+						.append(',').append(format(p[1]));
+			else
+				sb.append("'triangular',[").append(format(p[k + 1])).append(',').append(format(v)).append(',')
+						.append(format(p[k + 3]));
+			sb.append("]\n");
+		}
+	}
+
+	/**
+	 * Write the vertices of the variables, a line for each variable in the
+	 * order of the configuration, an empty line for a crisp output
+	 *
+	 * @param partitions
+	 *            range and vertices of each variable
+	 *
+	 * @return the .vertex content
+	 */
+	public static String vertex(double[][] partitions) {
+
+		StringBuilder sb = new StringBuilder();
+		for (double[] p : partitions) {
+			for (int k = 2; k < p.length; k++) {
+				if (k > 2)
+					sb.append(' ');
+				sb.append(format(p[k]));
+			}
+			sb.append('\n');
+		}
+		return sb.toString();
+	}
+
+	private static String format(double v) {
+		return Double.toString(v);
+	}
+}
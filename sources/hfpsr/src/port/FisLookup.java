@@ -0,0 +1,163 @@
+package port;
+
+/**
+ * Lookup tables of the input MFs of a Fuzzy Inference System, for an
+ * approximate inference
+ *
+ * The degrees of the MFs of each input are sampled at evenly spaced points of
+ * its range, the degrees of a point being contiguous, and a degree is
+ * linearly interpolated between the two nearest points. The tables are read
+ * only, and shared by the engines of all the threads. A value out of the
+ * range, and an input with a discrete MF, are evaluated exactly.
+ *
+ * The interpolation is exact on the linear parts of trapezoidal, triangular
+ * and semi-trapezoidal MFs: their error, the largest at a breakpoint, is
+ * measured when the tables are built. The error of a gaussian MF is bounded
+ * by h^2 / (8 sigma^2), h being the sampling step. The bound of
+ * {@link #getMaxError()} holds for the degrees, and for the rule activations
+ * with the min conjunction. The inferred value may differ more on a row at the
+ * border of the support of the rules: a rule firing with a tiny activation
+ * instead of none changes the default value into its conclusion.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisLookup {
+
+	/**
+	 * Default and largest number of points of a table
+	 */
+	public static final int DEFAULT_RESOLUTION = 1024;
+	public static final int MAX_RESOLUTION = 1 << 16;
+
+	private final int mPoints;
+	private final int[] mNumMfs;
+	private final double[] mMin;
+	private final double[] mMax;
+	private final double[] mScale;
+	// degrees of the MFs at each point, null if the input is evaluated
+	// exactly
+	private final double[][] mTables;
+	private final double mMaxError;
+
+	/**
+	 * Build the tables of the inputs of a system
+	 *
+	 * @param sys
+	 *            parsed fuzzy inference system
+	 * @param resolution
+	 *            number of points of each table, at least 2
+	 */
+	public FisLookup(FisSystem sys, int resolution) {
+
+		sys.checkMfTypes();
+		int nInputs = sys.getNumInputs();
+		mPoints = Math.max(2, Math.min(MAX_RESOLUTION, resolution));
+		mNumMfs = new int[nInputs];
+		mMin = new double[nInputs];
+		mMax = new double[nInputs];
+		mScale = new double[nInputs];
+		mTables = new double[nInputs][];
+		double maxError = 0;
+		for (int i = 0; i < nInputs; i++) {
+			FisVariable in = sys.getInput(i);
+			int n = in.getNumMfs();
+			mNumMfs[i] = n;
+			mMin[i] = in.getRangeMin();
+			mMax[i] = in.getRangeMax();
+			if (n == 0 || !(mMax[i] > mMin[i]) || hasDiscrete(in))
+				continue;
+			double step = (mMax[i] - mMin[i]) / (mPoints - 1);
+			mScale[i] = 1 / step;
+			double[] table = new double[mPoints * n];
+			for (int j = 0; j < mPoints; j++) {
+				double x = j == mPoints - 1 ? mMax[i] : mMin[i] + j * step;
+				for (int k = 0; k < n; k++)
+					table[j * n + k] = in.degree(k, x);
+			}
+			mTables[i] = table;
+			for (int k = 0; k < n; k++)
+				maxError = Math.max(maxError, error(in, k, i, step));
+		}
+		mMaxError = maxError;
+	}
+
+	private static boolean hasDiscrete(FisVariable in) {
+		for (int k = 0; k < in.getNumMfs(); k++) {
+			if (in.getMfType(k) == FisVariable.MF_DISCRETE)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Largest interpolation error of a MF: the bound of a gaussian, the error
+	 * at the breakpoints of a piecewise linear MF, and on both sides of them
+	 * for a step
+	 */
+	private double error(FisVariable in, int k, int i, double step) {
+
+		double[] p = in.getMfParams(k);
+		if (in.getMfType(k) == FisVariable.MF_GAUSSIAN)
+			return Math.min(1, step * step / (8 * p[1] * p[1]));
+		double error = 0;
+		double[] deg = new double[mNumMfs[i]];
+		for (double b : p) {
+			for (double x : new double[] { Math.nextDown(b), b, Math.nextUp(b) }) {
+				if (x < mMin[i] || x > mMax[i])
+					continue;
+				degrees(i, x, deg, 0);
+				error = Math.max(error, Math.abs(deg[k] - in.degree(k, x)));
+			}
+		}
+		return error;
+	}
+
+	/**
+	 * Interpolate the degrees of the MFs of an input
+	 *
+	 * @param i
+	 *            input index
+	 * @param x
+	 *            input value
+	 * @param deg
+	 *            array receiving the degrees
+	 * @param off
+	 *            index of the degree of the first MF in deg
+	 *
+	 * @return false if the input has no table or the value is out of its
+	 *         range (or missing), the degrees must be evaluated exactly
+	 */
+	public boolean degrees(int i, double x, double[] deg, int off) {
+
+		double[] table = mTables[i];
+		if (table == null || !(x >= mMin[i] && x <= mMax[i]))
+			return false;
+		int n = mNumMfs[i];
+		double t = (x - mMin[i]) * mScale[i];
+		int j = (int) t;
+		if (j >= mPoints - 1)
+			j = mPoints - 2;
+		double f = t - j;
+		int lo = j * n;
+		int hi = lo + n;
+		for (int k = 0; k < n; k++) {
+			double a = table[lo + k];
+			deg[off + k] = a + f * (table[hi + k] - a);
+		}
+		return true;
+	}
+
+	/**
+	 * @return number of points of each table
+	 */
+	public int getResolution() {
+		return mPoints;
+	}
+
+	/**
+	 * @return largest difference between an interpolated and an exact degree
+	 */
+	public double getMaxError() {
+		return mMaxError;
+	}
+}
@@ -1,51 +1,251 @@
 package port;
 
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.PrintStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStreamWriter;
 import java.io.Serializable;
-import java.util.Scanner;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import org.knime.core.node.NodeLogger;
 
 public class FisModel implements Serializable {
 
 	private static final long serialVersionUID = 1L;
 
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisModel.class);
+
+	private static final Charset CHARSET = Charset.defaultCharset();
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Parts of the model, stored separately by {@link FisModelPortObject}
+	 */
+	static final int PART_FIS = 0;
+	static final int PART_HFP = 1;
+	static final int PART_VERTEX = 2;
+	static final int PART_MEMBERS = 3;
+	static final int PART_STATE = 4;
+
+	private static final byte FIS_TEXT = 0;
+	private static final byte FIS_BINARY = 1;
+
+	/**
+	 * Raw fis content as read, empty if the model was built from a parsed
+	 * system: it is written back unchanged, and is the only copy of the fis
+	 * when it cannot be parsed
+	 */
 	private String mFisContent = "";
 	private String mHfpContent = "";
 	private String mVertexContent = "";
 	private String mFisFunc;
+	private transient FisSystem mSystem;
+	// members of an ensemble after the first one, mSystem, null if none
+	private transient FisSystem[] mMembers;
+	// learner bookkeeping to update the model with new rows, null if none
+	private transient byte[] mState;
+	// encoded parts not decoded yet, see resolve()
+	private transient byte[][] mPending;
 
 	public FisModel(File fis, String fisFunc) {
 
 		mFisFunc = fisFunc;
 		try {
-			Scanner s = new Scanner(fis);
-			String tmp = "";
-			while (s.hasNextLine()) {
-				tmp += s.nextLine() + "\n";
+			setFisContent(read(fis));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Create a model from an already parsed fis
+	 * 
+	 * @param sys
+	 *            fuzzy inference system
+	 * @param fisFunc
+	 *            name of the function that generated the model
+	 */
+	public FisModel(FisSystem sys, String fisFunc) {
+		mFisFunc = fisFunc;
+		mSystem = sys;
+	}
+
+	/**
+	 * Create an ensemble model, the outputs of the members being aggregated
+	 * by the inference; the first member is the system of the model
+	 * 
+	 * @param members
+	 *            fuzzy inference systems, with the same inputs and outputs
+	 * @param fisFunc
+	 *            name of the function that generated the model
+	 */
+	public FisModel(FisSystem[] members, String fisFunc) {
+		mFisFunc = fisFunc;
+		mSystem = members[0];
+		if (members.length > 1)
+			mMembers = Arrays.copyOfRange(members, 1, members.length);
+	}
+
+	/**
+	 * Create a model from its encoded parts, each part is decoded only when
+	 * it is first used
+	 * 
+	 * @param fisFunc
+	 *            name of the function that generated the model
+	 * @param fis
+	 *            encoded fis part
+	 * @param hfp
+	 *            encoded hfp part, null if none
+	 * @param vertex
+	 *            encoded vertex part, null if none
+	 * @param members
+	 *            encoded members part, null if none
+	 * @param state
+	 *            encoded state part, null if none
+	 */
+	FisModel(String fisFunc, byte[] fis, byte[] hfp, byte[] vertex, byte[] members, byte[] state) {
+		mFisFunc = fisFunc;
+		mPending = new byte[][] { fis, hfp, vertex, members, state };
+	}
+
+	/**
+	 * Encode a part of the model
+	 * 
+	 * @param part
+	 *            one of PART_FIS, PART_HFP, PART_VERTEX, PART_MEMBERS,
+	 *            PART_STATE
+	 * 
+	 * @return encoded part, null if the part is empty
+	 * 
+	 * @throws IOException
+	 *             if the encoding fails
+	 */
+	byte[] encode(int part) throws IOException {
+
+		if (mPending != null && mPending[part] != null)
+			return mPending[part];
+		if (part == PART_HFP)
+			return mHfpContent.isEmpty() ? null : mHfpContent.getBytes(UTF8);
+		if (part == PART_VERTEX)
+			return mVertexContent.isEmpty() ? null : mVertexContent.getBytes(UTF8);
+		if (part == PART_MEMBERS && mMembers == null)
+			return null;
+		if (part == PART_STATE)
+			return mState;
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		if (part == PART_MEMBERS) {
+			out.writeInt(mMembers.length);
+			for (FisSystem member : mMembers)
+				member.writeTo(out);
+		} else if (mFisContent.isEmpty() && mSystem != null) {
+			out.writeByte(FIS_BINARY);
+			mSystem.writeTo(out);
+		} else {
+			out.writeByte(FIS_TEXT);
+			out.write(mFisContent.getBytes(UTF8));
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Decode a part of the model if it has not been decoded yet, the part
+	 * is no longer pending only once its decoded value is set
+	 * 
+	 * @throws IllegalStateException
+	 *             if the members or the binary fis cannot be decoded, the
+	 *             part stays pending
+	 */
+	private synchronized void resolve(int part) {
+
+		if (mPending == null || mPending[part] == null)
+			return;
+		byte[] bytes = mPending[part];
+		if (part == PART_HFP) {
+			mHfpContent = new String(bytes, UTF8);
+		} else if (part == PART_VERTEX) {
+			mVertexContent = new String(bytes, UTF8);
+		} else if (part == PART_STATE) {
+			mState = bytes;
+		} else if (part == PART_MEMBERS) {
+			try {
+				DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+				FisSystem[] members = new FisSystem[in.readInt()];
+				for (int m = 0; m < members.length; m++)
+					members[m] = FisSystem.readFrom(in);
+				mMembers = members;
+			} catch (IOException e) {
+				LOGGER.error("The members of the model could not be decoded", e);
+				throw new IllegalStateException("The members of the model could not be decoded", e);
+			}
+		} else if (bytes[0] == FIS_BINARY) {
+			try {
+				mSystem = FisSystem.readFrom(new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)));
+			} catch (IOException e) {
+				LOGGER.error("The fis of the model could not be decoded", e);
+				throw new IllegalStateException("The fis of the model could not be decoded", e);
 			}
-			s.close();
-			mFisContent = tmp;
-		} catch (FileNotFoundException e) {
+		} else {
+			setFisContent(new String(bytes, 1, bytes.length - 1, UTF8));
+		}
+		mPending[part] = null;
+	}
+
+	/**
+	 * Parse the fis content once, the raw content is kept to write it back
+	 */
+	private void setFisContent(String content) {
+
+		mFisContent = content;
+		try {
+			mSystem = FisSystem.parse(content);
+		} catch (IOException e) {
+			mSystem = null;
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Read a whole text file
+	 */
+	private static String read(File file) throws IOException {
+		return new String(Files.readAllBytes(file.toPath()), CHARSET);
+	}
+
+	/**
+	 * Write a whole text file
+	 */
+	private static File write(String path, String content) {
+
+		File file = new File(path);
+		try {
+			Files.write(file.toPath(), content.getBytes(CHARSET));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return file;
+	}
+
 	/**
 	 * Save the hfp congfig file
 	 */
 	public void setHfp(File hfp) {
 
 		try {
-			Scanner s = new Scanner(hfp);
-			String tmp = "";
-			while (s.hasNextLine()) {
-				tmp += s.nextLine() + "\n";
-			}
-			s.close();
-			mHfpContent = tmp;
-		} catch (FileNotFoundException e) {
+			mHfpContent = read(hfp);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
@@ -56,18 +256,40 @@ public class FisModel implements Serializable {
 	public void setVertex(File vertex) {
 
 		try {
-			Scanner s = new Scanner(vertex);
-			String tmp = "";
-			while (s.hasNextLine()) {
-				tmp += s.nextLine() + "\n";
-			}
-			s.close();
-			mVertexContent = tmp;
-		} catch (FileNotFoundException e) {
+			mVertexContent = read(vertex);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 
+	/**
+	 * Save the hfp config content
+	 */
+	public synchronized void setHfpContent(String hfp) {
+		if (mPending != null)
+			mPending[PART_HFP] = null;
+		mHfpContent = hfp;
+	}
+
+	/**
+	 * Save the vertex content
+	 */
+	public synchronized void setVertexContent(String vertex) {
+		if (mPending != null)
+			mPending[PART_VERTEX] = null;
+		mVertexContent = vertex;
+	}
+
+	/**
+	 * Save the state of the learner, read back to update the model with new
+	 * rows
+	 */
+	public synchronized void setState(byte[] state) {
+		if (mPending != null)
+			mPending[PART_STATE] = null;
+		mState = state;
+	}
+
 	/**
 	 * Return the fis model file
 	 * 
@@ -78,13 +300,13 @@ public class FisModel implements Serializable {
 	 */
 	public File getFis(String path) {
 
+		resolve(PART_FIS);
+		if (!mFisContent.isEmpty() || mSystem == null)
+			return write(path, mFisContent);
 		File fis = new File(path);
-		try {
-			FileOutputStream data = new FileOutputStream(fis);
-			PrintStream write = new PrintStream(data);
-			write.print(mFisContent);
-			write.close();
-		} catch (FileNotFoundException e) {
+		try (Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(fis), CHARSET))) {
+			mSystem.write(out);
+		} catch (IOException e) {
 			e.printStackTrace();
 		}
 		return fis;
@@ -100,18 +322,10 @@ public class FisModel implements Serializable {
 	 */
 	public File getHfp(String path) {
 
-		if (mHfpContent == "")
+		resolve(PART_HFP);
+		if (mHfpContent.isEmpty())
 			return null;
-		File hfp = new File(path);
-		try {
-			FileOutputStream data = new FileOutputStream(hfp);
-			PrintStream write = new PrintStream(data);
-			write.print(mHfpContent);
-			write.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		return hfp;
+		return write(path, mHfpContent);
 	}
 
 	/**
@@ -124,18 +338,107 @@ public class FisModel implements Serializable {
 	 */
 	public File getVertex(String path) {
 
-		if (mVertexContent == "")
+		resolve(PART_VERTEX);
+		if (mVertexContent.isEmpty())
 			return null;
-		File vert = new File(path);
-		try {
-			FileOutputStream data = new FileOutputStream(vert);
-			PrintStream write = new PrintStream(data);
-			write.print(mVertexContent);
-			write.close();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		}
-		return vert;
+		return write(path, mVertexContent);
+	}
+
+	/**
+	 * Return the parsed fis model
+	 * 
+	 * @return parsed fuzzy inference system
+	 * 
+	 * @throws IOException
+	 *             if the fis content is not valid
+	 */
+	public FisSystem getSystem() throws IOException {
+
+		resolve(PART_FIS);
+		if (mSystem == null)
+			mSystem = FisSystem.parse(mFisContent);
+		return mSystem;
+	}
+
+	/**
+	 * Return the variables and the number of rules of the model, without
+	 * decoding its rule base if it is not decoded yet
+	 * 
+	 * @return a fuzzy inference system describing the model, not to be
+	 *         inferred
+	 * 
+	 * @throws IOException
+	 *             if the fis content is not valid
+	 */
+	synchronized FisSystem getHeader() throws IOException {
+
+		byte[] bytes = mPending == null ? null : mPending[PART_FIS];
+		if (bytes == null)
+			return getSystem();
+		if (bytes[0] == FIS_BINARY)
+			return FisSystem.readHeader(new DataInputStream(new ByteArrayInputStream(bytes, 1, bytes.length - 1)));
+		return FisSystem.parseHeader(new String(bytes, 1, bytes.length - 1, UTF8));
+	}
+
+	/**
+	 * Return the members of the model, the system alone if it is not an
+	 * ensemble
+	 * 
+	 * @return parsed fuzzy inference systems, the first one being the system
+	 *         of the model
+	 * 
+	 * @throws IOException
+	 *             if the fis content is not valid
+	 */
+	public FisSystem[] getMembers() throws IOException {
+
+		FisSystem sys = getSystem();
+		resolve(PART_MEMBERS);
+		if (mMembers == null)
+			return new FisSystem[] { sys };
+		FisSystem[] members = new FisSystem[mMembers.length + 1];
+		members[0] = sys;
+		System.arraycopy(mMembers, 0, members, 1, mMembers.length);
+		return members;
+	}
+
+	/**
+	 * @return number of members, 1 if the model is not an ensemble
+	 */
+	public int getNumMembers() {
+		resolve(PART_MEMBERS);
+		return mMembers == null ? 1 : mMembers.length + 1;
+	}
+
+	/**
+	 * @return the hfp config content, empty if the model has none
+	 */
+	public String getHfpContent() {
+		resolve(PART_HFP);
+		return mHfpContent;
+	}
+
+	/**
+	 * @return the vertex content, empty if the model has none
+	 */
+	public String getVertexContent() {
+		resolve(PART_VERTEX);
+		return mVertexContent;
+	}
+
+	/**
+	 * @return the state of the learner, null if the model cannot be updated
+	 */
+	public byte[] getState() {
+		resolve(PART_STATE);
+		return mState;
+	}
+
+	/**
+	 * @return name of the function that generated the model
+	 */
+	public String getFisFunc() {
+		return mFisFunc;
 	}
 
 	/**
@@ -144,7 +447,36 @@ public class FisModel implements Serializable {
 	 * @return string rapresenting model's summary
 	 */
 	public String getSum() {
-		return "Fis Model generated by: " + mFisFunc;
+
+		resolve(PART_FIS);
+		String sum = "Fis Model generated by: " + mFisFunc;
+		if (mSystem != null)
+			sum += " (" + mSystem.getNumInputs() + " inputs, " + mSystem.getNumOutputs() + " outputs, "
+					+ mSystem.getNumRules() + " rules"
+					+ (getNumMembers() > 1 ? ", " + getNumMembers() + " members" : "") + ")";
+		return sum;
+	}
+
+	/**
+	 * The fis is serialized as .fis text, as read if the model was read from
+	 * a file, so that models saved before the parsed representation can still
+	 * be loaded, only the first member of an ensemble is kept
+	 */
+	private void writeObject(ObjectOutputStream out) throws IOException {
+
+		resolve(PART_FIS);
+		resolve(PART_HFP);
+		resolve(PART_VERTEX);
+		String raw = mFisContent;
+		if (raw.isEmpty() && mSystem != null)
+			mFisContent = mSystem.toString();
+		out.defaultWriteObject();
+		mFisContent = raw;
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+		in.defaultReadObject();
+		setFisContent(mFisContent);
 	}
 
 }
@@ -1,8 +1,9 @@
 package port;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.util.zip.ZipEntry;
 
 import javax.swing.JComponent;
@@ -52,25 +53,35 @@ public class FisModelPortObject implements PortObject {
 	/**
 	 * Save the port object in the output stream
 	 * 
+	 * Layout (version 2): a header entry with the format version and the
+	 * generating function, then one entry per non empty part of the model
+	 * (fis, hfp, vertex, members, state), each holding a length-prefixed byte
+	 * array. A model without members is written as version 1, which previous
+	 * versions read; they skip the state entry, which is not needed to use
+	 * the model.
+	 * 
 	 * @param out
 	 *            output stream
 	 */
 	private void save(final PortObjectZipOutputStream out) {
-		ObjectOutputStream oo = null;
 		try {
-			out.putNextEntry(new ZipEntry("fismodel.objectout"));
-			oo = new ObjectOutputStream(new NonClosableOutputStream.Zip(out));
-			oo.writeObject(mModel);
+			out.putNextEntry(new ZipEntry(HEADER_ENTRY));
+			DataOutputStream header = new DataOutputStream(new NonClosableOutputStream.Zip(out));
+			header.writeInt(mModel.getNumMembers() > 1 ? VERSION : 1);
+			header.writeUTF(mModel.getFisFunc());
+			header.flush();
+			for (int part = 0; part < PART_ENTRIES.length; part++) {
+				byte[] bytes = mModel.encode(part);
+				if (bytes == null)
+					continue;
+				out.putNextEntry(new ZipEntry(PART_ENTRIES[part]));
+				DataOutputStream data = new DataOutputStream(new NonClosableOutputStream.Zip(out));
+				data.writeInt(bytes.length);
+				data.write(bytes);
+				data.flush();
+			}
 		} catch (IOException ioe) {
 			LOGGER.error("Internal error: Could not save settings", ioe);
-		} finally {
-			if (oo != null) {
-				try {
-					oo.close();
-				} catch (Exception e) {
-					LOGGER.debug("Could not close stream", e);
-				}
-			}
 		}
 	}
 
@@ -83,14 +94,58 @@ public class FisModelPortObject implements PortObject {
 	 *            FisModelPortObjectSpec
 	 * 
 	 * @return Fispro Model
+	 * 
+	 * @throws IOException
+	 *             if the model cannot be read or was saved with a newer
+	 *             format
 	 */
-	private static FisModelPortObject load(final PortObjectZipInputStream in, final FisModelPortObjectSpec spec) {
-		ObjectInputStream oi = null;
+	private static FisModelPortObject load(final PortObjectZipInputStream in, final FisModelPortObjectSpec spec)
+			throws IOException {
 		FisModel model = null;
 		try {
-			// load classifier
 			ZipEntry zentry = in.getNextEntry();
-			assert zentry.getName().equals("fismodel.objectout");
+			if (zentry.getName().equals(LEGACY_ENTRY))
+				return new FisModelPortObject(loadLegacy(in), spec);
+			assert zentry.getName().equals(HEADER_ENTRY);
+			DataInputStream header = new DataInputStream(new NonClosableInputStream.Zip(in));
+			int version = header.readInt();
+			if (version > VERSION)
+				throw new IOException("Fis model saved with a newer format (version " + version + ")");
+			String fisFunc = header.readUTF();
+
+			// parts are read as bytes and decoded by the model on first use
+			byte[][] parts = new byte[PART_ENTRIES.length][];
+			while ((zentry = in.getNextEntry()) != null) {
+				for (int part = 0; part < PART_ENTRIES.length; part++) {
+					if (zentry.getName().equals(PART_ENTRIES[part])) {
+						DataInputStream data = new DataInputStream(new NonClosableInputStream.Zip(in));
+						parts[part] = new byte[data.readInt()];
+						data.readFully(parts[part]);
+					}
+				}
+			}
+			model = new FisModel(fisFunc, parts[FisModel.PART_FIS], parts[FisModel.PART_HFP],
+					parts[FisModel.PART_VERTEX], parts[FisModel.PART_MEMBERS],
+					parts[FisModel.PART_STATE]);
+		} catch (IOException e) {
+			LOGGER.error("Internal error: Could not load settings", e);
+			throw e;
+		}
+		return new FisModelPortObject(model, spec);
+	}
+
+	/**
+	 * Load a model saved with Java serialization by previous versions
+	 * 
+	 * @param in
+	 *            input stream positioned on the legacy entry
+	 * 
+	 * @return Fispro Model
+	 */
+	private static FisModel loadLegacy(final PortObjectZipInputStream in) {
+		ObjectInputStream oi = null;
+		FisModel model = null;
+		try {
 			oi = new ObjectInputStream(new NonClosableInputStream.Zip(in));
 			model = (FisModel) oi.readObject();
 		} catch (IOException | ClassNotFoundException e) {
@@ -104,9 +159,15 @@ public class FisModelPortObject implements PortObject {
 				}
 			}
 		}
-		return new FisModelPortObject(model, spec);
+		return model;
 	}
 
+	private static final int VERSION = 2;
+	private static final String LEGACY_ENTRY = "fismodel.objectout";
+	private static final String HEADER_ENTRY = "fismodel.header";
+	private static final String[] PART_ENTRIES = { "fismodel.fis", "fismodel.hfp", "fismodel.vertex",
+			"fismodel.members", "fismodel.state" };
+
 	public static final PortType TYPE = PortTypeRegistry.getInstance().getPortType(FisModelPortObject.class);
 	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisModelPortObject.class);
 
@@ -1,9 +1,15 @@
 package port;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
 
 import javax.swing.JComponent;
 
+import org.knime.core.data.util.NonClosableInputStream;
+import org.knime.core.data.util.NonClosableOutputStream;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortObjectSpecZipInputStream;
 import org.knime.core.node.port.PortObjectSpecZipOutputStream;
@@ -11,6 +17,12 @@ import org.knime.core.node.port.PortObjectSpecZipOutputStream;
 /**
  * FisPro Model Port Object Spec
  *
+ * Describes a model without its content: the generating function, the names
+ * of the input and output variables, their number of MFs and the number of
+ * rules, so that the downstream nodes can be configured before the model is
+ * created. What is not known at configure time is left undefined (null names,
+ * -1 counts).
+ *
  * @author Antonio Di Mauro
  */
 public class FisModelPortObjectSpec implements PortObjectSpec {
@@ -20,31 +32,285 @@ public class FisModelPortObjectSpec implements PortObjectSpec {
 		@Override
 		public void savePortObjectSpec(FisModelPortObjectSpec portObjectSpec, PortObjectSpecZipOutputStream out)
 				throws IOException {
-			// LOGGER.error("savePortObjectSpec");
 			portObjectSpec.save(out);
 		}
 
 		@Override
 		public FisModelPortObjectSpec loadPortObjectSpec(PortObjectSpecZipInputStream in) throws IOException {
-			// LOGGER.error("loadPortObjectSpec");
 			return load(in);
 		}
 	}
 
-	private void save(PortObjectSpecZipOutputStream out) {
-		// TODO Auto-generated method stub
+	private static final int VERSION = 1;
+	private static final String SPEC_ENTRY = "fismodel.spec";
+
+	private final String mFisFunc;
+	private final String[] mInputs;
+	private final int[] mInputMfs;
+	private final String[] mOutputs;
+	private final int[] mOutputMfs;
+	private final int mNumRules;
+
+	/**
+	 * Create an undefined spec
+	 */
+	public FisModelPortObjectSpec() {
+		this((String) null);
+	}
+
+	/**
+	 * Create a spec knowing only the generating function
+	 *
+	 * @param fisFunc
+	 *            name of the function that generates the model
+	 */
+	public FisModelPortObjectSpec(String fisFunc) {
+		this(fisFunc, null, null, null, null, -1);
+	}
+
+	/**
+	 * Create the spec of a model
+	 *
+	 * @param model
+	 *            fis model, only its function is kept if it cannot be parsed
+	 */
+	public FisModelPortObjectSpec(FisModel model) {
+		this(model.getFisFunc(), describe(model));
+	}
+
+	private FisModelPortObjectSpec(String fisFunc, FisModelPortObjectSpec vars) {
+		this(fisFunc, vars.mInputs, vars.mInputMfs, vars.mOutputs, vars.mOutputMfs, vars.mNumRules);
+	}
+
+	private FisModelPortObjectSpec(String fisFunc, String[] inputs, int[] inputMfs, String[] outputs,
+			int[] outputMfs, int numRules) {
+		mFisFunc = fisFunc;
+		mInputs = inputs;
+		mInputMfs = inputMfs;
+		mOutputs = outputs;
+		mOutputMfs = outputMfs;
+		mNumRules = numRules;
+	}
+
+	/**
+	 * Variables of a model, read without decoding its rule base, an undefined
+	 * spec if it cannot be parsed
+	 */
+	private static FisModelPortObjectSpec describe(FisModel model) {
+
+		FisSystem sys;
+		try {
+			sys = model.getHeader();
+		} catch (IOException e) {
+			return new FisModelPortObjectSpec();
+		}
+		String[] inputs = new String[sys.getNumInputs()];
+		int[] inputMfs = new int[inputs.length];
+		for (int i = 0; i < inputs.length; i++) {
+			inputs[i] = sys.getInput(i).getName();
+			inputMfs[i] = sys.getInput(i).getNumMfs();
+		}
+		String[] outputs = new String[sys.getNumOutputs()];
+		int[] outputMfs = new int[outputs.length];
+		for (int o = 0; o < outputs.length; o++) {
+			outputs[o] = sys.getOutput(o).getName();
+			outputMfs[o] = sys.getOutput(o).getNumMfs();
+		}
+		return new FisModelPortObjectSpec(null, inputs, inputMfs, outputs, outputMfs, sys.getNumRules());
+	}
+
+	/**
+	 * Spec of a model learned from this one: same variables, MFs and rules
+	 * are not known until the model is created
+	 *
+	 * @param fisFunc
+	 *            name of the function that generates the model
+	 *
+	 * @return the spec of the learned model
+	 */
+	public FisModelPortObjectSpec derive(String fisFunc) {
+
+		int[] inputMfs = mInputs == null ? null : new int[mInputs.length];
+		int[] outputMfs = mOutputs == null ? null : new int[mOutputs.length];
+		if (inputMfs != null)
+			Arrays.fill(inputMfs, -1);
+		if (outputMfs != null)
+			Arrays.fill(outputMfs, -1);
+		return new FisModelPortObjectSpec(fisFunc, mInputs, inputMfs, mOutputs, outputMfs, -1);
+	}
+
+	/**
+	 * @return name of the function that generates the model, null if not
+	 *         known
+	 */
+	public String getFisFunc() {
+		return mFisFunc;
+	}
+
+	/**
+	 * @return number of input variables, -1 if not known
+	 */
+	public int getNumInputs() {
+		return mInputs == null ? -1 : mInputs.length;
+	}
+
+	/**
+	 * @param i
+	 *            input index
+	 *
+	 * @return name of the input variable
+	 */
+	public String getInputName(int i) {
+		return mInputs[i];
+	}
+
+	/**
+	 * @param i
+	 *            input index
+	 *
+	 * @return number of MFs of the input variable, -1 if not known
+	 */
+	public int getInputMfs(int i) {
+		return mInputMfs[i];
 	}
 
-	private static FisModelPortObjectSpec load(final PortObjectSpecZipInputStream in) {
-		return new FisModelPortObjectSpec();
+	/**
+	 * @return number of output variables, -1 if not known
+	 */
+	public int getNumOutputs() {
+		return mOutputs == null ? -1 : mOutputs.length;
 	}
 
-	// private static final NodeLogger LOGGER =
-	// NodeLogger.getLogger(FisModelPortObjectSpec.class);
+	/**
+	 * @param o
+	 *            output index
+	 *
+	 * @return name of the output variable
+	 */
+	public String getOutputName(int o) {
+		return mOutputs[o];
+	}
+
+	/**
+	 * @param o
+	 *            output index
+	 *
+	 * @return number of MFs of the output variable, -1 if not known
+	 */
+	public int getOutputMfs(int o) {
+		return mOutputMfs[o];
+	}
+
+	/**
+	 * @return number of rules, -1 if not known
+	 */
+	public int getNumRules() {
+		return mNumRules;
+	}
+
+	/**
+	 * Save the spec in the output stream
+	 *
+	 * Layout (version 1): format version, generating function, the input and
+	 * the output variables (count, then name and number of MFs of each, a
+	 * count of -1 if not known) and the number of rules.
+	 *
+	 * @param out
+	 *            output stream
+	 *
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	private void save(PortObjectSpecZipOutputStream out) throws IOException {
+
+		out.putNextEntry(new ZipEntry(SPEC_ENTRY));
+		DataOutputStream data = new DataOutputStream(new NonClosableOutputStream.Zip(out));
+		data.writeInt(VERSION);
+		data.writeBoolean(mFisFunc != null);
+		if (mFisFunc != null)
+			data.writeUTF(mFisFunc);
+		saveVariables(data, mInputs, mInputMfs);
+		saveVariables(data, mOutputs, mOutputMfs);
+		data.writeInt(mNumRules);
+		data.flush();
+	}
+
+	private static void saveVariables(DataOutputStream data, String[] names, int[] mfs) throws IOException {
+		data.writeInt(names == null ? -1 : names.length);
+		for (int i = 0; names != null && i < names.length; i++) {
+			data.writeUTF(names[i]);
+			data.writeInt(mfs[i]);
+		}
+	}
+
+	/**
+	 * Load the spec from the input stream, specs saved by previous versions
+	 * have no entry and are undefined
+	 *
+	 * @param in
+	 *            input stream
+	 *
+	 * @return the spec
+	 *
+	 * @throws IOException
+	 *             if the stream fails or the format is not known
+	 */
+	private static FisModelPortObjectSpec load(final PortObjectSpecZipInputStream in) throws IOException {
+
+		ZipEntry entry = in.getNextEntry();
+		if (entry == null || !entry.getName().equals(SPEC_ENTRY))
+			return new FisModelPortObjectSpec();
+		DataInputStream data = new DataInputStream(new NonClosableInputStream.Zip(in));
+		int version = data.readInt();
+		if (version > VERSION)
+			throw new IOException("Fis model spec saved with a newer format (version " + version + ")");
+		String fisFunc = data.readBoolean() ? data.readUTF() : null;
+		int nInputs = data.readInt();
+		String[] inputs = nInputs < 0 ? null : new String[nInputs];
+		int[] inputMfs = nInputs < 0 ? null : new int[nInputs];
+		for (int i = 0; i < nInputs; i++) {
+			inputs[i] = data.readUTF();
+			inputMfs[i] = data.readInt();
+		}
+		int nOutputs = data.readInt();
+		String[] outputs = nOutputs < 0 ? null : new String[nOutputs];
+		int[] outputMfs = nOutputs < 0 ? null : new int[nOutputs];
+		for (int o = 0; o < nOutputs; o++) {
+			outputs[o] = data.readUTF();
+			outputMfs[o] = data.readInt();
+		}
+		return new FisModelPortObjectSpec(fisFunc, inputs, inputMfs, outputs, outputMfs, data.readInt());
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (!(obj instanceof FisModelPortObjectSpec))
+			return false;
+		FisModelPortObjectSpec spec = (FisModelPortObjectSpec) obj;
+		return (mFisFunc == null ? spec.mFisFunc == null : mFisFunc.equals(spec.mFisFunc))
+				&& Arrays.equals(mInputs, spec.mInputs) && Arrays.equals(mInputMfs, spec.mInputMfs)
+				&& Arrays.equals(mOutputs, spec.mOutputs) && Arrays.equals(mOutputMfs, spec.mOutputMfs)
+				&& mNumRules == spec.mNumRules;
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(mInputs) * 31 + Arrays.hashCode(mOutputs) + mNumRules;
+	}
+
+	@Override
+	public String toString() {
+
+		String sum = "Fis Model generated by: " + (mFisFunc == null ? "?" : mFisFunc);
+		if (mInputs != null)
+			sum += " (inputs " + Arrays.toString(mInputs) + ", outputs " + Arrays.toString(mOutputs)
+					+ (mNumRules < 0 ? "" : ", " + mNumRules + " rules") + ")";
+		return sum;
+	}
 
 	@Override
 	public JComponent[] getViews() {
-		// TODO Auto-generated method stub
 		return null;
 	}
 
@@ -0,0 +1,152 @@
+package port;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * Performance of a system on a validation dataset, as computed by FisPro perf
+ * for an output: the error on each row (absolute error, 0 or 1 for a
+ * classification output), its mean and root mean square, and the coverage,
+ * the fraction of rows firing at least one rule. Rows whose observed output
+ * is missing only count for the coverage.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisPerformance {
+
+	private final int mNumRules;
+	private final long mRows;
+	private final double mMeanError;
+	private final double mRmse;
+	private final double mCoverage;
+
+	private FisPerformance(int numRules, long rows, double meanError, double rmse, double coverage) {
+		mNumRules = numRules;
+		mRows = rows;
+		mMeanError = meanError;
+		mRmse = rmse;
+		mCoverage = coverage;
+	}
+
+	/**
+	 * Read the first columns of a table in memory, missing and non numeric
+	 * cells as NaN
+	 *
+	 * @param t
+	 *            data table
+	 * @param nCols
+	 *            number of columns read, the inputs followed by the outputs
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return the values of each row
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static double[][] readRows(BufferedDataTable t, int nCols, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+
+		if (t.getDataTableSpec().getNumColumns() < nCols)
+			throw new IllegalArgumentException("The dataset has " + t.getDataTableSpec().getNumColumns()
+					+ " columns, the model needs " + nCols);
+		double[][] rows = new double[(int) t.size()][nCols];
+		CloseableRowIterator it = t.iterator();
+		try {
+			for (int n = 0; n < rows.length && it.hasNext(); n++) {
+				DataRow row = it.next();
+				for (int c = 0; c < nCols; c++) {
+					DataCell cell = row.getCell(c);
+					rows[n][c] = cell instanceof DoubleValue ? ((DoubleValue) cell).getDoubleValue() : Double.NaN;
+				}
+				if ((n & 0x3FF) == 0) {
+					exec.setProgress((double) n / rows.length);
+					exec.checkCanceled();
+				}
+			}
+		} finally {
+			it.close();
+		}
+		return rows;
+	}
+
+	/**
+	 * Score a system
+	 *
+	 * @param sys
+	 *            fuzzy inference system
+	 * @param rows
+	 *            validation rows, the inputs followed by the outputs
+	 * @param outNum
+	 *            output index
+	 *
+	 * @return the performance of the output
+	 */
+	public static FisPerformance score(FisSystem sys, double[][] rows, int outNum) {
+
+		FisEngine engine = new FisEngine(sys);
+		double[] res = new double[FisEngine.PERF_SIZE];
+		double sum = 0;
+		long n = 0;
+		long blank = 0;
+		for (double[] row : rows) {
+			engine.perf(row, outNum, res);
+			if (res[4] != 0)
+				blank++;
+			if (!Double.isNaN(res[3])) {
+				sum += res[3];
+				n++;
+			}
+		}
+		double mean = n > 0 ? sum / n : Double.NaN;
+		// the squared error is cumulated by the engine
+		double rmse = n > 0 ? Math.sqrt(res[5] / n) : Double.NaN;
+		double coverage = rows.length > 0 ? 1.0 - (double) blank / rows.length : Double.NaN;
+		return new FisPerformance(sys.getNumRules(), rows.length, mean, rmse, coverage);
+	}
+
+	/**
+	 * @return number of rules of the system
+	 */
+	public int getNumRules() {
+		return mNumRules;
+	}
+
+	/**
+	 * @return number of validation rows
+	 */
+	public long getRows() {
+		return mRows;
+	}
+
+	/**
+	 * @return mean error, NaN without observed output
+	 */
+	public double getMeanError() {
+		return mMeanError;
+	}
+
+	/**
+	 * @return root mean square error, NaN without observed output
+	 */
+	public double getRmse() {
+		return mRmse;
+	}
+
+	/**
+	 * @return fraction of rows firing at least one rule
+	 */
+	public double getCoverage() {
+		return mCoverage;
+	}
+
+	@Override
+	public String toString() {
+		return mNumRules + " rules, RMSE " + mRmse + ", mean error " + mMeanError + ", coverage " + mCoverage;
+	}
+}
@@ -0,0 +1,438 @@
+package port;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Execution of a FisPro binary shared by the nodes
+ *
+ * Standard output and error are drained by background threads into bounded
+ * buffers, so a tool writing a lot never blocks on a full pipe. While the
+ * tool runs the execution is checked for cancellation and the wall-clock
+ * timeout of the system property {@value #TIMEOUT_PROPERTY} (seconds, none
+ * by default) is enforced: in both cases the tool and its child processes
+ * are killed. CPU time and peak resident memory of the process tree are
+ * sampled from /proc on Linux, elsewhere they are not available: the tool is
+ * sampled on each poll, the tree is looked up in /proc at growing intervals,
+ * up to once a second, as it takes a scan of all the processes.
+ *
+ * The number of tools running at the same time is capped for the whole JVM
+ * by the system property {@value #PROCESSES_PROPERTY} (the number of cores
+ * by default): the other runs wait in a fair queue, and the time spent there
+ * is reported apart from the execution time.
+ *
+ * @author Antonio Di Mauro
+ */
+public class FisProcess {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisProcess.class);
+
+	/**
+	 * System property with the wall-clock timeout of a FisPro tool in
+	 * seconds, 0 or missing for no timeout
+	 */
+	public static final String TIMEOUT_PROPERTY = "fis4knime.timeout";
+
+	/**
+	 * System property with the maximum number of FisPro tools running at the
+	 * same time, the number of cores if missing
+	 */
+	public static final String PROCESSES_PROPERTY = "fis4knime.processes";
+
+	/**
+	 * Bytes kept of each output stream, the last ones
+	 */
+	private static final int OUTPUT_LIMIT = 1 << 16;
+	private static final long MAX_POLL_MILLIS = 100;
+	private static final long CLOCK_TICKS = 100;
+	private static final long MIN_TREE_MILLIS = 10;
+	private static final long MAX_TREE_MILLIS = 1000;
+	private static final File PROC = new File("/proc");
+
+	/**
+	 * Running tools, shared by the nodes of all the plugins: they load this
+	 * class from the hfpsr bundle
+	 */
+	private static final Semaphore SLOTS = new Semaphore(getMaxProcesses(), true);
+
+	private final String mName;
+	private final Process mProcess;
+	private final long mPid;
+	private final Drain mStdout;
+	private final Drain mStderr;
+	private final Map<Long, long[]> mUsage = new HashMap<Long, long[]>();
+	// processes sampled, the tool first, and when to look them up again
+	private List<Long> mTree;
+	private long mTreeMillis = MIN_TREE_MILLIS;
+	private long mNextTree;
+	private int mExitCode = -1;
+	private boolean mTimedOut;
+	private long mTime;
+	private long mQueueTime;
+
+	private FisProcess(String name, Process p) {
+		mName = name;
+		mProcess = p;
+		mPid = getPid(p);
+		mStdout = new Drain(p.getInputStream(), name + "-stdout");
+		mStderr = new Drain(p.getErrorStream(), name + "-stderr");
+	}
+
+	/**
+	 * Run a FisPro tool, when a slot is free, and wait for its end
+	 *
+	 * @param cmd
+	 *            command line, the tool first
+	 * @param dir
+	 *            working directory
+	 * @param exec
+	 *            execution monitor checked for cancellation, may be null
+	 *
+	 * @return the ended process
+	 *
+	 * @throws IOException
+	 *             if the tool cannot be started
+	 * @throws InterruptedException
+	 *             if the thread is interrupted, the tool is killed
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled while queued or running, the
+	 *             tool is killed
+	 */
+	public static FisProcess run(String[] cmd, File dir, ExecutionMonitor exec)
+			throws IOException, InterruptedException, CanceledExecutionException {
+
+		long queued = System.currentTimeMillis();
+		// the timed tryAcquire keeps the queue fair
+		while (!SLOTS.tryAcquire(MAX_POLL_MILLIS, TimeUnit.MILLISECONDS))
+			if (exec != null)
+				exec.checkCanceled();
+		try {
+			long start = System.currentTimeMillis();
+			FisProcess p = new FisProcess(getName(cmd), new ProcessBuilder(cmd).directory(dir).start());
+			p.mQueueTime = start - queued;
+			try {
+				p.waitFor(exec, start);
+			} finally {
+				if (p.mProcess.isAlive())
+					p.kill();
+			}
+			p.mTime = System.currentTimeMillis() - start;
+			if (p.mExitCode != 0)
+				LOGGER.warn(p + "\n" + p.getStderr());
+			else
+				LOGGER.debug(p);
+			return p;
+		} finally {
+			SLOTS.release();
+		}
+	}
+
+	private void waitFor(ExecutionMonitor exec, long start) throws InterruptedException, CanceledExecutionException {
+
+		long timeout = getTimeout();
+		long poll = 1;
+		sample();
+		while (!mProcess.waitFor(poll, TimeUnit.MILLISECONDS)) {
+			sample();
+			if (exec != null)
+				exec.checkCanceled();
+			if (timeout > 0 && System.currentTimeMillis() - start > timeout) {
+				mTimedOut = true;
+				kill();
+				LOGGER.error(mName + " killed after " + timeout + " ms.");
+				break;
+			}
+			// short tools are sampled often, long ones every 100 ms
+			poll = Math.min(2 * poll, MAX_POLL_MILLIS);
+		}
+		mProcess.waitFor();
+		if (!mTimedOut)
+			mExitCode = mProcess.exitValue();
+		// a child still holding the pipes must not block the node
+		mStdout.join(1000);
+		mStderr.join(1000);
+	}
+
+	/**
+	 * @return exit code of the tool, -1 if it was killed by the timeout
+	 */
+	public int getExitCode() {
+		return mExitCode;
+	}
+
+	/**
+	 * @return true if the tool was killed by the timeout
+	 */
+	public boolean isTimedOut() {
+		return mTimedOut;
+	}
+
+	/**
+	 * @return wall-clock time in ms spent waiting for a free slot
+	 */
+	public long getQueueTime() {
+		return mQueueTime;
+	}
+
+	/**
+	 * @return wall-clock time in ms, from the start of the tool
+	 */
+	public long getTime() {
+		return mTime;
+	}
+
+	/**
+	 * @return CPU time (user and system) of the process tree in ms, -1 if not
+	 *         available
+	 */
+	public long getCpuTime() {
+		if (mUsage.isEmpty())
+			return -1;
+		long ticks = 0;
+		for (long[] usage : mUsage.values())
+			ticks += usage[0];
+		return ticks * 1000 / CLOCK_TICKS;
+	}
+
+	/**
+	 * @return peak resident memory of the process tree in KB, -1 if not
+	 *         available
+	 */
+	public long getPeakRss() {
+		if (mUsage.isEmpty())
+			return -1;
+		long kb = 0;
+		for (long[] usage : mUsage.values())
+			kb += usage[1];
+		return kb;
+	}
+
+	/**
+	 * @return standard output, only the last bytes if long
+	 */
+	public String getStdout() {
+		return mStdout.toString();
+	}
+
+	/**
+	 * @return standard error, only the last bytes if long
+	 */
+	public String getStderr() {
+		return mStderr.toString();
+	}
+
+	/**
+	 * @return summary of the execution
+	 */
+	@Override
+	public String toString() {
+		return mName + ": exit code " + mExitCode + (mTimedOut ? " (timeout)" : "") + ", queued " + mQueueTime
+				+ " ms, time " + mTime + " ms, CPU time " + getCpuTime() + " ms, peak RSS " + getPeakRss() + " KB";
+	}
+
+	private static String getName(String[] cmd) {
+		// "/bin/sh -c 'tool args'" is named after the tool
+		String tool = cmd[0];
+		if (cmd.length > 2 && cmd[0].endsWith("sh") && cmd[1].equals("-c"))
+			tool = cmd[2].trim().split(" ")[0];
+		return new File(tool).getName();
+	}
+
+	private static int getMaxProcesses() {
+		int cores = Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(System.getProperty(PROCESSES_PROPERTY, "" + cores).trim()));
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid " + PROCESSES_PROPERTY + ", " + cores + " processes.");
+			return cores;
+		}
+	}
+
+	private static long getTimeout() {
+		try {
+			return Math.max(0, Long.parseLong(System.getProperty(TIMEOUT_PROPERTY, "0").trim())) * 1000;
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid " + TIMEOUT_PROPERTY + ", no timeout.");
+			return 0;
+		}
+	}
+
+	/**
+	 * @return pid of the process, -1 if not available (Process.pid() from
+	 *         Java 9, the pid field of the Unix implementation before)
+	 */
+	private static long getPid(Process p) {
+		try {
+			return ((Number) Process.class.getMethod("pid").invoke(p)).longValue();
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// Java 8
+		}
+		try {
+			Field pid = p.getClass().getDeclaredField("pid");
+			pid.setAccessible(true);
+			return pid.getLong(p);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Record CPU ticks and peak RSS of each process of the tree, the tree
+	 * being looked up again when it is due
+	 */
+	private void sample() {
+		long now = System.currentTimeMillis();
+		if (mTree == null || now >= mNextTree) {
+			mTree = getTree();
+			mNextTree = now + mTreeMillis;
+			mTreeMillis = Math.min(2 * mTreeMillis, MAX_TREE_MILLIS);
+		}
+		for (long pid : mTree) {
+			long[] usage = mUsage.get(pid);
+			if (usage == null)
+				usage = new long[2];
+			try {
+				String stat = readProc(pid, "stat");
+				// fields after the command name: state ppid ... utime stime
+				String[] f = stat.substring(stat.lastIndexOf(')') + 2).split(" ");
+				usage[0] = Math.max(usage[0], Long.parseLong(f[11]) + Long.parseLong(f[12]));
+				for (String line : readProc(pid, "status").split("\n"))
+					if (line.startsWith("VmHWM:"))
+						usage[1] = Math.max(usage[1], Long.parseLong(line.replaceAll("[^0-9]", "")));
+				mUsage.put(pid, usage);
+			} catch (IOException | RuntimeException e) {
+				// the process has ended
+			}
+		}
+	}
+
+	/**
+	 * @return the process and its descendants, empty without /proc
+	 */
+	private List<Long> getTree() {
+
+		List<Long> tree = new ArrayList<Long>();
+		if (mPid < 0 || !PROC.isDirectory())
+			return tree;
+		tree.add(mPid);
+		String[] pids = PROC.list();
+		if (pids == null)
+			return tree;
+		Map<Long, List<Long>> children = new HashMap<Long, List<Long>>();
+		for (String name : pids) {
+			if (name.isEmpty() || !Character.isDigit(name.charAt(0)))
+				continue;
+			try {
+				long pid = Long.parseLong(name);
+				String stat = readProc(pid, "stat");
+				long ppid = Long.parseLong(stat.substring(stat.lastIndexOf(')') + 2).split(" ")[1]);
+				List<Long> list = children.get(ppid);
+				if (list == null)
+					children.put(ppid, list = new ArrayList<Long>());
+				list.add(pid);
+			} catch (IOException | RuntimeException e) {
+				// the process has ended
+			}
+		}
+		for (int i = 0; i < tree.size(); i++) {
+			List<Long> list = children.get(tree.get(i));
+			if (list != null)
+				tree.addAll(list);
+		}
+		return tree;
+	}
+
+	private static String readProc(long pid, String file) throws IOException {
+		return new String(Files.readAllBytes(Paths.get("/proc", Long.toString(pid), file)), Charset.defaultCharset());
+	}
+
+	/**
+	 * Kill the tool and its child processes (e.g. of /bin/sh -c)
+	 */
+	private void kill() {
+
+		List<Long> tree = getTree();
+		if (tree.size() > 1) {
+			List<String> cmd = new ArrayList<String>();
+			cmd.add("kill");
+			cmd.add("-9");
+			for (long pid : tree)
+				cmd.add(Long.toString(pid));
+			try {
+				new ProcessBuilder(cmd).redirectErrorStream(true).start().waitFor(1, TimeUnit.SECONDS);
+			} catch (IOException e) {
+				LOGGER.warn("Child processes of " + mName + " NOT killed.");
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		mProcess.destroyForcibly();
+	}
+
+	/**
+	 * Thread reading an output stream of the tool, the last
+	 * {@value FisProcess#OUTPUT_LIMIT} bytes are kept
+	 */
+	private static class Drain extends Thread {
+
+		private final InputStream mIn;
+		private final byte[] mBuf = new byte[OUTPUT_LIMIT];
+		private long mTotal;
+
+		private Drain(InputStream in, String name) {
+			super(name);
+			mIn = in;
+			setDaemon(true);
+			start();
+		}
+
+		@Override
+		public void run() {
+			byte[] chunk = new byte[8192];
+			try {
+				for (int n = mIn.read(chunk); n >= 0; n = mIn.read(chunk))
+					append(chunk, n);
+			} catch (IOException e) {
+				// the stream is closed when the tool is killed
+			} finally {
+				try {
+					mIn.close();
+				} catch (IOException e) {
+					// nothing more to read
+				}
+			}
+		}
+
+		private synchronized void append(byte[] chunk, int n) {
+			for (int i = 0; i < n; i++)
+				mBuf[(int) ((mTotal + i) % mBuf.length)] = chunk[i];
+			mTotal += n;
+		}
+
+		@Override
+		public synchronized String toString() {
+			if (mTotal <= mBuf.length)
+				return new String(mBuf, 0, (int) mTotal, Charset.defaultCharset());
+			int pos = (int) (mTotal % mBuf.length);
+			byte[] tail = new byte[mBuf.length];
+			System.arraycopy(mBuf, pos, tail, 0, mBuf.length - pos);
+			System.arraycopy(mBuf, 0, tail, mBuf.length - pos, pos);
+			return new String(tail, Charset.defaultCharset());
+		}
+	}
+}
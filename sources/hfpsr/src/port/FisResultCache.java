@@ -0,0 +1,413 @@
+package port;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import org.apache.commons.io.FileUtils;
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeSettings;
+import org.knime.core.node.defaultnodesettings.SettingsModel;
+
+/**
+ * Persistent cache of the models created by the FisPro learners
+ *
+ * An entry is addressed by the digest of everything the tools read: the input
+ * model, the table content, the node settings and the tool binaries (size and
+ * modification time). Re-executing a learner with unchanged inputs gets its
+ * model back without exporting the dataset nor running the tools.
+ *
+ * The cache is a directory, {@value #DIR_PROPERTY} or 'cache' in the root of
+ * the scratch directories (see {@link FisWorkspace}), local to the machine and
+ * to the user, with a directory per entry. Entries are written to a temporary
+ * directory and renamed, so concurrent nodes and KNIME instances can share
+ * it. When its size exceeds {@value #SIZE_PROPERTY} MB the least
+ * recently used entries are deleted, a size of 0 disables the cache.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisResultCache {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisResultCache.class);
+
+	/**
+	 * System property with the cache directory
+	 */
+	public static final String DIR_PROPERTY = "fis4knime.cache";
+
+	/**
+	 * System property with the cache size in MB, 0 to disable it
+	 */
+	public static final String SIZE_PROPERTY = "fis4knime.cache.size";
+
+	// bumped when the entry layout or the key content change
+	private static final String FORMAT = "1";
+	private static final long DEFAULT_SIZE = 256;
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final String FUNC = "func";
+	private static final String[] PARTS = { "fis", "hfp", "vertex", "members", "state" };
+	private static final String TMP = ".tmp-";
+
+	private FisResultCache() {
+	}
+
+	/**
+	 * Start the key of a learner result
+	 *
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param tools
+	 *            names of the FisPro tools run by the learner
+	 *
+	 * @return the key, to be completed with the inputs of the tools
+	 */
+	public static Key key(String fisDir, String... tools) {
+
+		Key key = new Key(getSize() > 0);
+		key.add(FORMAT);
+		for (String tool : tools) {
+			File bin = new File(fisDir, tool);
+			key.add(tool + ":" + bin.length() + ":" + bin.lastModified());
+		}
+		return key;
+	}
+
+	/**
+	 * Get a cached result
+	 *
+	 * @param key
+	 *            key of the result
+	 *
+	 * @return the cached model, null if not found
+	 */
+	public static FisModel get(Key key) {
+
+		String id = key.getId();
+		if (id == null)
+			return null;
+		File entry = new File(getDir(), id);
+		if (!entry.isDirectory())
+			return null;
+		try {
+			String func = new String(Files.readAllBytes(new File(entry, FUNC).toPath()), UTF8);
+			byte[][] parts = new byte[PARTS.length][];
+			for (int i = 0; i < PARTS.length; i++) {
+				File part = new File(entry, PARTS[i]);
+				if (part.exists())
+					parts[i] = Files.readAllBytes(part.toPath());
+			}
+			if (parts[FisModel.PART_FIS] == null)
+				throw new IOException("missing fis");
+			// the modification time orders the entries for the eviction
+			entry.setLastModified(System.currentTimeMillis());
+			LOGGER.debug("Cached result " + id + " used.");
+			return new FisModel(func, parts[FisModel.PART_FIS], parts[FisModel.PART_HFP],
+					parts[FisModel.PART_VERTEX], parts[FisModel.PART_MEMBERS],
+					parts[FisModel.PART_STATE]);
+		} catch (IOException e) {
+			LOGGER.warn("Cached result " + id + " NOT read, it is deleted: " + e);
+			FileUtils.deleteQuietly(entry);
+			return null;
+		}
+	}
+
+	/**
+	 * Store a result, evicting the least recently used ones if the cache is
+	 * full
+	 *
+	 * @param key
+	 *            key of the result
+	 * @param model
+	 *            model created by the learner
+	 */
+	public static void put(Key key, FisModel model) {
+
+		String id = key.getId();
+		if (id == null || model == null)
+			return;
+		File dir = getDir();
+		File entry = new File(dir, id);
+		File tmp = new File(dir, TMP + id + "-" + System.nanoTime());
+		try {
+			if (!tmp.mkdirs())
+				throw new IOException("cannot create " + tmp);
+			Files.write(new File(tmp, FUNC).toPath(), model.getFisFunc().getBytes(UTF8));
+			for (int i = 0; i < PARTS.length; i++) {
+				byte[] part = model.encode(i);
+				if (part != null)
+					Files.write(new File(tmp, PARTS[i]).toPath(), part);
+			}
+			if (!entry.exists())
+				Files.move(tmp.toPath(), entry.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			LOGGER.warn("Result NOT cached: " + e);
+		} finally {
+			FileUtils.deleteQuietly(tmp);
+		}
+		evict(dir, getSize() << 20);
+	}
+
+	/**
+	 * Delete the least recently used entries until the cache fits its size
+	 */
+	private static synchronized void evict(File dir, long size) {
+
+		File[] entries = dir.listFiles();
+		if (entries == null)
+			return;
+		long[] sizes = new long[entries.length];
+		long total = 0;
+		for (int i = 0; i < entries.length; i++) {
+			try {
+				sizes[i] = FileUtils.sizeOf(entries[i]);
+			} catch (IllegalArgumentException e) {
+				// deleted meanwhile by another instance
+			}
+			total += sizes[i];
+		}
+		if (total <= size)
+			return;
+		final long[] used = new long[entries.length];
+		Integer[] order = new Integer[entries.length];
+		for (int i = 0; i < entries.length; i++) {
+			used[i] = entries[i].lastModified();
+			order[i] = i;
+		}
+		Arrays.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return Long.compare(used[a], used[b]);
+			}
+		});
+		for (int i = 0; i < order.length && total > size; i++) {
+			File entry = entries[order[i]];
+			// entries being written by other nodes are not evicted
+			if (entry.getName().startsWith(TMP))
+				continue;
+			if (FileUtils.deleteQuietly(entry)) {
+				total -= sizes[order[i]];
+				LOGGER.debug("Cached result " + entry.getName() + " evicted.");
+			}
+		}
+	}
+
+	private static File getDir() {
+
+		String dir = System.getProperty(DIR_PROPERTY);
+		if (dir != null && !dir.trim().isEmpty())
+			return new File(dir.trim());
+		return new File(FisWorkspace.getRoot(), "cache");
+	}
+
+	private static long getSize() {
+
+		try {
+			return Math.max(0, Long.parseLong(System.getProperty(SIZE_PROPERTY, "" + DEFAULT_SIZE).trim()));
+		} catch (NumberFormatException e) {
+			LOGGER.warn("Invalid " + SIZE_PROPERTY + ", " + DEFAULT_SIZE + " MB.");
+			return DEFAULT_SIZE;
+		}
+	}
+
+	/**
+	 * Digest of the inputs of a learner, nothing is computed when the cache is
+	 * disabled
+	 */
+	public static final class Key {
+
+		private final MessageDigest mDigest;
+		private final byte[] mBuf;
+		private int mPos;
+		private String mId;
+
+		private Key(boolean enabled) {
+
+			MessageDigest digest = null;
+			if (enabled) {
+				try {
+					digest = MessageDigest.getInstance("SHA-256");
+				} catch (NoSuchAlgorithmException e) {
+					LOGGER.warn("Results NOT cached: " + e);
+				}
+			}
+			mDigest = digest;
+			mBuf = digest != null ? new byte[BUFFER_SIZE] : null;
+		}
+
+		/**
+		 * Add a value to the key
+		 *
+		 * @param value
+		 *            string value, e.g. the name of the dataset
+		 *
+		 * @return this key
+		 */
+		public Key add(String value) {
+			if (mDigest != null) {
+				addBytes(value.getBytes(UTF8));
+				addLong(value.length());
+			}
+			return this;
+		}
+
+		/**
+		 * Add the values of the node settings to the key
+		 *
+		 * @param settings
+		 *            settings models of the node
+		 *
+		 * @return this key
+		 */
+		public Key add(SettingsModel... settings) {
+
+			if (mDigest == null)
+				return this;
+			NodeSettings values = new NodeSettings("cache");
+			for (SettingsModel s : settings)
+				s.saveSettingsTo(values);
+			ByteArrayOutputStream xml = new ByteArrayOutputStream();
+			try {
+				values.saveToXML(xml);
+			} catch (IOException e) {
+				// never thrown by a byte array
+				throw new IllegalStateException(e);
+			}
+			addBytes(xml.toByteArray());
+			return this;
+		}
+
+		/**
+		 * Add the content of a model to the key
+		 *
+		 * @param model
+		 *            input model of the learner
+		 *
+		 * @return this key
+		 *
+		 * @throws IOException
+		 *             if the model cannot be encoded
+		 */
+		public Key add(FisModel model) throws IOException {
+
+			if (mDigest == null)
+				return this;
+			for (int i = 0; i < PARTS.length; i++) {
+				byte[] part = model.encode(i);
+				addLong(part != null ? part.length : -1);
+				if (part != null)
+					addBytes(part);
+			}
+			return this;
+		}
+
+		/**
+		 * Add the content of a table to the key, in a single pass: the column
+		 * names and the cells, not the row keys which the tools do not read
+		 *
+		 * @param t
+		 *            data table
+		 * @param exec
+		 *            execution monitor checked for cancellation
+		 *
+		 * @return this key
+		 *
+		 * @throws CanceledExecutionException
+		 *             if the execution is canceled
+		 */
+		public Key add(BufferedDataTable t, ExecutionMonitor exec) throws CanceledExecutionException {
+
+			if (mDigest == null)
+				return this;
+			for (String name : t.getDataTableSpec().getColumnNames())
+				add(name);
+			long n = 0;
+			CloseableRowIterator it = t.iterator();
+			try {
+				while (it.hasNext()) {
+					DataRow row = it.next();
+					int nCells = row.getNumCells();
+					for (int i = 0; i < nCells; i++) {
+						DataCell cell = row.getCell(i);
+						if (cell.isMissing()) {
+							addByte(0);
+						} else if (cell instanceof DoubleValue) {
+							addByte(1);
+							addLong(Double.doubleToLongBits(((DoubleValue) cell).getDoubleValue()));
+						} else {
+							addByte(2);
+							add(cell.toString());
+						}
+					}
+					if ((++n & 0x3FF) == 0)
+						exec.checkCanceled();
+				}
+			} finally {
+				it.close();
+			}
+			addLong(n);
+			return this;
+		}
+
+		/**
+		 * @return hex digest of the key, null if the cache is disabled
+		 */
+		String getId() {
+
+			if (mDigest == null)
+				return null;
+			if (mId == null) {
+				mDigest.update(mBuf, 0, mPos);
+				mPos = 0;
+				StringBuilder sb = new StringBuilder();
+				for (byte b : mDigest.digest())
+					sb.append(String.format("%02x", b));
+				mId = sb.toString();
+			}
+			return mId;
+		}
+
+		private void addByte(int b) {
+			if (mPos == mBuf.length)
+				flush();
+			mBuf[mPos++] = (byte) b;
+		}
+
+		private void addLong(long v) {
+			if (mPos + 8 > mBuf.length)
+				flush();
+			for (int i = 56; i >= 0; i -= 8)
+				mBuf[mPos++] = (byte) (v >>> i);
+		}
+
+		private void addBytes(byte[] b) {
+			if (mPos + b.length > mBuf.length) {
+				flush();
+				mDigest.update(b);
+				return;
+			}
+			System.arraycopy(b, 0, mBuf, mPos, b.length);
+			mPos += b.length;
+		}
+
+		private void flush() {
+			mDigest.update(mBuf, 0, mPos);
+			mPos = 0;
+		}
+	}
+}
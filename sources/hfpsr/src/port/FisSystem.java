@@ -0,0 +1,648 @@
+package port;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parsed FisPro Fuzzy Inference System (.fis file)
+ * 
+ * The rule base is held in a row-major matrix: the premise of rule r on input
+ * i is {@code getPremise(r, i)} (0 when the input is not used by the rule) and
+ * its conclusion on output o is {@code getConclusion(r, o)} (a MF index for
+ * fuzzy outputs, a value for crisp outputs).
+ * 
+ * @author Antonio Di Mauro
+ */
+public class FisSystem {
+
+	private String mName = "";
+	private String mConjunction = "min";
+	private String mMissingValues = "random";
+	private FisVariable[] mInputs = new FisVariable[0];
+	private FisVariable[] mOutputs = new FisVariable[0];
+	private int mNumRules;
+	private int[] mPremises = new int[0];
+	private double[] mConclusions = new double[0];
+	private double[] mWeights = new double[0];
+	private boolean mHasWeights;
+	private List<String> mExtras = new ArrayList<String>();
+	private List<String> mExceptions = new ArrayList<String>();
+
+	/**
+	 * Parse the content of a .fis file
+	 * 
+	 * @param content
+	 *            .fis file content
+	 * 
+	 * @return the parsed system
+	 * 
+	 * @throws IOException
+	 *             if the content is not a valid .fis file
+	 */
+	public static FisSystem parse(String content) throws IOException {
+		return parse(new StringReader(content));
+	}
+
+	/**
+	 * Parse the variables of a .fis file and count its rules, the rule base is
+	 * not parsed: the system describes the model and must not be inferred
+	 * 
+	 * @param content
+	 *            .fis file content
+	 * 
+	 * @return the system without its rule base
+	 * 
+	 * @throws IOException
+	 *             if the variables are not valid
+	 */
+	static FisSystem parseHeader(String content) throws IOException {
+
+		int rules = content.indexOf("[Rules]");
+		if (rules < 0)
+			return parse(content);
+		FisSystem sys = parse(content.substring(0, rules));
+		// a rule is a line of the section, as in parse()
+		BufferedReader in = new BufferedReader(new StringReader(content.substring(rules + "[Rules]".length())));
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.startsWith("["))
+				break;
+			if (!line.isEmpty() && !line.startsWith("#"))
+				sys.mNumRules++;
+		}
+		return sys;
+	}
+
+	/**
+	 * Parse a .fis file
+	 * 
+	 * @param reader
+	 *            .fis file reader
+	 * 
+	 * @return the parsed system
+	 * 
+	 * @throws IOException
+	 *             if the content is not a valid .fis file
+	 */
+	public static FisSystem parse(Reader reader) throws IOException {
+
+		FisSystem sys = new FisSystem();
+		BufferedReader in = new BufferedReader(reader);
+		List<FisVariable> inputs = new ArrayList<FisVariable>();
+		List<FisVariable> outputs = new ArrayList<FisVariable>();
+		List<double[]> rules = new ArrayList<double[]>();
+		int nInputs = 0;
+		int nOutputs = 0;
+
+		String section = "";
+		FisVariable var = null;
+		List<String> mfNames = new ArrayList<String>();
+		List<Integer> mfTypes = new ArrayList<Integer>();
+		List<String> mfTypeNames = new ArrayList<String>();
+		List<double[]> mfParams = new ArrayList<double[]>();
+
+		String line;
+		while ((line = in.readLine()) != null) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#"))
+				continue;
+
+			if (line.startsWith("[")) {
+				closeVariable(var, mfNames, mfTypes, mfTypeNames, mfParams);
+				section = line.substring(1, line.indexOf(']'));
+				var = null;
+				if (section.startsWith("Input")) {
+					var = new FisVariable();
+					inputs.add(var);
+				} else if (section.startsWith("Output")) {
+					var = new FisVariable();
+					outputs.add(var);
+				}
+				continue;
+			}
+
+			if (section.equals("Rules")) {
+				rules.add(parseNumbers(line));
+				continue;
+			}
+			if (section.equals("Exceptions")) {
+				sys.mExceptions.add(line);
+				continue;
+			}
+
+			int eq = line.indexOf('=');
+			if (eq < 0)
+				continue;
+			String key = line.substring(0, eq).trim();
+			String value = line.substring(eq + 1).trim();
+
+			if (section.equals("System")) {
+				if (key.equals("Name"))
+					sys.mName = unquote(value);
+				else if (key.equals("Ninputs"))
+					nInputs = Integer.parseInt(value);
+				else if (key.equals("Noutputs"))
+					nOutputs = Integer.parseInt(value);
+				else if (key.equals("Conjunction"))
+					sys.mConjunction = unquote(value);
+				else if (key.equals("MissingValues"))
+					sys.mMissingValues = unquote(value);
+				else if (!key.equals("Nrules") && !key.equals("Nexceptions"))
+					sys.mExtras.add(line);
+			} else if (var != null) {
+				if (key.equals("Name"))
+					var.mName = unquote(value);
+				else if (key.equals("Active"))
+					var.mActive = unquote(value).equalsIgnoreCase("yes");
+				else if (key.equals("Range")) {
+					double[] r = parseNumbers(value);
+					var.mRangeMin = r[0];
+					var.mRangeMax = r[1];
+				} else if (key.equals("Nature"))
+					var.mFuzzy = unquote(value).equalsIgnoreCase("fuzzy");
+				else if (key.equals("Defuzzification"))
+					var.mDefuzzification = unquote(value);
+				else if (key.equals("Disjunction"))
+					var.mDisjunction = unquote(value);
+				else if (key.equals("DefaultValue"))
+					var.mDefaultValue = Double.parseDouble(value);
+				else if (key.equals("Classif"))
+					var.mClassif = unquote(value).equalsIgnoreCase("yes");
+				else if (key.startsWith("MF")) {
+					// MF1='name','type',[p1,p2,...]
+					int c1 = value.indexOf(',');
+					int br = value.indexOf('[');
+					if (c1 < 0 || br < 0)
+						throw new IOException("Malformed membership function: " + line);
+					String type = unquote(value.substring(c1 + 1, br).trim().replaceAll(",$", "").trim());
+					// a type unknown to the JVM is kept to write the model back
+					int code = FisVariable.mfType(type);
+					mfNames.add(unquote(value.substring(0, c1).trim()));
+					mfTypes.add(code);
+					mfTypeNames.add(code == FisVariable.MF_UNKNOWN ? type : null);
+					mfParams.add(parseNumbers(value.substring(br)));
+				} else if (!key.equals("NMFs"))
+					var.mExtras.add(line);
+			}
+		}
+		closeVariable(var, mfNames, mfTypes, mfTypeNames, mfParams);
+
+		if (inputs.size() != nInputs || outputs.size() != nOutputs)
+			throw new IOException("Fis declares " + nInputs + " inputs and " + nOutputs + " outputs but defines "
+					+ inputs.size() + " and " + outputs.size());
+
+		sys.mInputs = inputs.toArray(new FisVariable[nInputs]);
+		sys.mOutputs = outputs.toArray(new FisVariable[nOutputs]);
+		sys.mNumRules = rules.size();
+		sys.mPremises = new int[sys.mNumRules * nInputs];
+		sys.mConclusions = new double[sys.mNumRules * nOutputs];
+		sys.mWeights = new double[sys.mNumRules];
+		for (int r = 0; r < sys.mNumRules; r++) {
+			double[] rule = rules.get(r);
+			if (rule.length < nInputs + nOutputs)
+				throw new IOException("Rule " + (r + 1) + " has " + rule.length + " values, expected "
+						+ (nInputs + nOutputs));
+			for (int i = 0; i < nInputs; i++)
+				sys.mPremises[r * nInputs + i] = (int) rule[i];
+			for (int o = 0; o < nOutputs; o++)
+				sys.mConclusions[r * nOutputs + o] = rule[nInputs + o];
+			sys.mWeights[r] = rule.length > nInputs + nOutputs ? rule[nInputs + nOutputs] : 1.0;
+			sys.mHasWeights |= rule.length > nInputs + nOutputs;
+		}
+		return sys;
+	}
+
+	/**
+	 * Store the membership functions read so far in the current variable
+	 */
+	private static void closeVariable(FisVariable var, List<String> names, List<Integer> types,
+			List<String> typeNames, List<double[]> params) {
+
+		if (var != null) {
+			var.mMfNames = names.toArray(new String[names.size()]);
+			var.mMfTypes = new int[types.size()];
+			for (int k = 0; k < var.mMfTypes.length; k++)
+				var.mMfTypes[k] = types.get(k);
+			var.mMfTypeNames = typeNames.toArray(new String[typeNames.size()]);
+			var.mMfParams = params.toArray(new double[params.size()][]);
+		}
+		names.clear();
+		types.clear();
+		typeNames.clear();
+		params.clear();
+	}
+
+	/**
+	 * Check that the MFs of all the variables can be evaluated in the JVM
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if a MF type is unknown, the model must be used by FisPro
+	 */
+	public void checkMfTypes() {
+
+		for (FisVariable[] vars : new FisVariable[][] { mInputs, mOutputs }) {
+			for (FisVariable var : vars) {
+				for (int k = 0; k < var.getNumMfs(); k++)
+					if (var.getMfType(k) == FisVariable.MF_UNKNOWN)
+						throw new IllegalArgumentException("The membership function type '" + var.getMfTypeName(k)
+								+ "' of " + var.getName() + " is not supported in the JVM, please use FisPro");
+			}
+		}
+	}
+
+	/**
+	 * Parse a comma separated list of numbers, brackets and empty fields are
+	 * ignored
+	 */
+	private static double[] parseNumbers(String s) throws IOException {
+
+		String[] tokens = s.replace('[', ' ').replace(']', ' ').split(",");
+		double[] tmp = new double[tokens.length];
+		int n = 0;
+		for (String t : tokens) {
+			t = t.trim();
+			if (t.isEmpty())
+				continue;
+			try {
+				tmp[n++] = Double.parseDouble(t);
+			} catch (NumberFormatException e) {
+				throw new IOException("Not a number: '" + t + "'");
+			}
+		}
+		double[] out = new double[n];
+		System.arraycopy(tmp, 0, out, 0, n);
+		return out;
+	}
+
+	/**
+	 * Copy of the system with another rule base, without weights and
+	 * exceptions: the variables are shared
+	 * 
+	 * @param nRules
+	 *            number of rules
+	 * @param premises
+	 *            premises of the rules, row-major as {@link #getPremise}
+	 * @param conclusions
+	 *            conclusions of the rules, row-major as {@link #getConclusion}
+	 * 
+	 * @return the new system
+	 */
+	FisSystem withRules(int nRules, int[] premises, double[] conclusions) {
+
+		FisSystem sys = new FisSystem();
+		sys.mName = mName;
+		sys.mConjunction = mConjunction;
+		sys.mMissingValues = mMissingValues;
+		sys.mExtras = new ArrayList<String>(mExtras);
+		sys.mInputs = mInputs;
+		sys.mOutputs = mOutputs;
+		sys.mNumRules = nRules;
+		sys.mPremises = premises;
+		sys.mConclusions = conclusions;
+		sys.mWeights = new double[nRules];
+		Arrays.fill(sys.mWeights, 1.0);
+		return sys;
+	}
+
+	/**
+	 * Copy of the system whose outputs are crisp, see
+	 * {@link FisVariable#toSugeno()}
+	 * 
+	 * @return the new system, without rules
+	 */
+	FisSystem withSugenoOutputs() {
+
+		FisSystem sys = withRules(0, new int[0], new double[0]);
+		sys.mOutputs = new FisVariable[mOutputs.length];
+		for (int o = 0; o < mOutputs.length; o++)
+			sys.mOutputs[o] = mOutputs[o].toSugeno();
+		return sys;
+	}
+
+	/**
+	 * Write the system in the FisPro .fis format
+	 * 
+	 * @param writer
+	 *            destination writer
+	 * 
+	 * @throws IOException
+	 *             if the writer fails
+	 */
+	public void write(Writer writer) throws IOException {
+
+		int nInputs = mInputs.length;
+		int nOutputs = mOutputs.length;
+		StringBuilder sb = new StringBuilder(256);
+
+		sb.append("[System]\n");
+		sb.append("Name='").append(mName).append("'\n");
+		sb.append("Ninputs=").append(nInputs).append('\n');
+		sb.append("Noutputs=").append(nOutputs).append('\n');
+		sb.append("Nrules=").append(mNumRules).append('\n');
+		sb.append("Nexceptions=").append(mExceptions.size()).append('\n');
+		sb.append("Conjunction='").append(mConjunction).append("'\n");
+		sb.append("MissingValues='").append(mMissingValues).append("'\n");
+		for (String extra : mExtras)
+			sb.append(extra).append('\n');
+		writer.write(sb.toString());
+
+		for (int i = 0; i < nInputs; i++)
+			writeVariable(writer, "Input" + (i + 1), mInputs[i], false);
+		for (int o = 0; o < nOutputs; o++)
+			writeVariable(writer, "Output" + (o + 1), mOutputs[o], true);
+
+		writer.write("\n[Rules]\n");
+		for (int r = 0; r < mNumRules; r++) {
+			sb.setLength(0);
+			for (int i = 0; i < nInputs; i++)
+				sb.append(mPremises[r * nInputs + i]).append(", ");
+			for (int o = 0; o < nOutputs; o++)
+				sb.append(mConclusions[r * nOutputs + o]).append(", ");
+			if (mHasWeights)
+				sb.append(mWeights[r]).append(", ");
+			sb.setLength(sb.length() - 1);
+			sb.append('\n');
+			writer.write(sb.toString());
+		}
+
+		writer.write("\n[Exceptions]\n");
+		for (String exception : mExceptions)
+			writer.write(exception + "\n");
+		writer.flush();
+	}
+
+	private static void writeVariable(Writer writer, String section, FisVariable var, boolean output)
+			throws IOException {
+
+		StringBuilder sb = new StringBuilder(256);
+		sb.append("\n[").append(section).append("]\n");
+		if (output) {
+			sb.append("Nature='").append(var.mFuzzy ? "fuzzy" : "crisp").append("'\n");
+			sb.append("Defuzzification='").append(var.mDefuzzification).append("'\n");
+			sb.append("Disjunction='").append(var.mDisjunction).append("'\n");
+			sb.append("DefaultValue=").append(var.mDefaultValue).append('\n');
+			sb.append("Classif='").append(var.mClassif ? "yes" : "no").append("'\n");
+		}
+		sb.append("Active='").append(var.mActive ? "yes" : "no").append("'\n");
+		sb.append("Name='").append(var.mName).append("'\n");
+		sb.append("Range=[").append(var.mRangeMin).append(',').append(var.mRangeMax).append("]\n");
+		sb.append("NMFs=").append(var.mMfTypes.length).append('\n');
+		for (int k = 0; k < var.mMfTypes.length; k++) {
+			sb.append("MF").append(k + 1).append("='").append(var.mMfNames[k]).append("','")
+					.append(var.getMfTypeName(k)).append("',[");
+			double[] p = var.mMfParams[k];
+			for (int j = 0; j < p.length; j++)
+				sb.append(j > 0 ? "," : "").append(p[j]);
+			sb.append("]\n");
+		}
+		for (String extra : var.mExtras)
+			sb.append(extra).append('\n');
+		writer.write(sb.toString());
+	}
+
+	/**
+	 * Write the system in a compact binary form, see {@link #readFrom}
+	 * 
+	 * @param out
+	 *            destination stream
+	 * 
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public void writeTo(DataOutputStream out) throws IOException {
+
+		out.writeUTF(mName);
+		out.writeUTF(mConjunction);
+		out.writeUTF(mMissingValues);
+		writeStrings(out, mExtras);
+		writeStrings(out, mExceptions);
+		out.writeInt(mInputs.length);
+		out.writeInt(mOutputs.length);
+		for (FisVariable var : mInputs)
+			writeVariable(out, var);
+		for (FisVariable var : mOutputs)
+			writeVariable(out, var);
+		out.writeInt(mNumRules);
+		out.writeBoolean(mHasWeights);
+		for (int p : mPremises)
+			out.writeInt(p);
+		for (double c : mConclusions)
+			out.writeDouble(c);
+		for (double w : mWeights)
+			out.writeDouble(w);
+	}
+
+	/**
+	 * Read a system written by {@link #writeTo}
+	 * 
+	 * @param in
+	 *            source stream
+	 * 
+	 * @return the system
+	 * 
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	public static FisSystem readFrom(DataInputStream in) throws IOException {
+
+		FisSystem sys = readHeader(in);
+		sys.mHasWeights = in.readBoolean();
+		sys.mPremises = new int[sys.mNumRules * sys.mInputs.length];
+		sys.mConclusions = new double[sys.mNumRules * sys.mOutputs.length];
+		sys.mWeights = new double[sys.mNumRules];
+		for (int k = 0; k < sys.mPremises.length; k++)
+			sys.mPremises[k] = in.readInt();
+		for (int k = 0; k < sys.mConclusions.length; k++)
+			sys.mConclusions[k] = in.readDouble();
+		for (int k = 0; k < sys.mWeights.length; k++)
+			sys.mWeights[k] = in.readDouble();
+		return sys;
+	}
+
+	/**
+	 * Read the variables and the number of rules of a system written by
+	 * {@link #writeTo}, the rule base is not read: the system describes the
+	 * model and must not be inferred
+	 * 
+	 * @param in
+	 *            source stream
+	 * 
+	 * @return the system without its rule base
+	 * 
+	 * @throws IOException
+	 *             if the stream fails
+	 */
+	static FisSystem readHeader(DataInputStream in) throws IOException {
+
+		FisSystem sys = new FisSystem();
+		sys.mName = in.readUTF();
+		sys.mConjunction = in.readUTF();
+		sys.mMissingValues = in.readUTF();
+		sys.mExtras = readStrings(in);
+		sys.mExceptions = readStrings(in);
+		sys.mInputs = new FisVariable[in.readInt()];
+		sys.mOutputs = new FisVariable[in.readInt()];
+		for (int i = 0; i < sys.mInputs.length; i++)
+			sys.mInputs[i] = readVariable(in);
+		for (int o = 0; o < sys.mOutputs.length; o++)
+			sys.mOutputs[o] = readVariable(in);
+		sys.mNumRules = in.readInt();
+		return sys;
+	}
+
+	private static void writeVariable(DataOutputStream out, FisVariable var) throws IOException {
+
+		out.writeUTF(var.mName);
+		out.writeBoolean(var.mActive);
+		out.writeDouble(var.mRangeMin);
+		out.writeDouble(var.mRangeMax);
+		out.writeBoolean(var.mFuzzy);
+		out.writeUTF(var.mDefuzzification);
+		out.writeUTF(var.mDisjunction);
+		out.writeDouble(var.mDefaultValue);
+		out.writeBoolean(var.mClassif);
+		writeStrings(out, var.mExtras);
+		out.writeInt(var.mMfTypes.length);
+		for (int k = 0; k < var.mMfTypes.length; k++) {
+			out.writeUTF(var.mMfNames[k]);
+			out.writeInt(var.mMfTypes[k]);
+			if (var.mMfTypes[k] == FisVariable.MF_UNKNOWN)
+				out.writeUTF(var.mMfTypeNames[k]);
+			out.writeInt(var.mMfParams[k].length);
+			for (double p : var.mMfParams[k])
+				out.writeDouble(p);
+		}
+	}
+
+	private static FisVariable readVariable(DataInputStream in) throws IOException {
+
+		FisVariable var = new FisVariable();
+		var.mName = in.readUTF();
+		var.mActive = in.readBoolean();
+		var.mRangeMin = in.readDouble();
+		var.mRangeMax = in.readDouble();
+		var.mFuzzy = in.readBoolean();
+		var.mDefuzzification = in.readUTF();
+		var.mDisjunction = in.readUTF();
+		var.mDefaultValue = in.readDouble();
+		var.mClassif = in.readBoolean();
+		var.mExtras = readStrings(in);
+		int n = in.readInt();
+		var.mMfNames = new String[n];
+		var.mMfTypes = new int[n];
+		var.mMfTypeNames = new String[n];
+		var.mMfParams = new double[n][];
+		for (int k = 0; k < n; k++) {
+			var.mMfNames[k] = in.readUTF();
+			var.mMfTypes[k] = in.readInt();
+			if (var.mMfTypes[k] == FisVariable.MF_UNKNOWN)
+				var.mMfTypeNames[k] = in.readUTF();
+			var.mMfParams[k] = new double[in.readInt()];
+			for (int j = 0; j < var.mMfParams[k].length; j++)
+				var.mMfParams[k][j] = in.readDouble();
+		}
+		return var;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> list) throws IOException {
+		out.writeInt(list.size());
+		for (String s : list)
+			out.writeUTF(s);
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int n = in.readInt();
+		List<String> list = new ArrayList<String>(n);
+		for (int k = 0; k < n; k++)
+			list.add(in.readUTF());
+		return list;
+	}
+
+	/**
+	 * @return the system in the FisPro .fis format
+	 */
+	@Override
+	public String toString() {
+
+		StringWriter sw = new StringWriter();
+		try {
+			write(sw);
+		} catch (IOException e) {
+			// a StringWriter does not fail
+		}
+		return sw.toString();
+	}
+
+	private static String unquote(String s) {
+		s = s.trim();
+		if (s.length() >= 2 && s.charAt(0) == '\'' && s.charAt(s.length() - 1) == '\'')
+			return s.substring(1, s.length() - 1);
+		return s;
+	}
+
+	public String getName() {
+		return mName;
+	}
+
+	public int getNumExceptions() {
+		return mExceptions.size();
+	}
+
+	public String getConjunction() {
+		return mConjunction;
+	}
+
+	public String getMissingValues() {
+		return mMissingValues;
+	}
+
+	public int getNumInputs() {
+		return mInputs.length;
+	}
+
+	public int getNumOutputs() {
+		return mOutputs.length;
+	}
+
+	public int getNumRules() {
+		return mNumRules;
+	}
+
+	public FisVariable getInput(int i) {
+		return mInputs[i];
+	}
+
+	public FisVariable getOutput(int o) {
+		return mOutputs[o];
+	}
+
+	/**
+	 * @return MF index (1 based) used by rule r on input i, 0 if the input is
+	 *         not part of the premise
+	 */
+	public int getPremise(int r, int i) {
+		return mPremises[r * mInputs.length + i];
+	}
+
+	/**
+	 * @return conclusion of rule r on output o: MF index (1 based) for a fuzzy
+	 *         output, value for a crisp output
+	 */
+	public double getConclusion(int r, int o) {
+		return mConclusions[r * mOutputs.length + o];
+	}
+
+	public double getWeight(int r) {
+		return mWeights[r];
+	}
+}
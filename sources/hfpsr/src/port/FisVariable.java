@@ -0,0 +1,243 @@
+package port;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Input or output variable of a FisPro Fuzzy Inference System
+ * 
+ * Membership functions are held in primitive arrays: the type of the k-th MF
+ * is {@code mMfTypes[k]} and its parameters are {@code mMfParams[k]}. A MF
+ * type unknown to the JVM is kept as read, with the code {@link #MF_UNKNOWN},
+ * to write the model back: it can not be evaluated.
+ * 
+ * @author Antonio Di Mauro
+ */
+public class FisVariable {
+
+	/**
+	 * Membership function types
+	 */
+	public static final int MF_TRAPEZOIDAL = 0;
+	public static final int MF_TRIANGULAR = 1;
+	public static final int MF_SEMI_TRAPEZOID_INF = 2;
+	public static final int MF_SEMI_TRAPEZOID_SUP = 3;
+	public static final int MF_GAUSSIAN = 4;
+	public static final int MF_DISCRETE = 5;
+	public static final int MF_UNKNOWN = -1;
+
+	private static final String[] MF_TYPE_NAMES = { "trapezoidal", "triangular", "SemiTrapezoidalInf",
+			"SemiTrapezoidalSup", "gaussian", "discrete" };
+	// names written by the first versions of the plugin
+	private static final String[] MF_TYPE_ALIASES = { null, null, "SemiTrapezoidInf", "SemiTrapezoidSup", null,
+			null };
+
+	String mName = "";
+	boolean mActive = true;
+	double mRangeMin;
+	double mRangeMax;
+	String[] mMfNames = new String[0];
+	int[] mMfTypes = new int[0];
+	// type names of the MFs of unknown type, null for the others
+	String[] mMfTypeNames = new String[0];
+	double[][] mMfParams = new double[0][];
+
+	// output only
+	boolean mFuzzy = true;
+	String mDefuzzification = "";
+	String mDisjunction = "";
+	double mDefaultValue;
+	boolean mClassif;
+
+	// keys not interpreted by the parser, kept as read to emit them back
+	List<String> mExtras = new ArrayList<String>();
+
+	public String getName() {
+		return mName;
+	}
+
+	public boolean isActive() {
+		return mActive;
+	}
+
+	public double getRangeMin() {
+		return mRangeMin;
+	}
+
+	public double getRangeMax() {
+		return mRangeMax;
+	}
+
+	public int getNumMfs() {
+		return mMfTypes.length;
+	}
+
+	public String getMfName(int k) {
+		return mMfNames[k];
+	}
+
+	public int getMfType(int k) {
+		return mMfTypes[k];
+	}
+
+	/**
+	 * @param k
+	 *            membership function index (0 based)
+	 * 
+	 * @return MF type as written in the .fis file
+	 */
+	public String getMfTypeName(int k) {
+		return mMfTypes[k] == MF_UNKNOWN ? mMfTypeNames[k] : MF_TYPE_NAMES[mMfTypes[k]];
+	}
+
+	public double[] getMfParams(int k) {
+		return mMfParams[k];
+	}
+
+	/**
+	 * @return true if the output is fuzzy, false if it is crisp
+	 */
+	public boolean isFuzzy() {
+		return mFuzzy;
+	}
+
+	public String getDefuzzification() {
+		return mDefuzzification;
+	}
+
+	public String getDisjunction() {
+		return mDisjunction;
+	}
+
+	public double getDefaultValue() {
+		return mDefaultValue;
+	}
+
+	public boolean isClassif() {
+		return mClassif;
+	}
+
+	/**
+	 * Crisp output with the same name and range, whose rule conclusions are
+	 * values averaged by their activation (sugeno)
+	 * 
+	 * @return the crisp output
+	 */
+	FisVariable toSugeno() {
+
+		FisVariable v = new FisVariable();
+		v.mName = mName;
+		v.mActive = mActive;
+		v.mRangeMin = mRangeMin;
+		v.mRangeMax = mRangeMax;
+		v.mFuzzy = false;
+		v.mDefuzzification = "sugeno";
+		v.mDisjunction = "sum";
+		v.mDefaultValue = mDefaultValue;
+		return v;
+	}
+
+	/**
+	 * Membership degree of a value
+	 * 
+	 * @param k
+	 *            membership function index (0 based)
+	 * @param x
+	 *            value
+	 * 
+	 * @return membership degree in [0,1]
+	 */
+	public double degree(int k, double x) {
+		return degree(mMfTypes[k], mMfParams[k], x);
+	}
+
+	/**
+	 * Membership degree of a value for a given membership function
+	 * 
+	 * @param type
+	 *            membership function type
+	 * @param p
+	 *            membership function parameters
+	 * @param x
+	 *            value
+	 * 
+	 * @return membership degree in [0,1]
+	 */
+	public static double degree(int type, double[] p, double x) {
+
+		switch (type) {
+		case MF_TRAPEZOIDAL:
+			return trapezoid(p[0], p[1], p[2], p[3], x);
+		case MF_TRIANGULAR:
+			return trapezoid(p[0], p[1], p[1], p[2], x);
+		case MF_SEMI_TRAPEZOID_INF:
+			if (x <= p[1])
+				return 1.0;
+			return x >= p[2] ? 0.0 : (p[2] - x) / (p[2] - p[1]);
+		case MF_SEMI_TRAPEZOID_SUP:
+			if (x >= p[1])
+				return 1.0;
+			return x <= p[0] ? 0.0 : (x - p[0]) / (p[1] - p[0]);
+		case MF_GAUSSIAN:
+			double d = (x - p[0]) / p[1];
+			return Math.exp(-0.5 * d * d);
+		case MF_DISCRETE:
+			return x == p[0] ? 1.0 : 0.0;
+		default:
+			throw new IllegalArgumentException("Membership function type " + type + " is not supported in the JVM");
+		}
+	}
+
+	private static double trapezoid(double a, double b, double c, double d, double x) {
+		if (x <= a || x >= d)
+			return (x >= b && x <= c) ? 1.0 : 0.0;
+		if (x < b)
+			return (x - a) / (b - a);
+		if (x <= c)
+			return 1.0;
+		return (d - x) / (d - c);
+	}
+
+	/**
+	 * Return the support of a membership function as a trapezoid (a, b, c, d)
+	 * 
+	 * @param k
+	 *            membership function index (0 based)
+	 * 
+	 * @return trapezoid corners, a gaussian is approximated by mean +/- 3
+	 *         sigma
+	 */
+	double[] trapezoidOf(int k) {
+
+		double[] p = mMfParams[k];
+		switch (mMfTypes[k]) {
+		case MF_TRAPEZOIDAL:
+			return new double[] { p[0], p[1], p[2], p[3] };
+		case MF_TRIANGULAR:
+			return new double[] { p[0], p[1], p[1], p[2] };
+		case MF_SEMI_TRAPEZOID_INF:
+			return new double[] { p[0], p[0], p[1], p[2] };
+		case MF_SEMI_TRAPEZOID_SUP:
+			return new double[] { p[0], p[1], p[2], p[2] };
+		case MF_GAUSSIAN:
+			return new double[] { p[0] - 3 * p[1], p[0], p[0], p[0] + 3 * p[1] };
+		default:
+			return new double[] { p[0], p[0], p[0], p[0] };
+		}
+	}
+
+	/**
+	 * Convert a FisPro MF type name into its code
+	 * 
+	 * @param name
+	 *            MF type as written in the .fis file
+	 * 
+	 * @return MF type code, -1 if unknown
+	 */
+	static int mfType(String name) {
+		for (int i = 0; i < MF_TYPE_NAMES.length; i++)
+			if (MF_TYPE_NAMES[i].equalsIgnoreCase(name) || name.equalsIgnoreCase(MF_TYPE_ALIASES[i]))
+				return i;
+		return MF_UNKNOWN;
+	}
+}
@@ -0,0 +1,231 @@
+package port;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.knime.core.node.NodeLogger;
+
+/**
+ * Scratch directories of the nodes running FisPro tools
+ *
+ * The directories are created under a root set by the system property
+ * {@value #ROOT_PROPERTY}, by default '/dev/shm' when available (the files
+ * never leave memory) or 'java.io.tmpdir', in a session directory owned by
+ * this JVM. Released directories are emptied by a background thread and kept
+ * in a small pool for the next executions, so the node does not wait for the
+ * deletion of its files.
+ *
+ * A session is locked for the life of the JVM: the sessions left by crashed
+ * KNIME instances are not locked and are deleted when the plugin starts.
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisWorkspace {
+
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(FisWorkspace.class);
+
+	/**
+	 * System property with the root of the scratch directories
+	 */
+	public static final String ROOT_PROPERTY = "fis4knime.workspace";
+
+	private static final File SHM = new File("/dev/shm");
+	private static final String SESSION = "session-";
+	private static final String LOCK = ".lock";
+	// a session without lock may still be starting
+	private static final long STALE_MILLIS = 60000;
+	private static final int POOL_SIZE = Math.max(2, Runtime.getRuntime().availableProcessors());
+
+	private static final Queue<File> POOL = new ConcurrentLinkedQueue<File>();
+	private static final ExecutorService CLEANER = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r, "FisWorkspace cleaner");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	private static File sSession;
+	private static FileChannel sLockChannel;
+	private static FileLock sLock;
+
+	private FisWorkspace() {
+	}
+
+	/**
+	 * Create the session of this JVM and delete, in background, the sessions
+	 * of crashed instances. Called when the plugin starts, and by
+	 * {@link #acquire(String)} if it was not.
+	 *
+	 * @throws IOException
+	 *             if the session cannot be created
+	 */
+	public static synchronized void start() throws IOException {
+
+		if (sSession != null)
+			return;
+		final File root = getRoot();
+		if (!root.isDirectory() && !root.mkdirs())
+			throw new IOException("Workspace root " + root + " NOT created.");
+		File session = Files.createTempDirectory(root.toPath(), SESSION).toFile();
+		sLockChannel = new RandomAccessFile(new File(session, LOCK), "rw").getChannel();
+		sLock = sLockChannel.lock();
+		sSession = session;
+		LOGGER.debug("Workspace " + session + " created.");
+		CLEANER.execute(new Runnable() {
+			@Override
+			public void run() {
+				deleteStaleSessions(root);
+			}
+		});
+	}
+
+	/**
+	 * Delete the session of this JVM, waiting for the directories being
+	 * emptied. Called when the plugin stops.
+	 */
+	public static synchronized void stop() {
+
+		if (sSession == null)
+			return;
+		final File session = sSession;
+		sSession = null;
+		POOL.clear();
+		try {
+			CLEANER.submit(new Runnable() {
+				@Override
+				public void run() {
+					FileUtils.deleteQuietly(session);
+				}
+			}).get(1, TimeUnit.MINUTES);
+		} catch (Exception e) {
+			LOGGER.warn("Workspace " + session + " NOT deleted: " + e);
+		}
+		try {
+			sLock.release();
+			sLockChannel.close();
+		} catch (IOException e) {
+			LOGGER.debug("Could not release the workspace lock", e);
+		}
+	}
+
+	/**
+	 * Get an empty scratch directory, from the pool or a new one
+	 *
+	 * @param name
+	 *            name of the node, prefix of a new directory
+	 *
+	 * @return an existing empty directory, to be released with
+	 *         {@link #release(File)}
+	 *
+	 * @throws IOException
+	 *             if the directory cannot be created
+	 */
+	public static File acquire(String name) throws IOException {
+
+		File session;
+		synchronized (FisWorkspace.class) {
+			start();
+			session = sSession;
+		}
+		File dir;
+		while ((dir = POOL.poll()) != null) {
+			if (dir.isDirectory())
+				return dir;
+		}
+		return Files.createTempDirectory(session.toPath(), name + "-").toFile();
+	}
+
+	/**
+	 * Release a scratch directory: it is emptied in background and pooled,
+	 * or deleted if the pool is full
+	 *
+	 * @param dir
+	 *            directory from {@link #acquire(String)}
+	 */
+	public static void release(final File dir) {
+
+		CLEANER.execute(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					FileUtils.cleanDirectory(dir);
+					synchronized (FisWorkspace.class) {
+						if (sSession != null && POOL.size() < POOL_SIZE
+								&& dir.getParentFile().equals(sSession)) {
+							POOL.offer(dir);
+							return;
+						}
+					}
+					FileUtils.deleteDirectory(dir);
+				} catch (IOException | IllegalArgumentException e) {
+					LOGGER.warn("Directory " + dir + " NOT deleted: " + e);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Delete the sessions not locked by a running JVM
+	 */
+	private static void deleteStaleSessions(File root) {
+
+		File[] sessions = root.listFiles();
+		if (sessions == null)
+			return;
+		for (File session : sessions) {
+			if (!session.getName().startsWith(SESSION) || session.equals(sSession))
+				continue;
+			File lock = new File(session, LOCK);
+			if (!lock.exists()) {
+				if (System.currentTimeMillis() - session.lastModified() > STALE_MILLIS)
+					delete(session);
+				continue;
+			}
+			try (RandomAccessFile file = new RandomAccessFile(lock, "rw")) {
+				FileLock stale = file.getChannel().tryLock();
+				if (stale == null)
+					continue;
+				stale.release();
+			} catch (IOException | OverlappingFileLockException e) {
+				continue;
+			}
+			delete(session);
+		}
+	}
+
+	private static void delete(File session) {
+		if (FileUtils.deleteQuietly(session))
+			LOGGER.info("Workspace " + session + " of a previous run deleted.");
+	}
+
+	/**
+	 * @return the root of the sessions, by user
+	 */
+	static File getRoot() {
+
+		String root = System.getProperty(ROOT_PROPERTY);
+		File base;
+		if (root != null && !root.trim().isEmpty())
+			base = new File(root.trim());
+		else if (SHM.isDirectory() && SHM.canWrite())
+			base = SHM;
+		else
+			base = new File(System.getProperty("java.io.tmpdir"));
+		// the root may be shared by several users
+		return new File(base, "fis4knime-" + System.getProperty("user.name"));
+	}
+}
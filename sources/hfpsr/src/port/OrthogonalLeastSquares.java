@@ -0,0 +1,526 @@
+package port;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * In-JVM orthogonal least squares rule induction
+ *
+ * The candidate rules are the cells of the input partition of the
+ * configuration system holding an example, as found by {@link WangMendel}.
+ * Each candidate is a fuzzy basis function: its activation on an example
+ * divided by the sum of the activations of all the candidates. The rules are
+ * selected one at a time, the candidate whose component orthogonal to the
+ * rules already selected most reduces the squared error on the first output
+ * (Gram-Schmidt), until the reduction falls below a fraction of the output
+ * variance. The conclusions are the least squares values of each output on
+ * the selected rules, whose basis functions are normalized again by the
+ * selected rules only as at inference; the rules are in the order of
+ * selection and the outputs of the learned system are crisp (sugeno).
+ *
+ * The table is scanned three times, for the candidates and for the Gram
+ * matrices of the candidates and of the selected rules: each worker thread
+ * sums the matrix of its chunks of rows, the matrices are summed at the end.
+ * The selection only reads the Gram matrix, its cost does not depend on the
+ * number of rows. Rows with missing or non numeric values are ignored.
+ *
+ * The memory grows with the square of the number of candidates (the Gram
+ * matrix and the orthogonal components of the selected rules): the learning
+ * gives up, before the Gram matrix is allocated, if it would take more than
+ * {@link #getMaxMemory()}.
+ *
+ * @author Antonio Di Mauro
+ */
+public class OrthogonalLeastSquares {
+
+	/**
+	 * Default fraction of the output variance below which the error reduction
+	 * of a rule stops the selection
+	 */
+	public static final double DEFAULT_TOLERANCE = 1e-4;
+
+	private static final int CHUNK_ROWS = 4096;
+	// fraction of the maximum heap the candidates may take
+	private static final int HEAP_FRACTION = 2;
+	// memory of the Gram matrices summed at the same time
+	private static final long GRAM_BUDGET = 256L << 20;
+	// orthogonal components below this fraction of the norm are dependent
+	private static final double EPS = 1e-10;
+
+	private static final int CONJ_MIN = 0;
+	private static final int CONJ_PROD = 1;
+	private static final int CONJ_LUKA = 2;
+
+	private final FisSystem mCfg;
+	private final FisSystem mCandidates;
+	private final int mNumInputs;
+	private final int mNumOutputs;
+	private final int mNumCandidates;
+	private final int mConj;
+	private final int[] mMfOffset;
+	private final int[] mRowOffset;
+	private final Map<WangMendel.Premise, Integer> mIndex = new HashMap<WangMendel.Premise, Integer>();
+
+	private OrthogonalLeastSquares(FisSystem cfg, FisSystem candidates) {
+
+		mCfg = cfg;
+		mCandidates = candidates;
+		mNumInputs = cfg.getNumInputs();
+		mNumOutputs = cfg.getNumOutputs();
+		mNumCandidates = candidates.getNumRules();
+		String conj = cfg.getConjunction();
+		if (conj.equalsIgnoreCase("prod"))
+			mConj = CONJ_PROD;
+		else if (conj.equalsIgnoreCase("luka"))
+			mConj = CONJ_LUKA;
+		else
+			mConj = CONJ_MIN;
+		mMfOffset = new int[mNumInputs + 1];
+		for (int i = 0; i < mNumInputs; i++)
+			mMfOffset[i + 1] = mMfOffset[i] + cfg.getInput(i).getNumMfs();
+		// upper triangle of the Gram matrix, packed by row
+		long size = (long) mNumCandidates * (mNumCandidates + 1) / 2;
+		if (size > Integer.MAX_VALUE - 8)
+			throw new IllegalArgumentException("Too many candidate rules (" + mNumCandidates + ") for OLS");
+		mRowOffset = new int[mNumCandidates];
+		for (int r = 1; r < mNumCandidates; r++)
+			mRowOffset[r] = mRowOffset[r - 1] + mNumCandidates - r + 1;
+		for (int r = 0; r < mNumCandidates; r++) {
+			int[] mfs = new int[mNumInputs];
+			for (int i = 0; i < mNumInputs; i++)
+				mfs[i] = candidates.getPremise(r, i);
+			mIndex.put(new WangMendel.Premise(mfs), r);
+		}
+	}
+
+	/**
+	 * Learn a system from a table
+	 *
+	 * @param cfg
+	 *            configuration system, with the input partition and the
+	 *            outputs
+	 * @param t
+	 *            data table, the inputs followed by the outputs
+	 * @param tolerance
+	 *            fraction of the output variance below which the error
+	 *            reduction of a rule stops the selection
+	 * @param threads
+	 *            number of worker threads
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return the learned system, null if the candidate rules need more than
+	 *         {@link #getMaxMemory()}
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 */
+	public static FisSystem learn(FisSystem cfg, BufferedDataTable t, double tolerance, int threads,
+			ExecutionMonitor exec) throws CanceledExecutionException, InterruptedException {
+
+		if (cfg.getNumOutputs() == 0)
+			throw new IllegalArgumentException("The model has no output");
+		FisSystem candidates = WangMendel.learn(cfg, t, threads, exec.createSubProgress(0.2));
+		if (getMemory(candidates.getNumRules(), cfg.getNumOutputs()) > getMaxMemory())
+			return null;
+		OrthogonalLeastSquares ols = new OrthogonalLeastSquares(cfg, candidates);
+		Gram gram = ols.gram(t, threads, exec.createSubProgress(0.4));
+		FisSystem selected = ols.select(gram, tolerance, exec.createSubProgress(0.1));
+		// the activations are normalized by the selected rules only at
+		// inference, the conclusions are fitted again on them
+		ols = new OrthogonalLeastSquares(cfg, selected);
+		gram = ols.gram(t, threads, exec.createSubProgress(0.3));
+		return ols.select(gram, 0, exec);
+	}
+
+	/**
+	 * Memory taken by the selection, with a single Gram matrix
+	 *
+	 * @param candidates
+	 *            number of candidate rules
+	 * @param outputs
+	 *            number of outputs
+	 *
+	 * @return size in bytes: the packed Gram matrix, the orthogonal components
+	 *         of the selected rules and the projections of the outputs
+	 */
+	public static long getMemory(int candidates, int outputs) {
+		long m = candidates;
+		return 8 * (m * (m + 1) / 2 + m * m + 2 * m * outputs);
+	}
+
+	/**
+	 * @return largest memory of the selection in bytes, half of the maximum
+	 *         heap
+	 */
+	public static long getMaxMemory() {
+		return Runtime.getRuntime().maxMemory() / HEAP_FRACTION;
+	}
+
+	/**
+	 * Sum the Gram matrix of the basis functions over the table
+	 */
+	private Gram gram(BufferedDataTable t, int threads, ExecutionMonitor exec)
+			throws CanceledExecutionException, InterruptedException {
+
+		final int nCols = mNumInputs + mNumOutputs;
+		// a matrix for each worker thread, summed at the end
+		final Queue<Gram> grams = new ConcurrentLinkedQueue<Gram>();
+		final ThreadLocal<Gram> local = new ThreadLocal<Gram>() {
+			@Override
+			protected Gram initialValue() {
+				Gram gram = new Gram();
+				grams.add(gram);
+				return gram;
+			}
+		};
+		long bytes = 8L * (mRowOffset.length > 0 ? mRowOffset[mNumCandidates - 1] + 1 : 1);
+		long maxWorkers = Math.max(1, GRAM_BUDGET / bytes);
+		int workers = (int) Math.max(1, Math.min(Math.min(threads, maxWorkers), t.size() / CHUNK_ROWS + 1));
+		ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+		// bounds the chunks read ahead of the workers
+		final Semaphore pending = new Semaphore(2 * workers);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		double size = Math.max(1, t.size());
+		CloseableRowIterator it = t.iterator();
+		try {
+			double[] chunk = new double[CHUNK_ROWS * nCols];
+			int n = 0;
+			long read = 0;
+			while (it.hasNext()) {
+				DataRow row = it.next();
+				for (int c = 0; c < nCols; c++) {
+					DataCell cell = row.getCell(c);
+					chunk[n * nCols + c] = cell instanceof DoubleValue ? ((DoubleValue) cell).getDoubleValue()
+							: Double.NaN;
+				}
+				if (++n == CHUNK_ROWS || !it.hasNext()) {
+					final double[] values = chunk;
+					final int rows = n;
+					Runnable task = new Runnable() {
+						@Override
+						public void run() {
+							try {
+								addChunk(values, rows, local.get());
+							} finally {
+								pending.release();
+							}
+						}
+					};
+					while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS))
+						exec.checkCanceled();
+					if (pool != null)
+						results.add(pool.submit(task));
+					else
+						task.run();
+					read += n;
+					n = 0;
+					chunk = new double[CHUNK_ROWS * nCols];
+					exec.setProgress(read / size);
+					exec.checkCanceled();
+				}
+			}
+			for (Future<?> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				result.get();
+			}
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			it.close();
+			if (pool != null)
+				pool.shutdownNow();
+		}
+		Gram sum = grams.poll();
+		if (sum == null)
+			return new Gram();
+		for (Gram gram : grams)
+			sum.add(gram);
+		return sum;
+	}
+
+	/**
+	 * Add the basis functions of the examples of a chunk to a Gram matrix
+	 */
+	private void addChunk(double[] values, int rows, Gram g) {
+
+		final int nCols = mNumInputs + mNumOutputs;
+		double[] deg = g.mDegrees;
+		rows: for (int j = 0; j < rows; j++) {
+			int base = j * nCols;
+			for (int o = 0; o < mNumOutputs; o++) {
+				if (Double.isNaN(values[base + mNumInputs + o]))
+					continue rows;
+			}
+			// degrees of the MFs, and the MFs of each input holding the example
+			long combos = 1;
+			for (int i = 0; i < mNumInputs; i++) {
+				FisVariable in = mCfg.getInput(i);
+				g.mCount[i] = 0;
+				if (!in.isActive()) {
+					g.mFired[i][g.mCount[i]++] = 0;
+					continue;
+				}
+				double x = values[base + i];
+				if (Double.isNaN(x))
+					continue rows;
+				for (int k = 0; k < in.getNumMfs(); k++) {
+					deg[mMfOffset[i] + k] = in.degree(k, x);
+					if (deg[mMfOffset[i] + k] > 0)
+						g.mFired[i][g.mCount[i]++] = k + 1;
+				}
+				if (g.mCount[i] == 0)
+					continue rows;
+				combos = Math.min(combos * g.mCount[i], Integer.MAX_VALUE);
+			}
+			int n = combos <= mNumCandidates ? fireCells(g) : fireAll(g);
+			double sum = 0;
+			for (int p = 0; p < n; p++)
+				sum += g.mAct[p];
+			if (sum <= 0)
+				continue;
+			for (int p = 0; p < n; p++)
+				g.mAct[p] /= sum;
+			for (int p = 0; p < n; p++) {
+				double v = g.mAct[p];
+				int r = g.mIdx[p];
+				for (int q = 0; q < n; q++) {
+					int s = g.mIdx[q];
+					if (s >= r)
+						g.mGram[mRowOffset[r] + s - r] += v * g.mAct[q];
+				}
+				for (int o = 0; o < mNumOutputs; o++)
+					g.mProj[o][r] += v * values[base + mNumInputs + o];
+			}
+			double y = values[base + mNumInputs];
+			g.mSum += y;
+			g.mSquares += y * y;
+			g.mRows++;
+		}
+	}
+
+	/**
+	 * Activations of the candidates in the cells holding the example, the
+	 * combinations of the fired MFs of each input
+	 *
+	 * @return number of fired candidates
+	 */
+	private int fireCells(Gram g) {
+
+		int[] pos = g.mPos;
+		WangMendel.Premise key = g.mKey;
+		for (int i = 0; i < mNumInputs; i++)
+			pos[i] = 0;
+		int n = 0;
+		while (true) {
+			for (int i = 0; i < mNumInputs; i++)
+				key.mMfs[i] = g.mFired[i][pos[i]];
+			key.rehash();
+			Integer r = mIndex.get(key);
+			if (r != null) {
+				double a = activation(key.mMfs, g.mDegrees);
+				if (a > 0) {
+					g.mIdx[n] = r;
+					g.mAct[n++] = a;
+				}
+			}
+			int i = 0;
+			while (i < mNumInputs && ++pos[i] == g.mCount[i])
+				pos[i++] = 0;
+			if (i == mNumInputs)
+				return n;
+		}
+	}
+
+	/**
+	 * Activations of all the candidates, when the example fires more cells
+	 * than there are candidates
+	 *
+	 * @return number of fired candidates
+	 */
+	private int fireAll(Gram g) {
+
+		int[] mfs = g.mKey.mMfs;
+		int n = 0;
+		for (int r = 0; r < mNumCandidates; r++) {
+			for (int i = 0; i < mNumInputs; i++)
+				mfs[i] = mCandidates.getPremise(r, i);
+			double a = activation(mfs, g.mDegrees);
+			if (a > 0) {
+				g.mIdx[n] = r;
+				g.mAct[n++] = a;
+			}
+		}
+		return n;
+	}
+
+	/**
+	 * Activation of a premise with the conjunction of the system
+	 */
+	private double activation(int[] mfs, double[] deg) {
+
+		double a = 1.0;
+		for (int i = 0; i < mNumInputs && a > 0; i++) {
+			if (mfs[i] == 0)
+				continue;
+			double mu = deg[mMfOffset[i] + mfs[i] - 1];
+			if (mConj == CONJ_MIN)
+				a = mu < a ? mu : a;
+			else if (mConj == CONJ_PROD)
+				a *= mu;
+			else
+				a = Math.max(0.0, a + mu - 1.0);
+		}
+		return a;
+	}
+
+	/**
+	 * Select the rules and compute their conclusions
+	 */
+	private FisSystem select(Gram g, double tolerance, ExecutionMonitor exec) throws CanceledExecutionException {
+
+		int m = mNumCandidates;
+		double variance = g.mRows > 0 ? g.mSquares - g.mSum * g.mSum / g.mRows : 0;
+		// norm and projections of the candidates orthogonal to the selected
+		// rules
+		double[] norm = new double[m];
+		for (int k = 0; k < m; k++)
+			norm[k] = g.mGram[mRowOffset[k]];
+		double[][] proj = new double[mNumOutputs][];
+		for (int o = 0; o < mNumOutputs; o++)
+			proj[o] = g.mProj[o].clone();
+		boolean[] selected = new boolean[m];
+		int[] order = new int[m];
+		double[][] c = new double[m][];
+		double[] d = new double[m];
+		double[][] h = new double[m][mNumOutputs];
+		int nSel = 0;
+		while (nSel < m) {
+			int best = -1;
+			double bestGain = 0;
+			for (int k = 0; k < m; k++) {
+				if (selected[k] || norm[k] <= EPS * g.mGram[mRowOffset[k]])
+					continue;
+				double gain = proj[0][k] * proj[0][k] / norm[k];
+				if (gain > bestGain) {
+					best = k;
+					bestGain = gain;
+				}
+			}
+			if (best < 0 || (nSel > 0 && bestGain <= tolerance * variance))
+				break;
+			// products of the new orthogonal vector with every candidate
+			double[] cj = new double[m];
+			for (int k = 0; k < m; k++)
+				cj[k] = k < best ? g.mGram[mRowOffset[k] + best - k] : g.mGram[mRowOffset[best] + k - best];
+			for (int i = 0; i < nSel; i++) {
+				double f = c[i][best] / d[i];
+				if (f == 0)
+					continue;
+				for (int k = 0; k < m; k++)
+					cj[k] -= f * c[i][k];
+			}
+			d[nSel] = norm[best];
+			for (int o = 0; o < mNumOutputs; o++)
+				h[nSel][o] = proj[o][best];
+			selected[best] = true;
+			for (int k = 0; k < m; k++) {
+				if (selected[k])
+					continue;
+				norm[k] -= cj[k] * cj[k] / d[nSel];
+				for (int o = 0; o < mNumOutputs; o++)
+					proj[o][k] -= cj[k] * h[nSel][o] / d[nSel];
+			}
+			order[nSel] = best;
+			c[nSel++] = cj;
+			exec.setProgress((double) nSel / m);
+			exec.checkCanceled();
+		}
+
+		// conclusions on the selected rules, by back substitution
+		int[] premises = new int[nSel * mNumInputs];
+		double[] conclusions = new double[nSel * mNumOutputs];
+		for (int j = nSel - 1; j >= 0; j--) {
+			for (int o = 0; o < mNumOutputs; o++) {
+				double v = h[j][o] / d[j];
+				for (int l = j + 1; l < nSel; l++)
+					v -= c[j][order[l]] / d[j] * conclusions[l * mNumOutputs + o];
+				conclusions[j * mNumOutputs + o] = v;
+			}
+			for (int i = 0; i < mNumInputs; i++)
+				premises[j * mNumInputs + i] = mCandidates.getPremise(order[j], i);
+		}
+		return mCfg.withSugenoOutputs().withRules(nSel, premises, conclusions);
+	}
+
+	/**
+	 * Gram matrix of the basis functions, their products with the outputs
+	 * and the sums of the first output, with the buffers of a worker thread
+	 */
+	private final class Gram {
+
+		private final double[] mGram;
+		private final double[][] mProj;
+		private double mSum;
+		private double mSquares;
+		private long mRows;
+
+		private final double[] mDegrees;
+		private final int[][] mFired;
+		private final int[] mCount;
+		private final int[] mPos;
+		private final WangMendel.Premise mKey;
+		private final int[] mIdx;
+		private final double[] mAct;
+
+		private Gram() {
+			int m = mNumCandidates;
+			mGram = new double[m > 0 ? mRowOffset[m - 1] + 1 : 0];
+			mProj = new double[mNumOutputs][m];
+			mDegrees = new double[mMfOffset[mNumInputs]];
+			mFired = new int[mNumInputs][];
+			for (int i = 0; i < mNumInputs; i++)
+				mFired[i] = new int[Math.max(1, mCfg.getInput(i).getNumMfs())];
+			mCount = new int[mNumInputs];
+			mPos = new int[mNumInputs];
+			mKey = new WangMendel.Premise(new int[mNumInputs]);
+			mIdx = new int[m];
+			mAct = new double[m];
+		}
+
+		private void add(Gram g) {
+			for (int i = 0; i < mGram.length; i++)
+				mGram[i] += g.mGram[i];
+			for (int o = 0; o < mNumOutputs; o++) {
+				for (int k = 0; k < mProj[o].length; k++)
+					mProj[o][k] += g.mProj[o][k];
+			}
+			mSum += g.mSum;
+			mSquares += g.mSquares;
+			mRows += g.mRows;
+		}
+	}
+}
@@ -0,0 +1,461 @@
+package port;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+/**
+ * In-JVM Wang and Mendel rule induction
+ *
+ * The input partition is the one of the configuration system. Each example
+ * falls in the cell of the grid made of the MFs where its inputs have the
+ * highest degree, the degree of the example in the cell being the product of
+ * the input degrees. A rule is generated for each cell holding an example:
+ * its conclusion is the output of the example with the highest degree in the
+ * cell (the observed value for a crisp output, the MF with the highest degree
+ * for a fuzzy output). Ties go to the first example of the table, so the rule
+ * base does not depend on the number of threads.
+ *
+ * The table is scanned once: the rows are read in chunks, each chunk is
+ * processed by a worker thread into its own rule map and the maps are merged
+ * at the end. The first columns of the table are the inputs, followed by the
+ * outputs, as in the dataset read by FisPro. Rows with missing or non numeric
+ * values are ignored.
+ *
+ * The state of the learner, the example kept in each cell and the number of
+ * rows added, can be saved with the model: a learner restored from it adds
+ * only the rows appended since, and creates the same rules as a learner
+ * adding all the rows.
+ *
+ * @author Antonio Di Mauro
+ */
+public class WangMendel {
+
+	private static final int CHUNK_ROWS = 4096;
+
+	private final FisSystem mCfg;
+	private final int mNumInputs;
+	private final int mNumOutputs;
+	private final Map<Premise, Example> mCells = new HashMap<Premise, Example>();
+	private long mNumRows;
+
+	/**
+	 * Create a learner without examples
+	 *
+	 * @param cfg
+	 *            configuration system, with the input partition and the
+	 *            outputs
+	 */
+	public WangMendel(FisSystem cfg) {
+		cfg.checkMfTypes();
+		mCfg = cfg;
+		mNumInputs = cfg.getNumInputs();
+		mNumOutputs = cfg.getNumOutputs();
+	}
+
+	/**
+	 * Restore a learner from its state
+	 *
+	 * @param cfg
+	 *            configuration system, e.g. the system learned with the state
+	 * @param state
+	 *            state saved by {@link #getState()}
+	 *
+	 * @throws IOException
+	 *             if the state is not valid or does not fit the system
+	 */
+	public WangMendel(FisSystem cfg, byte[] state) throws IOException {
+
+		this(cfg);
+		DataInputStream in = new DataInputStream(new ByteArrayInputStream(state));
+		if (in.readInt() != mNumInputs || in.readInt() != mNumOutputs)
+			throw new IOException("The rule statistics do not fit the inputs and outputs of the model");
+		mNumRows = in.readLong();
+		int nCells = in.readInt();
+		for (int r = 0; r < nCells; r++) {
+			int[] mfs = new int[mNumInputs];
+			for (int i = 0; i < mNumInputs; i++)
+				mfs[i] = in.readInt();
+			double degree = in.readDouble();
+			long row = in.readLong();
+			double[] outputs = new double[mNumOutputs];
+			for (int o = 0; o < mNumOutputs; o++)
+				outputs[o] = in.readDouble();
+			mCells.put(new Premise(mfs), new Example(degree, row, outputs));
+		}
+	}
+
+	/**
+	 * Learn a system from a table
+	 *
+	 * @param cfg
+	 *            configuration system
+	 * @param t
+	 *            data table
+	 * @param threads
+	 *            number of worker threads
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @return the learned system
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 */
+	public static FisSystem learn(FisSystem cfg, BufferedDataTable t, int threads, ExecutionMonitor exec)
+			throws CanceledExecutionException, InterruptedException {
+		WangMendel wm = new WangMendel(cfg);
+		wm.add(t, threads, exec);
+		return wm.getSystem();
+	}
+
+	/**
+	 * Add the examples of a table, the rows following the ones already added
+	 *
+	 * @param t
+	 *            data table
+	 * @param threads
+	 *            number of worker threads
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 */
+	public void add(BufferedDataTable t, int threads, ExecutionMonitor exec)
+			throws CanceledExecutionException, InterruptedException {
+
+		final int nCols = mNumInputs + mNumOutputs;
+		if (t.getDataTableSpec().getNumColumns() < nCols)
+			throw new IllegalArgumentException("The dataset has " + t.getDataTableSpec().getNumColumns()
+					+ " columns, the model has " + mNumInputs + " inputs and " + mNumOutputs + " outputs");
+		// a rule map for each worker thread, merged at the end
+		final Queue<Map<Premise, Example>> maps = new ConcurrentLinkedQueue<Map<Premise, Example>>();
+		final ThreadLocal<Map<Premise, Example>> local = new ThreadLocal<Map<Premise, Example>>() {
+			@Override
+			protected Map<Premise, Example> initialValue() {
+				Map<Premise, Example> map = new HashMap<Premise, Example>();
+				maps.add(map);
+				return map;
+			}
+		};
+		int workers = (int) Math.max(1, Math.min(threads, t.size() / CHUNK_ROWS + 1));
+		ExecutorService pool = workers > 1 ? Executors.newFixedThreadPool(workers) : null;
+		// bounds the chunks read ahead of the workers
+		final Semaphore pending = new Semaphore(2 * workers);
+		List<Future<?>> results = new ArrayList<Future<?>>();
+		double size = Math.max(1, t.size());
+		CloseableRowIterator it = t.iterator();
+		try {
+			double[] chunk = new double[CHUNK_ROWS * nCols];
+			int n = 0;
+			long first = mNumRows;
+			while (it.hasNext()) {
+				DataRow row = it.next();
+				for (int c = 0; c < nCols; c++) {
+					DataCell cell = row.getCell(c);
+					chunk[n * nCols + c] = cell instanceof DoubleValue ? ((DoubleValue) cell).getDoubleValue()
+							: Double.NaN;
+				}
+				if (++n == CHUNK_ROWS || !it.hasNext()) {
+					final double[] values = chunk;
+					final int rows = n;
+					final long firstRow = first;
+					Runnable task = new Runnable() {
+						@Override
+						public void run() {
+							try {
+								addChunk(values, rows, firstRow, local.get());
+							} finally {
+								pending.release();
+							}
+						}
+					};
+					while (!pending.tryAcquire(100, TimeUnit.MILLISECONDS))
+						exec.checkCanceled();
+					if (pool != null)
+						results.add(pool.submit(task));
+					else
+						task.run();
+					first += n;
+					n = 0;
+					chunk = new double[CHUNK_ROWS * nCols];
+					exec.setProgress((first - mNumRows) / size);
+					exec.checkCanceled();
+				}
+			}
+			for (Future<?> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				result.get();
+			}
+			mNumRows = first;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		} finally {
+			it.close();
+			if (pool != null)
+				pool.shutdownNow();
+		}
+		for (Map<Premise, Example> map : maps) {
+			for (Map.Entry<Premise, Example> cell : map.entrySet())
+				put(mCells, cell.getKey(), cell.getValue());
+		}
+	}
+
+	/**
+	 * Add examples held in memory, on the calling thread, the rows following
+	 * the ones already added
+	 *
+	 * @param rows
+	 *            values of each row, the inputs followed by the outputs
+	 * @param index
+	 *            indexes of the rows added, in the order they are added
+	 */
+	public void add(double[][] rows, int[] index) {
+
+		final int nCols = mNumInputs + mNumOutputs;
+		double[] chunk = new double[Math.min(CHUNK_ROWS, index.length) * nCols];
+		int n = 0;
+		for (int j = 0; j < index.length; j++) {
+			System.arraycopy(rows[index[j]], 0, chunk, n * nCols, nCols);
+			if (++n == CHUNK_ROWS || j == index.length - 1) {
+				addChunk(chunk, n, mNumRows, mCells);
+				mNumRows += n;
+				n = 0;
+			}
+		}
+	}
+
+	/**
+	 * Put the examples of a chunk in their cell
+	 */
+	private void addChunk(double[] values, int rows, long firstRow, Map<Premise, Example> cells) {
+
+		final int nCols = mNumInputs + mNumOutputs;
+		Premise key = new Premise(new int[mNumInputs]);
+		rows: for (int j = 0; j < rows; j++) {
+			int base = j * nCols;
+			double degree = 1;
+			for (int i = 0; i < mNumInputs; i++) {
+				FisVariable in = mCfg.getInput(i);
+				if (!in.isActive()) {
+					key.mMfs[i] = 0;
+					continue;
+				}
+				double x = values[base + i];
+				if (Double.isNaN(x))
+					continue rows;
+				int best = 0;
+				double bestDegree = 0;
+				for (int k = 0; k < in.getNumMfs(); k++) {
+					double d = in.degree(k, x);
+					if (d > bestDegree) {
+						best = k + 1;
+						bestDegree = d;
+					}
+				}
+				if (best == 0)
+					continue rows;
+				key.mMfs[i] = best;
+				degree *= bestDegree;
+			}
+			for (int o = 0; o < mNumOutputs; o++) {
+				if (Double.isNaN(values[base + mNumInputs + o]))
+					continue rows;
+			}
+			key.rehash();
+			Example ex = cells.get(key);
+			if (ex == null || ex.isWorse(degree, firstRow + j)) {
+				double[] outputs = Arrays.copyOfRange(values, base + mNumInputs, base + nCols);
+				Example best = new Example(degree, firstRow + j, outputs);
+				// the scratch key is stored only for a new cell, a map keeps
+				// the key it holds when a value is replaced
+				cells.put(ex == null ? new Premise(key.mMfs.clone()) : key, best);
+			}
+		}
+	}
+
+	private static void put(Map<Premise, Example> cells, Premise key, Example ex) {
+		Example old = cells.get(key);
+		if (old == null || old.isWorse(ex.mDegree, ex.mRow))
+			cells.put(key, ex);
+	}
+
+	/**
+	 * @return number of rows added
+	 */
+	public long getNumRows() {
+		return mNumRows;
+	}
+
+	/**
+	 * Save the state of the learner: the example kept in each cell, with its
+	 * degree and row, and the number of rows added
+	 *
+	 * @return the encoded state, read by {@link #WangMendel(FisSystem, byte[])}
+	 */
+	public byte[] getState() {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(mNumInputs);
+			out.writeInt(mNumOutputs);
+			out.writeLong(mNumRows);
+			out.writeInt(mCells.size());
+			for (Map.Entry<Premise, Example> cell : mCells.entrySet()) {
+				for (int mf : cell.getKey().mMfs)
+					out.writeInt(mf);
+				Example ex = cell.getValue();
+				out.writeDouble(ex.mDegree);
+				out.writeLong(ex.mRow);
+				for (double y : ex.mOutputs)
+					out.writeDouble(y);
+			}
+			out.flush();
+		} catch (IOException e) {
+			// not thrown by an in-memory stream
+			throw new IllegalStateException(e);
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * @return number of rules of the system
+	 */
+	public int getNumRules() {
+		return mCells.size();
+	}
+
+	/**
+	 * Create the system with the rules of the examples added, ordered by
+	 * premise
+	 *
+	 * @return the learned system
+	 */
+	public FisSystem getSystem() {
+
+		List<Premise> keys = new ArrayList<Premise>(mCells.keySet());
+		Collections.sort(keys);
+		int nRules = keys.size();
+		int[] premises = new int[nRules * mNumInputs];
+		double[] conclusions = new double[nRules * mNumOutputs];
+		for (int r = 0; r < nRules; r++) {
+			Premise key = keys.get(r);
+			System.arraycopy(key.mMfs, 0, premises, r * mNumInputs, mNumInputs);
+			double[] y = mCells.get(key).mOutputs;
+			for (int o = 0; o < mNumOutputs; o++)
+				conclusions[r * mNumOutputs + o] = conclusion(mCfg.getOutput(o), y[o]);
+		}
+		return mCfg.withRules(nRules, premises, conclusions);
+	}
+
+	/**
+	 * Conclusion of a rule on an output: the observed value for a crisp
+	 * output, the MF (1 based) with the highest degree for a fuzzy output
+	 */
+	private static double conclusion(FisVariable out, double y) {
+
+		if (!out.isFuzzy() || out.getNumMfs() == 0)
+			return y;
+		int best = 1;
+		double bestDegree = -1;
+		for (int k = 0; k < out.getNumMfs(); k++) {
+			double d = out.degree(k, y);
+			if (d > bestDegree) {
+				best = k + 1;
+				bestDegree = d;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Cell of the input grid, the MF (1 based) of each input, 0 if the input
+	 * is not active
+	 */
+	static final class Premise implements Comparable<Premise> {
+
+		final int[] mMfs;
+		private int mHash;
+
+		Premise(int[] mfs) {
+			mMfs = mfs;
+			rehash();
+		}
+
+		void rehash() {
+			mHash = Arrays.hashCode(mMfs);
+		}
+
+		@Override
+		public int hashCode() {
+			return mHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof Premise && Arrays.equals(mMfs, ((Premise) obj).mMfs);
+		}
+
+		@Override
+		public int compareTo(Premise p) {
+			for (int i = 0; i < mMfs.length; i++) {
+				if (mMfs[i] != p.mMfs[i])
+					return mMfs[i] < p.mMfs[i] ? -1 : 1;
+			}
+			return 0;
+		}
+	}
+
+	/**
+	 * Example with the highest degree in a cell
+	 */
+	private static final class Example {
+
+		private final double mDegree;
+		private final long mRow;
+		private final double[] mOutputs;
+
+		private Example(double degree, long row, double[] outputs) {
+			mDegree = degree;
+			mRow = row;
+			mOutputs = outputs;
+		}
+
+		private boolean isWorse(double degree, long row) {
+			return degree > mDegree || (degree == mDegree && row < mRow);
+		}
+	}
+}
@@ -1,6 +1,13 @@
 package ols;
 
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+import port.OrthogonalLeastSquares;
 
 /**
  * <code>NodeDialog</code> for the "OLS" Node. Orthogonal Least Squares' FisPro
@@ -21,5 +28,20 @@ public class OLSNodeDialog extends DefaultNodeSettingsPane {
 	 */
 	protected OLSNodeDialog() {
 		super();
+
+		createNewGroup("Insert parameters");
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(OLSNodeModel.ENGINE_STR, OLSNodeModel.ENGINE_FISPRO), "Learning engine:",
+				new String[] { OLSNodeModel.ENGINE_JAVA, OLSNodeModel.ENGINE_FISPRO }));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelDouble(OLSNodeModel.TOLERANCE_STR, OrthogonalLeastSquares.DEFAULT_TOLERANCE),
+				"Selection tolerance, fraction of the output variance (default value: 0.0001):",
+				Double.valueOf(0.0001D)));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(OLSNodeModel.PARALLELISM_STR, OLSNodeModel.DEFAULT_PARALLELISM),
+				"Parallel workers (default=number of cores):", Integer.valueOf(1)));
 	}
 }
@@ -8,18 +8,22 @@ import java.io.PrintStream;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisCommand;
+import port.FisDatasetPipe;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisResultCache;
+import port.FisSystem;
+import port.FisWorkspace;
+import port.OrthogonalLeastSquares;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -28,6 +32,9 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelDouble;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 /**
  * This is the model implementation of OLS. Orthogonal Least Squares' FisPro
@@ -42,8 +49,35 @@ public class OLSNodeModel extends NodeModel {
 	// the logger instance
 	private static final NodeLogger LOGGER = NodeLogger.getLogger(OLSNodeModel.class);
 
-	private final String TABLE_SEP = ",";
+	/**
+	 * Keys used by {@link ols.OLSNodeDialog} to store settings
+	 */
+	public static final String ENGINE_STR = "engine_str";
+	public static final String TOLERANCE_STR = "tolerance_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+
+	/**
+	 * Learning engines
+	 */
+	public static final String ENGINE_JAVA = "Java";
+	public static final String ENGINE_FISPRO = "FisPro ols";
+
+	/**
+	 * Default number of parallel learning workers
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString ENGINE = new SettingsModelString(OLSNodeModel.ENGINE_STR, ENGINE_FISPRO);
+	private final SettingsModelDouble TOLERANCE = new SettingsModelDouble(OLSNodeModel.TOLERANCE_STR,
+			OrthogonalLeastSquares.DEFAULT_TOLERANCE);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(OLSNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+
 	private final String OLS_FIS = "ols.fis";
+	private final String FIS_FUNC = "Orthogonal Least Squares";
 	private final String CFG_FIS = "cfg.fis";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
 
@@ -52,6 +86,7 @@ public class OLSNodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -72,18 +107,33 @@ public class OLSNodeModel extends NodeModel {
 		FisModelPortObject out = null;
 		String dataName = "dataset.csv";
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		if (ENGINE_JAVA.equals(ENGINE.getStringValue())) {
+			// rules selected in the JVM, no dataset export nor FisPro binary
+			timeStart = System.currentTimeMillis();
+			FisSystem sys = OrthogonalLeastSquares.learn(cfg.getFisModel().getSystem(), table,
+					TOLERANCE.getDoubleValue(), Math.max(1, PARALLELISM.getIntValue()), exec);
+			if (sys != null) {
+				mModel = new FisModel(sys, FIS_FUNC);
+				timeEnd = System.currentTimeMillis();
+				if (DEBUG)
+					LOGGER.error("Integration execution time: " + (timeEnd - timeStart) + " ms");
+				return new PortObject[] { new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel)) };
+			}
+			// too many candidate rules for the heap
+			LOGGER.warn("The candidate rules need more than " + (OrthogonalLeastSquares.getMaxMemory() >> 20)
+					+ " MB in the JVM, the model is learned by " + ENGINE_FISPRO + ".");
+		}
+
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("OLS");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -97,38 +147,54 @@ public class OLSNodeModel extends NodeModel {
 					 * Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(table, homeDir, dataName)) {
-						if (olsFunction(fisDir, homeDir, dataName)) {
-							File fis = new File(homeDir, OLS_FIS);
-							// creation of the modelPortObject from the fis
-							// file
-							mModel = new FisModel(fis, "Orthogonal Least Squares");
-							if (DEBUG)
-								LOGGER.error("Model Summary: " + mModel.getSum());
-							out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
-							timeEnd = System.currentTimeMillis();
+					timeQueue = 0;
+					FisResultCache.Key key = FisResultCache.key(fisDir, "ols").add(cfg.getFisModel())
+							.add(table, exec);
+					mModel = FisResultCache.get(key);
+					if (mModel != null) {
+						// unchanged inputs, the model created before is used
+						timeCommandStart = timeCommandEnd = 0;
+						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+						timeEnd = System.currentTimeMillis();
+					} else {
+						FisDatasetPipe dataset = loadDataset(table, homeDir, dataName, exec);
+						if (dataset != null) {
+							try {
+								boolean created = olsFunction(fisDir, homeDir, dataName, exec);
+								if (dataset.finish() && created) {
+									File fis = new File(homeDir, OLS_FIS);
+									// creation of the modelPortObject from the fis
+									// file
+									mModel = new FisModel(fis, FIS_FUNC);
+									FisResultCache.put(key, mModel);
+									if (DEBUG)
+										LOGGER.error("Model Summary: " + mModel.getSum());
+									out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+									timeEnd = System.currentTimeMillis();
+								}
+							} finally {
+								dataset.close();
+							}
 						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -136,7 +202,7 @@ public class OLSNodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -174,20 +240,26 @@ public class OLSNodeModel extends NodeModel {
 	 *            workspace home path
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean olsFunction(String fisDir, String homeDir, String dataName) {
+	private boolean olsFunction(String fisDir, String homeDir, String dataName, ExecutionMonitor exec)
+			throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File ols = new File(fisDir, "ols");
 		File data = new File(homeDir, dataName);
 		File olsFis = new File(homeDir, OLS_FIS);
 		try {
-			String[] cmd = { ols.getPath(), data.getPath(), "-f" + CFG_FIS, "-c" + OLS_FIS };
+			String[] cmd = FisCommand.ols(fisDir, data.getPath(), CFG_FIS, OLS_FIS);
 			timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			int control = p.getExitCode();
 			timeCommandEnd = System.currentTimeMillis();
 			if (control == 0) {
 				if (!olsFis.exists())
@@ -201,7 +273,7 @@ public class OLSNodeModel extends NodeModel {
 	}
 
 	/**
-	 * Create csv file from BufferedDataTable
+	 * Create csv file, or FIFO, from BufferedDataTable
 	 * 
 	 * @param t
 	 *            data table
@@ -209,51 +281,24 @@ public class OLSNodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
 	 * 
-	 * @return true if creation is successful, else false
+	 * @return the dataset streamed or written for ols, null if creation failed
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private FisDatasetPipe loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
-			if (!file.exists())
-				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+			return FisDatasetPipe.open(t, file, false, exec, "ols");
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
-			return false;
+			return null;
 		}
-		return file.exists();
-	}
-
-	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "OLS");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
 	}
 
 	/**
@@ -261,7 +306,9 @@ public class OLSNodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the learned model has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -276,6 +323,9 @@ public class OLSNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		ENGINE.saveSettingsTo(settings);
+		TOLERANCE.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
 	}
 
 	/**
@@ -283,6 +333,19 @@ public class OLSNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		// nodes saved before the settings existed ran FisPro ols
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.loadSettingsFrom(settings);
+		else
+			ENGINE.setStringValue(ENGINE_FISPRO);
+		if (settings.containsKey(TOLERANCE_STR))
+			TOLERANCE.loadSettingsFrom(settings);
+		else
+			TOLERANCE.setDoubleValue(OrthogonalLeastSquares.DEFAULT_TOLERANCE);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.loadSettingsFrom(settings);
+		else
+			PARALLELISM.setIntValue(DEFAULT_PARALLELISM);
 	}
 
 	/**
@@ -290,6 +353,12 @@ public class OLSNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.validateSettings(settings);
+		if (settings.containsKey(TOLERANCE_STR))
+			TOLERANCE.validateSettings(settings);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.validateSettings(settings);
 	}
 
 	/**
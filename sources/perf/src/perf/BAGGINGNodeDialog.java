@@ -0,0 +1,49 @@
+package perf;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "BAGGING" Node. Ensemble of FisPro models
+ * learned on bootstrap samples
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Antonio Di Mauro
+ */
+public class BAGGINGNodeDialog extends DefaultNodeSettingsPane {
+
+	/**
+	 * New pane for configuring BAGGING node dialog. This is just a suggestion
+	 * to demonstrate possible default dialog components.
+	 */
+	protected BAGGINGNodeDialog() {
+		super();
+
+		createNewGroup("Insert parameters");
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(BAGGINGNodeModel.LEARNER_STR, FisLearner.WM), "Learner:",
+				FisLearner.LEARNERS));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(BAGGINGNodeModel.MEMBERS_STR, BAGGINGNodeModel.DEFAULT_MEMBERS),
+				"Number of members (default=25):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(BAGGINGNodeModel.SEED_STR, 0),
+				"Random seed (default=0):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(BAGGINGNodeModel.OUT_NUM_STR, 0),
+				"Output number (default=0, first output):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(BAGGINGNodeModel.PARALLELISM_STR, BAGGINGNodeModel.DEFAULT_PARALLELISM),
+				"Members learned at the same time (default=number of cores):", Integer.valueOf(1)));
+	}
+}
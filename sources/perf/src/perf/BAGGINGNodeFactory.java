@@ -0,0 +1,58 @@
+package perf;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "BAGGING" Node.
+ * Ensemble of FisPro models learned on bootstrap samples
+ *
+ * @author Antonio Di Mauro
+ */
+public class BAGGINGNodeFactory 
+        extends NodeFactory<BAGGINGNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public BAGGINGNodeModel createNodeModel() {
+        return new BAGGINGNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<BAGGINGNodeModel> createNodeView(final int viewIndex,
+            final BAGGINGNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new BAGGINGNodeDialog();
+    }
+
+}
+
@@ -0,0 +1,384 @@
+package perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import port.FisDatasetWriter;
+import port.FisModel;
+import port.FisModelPortObject;
+import port.FisModelPortObjectSpec;
+import port.FisPerformance;
+import port.FisSystem;
+import port.FisWorkspace;
+import port.WangMendel;
+
+/**
+ * This is the model implementation of Bagging. Ensemble of FisPro models
+ * learned on bootstrap samples
+ *
+ * Each member is learned on a bootstrap sample of the rows, the members being
+ * learned at the same time. WM members are learned in the JVM (see
+ * {@link WangMendel}) from the rows read once; for the other learners the
+ * dataset is exported once and the sample files are written from it in a
+ * single pass (see {@link FisLearner#writeSamples}). The members are stored
+ * in one model, the Perf node infers them all on each row.
+ *
+ * @author Antonio Di Mauro
+ */
+public class BAGGINGNodeModel extends NodeModel {
+
+	// the logger instance
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(BAGGINGNodeModel.class);
+
+	/**
+	 * Keys used by {@link perf.BAGGINGNodeDialog} to store settings
+	 */
+	public static final String LEARNER_STR = "learner_str";
+	public static final String MEMBERS_STR = "members_str";
+	public static final String SEED_STR = "seed_str";
+	public static final String OUT_NUM_STR = "out_num_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+
+	/**
+	 * Default number of members
+	 */
+	public static final int DEFAULT_MEMBERS = 25;
+
+	/**
+	 * Maximum number of members
+	 */
+	public static final int MAX_MEMBERS = FisLearner.MAX_SAMPLES;
+
+	/**
+	 * Default number of members learned at the same time
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString LEARNER = new SettingsModelString(BAGGINGNodeModel.LEARNER_STR,
+			FisLearner.WM);
+	private final SettingsModelInteger MEMBERS = new SettingsModelInteger(BAGGINGNodeModel.MEMBERS_STR,
+			DEFAULT_MEMBERS);
+	private final SettingsModelInteger SEED = new SettingsModelInteger(BAGGINGNodeModel.SEED_STR, 0);
+	private final SettingsModelInteger OUT_NUM = new SettingsModelInteger(BAGGINGNodeModel.OUT_NUM_STR, 0);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(BAGGINGNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+
+	private final String DATA_NAME = "dataset.csv";
+	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected BAGGINGNodeModel() {
+		// (number-input-ports, number-output-ports)
+		super(new PortType[] { FisModelPortObject.TYPE, BufferedDataTable.TYPE },
+				new PortType[] { FisModelPortObject.TYPE });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+
+		final FisModel cfg = ((FisModelPortObject) inData[0]).getFisModel();
+		BufferedDataTable table = (BufferedDataTable) inData[1];
+		final String learner = LEARNER.getStringValue();
+		final int nMembers = MEMBERS.getIntValue();
+		if (table.size() == 0)
+			throw new InvalidSettingsException("The dataset has no row");
+		if (learner.equals(FisLearner.HFPFIS) && cfg.getHfpContent().isEmpty())
+			throw new InvalidSettingsException("The HFPFIS learner needs the model of an HFP-SR node");
+
+		final byte[][] counts = bootstrap(nMembers, (int) table.size(), SEED.getIntValue());
+		final FisSystem[] members = new FisSystem[nMembers];
+		long timeStart = System.currentTimeMillis();
+		if (learner.equals(FisLearner.WM)) {
+			FisSystem sys = cfg.getSystem();
+			double[][] rows = FisPerformance.readRows(table, sys.getNumInputs() + sys.getNumOutputs(),
+					exec.createSubProgress(0.1));
+			learnWm(sys, rows, counts, members, exec.createSubProgress(0.9));
+		} else {
+			learnFisPro(cfg, table, learner, counts, members, exec);
+		}
+		LOGGER.info(nMembers + " " + learner + " members in " + (System.currentTimeMillis() - timeStart) + " ms");
+
+		// the members not created are left out of the ensemble
+		List<FisSystem> created = new ArrayList<FisSystem>();
+		for (FisSystem member : members) {
+			if (member != null)
+				created.add(member);
+		}
+		if (created.isEmpty())
+			throw new IOException("No member of the ensemble created.");
+		if (created.size() < nMembers)
+			setWarningMessage((nMembers - created.size()) + " of " + nMembers + " members NOT created.");
+		FisModel model = new FisModel(created.toArray(new FisSystem[created.size()]), getFisFunc(learner));
+		return new PortObject[] { new FisModelPortObject(model, new FisModelPortObjectSpec(model)) };
+	}
+
+	/**
+	 * Draw the bootstrap samples: each sample draws as many rows as the table,
+	 * with replacement
+	 *
+	 * @param nMembers
+	 *            number of samples
+	 * @param n
+	 *            number of rows
+	 * @param seed
+	 *            seed of the draws
+	 *
+	 * @return number of copies of each row in each sample
+	 */
+	private static byte[][] bootstrap(int nMembers, int n, long seed) {
+
+		Random seeds = new Random(seed);
+		byte[][] counts = new byte[nMembers][n];
+		for (int m = 0; m < nMembers; m++) {
+			Random random = new Random(seeds.nextLong());
+			byte[] c = counts[m];
+			for (int i = 0; i < n; i++) {
+				int r = random.nextInt(n);
+				// more than 127 copies of a row are not expected
+				if (c[r] < Byte.MAX_VALUE)
+					c[r]++;
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Learn the WM members in the JVM, a member on each worker thread
+	 *
+	 * Wang and Mendel keeps a rule for each cell of the input grid, so the
+	 * copies of a row do not change the rule base: each member adds the rows
+	 * of its sample once, in the order of the table.
+	 */
+	private void learnWm(final FisSystem cfg, final double[][] rows, final byte[][] counts,
+			final FisSystem[] members, ExecutionMonitor exec) throws Exception {
+
+		List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+		for (int m = 0; m < members.length; m++) {
+			final int member = m;
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() {
+					byte[] c = counts[member];
+					int n = 0;
+					for (byte copies : c) {
+						if (copies > 0)
+							n++;
+					}
+					int[] index = new int[n];
+					n = 0;
+					for (int r = 0; r < c.length; r++) {
+						if (c[r] > 0)
+							index[n++] = r;
+					}
+					WangMendel wm = new WangMendel(cfg);
+					wm.add(rows, index);
+					members[member] = wm.getSystem();
+					return null;
+				}
+			});
+		}
+		runAll(tasks, "WM", exec);
+	}
+
+	/**
+	 * Learn the members with a FisPro learner, each one in its directory on
+	 * its sample file
+	 */
+	private void learnFisPro(FisModel cfg, BufferedDataTable table, final String learner, byte[][] counts,
+			final FisSystem[] members, ExecutionContext exec) throws Exception {
+
+		final String fisDir;
+		try {
+			fisDir = peekFlowVariableString(FIS_BIN_PATH);
+		} catch (NoSuchElementException e) {
+			throw new InvalidSettingsException("Set the flow variable " + FIS_BIN_PATH + " to the FisPro bin path");
+		}
+		final int outNum = OUT_NUM.getIntValue();
+		final File baseDir = FisWorkspace.acquire("BAGGING");
+		try {
+			// the dataset is exported once, the samples are written from it
+			File data = new File(baseDir, DATA_NAME);
+			FisDatasetWriter.write(table, data, false, exec.createSubProgress(0.05));
+			final File[] homes = new File[members.length];
+			final File[] samples = new File[members.length];
+			for (int m = 0; m < members.length; m++) {
+				homes[m] = new File(baseDir, "member" + (m + 1));
+				if (!homes[m].mkdirs())
+					throw new IOException("Directory " + homes[m] + " NOT created.");
+				samples[m] = new File(homes[m], DATA_NAME);
+				FisLearner.copyConfig(cfg, learner, homes[m]);
+			}
+			FisLearner.writeSamples(data, samples, counts, exec.createSubProgress(0.15));
+
+			final ExecutionMonitor runs = exec.createSubProgress(0.8);
+			List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+			for (int m = 0; m < members.length; m++) {
+				final int member = m;
+				tasks.add(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						members[member] = FisLearner.learn(learner, fisDir, homes[member], samples[member], outNum,
+								runs).getSystem();
+						return null;
+					}
+				});
+			}
+			runAll(tasks, learner, runs);
+		} finally {
+			FisWorkspace.release(baseDir);
+		}
+	}
+
+	/**
+	 * Run the tasks on a pool of PARALLELISM threads, the tasks failing are
+	 * logged
+	 */
+	private void runAll(List<Callable<Void>> tasks, String learner, ExecutionMonitor exec)
+			throws CanceledExecutionException, InterruptedException {
+
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,
+				Math.min(PARALLELISM.getIntValue(), tasks.size())));
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (Callable<Void> task : tasks)
+				results.add(pool.submit(task));
+			pool.shutdown();
+			int done = 0;
+			for (Future<Void> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof CanceledExecutionException)
+						throw (CanceledExecutionException) e.getCause();
+					LOGGER.warn(learner + " member NOT created: " + e.getCause());
+				}
+				exec.setProgress((double) ++done / tasks.size(), done + "/" + tasks.size() + " members");
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return function of the ensemble models of a learner
+	 */
+	private static String getFisFunc(String learner) {
+		return "Bagging " + FisLearner.fisFunc(learner);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+
+		String learner = LEARNER.getStringValue();
+		if (!FisLearner.isLearner(learner))
+			throw new InvalidSettingsException("Unknown learner " + learner);
+		if (MEMBERS.getIntValue() < 1 || MEMBERS.getIntValue() > MAX_MEMBERS)
+			throw new InvalidSettingsException("The number of members must be between 1 and " + MAX_MEMBERS);
+		// the Perf node scores the ensemble on the first output
+		if (OUT_NUM.getIntValue() != 0)
+			throw new InvalidSettingsException("An ensemble needs 'Output number=0'");
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] {
+				cfg != null ? cfg.derive(getFisFunc(learner)) : new FisModelPortObjectSpec(getFisFunc(learner)) };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		LEARNER.saveSettingsTo(settings);
+		MEMBERS.saveSettingsTo(settings);
+		SEED.saveSettingsTo(settings);
+		OUT_NUM.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LEARNER.loadSettingsFrom(settings);
+		MEMBERS.loadSettingsFrom(settings);
+		SEED.loadSettingsFrom(settings);
+		OUT_NUM.loadSettingsFrom(settings);
+		PARALLELISM.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LEARNER.validateSettings(settings);
+		MEMBERS.validateSettings(settings);
+		SEED.validateSettings(settings);
+		OUT_NUM.validateSettings(settings);
+		PARALLELISM.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+}
@@ -0,0 +1,49 @@
+package perf;
+
+import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+/**
+ * <code>NodeDialog</code> for the "CROSSVAL" Node. Cross-validation of a
+ * FisPro learner
+ *
+ * This node dialog derives from {@link DefaultNodeSettingsPane} which allows
+ * creation of a simple dialog with standard components. If you need a more
+ * complex dialog please derive directly from
+ * {@link org.knime.core.node.NodeDialogPane}.
+ * 
+ * @author Antonio Di Mauro
+ */
+public class CROSSVALNodeDialog extends DefaultNodeSettingsPane {
+
+	/**
+	 * New pane for configuring CROSSVAL node dialog. This is just a suggestion
+	 * to demonstrate possible default dialog components.
+	 */
+	protected CROSSVALNodeDialog() {
+		super();
+
+		createNewGroup("Insert parameters");
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(CROSSVALNodeModel.LEARNER_STR, FisLearner.WM), "Learner:",
+				FisLearner.LEARNERS));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(CROSSVALNodeModel.FOLDS_STR, CROSSVALNodeModel.DEFAULT_FOLDS),
+				"Number of folds (default=10):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(CROSSVALNodeModel.SEED_STR, 0),
+				"Random seed (default=0):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(new SettingsModelInteger(CROSSVALNodeModel.OUT_NUM_STR, 0),
+				"Output number (default=0, first output):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(CROSSVALNodeModel.PARALLELISM_STR, CROSSVALNodeModel.DEFAULT_PARALLELISM),
+				"Concurrent learner runs (default=number of cores):", Integer.valueOf(1)));
+	}
+}
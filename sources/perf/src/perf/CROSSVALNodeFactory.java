@@ -0,0 +1,58 @@
+package perf;
+
+import org.knime.core.node.NodeDialogPane;
+import org.knime.core.node.NodeFactory;
+import org.knime.core.node.NodeView;
+
+/**
+ * <code>NodeFactory</code> for the "CROSSVAL" Node.
+ * Cross-validation of a FisPro learner
+ *
+ * @author Antonio Di Mauro
+ */
+public class CROSSVALNodeFactory 
+        extends NodeFactory<CROSSVALNodeModel> {
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public CROSSVALNodeModel createNodeModel() {
+        return new CROSSVALNodeModel();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int getNrNodeViews() {
+        return 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeView<CROSSVALNodeModel> createNodeView(final int viewIndex,
+            final CROSSVALNodeModel nodeModel) {
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean hasDialog() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NodeDialogPane createNodeDialogPane() {
+        return new CROSSVALNodeDialog();
+    }
+
+}
+
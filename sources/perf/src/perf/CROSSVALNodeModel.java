@@ -0,0 +1,466 @@
+package perf;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.data.def.IntCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+import org.knime.core.node.ExecutionMonitor;
+import org.knime.core.node.InvalidSettingsException;
+import org.knime.core.node.NodeLogger;
+import org.knime.core.node.NodeModel;
+import org.knime.core.node.NodeSettingsRO;
+import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+import org.knime.core.node.port.PortObject;
+import org.knime.core.node.port.PortObjectSpec;
+import org.knime.core.node.port.PortType;
+
+import port.FisDatasetWriter;
+import port.FisModel;
+import port.FisModelPortObject;
+import port.FisModelPortObjectSpec;
+import port.FisPerformance;
+import port.FisSystem;
+import port.FisWorkspace;
+
+/**
+ * This is the model implementation of CrossVal. Cross-validation of a FisPro
+ * learner
+ *
+ * The rows are shuffled in k folds. The dataset is exported once, the
+ * training file of each fold is sliced from it by copying its lines, and the
+ * learner is run on the k training files and on the whole dataset at the same
+ * time. Each fold model is scored in the JVM on the rows of its fold, as by
+ * the Perf node. The learners run with the default settings of their node.
+ *
+ * @author Antonio Di Mauro
+ */
+public class CROSSVALNodeModel extends NodeModel {
+
+	// the logger instance
+	private static final NodeLogger LOGGER = NodeLogger.getLogger(CROSSVALNodeModel.class);
+
+	/**
+	 * Keys used by {@link perf.CROSSVALNodeDialog} to store settings
+	 */
+	public static final String LEARNER_STR = "learner_str";
+	public static final String FOLDS_STR = "folds_str";
+	public static final String SEED_STR = "seed_str";
+	public static final String OUT_NUM_STR = "out_num_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+
+	/**
+	 * Default number of folds
+	 */
+	public static final int DEFAULT_FOLDS = 10;
+
+	/**
+	 * Maximum number of folds, a training file is open for each fold while
+	 * the dataset is sliced
+	 */
+	public static final int MAX_FOLDS = FisLearner.MAX_SAMPLES;
+
+	/**
+	 * Default number of concurrent learner runs
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString LEARNER = new SettingsModelString(CROSSVALNodeModel.LEARNER_STR,
+			FisLearner.WM);
+	private final SettingsModelInteger FOLDS = new SettingsModelInteger(CROSSVALNodeModel.FOLDS_STR, DEFAULT_FOLDS);
+	private final SettingsModelInteger SEED = new SettingsModelInteger(CROSSVALNodeModel.SEED_STR, 0);
+	private final SettingsModelInteger OUT_NUM = new SettingsModelInteger(CROSSVALNodeModel.OUT_NUM_STR, 0);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(CROSSVALNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+
+	private final String DATA_NAME = "dataset.csv";
+	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
+
+	/**
+	 * Columns of the fold and summary tables
+	 */
+	private final String[] PERF_NAMES = { "Rules", "RMSE", "Mean error", "Coverage" };
+
+	/**
+	 * Constructor for the node model.
+	 */
+	protected CROSSVALNodeModel() {
+		// configuration and dataset, fold and summary performance and model
+		super(new PortType[] { FisModelPortObject.TYPE, BufferedDataTable.TYPE },
+				new PortType[] { BufferedDataTable.TYPE, BufferedDataTable.TYPE, FisModelPortObject.TYPE });
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObject[] execute(final PortObject[] inData, final ExecutionContext exec) throws Exception {
+
+		final FisModel cfg = ((FisModelPortObject) inData[0]).getFisModel();
+		BufferedDataTable table = (BufferedDataTable) inData[1];
+		final String learner = LEARNER.getStringValue();
+		final int k = FOLDS.getIntValue();
+		final int outNum = OUT_NUM.getIntValue();
+
+		final String fisDir;
+		try {
+			fisDir = peekFlowVariableString(FIS_BIN_PATH);
+		} catch (NoSuchElementException e) {
+			throw new InvalidSettingsException("Set the flow variable " + FIS_BIN_PATH + " to the FisPro bin path");
+		}
+		if (table.size() < k)
+			throw new InvalidSettingsException("The dataset has " + table.size() + " rows, fewer than " + k
+					+ " folds");
+		if (learner.equals(FisLearner.HFPFIS) && cfg.getHfpContent().isEmpty())
+			throw new InvalidSettingsException("The HFPFIS learner needs the model of an HFP-SR node");
+		FisSystem sys = cfg.getSystem();
+		if (outNum >= sys.getNumOutputs())
+			throw new InvalidSettingsException("The model has " + sys.getNumOutputs() + " outputs, no output "
+					+ outNum);
+
+		// the rows are scored in memory, only the inputs and the outputs of
+		// the model are read
+		double[][] rows = FisPerformance.readRows(table, sys.getNumInputs() + sys.getNumOutputs(),
+				exec.createSubProgress(0.05));
+		int[] fold = assignFolds(rows.length, k, SEED.getIntValue());
+		// the training file of a fold holds all the rows but the ones of the
+		// fold
+		byte[][] counts = new byte[k][rows.length];
+		for (int f = 0; f < k; f++) {
+			for (int r = 0; r < rows.length; r++)
+				counts[f][r] = (byte) (fold[r] != f ? 1 : 0);
+		}
+
+		final File baseDir = FisWorkspace.acquire("CROSSVAL");
+		long timeStart = System.currentTimeMillis();
+		final FisModel[] models = new FisModel[k + 1];
+		ExecutorService pool = null;
+		try {
+			// the dataset is exported once, the folds are sliced from it
+			File data = new File(baseDir, DATA_NAME);
+			FisDatasetWriter.write(table, data, false, exec.createSubProgress(0.05));
+			final File[] homes = new File[k + 1];
+			final File[] datas = new File[k + 1];
+			for (int f = 0; f <= k; f++) {
+				homes[f] = new File(baseDir, f < k ? "fold" + (f + 1) : "all");
+				if (!homes[f].mkdirs())
+					throw new IOException("Directory " + homes[f] + " NOT created.");
+				datas[f] = f < k ? new File(homes[f], DATA_NAME) : data;
+				FisLearner.copyConfig(cfg, learner, homes[f]);
+			}
+			FisLearner.writeSamples(data, Arrays.copyOf(datas, k), counts, exec.createSubProgress(0.1));
+
+			final ExecutionMonitor runs = exec.createSubProgress(0.8);
+			pool = Executors.newFixedThreadPool(Math.max(1, Math.min(PARALLELISM.getIntValue(), k + 1)));
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			// the model of the whole dataset is the longest run, it starts first
+			for (int f = k; f >= 0; f--) {
+				final int run = f;
+				results.add(pool.submit(new Callable<Void>() {
+					@Override
+					public Void call() throws Exception {
+						models[run] = FisLearner.learn(learner, fisDir, homes[run], datas[run], outNum, runs);
+						return null;
+					}
+				}));
+			}
+			pool.shutdown();
+			int done = 0;
+			for (Future<Void> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				try {
+					result.get();
+				} catch (ExecutionException e) {
+					if (e.getCause() instanceof CanceledExecutionException)
+						throw (CanceledExecutionException) e.getCause();
+					LOGGER.warn(learner + " run NOT completed: " + e.getCause());
+				}
+				runs.setProgress((double) ++done / (k + 1), done + "/" + (k + 1) + " runs");
+			}
+		} finally {
+			if (pool != null)
+				pool.shutdownNow();
+			FisWorkspace.release(baseDir);
+		}
+		LOGGER.info(k + "-fold cross-validation of " + learner + " in " + (System.currentTimeMillis() - timeStart)
+				+ " ms");
+		if (models[k] == null)
+			throw new IOException("Model of the whole dataset NOT created.");
+
+		// score each fold model on the rows left out of its training file
+		FisPerformance[] perf = new FisPerformance[k];
+		int[] testRows = new int[k];
+		for (int f : fold)
+			testRows[f]++;
+		int failed = 0;
+		for (int f = 0; f < k; f++) {
+			if (models[f] == null) {
+				failed++;
+				continue;
+			}
+			double[][] test = new double[testRows[f]][];
+			int n = 0;
+			for (int r = 0; r < rows.length; r++) {
+				if (fold[r] == f)
+					test[n++] = rows[r];
+			}
+			perf[f] = FisPerformance.score(models[f].getSystem(), test, outNum);
+			exec.checkCanceled();
+		}
+		if (failed == k)
+			throw new IOException("No fold model created.");
+		if (failed > 0)
+			setWarningMessage(failed + " of " + k + " fold models NOT created, they are missing in the results.");
+
+		return new PortObject[] { createFoldTable(perf, testRows, rows.length, exec), createSummaryTable(perf, exec),
+				new FisModelPortObject(models[k], new FisModelPortObjectSpec(models[k])) };
+	}
+
+	/**
+	 * Assign the rows to the folds: the rows are shuffled and dealt to the
+	 * folds in turn, so the folds differ by one row at most
+	 *
+	 * @param n
+	 *            number of rows
+	 * @param k
+	 *            number of folds
+	 * @param seed
+	 *            seed of the shuffle
+	 *
+	 * @return the fold of each row
+	 */
+	private static int[] assignFolds(int n, int k, long seed) {
+
+		int[] order = new int[n];
+		for (int i = 0; i < n; i++)
+			order[i] = i;
+		Random random = new Random(seed);
+		for (int i = n - 1; i > 0; i--) {
+			int j = random.nextInt(i + 1);
+			int tmp = order[i];
+			order[i] = order[j];
+			order[j] = tmp;
+		}
+		int[] fold = new int[n];
+		for (int i = 0; i < n; i++)
+			fold[order[i]] = i % k;
+		return fold;
+	}
+
+	/**
+	 * @return spec of the fold table
+	 */
+	private DataTableSpec createFoldSpec() {
+
+		List<DataColumnSpec> specs = new ArrayList<DataColumnSpec>();
+		specs.add(new DataColumnSpecCreator("Fold", IntCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator("Training rows", IntCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator("Test rows", IntCell.TYPE).createSpec());
+		specs.add(new DataColumnSpecCreator(PERF_NAMES[0], IntCell.TYPE).createSpec());
+		for (int c = 1; c < PERF_NAMES.length; c++)
+			specs.add(new DataColumnSpecCreator(PERF_NAMES[c], DoubleCell.TYPE).createSpec());
+		return new DataTableSpec(specs.toArray(new DataColumnSpec[specs.size()]));
+	}
+
+	/**
+	 * @return spec of the summary table, the mean and the standard deviation
+	 *         of the fold performance
+	 */
+	private DataTableSpec createSummarySpec() {
+
+		DataColumnSpec[] specs = new DataColumnSpec[PERF_NAMES.length];
+		for (int c = 0; c < PERF_NAMES.length; c++)
+			specs[c] = new DataColumnSpecCreator(PERF_NAMES[c], DoubleCell.TYPE).createSpec();
+		return new DataTableSpec(specs);
+	}
+
+	/**
+	 * Create the table of the performance of each fold, missing if the fold
+	 * model is not created
+	 */
+	private BufferedDataTable createFoldTable(FisPerformance[] perf, int[] testRows, int nRows,
+			ExecutionContext exec) {
+
+		BufferedDataContainer container = exec.createDataContainer(createFoldSpec());
+		for (int f = 0; f < perf.length; f++) {
+			FisPerformance p = perf[f];
+			DataCell[] cells = new DataCell[3 + PERF_NAMES.length];
+			cells[0] = new IntCell(f + 1);
+			cells[1] = new IntCell(nRows - testRows[f]);
+			cells[2] = new IntCell(testRows[f]);
+			cells[3] = p == null ? DataType.getMissingCell() : new IntCell(p.getNumRules());
+			cells[4] = cell(p == null ? Double.NaN : p.getRmse());
+			cells[5] = cell(p == null ? Double.NaN : p.getMeanError());
+			cells[6] = cell(p == null ? Double.NaN : p.getCoverage());
+			container.addRowToTable(new DefaultRow(new RowKey("Fold " + (f + 1)), cells));
+		}
+		container.close();
+		return container.getTable();
+	}
+
+	/**
+	 * Create the table of the mean and the standard deviation of the fold
+	 * performance, on the folds with a model
+	 */
+	private BufferedDataTable createSummaryTable(FisPerformance[] perf, ExecutionContext exec) {
+
+		double[] mean = new double[PERF_NAMES.length];
+		double[] sd = new double[PERF_NAMES.length];
+		for (int c = 0; c < PERF_NAMES.length; c++) {
+			double sum = 0;
+			double sum2 = 0;
+			int n = 0;
+			for (FisPerformance p : perf) {
+				double v = p == null ? Double.NaN : value(p, c);
+				if (Double.isNaN(v))
+					continue;
+				sum += v;
+				sum2 += v * v;
+				n++;
+			}
+			mean[c] = n > 0 ? sum / n : Double.NaN;
+			sd[c] = n > 1 ? Math.sqrt(Math.max(0, (sum2 - sum * mean[c]) / (n - 1))) : Double.NaN;
+		}
+		BufferedDataContainer container = exec.createDataContainer(createSummarySpec());
+		container.addRowToTable(new DefaultRow(new RowKey("Mean"), cells(mean)));
+		container.addRowToTable(new DefaultRow(new RowKey("Standard deviation"), cells(sd)));
+		container.close();
+		return container.getTable();
+	}
+
+	private static double value(FisPerformance p, int c) {
+		switch (c) {
+		case 0:
+			return p.getNumRules();
+		case 1:
+			return p.getRmse();
+		case 2:
+			return p.getMeanError();
+		default:
+			return p.getCoverage();
+		}
+	}
+
+	private static DataCell[] cells(double[] values) {
+		DataCell[] cells = new DataCell[values.length];
+		for (int c = 0; c < values.length; c++)
+			cells[c] = cell(values[c]);
+		return cells;
+	}
+
+	private static DataCell cell(double v) {
+		return Double.isNaN(v) ? DataType.getMissingCell() : new DoubleCell(v);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+
+		String learner = LEARNER.getStringValue();
+		if (!FisLearner.isLearner(learner))
+			throw new InvalidSettingsException("Unknown learner " + learner);
+		if (FOLDS.getIntValue() < 2 || FOLDS.getIntValue() > MAX_FOLDS)
+			throw new InvalidSettingsException("The number of folds must be between 2 and " + MAX_FOLDS);
+		if (OUT_NUM.getIntValue() < 0)
+			throw new InvalidSettingsException("The output number must not be negative");
+		// hfpfis with fpa induction fails on another output
+		if (learner.equals(FisLearner.HFPFIS) && OUT_NUM.getIntValue() != 0)
+			throw new InvalidSettingsException("The HFPFIS learner needs 'Output number=0'");
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { createFoldSpec(), createSummarySpec(),
+				cfg != null ? cfg.derive(FisLearner.fisFunc(learner))
+						: new FisModelPortObjectSpec(FisLearner.fisFunc(learner)) };
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void reset() {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		LEARNER.saveSettingsTo(settings);
+		FOLDS.saveSettingsTo(settings);
+		SEED.saveSettingsTo(settings);
+		OUT_NUM.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LEARNER.loadSettingsFrom(settings);
+		FOLDS.loadSettingsFrom(settings);
+		SEED.loadSettingsFrom(settings);
+		OUT_NUM.loadSettingsFrom(settings);
+		PARALLELISM.loadSettingsFrom(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		LEARNER.validateSettings(settings);
+		FOLDS.validateSettings(settings);
+		SEED.validateSettings(settings);
+		OUT_NUM.validateSettings(settings);
+		PARALLELISM.validateSettings(settings);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void loadInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void saveInternals(final File internDir, final ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+	}
+
+}
@@ -0,0 +1,266 @@
+package perf;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionMonitor;
+
+import port.FisCommand;
+import port.FisModel;
+import port.FisProcess;
+
+/**
+ * FisPro learners run on samples of an exported dataset, with the default
+ * settings of their node, for the nodes learning many models
+ *
+ * @author Antonio Di Mauro
+ */
+public final class FisLearner {
+
+	/**
+	 * Learners
+	 */
+	public static final String WM = "WM";
+	public static final String OLS = "OLS";
+	public static final String FPA = "FPA";
+	public static final String FISTREE = "FisTree";
+	public static final String HFPFIS = "HFPFIS";
+	public static final String[] LEARNERS = { WM, OLS, FPA, FISTREE, HFPFIS };
+
+	/**
+	 * Function of the models of each learner, as set by its node
+	 */
+	private static final String[] FIS_FUNCS = { "Wang and Mendel", "Orthogonal Least Squares", "FPA", "FisTree",
+			"HFPFIS" };
+
+	/**
+	 * Maximum number of samples written at once, a file is open for each
+	 * sample
+	 */
+	public static final int MAX_SAMPLES = 100;
+
+	private static final String CFG_FIS = "cfg.fis";
+	private static final String GEN_CFG_FIS = "genconfig.fis";
+	private static final String DATA_NAME = "dataset.csv";
+	private static final String HFP_NAME = DATA_NAME + ".hfp";
+	private static final String VERTEX_NAME = DATA_NAME + ".vertex";
+
+	private FisLearner() {
+	}
+
+	/**
+	 * @return true if the name is one of {@link #LEARNERS}
+	 */
+	public static boolean isLearner(String learner) {
+		return Arrays.asList(LEARNERS).contains(learner);
+	}
+
+	/**
+	 * @return function of the models of a learner
+	 */
+	public static String fisFunc(String learner) {
+		return FIS_FUNCS[Arrays.asList(LEARNERS).indexOf(learner)];
+	}
+
+	/**
+	 * Write the configuration files read by a learner in its directory
+	 *
+	 * @param cfg
+	 *            configuration model, the output of an HFP-SR node for
+	 *            HFPFIS
+	 * @param learner
+	 *            learner name
+	 * @param home
+	 *            working directory of the learner
+	 *
+	 * @throws IOException
+	 *             if a file is not created
+	 */
+	public static void copyConfig(FisModel cfg, String learner, File home) throws IOException {
+
+		if (learner.equals(HFPFIS)) {
+			if (cfg.getHfp(new File(home, HFP_NAME).getPath()) == null)
+				throw new IOException("The HFPFIS learner needs the model of an HFP-SR node");
+			cfg.getVertex(new File(home, VERTEX_NAME).getPath());
+			return;
+		}
+		File fis = cfg.getFis(new File(home, CFG_FIS).getPath());
+		if (!fis.exists())
+			throw new IOException("Model " + CFG_FIS + " NOT created.");
+	}
+
+	/**
+	 * Run a learner on a dataset, in a directory holding its configuration
+	 * files
+	 *
+	 * e.g. wm cfg.fis dataset.csv -owm.fis
+	 *
+	 * @param learner
+	 *            learner name
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param home
+	 *            working directory, with the configuration files
+	 * @param data
+	 *            training dataset
+	 * @param outNum
+	 *            output number, for FisTree and HFPFIS
+	 * @param exec
+	 *            execution monitor checked for cancellation
+	 *
+	 * @return the learned model
+	 *
+	 * @throws IOException
+	 *             if the model is not created
+	 * @throws InterruptedException
+	 *             if the thread is interrupted
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static FisModel learn(String learner, String fisDir, File home, File data, int outNum,
+			ExecutionMonitor exec) throws IOException, InterruptedException, CanceledExecutionException {
+
+		String cfgFis = new File(home, CFG_FIS).getPath();
+		if (learner.equals(WM)) {
+			String[] cmd = FisCommand.wm(fisDir, cfgFis, data.getPath(), "wm.fis");
+			return run(cmd, home, "wm.fis", fisFunc(learner), exec);
+		} else if (learner.equals(OLS)) {
+			String[] cmd = FisCommand.ols(fisDir, data.getPath(), CFG_FIS, "ols.fis");
+			return run(cmd, home, "ols.fis", fisFunc(learner), exec);
+		} else if (learner.equals(FPA)) {
+			run(FisCommand.genrules(fisDir, cfgFis, GEN_CFG_FIS), home, GEN_CFG_FIS, null, exec);
+			String[] cmd = FisCommand.fpa(fisDir, new File(home, GEN_CFG_FIS).getPath(), data.getPath(),
+					FisCommand.FPA_STRATEGY, FisCommand.FPA_MIN_DEGREE, FisCommand.FPA_MIN_CARD,
+					FisCommand.FPA_THRESHOLD);
+			return run(cmd, home, "configfpa.fis", fisFunc(learner), exec);
+		} else if (learner.equals(FISTREE)) {
+			String[] cmd = FisCommand.fistree(fisDir, cfgFis, data.getPath(), outNum, FisCommand.FISTREE_MEMB_THRES,
+					FisCommand.FISTREE_MIN_LEAF, FisCommand.FISTREE_TOL, FisCommand.FISTREE_MAX_DEPTH,
+					FisCommand.FISTREE_MIN_GAIN, FisCommand.FISTREE_GAIN_TYPE, FisCommand.FISTREE_PRUNING_TYPE,
+					FisCommand.FISTREE_PERF_LOSS, FisCommand.FISTREE_COV_LEVEL);
+			return run(cmd, home, CFG_FIS + ".tree.fis", fisFunc(learner), exec);
+		} else {
+			String[] cmd = FisCommand.hfpfis(fisDir, data.getPath(), new File(home, HFP_NAME).getPath(),
+					new File(home, VERTEX_NAME).getPath(), FisCommand.HFPFIS_SET_WM, FisCommand.HFPFIS_MIN_WEIGHT,
+					FisCommand.HFPFIS_CARD_STRATEGY, FisCommand.HFPFIS_MIN_DEGREE, FisCommand.HFPFIS_MIN_CARD,
+					"hfpfis.fis", outNum);
+			return run(cmd, home, "hfpfis.fis", fisFunc(learner), exec);
+		}
+	}
+
+	/**
+	 * Run a FisPro tool and read the model it creates
+	 *
+	 * @return the model, null if fisFunc is null
+	 */
+	private static FisModel run(String[] cmd, File home, String fisName, String fisFunc, ExecutionMonitor exec)
+			throws IOException, InterruptedException, CanceledExecutionException {
+
+		File fis = new File(home, fisName);
+		FisProcess p = FisProcess.run(cmd, home, exec);
+		if (p.getExitCode() != 0 || !fis.exists())
+			throw new IOException("Model " + fisName + " NOT created in " + home.getName() + ": " + p);
+		return fisFunc != null ? new FisModel(fis, fisFunc) : null;
+	}
+
+	/**
+	 * Write samples of an exported dataset: each line is copied, without
+	 * parsing, as many times as the row is in each sample, all the samples
+	 * being written in a single pass
+	 *
+	 * @param data
+	 *            exported dataset, a line for each row
+	 * @param samples
+	 *            file of each sample
+	 * @param counts
+	 *            number of copies of each row in each sample
+	 * @param exec
+	 *            execution monitor for progress and cancellation
+	 *
+	 * @throws IOException
+	 *             if a file cannot be read or written
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static void writeSamples(File data, File[] samples, byte[][] counts, ExecutionMonitor exec)
+			throws IOException, CanceledExecutionException {
+
+		int nRows = counts.length > 0 ? counts[0].length : 0;
+		OutputStream[] out = new OutputStream[samples.length];
+		try (InputStream in = new FileInputStream(data)) {
+			for (int s = 0; s < samples.length; s++)
+				out[s] = new BufferedOutputStream(new FileOutputStream(samples[s]), 1 << 16);
+			byte[] buf = new byte[1 << 16];
+			// a line spanning two buffers is kept whole to be repeated
+			byte[] line = new byte[256];
+			int lineLen = 0;
+			double size = Math.max(1, data.length());
+			long read = 0;
+			int row = 0;
+			int len;
+			while ((len = in.read(buf)) > 0) {
+				int start = 0;
+				for (int i = 0; i < len; i++) {
+					if (buf[i] != '\n')
+						continue;
+					if (row >= nRows)
+						throw new IOException("The dataset file has more lines than the table rows");
+					byte[] b = buf;
+					int off = start;
+					int n = i + 1 - start;
+					if (lineLen > 0) {
+						line = append(line, lineLen, buf, start, n);
+						b = line;
+						off = 0;
+						n += lineLen;
+						lineLen = 0;
+					}
+					for (int s = 0; s < out.length; s++) {
+						for (int c = counts[s][row]; c > 0; c--)
+							out[s].write(b, off, n);
+					}
+					row++;
+					start = i + 1;
+				}
+				if (start < len) {
+					line = append(line, lineLen, buf, start, len - start);
+					lineLen += len - start;
+				}
+				read += len;
+				exec.setProgress(read / size, "Writing samples");
+				exec.checkCanceled();
+			}
+			if (lineLen > 0)
+				throw new IOException("The dataset file does not end with a new line");
+		} finally {
+			IOException error = null;
+			for (OutputStream o : out) {
+				try {
+					if (o != null)
+						o.close();
+				} catch (IOException e) {
+					error = e;
+				}
+			}
+			if (error != null)
+				throw error;
+		}
+	}
+
+	/**
+	 * Append bytes to a line buffer, growing it if needed
+	 */
+	private static byte[] append(byte[] line, int lineLen, byte[] buf, int off, int n) {
+		if (lineLen + n > line.length)
+			line = Arrays.copyOf(line, Math.max(2 * line.length, lineLen + n));
+		System.arraycopy(buf, off, line, lineLen, n);
+		return line;
+	}
+}
@@ -1,6 +1,12 @@
 package perf;
 
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
+
+import port.FisLookup;
 
 /**
  * <code>NodeDialog</code> for the "PERF" Node. Perf Node to make inference on a
@@ -22,7 +28,20 @@ public class PERFNodeDialog extends DefaultNodeSettingsPane {
 	protected PERFNodeDialog() {
 		super();
 
-		// addDialogComponent(new DialogComponentNumber());
+		createNewGroup("Insert parameters");
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(PERFNodeModel.ENGINE_STR, PERFNodeModel.ENGINE_FISPRO), "Inference engine:",
+				new String[] { PERFNodeModel.ENGINE_JAVA, PERFNodeModel.ENGINE_COMPILED,
+						PERFNodeModel.ENGINE_LOOKUP, PERFNodeModel.ENGINE_FISPRO }));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(PERFNodeModel.PARALLELISM_STR, PERFNodeModel.DEFAULT_PARALLELISM),
+				"Parallel workers (default=number of cores):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(PERFNodeModel.RESOLUTION_STR, FisLookup.DEFAULT_RESOLUTION),
+				"Lookup table points (Java (lookup tables) engine only):", Integer.valueOf(256)));
 
 	}
 }
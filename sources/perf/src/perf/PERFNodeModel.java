@@ -5,21 +5,26 @@ import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.PrintStream;
-import java.util.Scanner;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataColumnSpec;
-import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataCell;
 import org.knime.core.data.DataRow;
 import org.knime.core.data.DataTableSpec;
-import org.knime.core.data.RowKey;
+import org.knime.core.data.DoubleValue;
+import org.knime.core.data.container.AbstractCellFactory;
 import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.ColumnRearranger;
 import org.knime.core.data.def.DefaultRow;
 import org.knime.core.data.def.DoubleCell;
-import org.knime.core.data.def.StringCell;
-import org.knime.core.node.BufferedDataContainer;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.ExecutionContext;
@@ -29,9 +34,19 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
+import org.knime.core.node.streamable.InputPortRole;
+import org.knime.core.node.streamable.OutputPortRole;
+import org.knime.core.node.streamable.PartitionInfo;
+import org.knime.core.node.streamable.PortInput;
+import org.knime.core.node.streamable.PortObjectInput;
+import org.knime.core.node.streamable.PortOutput;
+import org.knime.core.node.streamable.RowOutput;
+import org.knime.core.node.streamable.StreamableOperator;
 
 import port.*;
 
@@ -47,18 +62,50 @@ public class PERFNodeModel extends NodeModel {
 	// the logger instance
 	private static final NodeLogger LOGGER = NodeLogger.getLogger(PERFNodeModel.class);
 
+	/**
+	 * Keys used by {@link perf.PERFNodeDialog} to store settings
+	 */
+	public static final String ENGINE_STR = "engine_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+	public static final String RESOLUTION_STR = "resolution_str";
+
+	/**
+	 * Inference engines
+	 */
+	public static final String ENGINE_JAVA = "Java";
+	public static final String ENGINE_COMPILED = "Java (compiled)";
+	public static final String ENGINE_LOOKUP = "Java (lookup tables)";
+	public static final String ENGINE_FISPRO = "FisPro perf";
+
+	/**
+	 * Default number of parallel scoring workers
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString ENGINE = new SettingsModelString(PERFNodeModel.ENGINE_STR, ENGINE_FISPRO);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(PERFNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+	private final SettingsModelInteger RESOLUTION = new SettingsModelInteger(PERFNodeModel.RESOLUTION_STR,
+			FisLookup.DEFAULT_RESOLUTION);
+
 	private final String MODEL_FIS = "model.fis";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
-	private final String TABLE_SEP = ",";
 	private final String DATA_NAME = "dataset.csv";
 	private final String PERF_RES = "perf.res";
 	private final String RESULT_PERF = "result.perf";
+	private final String LOOKUP_ERROR = "fis_lookup_error";
 	private DataTableSpec mOutputSpec;
+	// largest MF degree error of the lookup tables of the last inference
+	private double mLookupError;
 
 	private double timeStart;
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -80,18 +127,36 @@ public class PERFNodeModel extends NodeModel {
 		FisModel fisModel = modelPort.getFisModel();
 		BufferedDataTable out = null;
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		// the members of an ensemble are only inferred in the JVM
+		if (!isJavaEngine() && fisModel.getNumMembers() > 1)
+			LOGGER.warn("The model has " + fisModel.getNumMembers() + " members, it is inferred by the "
+					+ ENGINE_JAVA + " engine.");
+
+		// in-JVM inference, no dataset export nor external process
+		if (isJavaEngine() || fisModel.getNumMembers() > 1) {
+			timeStart = System.currentTimeMillis();
+			timeQueue = 0;
+			ColumnRearranger rearranger = createInferRearranger(data.getDataTableSpec(), fisModel.getMembers());
+			mOutputSpec = rearranger.createSpec();
+			out = exec.createColumnRearrangeTable(data, rearranger, exec);
+			timeEnd = System.currentTimeMillis();
+			if (ENGINE_LOOKUP.equals(ENGINE.getStringValue()))
+				pushFlowVariableDouble(LOOKUP_ERROR, mLookupError);
+			if (DEBUG)
+				LOGGER.error("Integration execution time: " + (timeEnd - timeStart) + " ms");
+			return new PortObject[] { out };
+		}
+
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("PERF");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -104,31 +169,47 @@ public class PERFNodeModel extends NodeModel {
 					 * Inference System Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(data, homeDir, DATA_NAME)) {
-						if (perfFunction(fisDir, homeDir, model.getPath(), DATA_NAME)) {
-							out = appendColumn(data, perfToTable(homeDir, PERF_RES, exec), exec);
+					timeQueue = 0;
+					int workers = getWorkers(data.size());
+					if (workers > 1) {
+						BufferedDataTable perf = parallelPerf(data, fisDir, homeDir, fisModel, workers, exec);
+						if (perf != null) {
+							out = appendColumn(data, perf, exec);
 							timeEnd = System.currentTimeMillis();
 						}
+					} else {
+						FisDatasetPipe dataset = loadDataset(data, homeDir, DATA_NAME, exec);
+						if (dataset != null) {
+							try {
+								timeCommandStart = System.currentTimeMillis();
+								boolean created = perfFunction(fisDir, homeDir, model.getPath(), DATA_NAME, exec);
+								timeCommandEnd = System.currentTimeMillis();
+								if (dataset.finish() && created) {
+									out = appendColumn(data, perfToTable(homeDir, PERF_RES, 0, exec), exec);
+									timeEnd = System.currentTimeMillis();
+								}
+							} finally {
+								dataset.close();
+							}
+						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -136,7 +217,7 @@ public class PERFNodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -164,51 +245,320 @@ public class PERFNodeModel extends NodeModel {
 	}
 
 	/**
-	 * Append column to table
+	 * Append the inferred column of the perf table to the original table, the
+	 * original columns are referenced and not copied
 	 * 
 	 * @param data
 	 *            original table
 	 * @param perf
-	 *            table with the column to add
+	 *            table with the column to add, one row for each row of data
+	 * @param exec
+	 *            execution context
 	 * 
 	 * @return data table with column addiction from perf table
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private BufferedDataTable appendColumn(BufferedDataTable data, BufferedDataTable perf, ExecutionContext exec) {
+	private BufferedDataTable appendColumn(BufferedDataTable data, BufferedDataTable perf, ExecutionContext exec)
+			throws CanceledExecutionException {
 
-		BufferedDataTable out = null;
-		DataColumnSpec[] allColSpecs = new DataColumnSpec[data.getSpec().getNumColumns() + 1];
-		for (int i = 0; i < allColSpecs.length; i++) {
-			if (i != allColSpecs.length - 1) {
-				allColSpecs[i] = new DataColumnSpecCreator(data.getSpec().getColumnSpec(i).getName(), DoubleCell.TYPE)
-						.createSpec();
-			} else {
-				allColSpecs[i] = new DataColumnSpecCreator("INF", DoubleCell.TYPE).createSpec();
+		BufferedDataTable out = PerfTable.append(data, perf, exec);
+		mOutputSpec = out.getDataTableSpec();
+		return out;
+	}
+
+	/**
+	 * Create the rearranger appending the column inferred by the in-JVM engine
+	 * 
+	 * The members of an ensemble are all inferred on each row, in the same
+	 * pass over the table, and their outputs are aggregated: the mean for a
+	 * regression output, the most voted class for a classification output.
+	 * 
+	 * @param spec
+	 *            data table spec, inputs followed by the observed outputs
+	 * @param members
+	 *            parsed fis model, all the members of an ensemble
+	 * 
+	 * @return column rearranger of the data table
+	 */
+	private ColumnRearranger createInferRearranger(DataTableSpec spec, final FisSystem[] members) {
+
+		final int nMembers = members.length;
+		final FisSystem sys = members[0];
+		final boolean classif = sys.getOutput(0).isClassif();
+		// the lookup tables of the MFs of each member, shared by the threads,
+		// null for the exact degrees
+		final FisLookup[] lookups = new FisLookup[nMembers];
+		if (ENGINE_LOOKUP.equals(ENGINE.getStringValue())) {
+			mLookupError = 0;
+			for (int m = 0; m < nMembers; m++) {
+				lookups[m] = new FisLookup(members[m], RESOLUTION.getIntValue());
+				mLookupError = Math.max(mLookupError, lookups[m].getMaxError());
 			}
+			LOGGER.info("MF lookup tables of " + lookups[0].getResolution() + " points, maximum degree error "
+					+ mLookupError + " (flow variable " + LOOKUP_ERROR + ")");
 		}
-		mOutputSpec = new DataTableSpec(allColSpecs);
-		BufferedDataContainer container = exec.createDataContainer(mOutputSpec);
-		CloseableRowIterator itData = data.iterator();
-		CloseableRowIterator itPerf = perf.iterator();
-		int n = 0;
-		int l = data.getSpec().getNumColumns() + 1;
-		while (itData.hasNext() && itPerf.hasNext()) {
-			double[] vett = new double[l];
-			DataRow dataR = itData.next();
-			DataRow perfR = itPerf.next();
-			for (int i = 0; i < vett.length; i++) {
-				if (i != vett.length - 1) {
-					vett[i] = Double.parseDouble(dataR.getCell(i).toString());
+		// an engine for each member and worker thread, the engines are not
+		// thread safe
+		final ThreadLocal<FisEngine[]> engines = new ThreadLocal<FisEngine[]>() {
+			@Override
+			protected FisEngine[] initialValue() {
+				FisEngine[] e = new FisEngine[nMembers];
+				for (int m = 0; m < nMembers; m++)
+					e[m] = new FisEngine(members[m], lookups[m]);
+				return e;
+			}
+		};
+		// the compiled members, null to interpret them (or if one cannot be
+		// compiled)
+		CompiledFis[] compiledMembers = null;
+		if (ENGINE_COMPILED.equals(ENGINE.getStringValue())) {
+			compiledMembers = new CompiledFis[nMembers];
+			for (int m = 0; m < nMembers && compiledMembers != null; m++) {
+				compiledMembers[m] = FisCompiler.compile(members[m], 0);
+				if (compiledMembers[m] == null)
+					compiledMembers = null;
+			}
+		}
+		final CompiledFis[] compiled = compiledMembers;
+		final ThreadLocal<CompiledFis[]> compiledFis = new ThreadLocal<CompiledFis[]>() {
+			@Override
+			protected CompiledFis[] initialValue() {
+				CompiledFis[] c = new CompiledFis[nMembers];
+				for (int m = 0; m < nMembers; m++)
+					c[m] = compiled[m].copy();
+				return c;
+			}
+		};
+		final ThreadLocal<double[]> inputs = new ThreadLocal<double[]>() {
+			@Override
+			protected double[] initialValue() {
+				return new double[sys.getNumInputs()];
+			}
+		};
+		final ThreadLocal<double[]> outputs = new ThreadLocal<double[]>() {
+			@Override
+			protected double[] initialValue() {
+				return new double[nMembers];
+			}
+		};
+		AbstractCellFactory factory = new AbstractCellFactory(PerfTable.createInfSpec()) {
+			@Override
+			public DataCell[] getCells(DataRow row) {
+				double[] x = inputs.get();
+				// missing or non numeric inputs are treated as missing values
+				for (int i = 0; i < x.length; i++) {
+					DataCell cell = i < row.getNumCells() ? row.getCell(i) : null;
+					x[i] = cell instanceof DoubleValue ? ((DoubleValue) cell).getDoubleValue() : Double.NaN;
+				}
+				double[] y = outputs.get();
+				if (compiled != null) {
+					CompiledFis[] c = compiledFis.get();
+					for (int m = 0; m < nMembers; m++)
+						y[m] = c[m].infer(x);
 				} else {
-					vett[i] = Double.parseDouble(perfR.getCell(perf.getSpec().findColumnIndex("INF")).toString());
+					FisEngine[] e = engines.get();
+					for (int m = 0; m < nMembers; m++) {
+						e[m].infer(x);
+						y[m] = e[m].getInferred(0);
+					}
 				}
+				return new DataCell[] { new DoubleCell(nMembers == 1 ? y[0] : aggregate(y, classif)) };
 			}
-			DataRow row = new DefaultRow("Row" + n, vett);
-			container.addRowToTable(row);
-			n++;
+		};
+		// rows are scored in parallel and appended in the original order
+		int workers = Math.max(1, PARALLELISM.getIntValue());
+		if (workers > 1)
+			factory.setParallelProcessing(true, workers, 10 * workers);
+		ColumnRearranger rearranger = new ColumnRearranger(spec);
+		rearranger.append(factory);
+		return rearranger;
+	}
+
+	/**
+	 * Aggregate the outputs of the members of an ensemble, the members
+	 * inferring no value are ignored
+	 * 
+	 * @param y
+	 *            output of each member
+	 * @param classif
+	 *            true for a classification output
+	 * 
+	 * @return the mean output, or the most voted class (the lowest one on a
+	 *         tie), NaN if no member infers a value
+	 */
+	private static double aggregate(double[] y, boolean classif) {
+
+		double best = Double.NaN;
+		if (!classif) {
+			double sum = 0;
+			int n = 0;
+			for (double v : y) {
+				if (!Double.isNaN(v)) {
+					sum += v;
+					n++;
+				}
+			}
+			return n > 0 ? sum / n : best;
 		}
-		container.close();
-		out = container.getTable();
-		return out;
+		int bestVotes = 0;
+		for (int m = 0; m < y.length; m++) {
+			double v = y[m];
+			if (Double.isNaN(v))
+				continue;
+			int votes = 0;
+			for (int k = 0; k < y.length; k++) {
+				if (y[k] == v)
+					votes++;
+			}
+			if (votes > bestVotes || (votes == bestVotes && v < best)) {
+				best = v;
+				bestVotes = votes;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return true if the selected engine makes inference in the JVM
+	 */
+	private boolean isJavaEngine() {
+		return ENGINE_JAVA.equals(ENGINE.getStringValue()) || ENGINE_COMPILED.equals(ENGINE.getStringValue())
+				|| ENGINE_LOOKUP.equals(ENGINE.getStringValue());
+	}
+
+	/**
+	 * Number of parallel workers for a table
+	 * 
+	 * @param rows
+	 *            number of rows
+	 * 
+	 * @return workers, at least 1 and at most one for each row
+	 */
+	private int getWorkers(long rows) {
+		return (int) Math.max(1, Math.min(PARALLELISM.getIntValue(), rows));
+	}
+
+	/**
+	 * Score the table with a perf process for each chunk of rows, each in its
+	 * own working directory
+	 * 
+	 * @param data
+	 *            data table
+	 * @param fisDir
+	 *            fispro bin path
+	 * @param homeDir
+	 *            home directory
+	 * @param fisModel
+	 *            fis model
+	 * @param workers
+	 *            number of chunks and of concurrent perf processes
+	 * @param exec
+	 *            execution context
+	 * 
+	 * @return the perf table of the whole data table in the original row
+	 *         order, null if a chunk failed
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	private BufferedDataTable parallelPerf(BufferedDataTable data, final String fisDir, String homeDir,
+			FisModel fisModel, int workers, ExecutionContext exec) throws CanceledExecutionException {
+
+		final File[] chunkDirs = new File[workers];
+		long[] firstRows = new long[workers + 1];
+		for (int k = 0; k < workers; k++) {
+			chunkDirs[k] = new File(homeDir, "chunk" + k);
+			chunkDirs[k].mkdirs();
+			fisModel.getFis(new File(chunkDirs[k], MODEL_FIS).getPath());
+			firstRows[k] = data.size() * k / workers;
+		}
+		firstRows[workers] = data.size();
+		if (!loadChunks(data, chunkDirs, firstRows, exec.createSubProgress(0.3)))
+			return null;
+
+		timeCommandStart = System.currentTimeMillis();
+		ExecutorService pool = Executors.newFixedThreadPool(workers);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int k = 0; k < workers; k++) {
+			final String chunkDir = chunkDirs[k].getPath();
+			results.add(pool.submit(new Callable<Boolean>() {
+				@Override
+				public Boolean call() throws CanceledExecutionException {
+					return perfFunction(fisDir, chunkDir, new File(chunkDir, MODEL_FIS).getPath(), DATA_NAME, exec);
+				}
+			}));
+		}
+		pool.shutdown();
+		boolean created = true;
+		try {
+			for (Future<Boolean> result : results) {
+				while (!result.isDone()) {
+					exec.checkCanceled();
+					pool.awaitTermination(100, TimeUnit.MILLISECONDS);
+				}
+				created &= result.get();
+			}
+		} catch (InterruptedException | ExecutionException e) {
+			created = false;
+		} finally {
+			pool.shutdownNow();
+		}
+		timeCommandEnd = System.currentTimeMillis();
+		if (!created)
+			return null;
+
+		// reassemble the chunks in the original row order
+		BufferedDataTable[] perf = new BufferedDataTable[workers];
+		for (int k = 0; k < workers; k++) {
+			perf[k] = perfToTable(chunkDirs[k].getPath(), PERF_RES, firstRows[k], exec);
+			if (perf[k] == null)
+				return null;
+		}
+		return exec.createConcatenateTable(exec, perf);
+	}
+
+	/**
+	 * Split the table in consecutive chunks of rows, a dataset file for each
+	 * chunk
+	 * 
+	 * @param t
+	 *            data table
+	 * @param chunkDirs
+	 *            directory of each chunk
+	 * @param firstRows
+	 *            first row of each chunk, followed by the number of rows
+	 * @param exec
+	 *            execution monitor
+	 * 
+	 * @return true if creation is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	private boolean loadChunks(BufferedDataTable t, File[] chunkDirs, long[] firstRows, ExecutionMonitor exec)
+			throws CanceledExecutionException {
+
+		CloseableRowIterator it = t.iterator();
+		try {
+			long n = 0;
+			for (int k = 0; k < chunkDirs.length; k++) {
+				try (FisDatasetWriter write = new FisDatasetWriter(
+						new FileOutputStream(new File(chunkDirs[k], DATA_NAME)))) {
+					for (; n < firstRows[k + 1] && it.hasNext(); n++)
+						write.writeRow(it.next());
+				}
+				exec.checkCanceled();
+				exec.setProgress((double) n / firstRows[chunkDirs.length], "Exporting dataset");
+			}
+		} catch (IOException e) {
+			LOGGER.error("Dataset file NOT created.");
+			return false;
+		} finally {
+			it.close();
+		}
+		return true;
 	}
 
 	/**
@@ -218,78 +568,38 @@ public class PERFNodeModel extends NodeModel {
 	 *            home directory
 	 * @param perfResName
 	 *            perf file name
+	 * @param firstRow
+	 *            number of the rows preceding the file, for the row keys
 	 * @param exec
 	 *            execution context
 	 * 
-	 * @return the corrisponding perf table
+	 * @return the corrisponding perf table, a double column for each column
+	 *         of the file
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private BufferedDataTable perfToTable(String homeDir, String perfResName, ExecutionContext exec) {
+	private BufferedDataTable perfToTable(String homeDir, String perfResName, long firstRow,
+			ExecutionContext exec) throws CanceledExecutionException {
 
 		BufferedDataTable out = null;
-		File res = new File(homeDir, perfResName);
-		DataColumnSpec[] allColSpecs = new DataColumnSpec[6];
-		allColSpecs[0] = new DataColumnSpecCreator("OBS", StringCell.TYPE).createSpec();
-		allColSpecs[1] = new DataColumnSpecCreator("INF", StringCell.TYPE).createSpec();
-		allColSpecs[2] = new DataColumnSpecCreator("Al", StringCell.TYPE).createSpec();
-		allColSpecs[3] = new DataColumnSpecCreator("ERR", StringCell.TYPE).createSpec();
-		allColSpecs[4] = new DataColumnSpecCreator("Bl", StringCell.TYPE).createSpec();
-		allColSpecs[5] = new DataColumnSpecCreator("CERR2", StringCell.TYPE).createSpec();
-		DataTableSpec spec = new DataTableSpec(allColSpecs);
-		BufferedDataContainer container = exec.createDataContainer(spec);
 		try {
-			Scanner s = new Scanner(res);
-			int n = 0;
-			while (s.hasNextLine()) {
-				String line = s.nextLine();
-				if (n > 0)
-					container.addRowToTable(getDataRow(line, n));
-				n++;
-			}
-			container.close();
-			s.close();
-			out = container.getTable();
-		} catch (FileNotFoundException e) {
+			out = PerfTable.read(new File(homeDir, perfResName), firstRow, exec);
+		} catch (IOException e) {
+			LOGGER.error("Perf file NOT read.");
 		}
 		return out;
 	}
 
 	/**
-	 * Extract a data row from a line
+	 * Keep the longest queue wait of the perf runs, the chunks wait in
+	 * parallel
 	 * 
-	 * @param line
-	 *            line
-	 * @param n
-	 *            line number
-	 * 
-	 * @return the corresponding data row
+	 * @param time
+	 *            queue wait time in ms of a perf run
 	 */
-	private DataRow getDataRow(String line, int n) {
-
-		RowKey key = new RowKey("Row" + n);
-		DataRow row = null;
-		String[] vett = new String[6];
-
-		int pos = 0;
-		int i = 0;
-		while (i <= line.length() - 1) {
-			if (line.charAt(i) != ' ') {
-				int j = i + 1;
-				while (j <= line.length() - 1 && line.charAt(j) != ' ')
-					j++;
-				String tmp = "";
-				for (int k = i; k < j; k++)
-					tmp += line.charAt(k);
-				i = j - 1;
-				if (pos != 6) {
-					vett[pos] = tmp;
-					pos++;
-				}
-				System.out.println(tmp);
-			}
-			i++;
-		}
-		row = new DefaultRow(key, vett);
-		return row;
+	private synchronized void addQueueTime(long time) {
+		timeQueue = Math.max(timeQueue, time);
 	}
 
 	/**
@@ -303,10 +613,16 @@ public class PERFNodeModel extends NodeModel {
 	 *            model path
 	 * @param dataName
 	 *            dataset name
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if creation of perf files is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean perfFunction(String fisDir, String homeDir, String modelPath, String dataName) {
+	private boolean perfFunction(String fisDir, String homeDir, String modelPath, String dataName,
+			ExecutionMonitor exec) throws CanceledExecutionException {
 
 		File perf = new File(fisDir, "perf");
 		File data = new File(homeDir, dataName);
@@ -316,10 +632,9 @@ public class PERFNodeModel extends NodeModel {
 		String[] cmd = { perf.getPath(), modelPath, data.getPath() };
 
 		try {
-			timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
-			timeCommandEnd = System.currentTimeMillis();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			addQueueTime(p.getQueueTime());
+			int control = p.getExitCode();
 			if (control == 0) {
 				if (!perfRes.exists() && !resultPerf.exists())
 					LOGGER.error("Perf files NOT Created.");
@@ -332,7 +647,7 @@ public class PERFNodeModel extends NodeModel {
 	}
 
 	/**
-	 * Create csv file from BufferedDataTable
+	 * Create csv file, or FIFO, from BufferedDataTable
 	 * 
 	 * @param t
 	 *            data table
@@ -340,59 +655,101 @@ public class PERFNodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
 	 * 
-	 * @return true if creation is successful, else false
+	 * @return the dataset streamed or written for perf, null if creation failed
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private FisDatasetPipe loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
-			if (!file.exists())
-				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+			return FisDatasetPipe.open(t, file, false, exec, "perf");
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
-			return false;
+			return null;
 		}
-		return file.exists();
 	}
 
 	/**
-	 * Return the string path of a random directory
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+
+		if (RESOLUTION.getIntValue() < 2 || RESOLUTION.getIntValue() > FisLookup.MAX_RESOLUTION)
+			throw new InvalidSettingsException(
+					"The number of lookup table points must be between 2 and " + FisLookup.MAX_RESOLUTION);
+		FisModelPortObjectSpec model = (FisModelPortObjectSpec) inSpecs[0];
+		DataTableSpec data = (DataTableSpec) inSpecs[1];
+		// the inputs of the model are the first columns of the table
+		if (model != null && model.getNumInputs() > data.getNumColumns())
+			throw new InvalidSettingsException("The model has " + model.getNumInputs() + " inputs, the table only "
+					+ data.getNumColumns() + " columns.");
+		if (data.containsName(PerfTable.INF))
+			throw new InvalidSettingsException("The table has already a column named " + PerfTable.INF + ".");
+		mOutputSpec = new DataTableSpec(data, new DataTableSpec(PerfTable.createInfSpec()));
+		return new PortObjectSpec[] { mOutputSpec };
+	}
+
+	/**
+	 * The model is read before the first row, the rows are streamed only by
+	 * the in-JVM engine: the perf binary needs the whole dataset
 	 * 
-	 * @return random path
+	 * {@inheritDoc}
 	 */
-	private String getRandomDirectory() {
+	@Override
+	public InputPortRole[] getInputPortRoles() {
+		if (isJavaEngine())
+			return new InputPortRole[] { InputPortRole.NONDISTRIBUTED_NONSTREAMABLE,
+					InputPortRole.DISTRIBUTED_STREAMABLE };
+		return new InputPortRole[] { InputPortRole.NONDISTRIBUTED_NONSTREAMABLE,
+				InputPortRole.NONDISTRIBUTED_NONSTREAMABLE };
+	}
 
-		File dir = new File(System.getProperty("user.home"), "PERF");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public OutputPortRole[] getOutputPortRoles() {
+		if (isJavaEngine())
+			return new OutputPortRole[] { OutputPortRole.DISTRIBUTED };
+		return new OutputPortRole[] { OutputPortRole.NONDISTRIBUTED };
 	}
 
 	/**
 	 * {@inheritDoc}
 	 */
 	@Override
-	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { mOutputSpec };
+	public StreamableOperator createStreamableOperator(final PartitionInfo partitionInfo,
+			final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
+
+		return new StreamableOperator() {
+			@Override
+			public void runFinal(PortInput[] inputs, PortOutput[] outputs, ExecutionContext exec) throws Exception {
+
+				FisModelPortObject modelPort = (FisModelPortObject) ((PortObjectInput) inputs[0]).getPortObject();
+				if (isJavaEngine()) {
+					// one row at a time, in constant memory
+					ColumnRearranger rearranger = createInferRearranger((DataTableSpec) inSpecs[1],
+							modelPort.getFisModel().getMembers());
+					// the error is measured when the lookup tables are built
+					if (ENGINE_LOOKUP.equals(ENGINE.getStringValue()))
+						pushFlowVariableDouble(LOOKUP_ERROR, mLookupError);
+					rearranger.createStreamableFunction(1, 0).runFinal(inputs, outputs, exec);
+				} else {
+					PortObject data = ((PortObjectInput) inputs[1]).getPortObject();
+					PortObject[] out = execute(new PortObject[] { modelPort, data }, exec);
+					if (out[0] == null)
+						throw new Exception("Perf files NOT Created.");
+					((RowOutput) outputs[0]).setFully((BufferedDataTable) out[0]);
+				}
+			}
+		};
 	}
 
 	/**
@@ -407,6 +764,9 @@ public class PERFNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		ENGINE.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
+		RESOLUTION.saveSettingsTo(settings);
 	}
 
 	/**
@@ -414,6 +774,21 @@ public class PERFNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		// nodes saved before the setting existed ran FisPro perf
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.loadSettingsFrom(settings);
+		else
+			ENGINE.setStringValue(ENGINE_FISPRO);
+		// the chunks run in parallel give the same table as a single run
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.loadSettingsFrom(settings);
+		else
+			PARALLELISM.setIntValue(DEFAULT_PARALLELISM);
+		// nodes saved before the setting existed had no lookup engine
+		if (settings.containsKey(RESOLUTION_STR))
+			RESOLUTION.loadSettingsFrom(settings);
+		else
+			RESOLUTION.setIntValue(FisLookup.DEFAULT_RESOLUTION);
 	}
 
 	/**
@@ -421,6 +796,12 @@ public class PERFNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.validateSettings(settings);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.validateSettings(settings);
+		if (settings.containsKey(RESOLUTION_STR))
+			RESOLUTION.validateSettings(settings);
 	}
 
 	/**
@@ -0,0 +1,249 @@
+package perf;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reader of the perf.res file written by the FisPro perf function
+ *
+ * The first line holds the column names (OBS INF Al ERR Bl CERR2 for each
+ * output), the other lines hold the values separated by blanks. Values are
+ * parsed in place from the file buffer, without building a String for each
+ * token or line.
+ *
+ * @author Antonio Di Mauro
+ */
+public class PerfResReader implements Closeable {
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final double[] POW10 = new double[23];
+	static {
+		POW10[0] = 1.0;
+		for (int i = 1; i < POW10.length; i++)
+			POW10[i] = POW10[i - 1] * 10.0;
+	}
+
+	private final FileChannel mChannel;
+	private final ByteBuffer mBuf = ByteBuffer.allocate(BUFFER_SIZE);
+	private final String[] mNames;
+	// characters of the number being parsed, for the slow path
+	private final StringBuilder mToken = new StringBuilder();
+	private boolean mEof;
+
+	/**
+	 * Open the file and read its header
+	 *
+	 * @param res
+	 *            perf.res file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public PerfResReader(File res) throws IOException {
+
+		mChannel = new FileInputStream(res).getChannel();
+		mBuf.flip();
+		mNames = readHeader();
+	}
+
+	/**
+	 * @return column names, one for each value of a row
+	 */
+	public String[] getColumnNames() {
+		return mNames;
+	}
+
+	/**
+	 * Read the values of the next line, missing values and tokens that are
+	 * not numbers are read as NaN
+	 *
+	 * @param values
+	 *            destination, at least {@link #getColumnNames()} long; values
+	 *            beyond the last token of the line are set to NaN
+	 *
+	 * @return number of values in the line, -1 at the end of the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 */
+	public int readRow(double[] values) throws IOException {
+
+		int b = skipBlanks();
+		while (b == '\n' || b == '\r')
+			b = skipBlanks();
+		if (b < 0)
+			return -1;
+
+		int n = 0;
+		while (b >= 0 && b != '\n' && b != '\r') {
+			double v = parseDouble(b);
+			if (n < values.length)
+				values[n] = v;
+			n++;
+			b = skipBlanks();
+		}
+		for (int i = n; i < values.length; i++)
+			values[i] = Double.NaN;
+		return n;
+	}
+
+	/**
+	 * Read the names of the first line, duplicated names are numbered
+	 */
+	private String[] readHeader() throws IOException {
+
+		List<String> names = new ArrayList<String>();
+		StringBuilder sb = new StringBuilder();
+		int b = skipBlanks();
+		while (b >= 0 && b != '\n' && b != '\r') {
+			sb.setLength(0);
+			while (b > ' ')
+				b = append(sb, b);
+			String name = sb.toString();
+			int k = 2;
+			while (names.contains(name))
+				name = sb + " (" + k++ + ")";
+			names.add(name);
+			if (b == ' ' || b == '\t')
+				b = skipBlanks();
+		}
+		if (names.isEmpty())
+			throw new EOFException("Empty perf file");
+		return names.toArray(new String[names.size()]);
+	}
+
+	private int append(StringBuilder sb, int b) throws IOException {
+		sb.append((char) b);
+		return next();
+	}
+
+	/**
+	 * Parse a number starting with the byte b, the byte following the token
+	 * is left as the next one to read; a number with more than 18 significant
+	 * digits is parsed from its token by Double.parseDouble
+	 */
+	private double parseDouble(int b) throws IOException {
+
+		mToken.setLength(0);
+		boolean neg = false;
+		if (b == '-' || b == '+') {
+			neg = b == '-';
+			b = append(mToken, b);
+		}
+		long mant = 0;
+		int digits = 0;
+		int exp = 0;
+		boolean any = false;
+		boolean truncated = false;
+		while (b >= '0' && b <= '9') {
+			any = true;
+			if (digits < 18) {
+				mant = mant * 10 + (b - '0');
+				if (mant != 0)
+					digits++;
+			} else {
+				exp++;
+				truncated = true;
+			}
+			b = append(mToken, b);
+		}
+		if (b == '.') {
+			b = append(mToken, b);
+			while (b >= '0' && b <= '9') {
+				any = true;
+				if (digits < 18) {
+					mant = mant * 10 + (b - '0');
+					if (mant != 0)
+						digits++;
+					exp--;
+				} else {
+					truncated = true;
+				}
+				b = append(mToken, b);
+			}
+		}
+		if (any && (b == 'e' || b == 'E')) {
+			b = append(mToken, b);
+			boolean expNeg = false;
+			if (b == '-' || b == '+') {
+				expNeg = b == '-';
+				b = append(mToken, b);
+			}
+			int e = 0;
+			while (b >= '0' && b <= '9') {
+				if (e < 10000)
+					e = e * 10 + (b - '0');
+				b = append(mToken, b);
+			}
+			exp += expNeg ? -e : e;
+		}
+		// skip the rest of a token that is not a number (e.g. nan, ?)
+		boolean valid = any;
+		while (b > ' ') {
+			valid = false;
+			b = append(mToken, b);
+		}
+		unread(b);
+		if (!valid)
+			return Double.NaN;
+
+		if (truncated)
+			return Double.parseDouble(mToken.toString());
+		double v;
+		if (mant == 0)
+			v = 0.0;
+		else if (digits <= 15 && exp >= -22 && exp <= 22)
+			// exact: both the mantissa and the power of ten are exact doubles
+			v = exp >= 0 ? mant * POW10[exp] : mant / POW10[-exp];
+		else
+			v = Double.parseDouble(mant + "E" + exp);
+		return neg ? -v : v;
+	}
+
+	/**
+	 * Skip spaces and tabs
+	 *
+	 * @return the first byte that is not a blank, -1 at the end of the file
+	 */
+	private int skipBlanks() throws IOException {
+		int b = next();
+		while (b == ' ' || b == '\t')
+			b = next();
+		return b;
+	}
+
+	private int next() throws IOException {
+
+		if (!mBuf.hasRemaining()) {
+			if (mEof)
+				return -1;
+			mBuf.clear();
+			int n = mChannel.read(mBuf);
+			while (n == 0)
+				n = mChannel.read(mBuf);
+			mBuf.flip();
+			if (n < 0) {
+				mEof = true;
+				return -1;
+			}
+		}
+		return mBuf.get() & 0xFF;
+	}
+
+	private void unread(int b) {
+		if (b >= 0)
+			mBuf.position(mBuf.position() - 1);
+	}
+
+	@Override
+	public void close() throws IOException {
+		mChannel.close();
+	}
+}
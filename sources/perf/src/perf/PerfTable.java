@@ -0,0 +1,133 @@
+package perf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.knime.core.data.DataCell;
+import org.knime.core.data.DataColumnSpec;
+import org.knime.core.data.DataColumnSpecCreator;
+import org.knime.core.data.DataRow;
+import org.knime.core.data.DataTableSpec;
+import org.knime.core.data.DataType;
+import org.knime.core.data.RowKey;
+import org.knime.core.data.container.AbstractCellFactory;
+import org.knime.core.data.container.CloseableRowIterator;
+import org.knime.core.data.container.ColumnRearranger;
+import org.knime.core.data.def.DefaultRow;
+import org.knime.core.data.def.DoubleCell;
+import org.knime.core.node.BufferedDataContainer;
+import org.knime.core.node.BufferedDataTable;
+import org.knime.core.node.CanceledExecutionException;
+import org.knime.core.node.ExecutionContext;
+
+/**
+ * Tables built from the results of the FisPro perf function
+ *
+ * @author Antonio Di Mauro
+ */
+public final class PerfTable {
+
+	/**
+	 * Name of the inferred column
+	 */
+	public static final String INF = "INF";
+
+	private PerfTable() {
+	}
+
+	/**
+	 * @return spec of the appended inferred column
+	 */
+	public static DataColumnSpec createInfSpec() {
+		return new DataColumnSpecCreator(INF, DoubleCell.TYPE).createSpec();
+	}
+
+	/**
+	 * Convert a perf file into a table
+	 *
+	 * @param res
+	 *            perf.res file
+	 * @param firstRow
+	 *            number of the rows preceding the file, for the row keys
+	 * @param exec
+	 *            execution context
+	 *
+	 * @return the corrisponding perf table, a double column for each column
+	 *         of the file
+	 *
+	 * @throws IOException
+	 *             if the file cannot be read
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 */
+	public static BufferedDataTable read(File res, long firstRow, ExecutionContext exec)
+			throws IOException, CanceledExecutionException {
+
+		try (PerfResReader reader = new PerfResReader(res)) {
+			String[] names = reader.getColumnNames();
+			DataColumnSpec[] allColSpecs = new DataColumnSpec[names.length];
+			for (int i = 0; i < names.length; i++)
+				allColSpecs[i] = new DataColumnSpecCreator(names[i], DoubleCell.TYPE).createSpec();
+			BufferedDataContainer container = exec.createDataContainer(new DataTableSpec(allColSpecs));
+			double[] values = new double[names.length];
+			long n = firstRow;
+			while (reader.readRow(values) >= 0) {
+				DataCell[] cells = new DataCell[values.length];
+				for (int i = 0; i < values.length; i++)
+					cells[i] = Double.isNaN(values[i]) ? DataType.getMissingCell() : new DoubleCell(values[i]);
+				n++;
+				container.addRowToTable(new DefaultRow(new RowKey("Row" + n), cells));
+				if (n % 1000 == 0)
+					exec.checkCanceled();
+			}
+			container.close();
+			return container.getTable();
+		}
+	}
+
+	/**
+	 * Append the inferred column of the perf table to the original table, the
+	 * original columns are referenced and not copied
+	 *
+	 * @param data
+	 *            original table
+	 * @param perf
+	 *            table with the column to add, one row for each row of data
+	 * @param exec
+	 *            execution context
+	 *
+	 * @return data table with column addiction from perf table
+	 *
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
+	 * @throws IllegalArgumentException
+	 *             if perf has no INF column, or not one row for each row of
+	 *             data
+	 */
+	public static BufferedDataTable append(BufferedDataTable data, BufferedDataTable perf, ExecutionContext exec)
+			throws CanceledExecutionException {
+
+		final int inf = perf.getSpec().findColumnIndex(INF);
+		if (inf < 0)
+			throw new IllegalArgumentException("The perf table has no " + INF + " column.");
+		if (perf.size() != data.size())
+			throw new IllegalArgumentException("The perf table has " + perf.size() + " rows, the dataset "
+					+ data.size() + ".");
+		final CloseableRowIterator itPerf = perf.iterator();
+		ColumnRearranger rearranger = new ColumnRearranger(data.getDataTableSpec());
+		// the cells are requested in row order, the perf rows follow the data
+		// rows
+		rearranger.append(new AbstractCellFactory(createInfSpec()) {
+			@Override
+			public DataCell[] getCells(DataRow row) {
+				return new DataCell[] { itPerf.next().getCell(inf) };
+			}
+
+			@Override
+			public void afterProcessing() {
+				itPerf.close();
+			}
+		});
+		return exec.createColumnRearrangeTable(data, rearranger, exec);
+	}
+}
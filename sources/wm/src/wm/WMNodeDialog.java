@@ -1,6 +1,12 @@
 package wm;
 
 import org.knime.core.node.defaultnodesettings.DefaultNodeSettingsPane;
+import org.knime.core.node.defaultnodesettings.DialogComponentBoolean;
+import org.knime.core.node.defaultnodesettings.DialogComponentNumber;
+import org.knime.core.node.defaultnodesettings.DialogComponentStringSelection;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 /**
  * <code>NodeDialog</code> for the "WM" Node. Wang & Mendel's Fispro Function
@@ -21,6 +27,20 @@ public class WMNodeDialog extends DefaultNodeSettingsPane {
 	 */
 	protected WMNodeDialog() {
 		super();
+
+		createNewGroup("Insert parameters");
+
+		addDialogComponent(new DialogComponentStringSelection(
+				new SettingsModelString(WMNodeModel.ENGINE_STR, WMNodeModel.ENGINE_FISPRO), "Learning engine:",
+				new String[] { WMNodeModel.ENGINE_JAVA, WMNodeModel.ENGINE_FISPRO }));
+
+		addDialogComponent(new DialogComponentNumber(
+				new SettingsModelInteger(WMNodeModel.PARALLELISM_STR, WMNodeModel.DEFAULT_PARALLELISM),
+				"Parallel workers (default=number of cores):", Integer.valueOf(1)));
+
+		addDialogComponent(new DialogComponentBoolean(new SettingsModelBoolean(WMNodeModel.UPDATE_STR, false),
+				"Update the input model with the new rows"));
+
 	}
 
 }
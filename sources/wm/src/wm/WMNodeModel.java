@@ -8,18 +8,21 @@ import java.io.PrintStream;
 
 import javax.swing.JOptionPane;
 
-import org.apache.commons.io.FileUtils;
-import org.knime.core.data.DataRow;
-import org.knime.core.data.container.CloseableRowIterator;
 import org.knime.core.node.BufferedDataTable;
 import org.knime.core.node.CanceledExecutionException;
 import org.knime.core.node.port.PortObject;
 import org.knime.core.node.port.PortObjectSpec;
 import org.knime.core.node.port.PortType;
 
+import port.FisCommand;
+import port.FisDatasetPipe;
 import port.FisModel;
 import port.FisModelPortObject;
 import port.FisModelPortObjectSpec;
+import port.FisProcess;
+import port.FisResultCache;
+import port.FisWorkspace;
+import port.WangMendel;
 
 import org.knime.core.node.ExecutionContext;
 import org.knime.core.node.ExecutionMonitor;
@@ -28,6 +31,9 @@ import org.knime.core.node.NodeLogger;
 import org.knime.core.node.NodeModel;
 import org.knime.core.node.NodeSettingsRO;
 import org.knime.core.node.NodeSettingsWO;
+import org.knime.core.node.defaultnodesettings.SettingsModelBoolean;
+import org.knime.core.node.defaultnodesettings.SettingsModelInteger;
+import org.knime.core.node.defaultnodesettings.SettingsModelString;
 
 /**
  * This is the model implementation of WM. Wang & Mendel's FisPro Learner
@@ -40,9 +46,35 @@ public class WMNodeModel extends NodeModel {
 
 	private static final NodeLogger LOGGER = NodeLogger.getLogger(WMNodeModel.class);
 
-	private final String TABLE_SEP = ",";
+	/**
+	 * Keys used by {@link wm.WMNodeDialog} to store settings
+	 */
+	public static final String ENGINE_STR = "engine_str";
+	public static final String PARALLELISM_STR = "parallelism_str";
+	public static final String UPDATE_STR = "update_str";
+
+	/**
+	 * Learning engines
+	 */
+	public static final String ENGINE_JAVA = "Java";
+	public static final String ENGINE_FISPRO = "FisPro wm";
+
+	/**
+	 * Default number of parallel learning workers
+	 */
+	public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Settings information by key
+	 */
+	private final SettingsModelString ENGINE = new SettingsModelString(WMNodeModel.ENGINE_STR, ENGINE_FISPRO);
+	private final SettingsModelInteger PARALLELISM = new SettingsModelInteger(WMNodeModel.PARALLELISM_STR,
+			DEFAULT_PARALLELISM);
+	private final SettingsModelBoolean UPDATE = new SettingsModelBoolean(WMNodeModel.UPDATE_STR, false);
+
 	private final String CFG_FIS = "cfg.fis";
 	private final String WM_FIS = "wm.fis";
+	private final String FIS_FUNC = "Wang and Mendel";
 	private final String FIS_BIN_PATH = "FIS_BIN_PATH";
 
 	private FisModel mModel;
@@ -50,6 +82,7 @@ public class WMNodeModel extends NodeModel {
 	private double timeEnd;
 	private double timeCommandStart;
 	private double timeCommandEnd;
+	private double timeQueue;
 
 	/**
 	 * Constructor for the node model.
@@ -71,18 +104,39 @@ public class WMNodeModel extends NodeModel {
 		FisModelPortObject out = null;
 		String dataName = "dataset.csv";
 
-		// generate random directory
-		File baseDir = new File(getRandomDirectory());
-		while (baseDir.exists())
-			baseDir = new File(getRandomDirectory());
+		if (ENGINE_JAVA.equals(ENGINE.getStringValue()) || UPDATE.getBooleanValue()) {
+			// rules induced in the JVM, no dataset export nor FisPro binary
+			timeStart = System.currentTimeMillis();
+			FisModel in = cfg.getFisModel();
+			WangMendel wm;
+			if (UPDATE.getBooleanValue()) {
+				// only the new rows are read, after the ones of the input model
+				if (in.getState() == null)
+					throw new InvalidSettingsException("The input model has no rule statistics: "
+							+ "connect a model learned by the Java engine of a WM node to update it");
+				wm = new WangMendel(in.getSystem(), in.getState());
+			} else {
+				wm = new WangMendel(in.getSystem());
+			}
+			wm.add(table, Math.max(1, PARALLELISM.getIntValue()), exec);
+			mModel = new FisModel(wm.getSystem(), FIS_FUNC);
+			mModel.setState(wm.getState());
+			timeEnd = System.currentTimeMillis();
+			if (DEBUG)
+				LOGGER.error("Integration execution time: " + (timeEnd - timeStart) + " ms");
+			return new PortObject[] { new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel)) };
+		}
+
+		// scratch directory, reused from previous executions
+		File baseDir = FisWorkspace.acquire("WM");
 
 		// get the flow variables
 		getAvailableFlowVariables();
 		try {
 			String fisDir = peekFlowVariableString(FIS_BIN_PATH);
 
-			// if the directory is created start the creation of fis
-			if (baseDir.mkdirs()) {
+			// if the directory exists start the creation of fis
+			if (baseDir.isDirectory()) {
 				String homeDir = baseDir.getPath();
 				if (DEBUG)
 					LOGGER.error("Base Directory is created! (" + homeDir + ")");
@@ -96,38 +150,54 @@ public class WMNodeModel extends NodeModel {
 					 * Model file .fis from a dataset
 					 */
 					timeStart = System.currentTimeMillis();
-					if (loadDataset(table, homeDir, dataName)) {
-						if (wmFunction(fisDir, homeDir, dataName)) {
-							File fis = new File(homeDir, WM_FIS);
-							// creation of the modelPortObject from the fis
-							// file
-							mModel = new FisModel(fis, "Wang and Mendel");
-							if (DEBUG)
-								LOGGER.error("Model Summary: " + mModel.getSum());
-							out = new FisModelPortObject(mModel, new FisModelPortObjectSpec());
-							timeEnd = System.currentTimeMillis();
+					timeQueue = 0;
+					FisResultCache.Key key = FisResultCache.key(fisDir, "wm").add(cfg.getFisModel())
+							.add(table, exec);
+					mModel = FisResultCache.get(key);
+					if (mModel != null) {
+						// unchanged inputs, the model created before is used
+						timeCommandStart = timeCommandEnd = 0;
+						out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+						timeEnd = System.currentTimeMillis();
+					} else {
+						FisDatasetPipe dataset = loadDataset(table, homeDir, dataName, exec);
+						if (dataset != null) {
+							try {
+								boolean created = wmFunction(fisDir, homeDir, dataName, exec);
+								if (dataset.finish() && created) {
+									File fis = new File(homeDir, WM_FIS);
+									// creation of the modelPortObject from the fis
+									// file
+									mModel = new FisModel(fis, FIS_FUNC);
+									FisResultCache.put(key, mModel);
+									if (DEBUG)
+										LOGGER.error("Model Summary: " + mModel.getSum());
+									out = new FisModelPortObject(mModel, new FisModelPortObjectSpec(mModel));
+									timeEnd = System.currentTimeMillis();
+								}
+							} finally {
+								dataset.close();
+							}
 						}
 					}
 				}
 
 				double time = (timeEnd - timeStart);
-				double timeCommand = (timeCommandEnd - timeCommandStart);
+				double timeCommand = (timeCommandEnd - timeCommandStart) - timeQueue;
 				String stat = "Integration execution time: " + time + " ms\nCommand line execution time: " + timeCommand
-						+ " ms";
+						+ " ms\nQueue wait time: " + timeQueue + " ms";
 				saveStats(homeDir, stat);
 				if (DEBUG)
 					LOGGER.error(stat);
 
-				// delete the base directory
+				// release the base directory, it is emptied in background
 				if (!DEBUG)
-					FileUtils.deleteDirectory(new File(baseDir.getPath()));
-				if (!baseDir.exists()) {
-					if (DEBUG)
-						LOGGER.error("Base Directory deleted! (" + baseDir.getPath() + ")");
-				} else
-					LOGGER.error("Base Directory NOT deleted! (" + baseDir.getPath() + ")");
+					FisWorkspace.release(baseDir);
 			}
 			// catch exception if the flow variable doesn't exist
+		} catch (CanceledExecutionException e) {
+			FisWorkspace.release(baseDir);
+			throw e;
 		} catch (Exception e) {
 			String message = "Set Flow Variables:\n-Right Click on 'Workflow Project';\n-Click on 'Workflow Variables';"
 					+ "\n-Press 'Add';\n-Set 'Variable name' as 'FIS_BIN_PATH';"
@@ -135,7 +205,7 @@ public class WMNodeModel extends NodeModel {
 					+ "\n-Press OK.\nOr sets all configuration options in Configure panel!";
 			LOGGER.error(message);
 			JOptionPane.showMessageDialog(null, message, "Error", JOptionPane.ERROR_MESSAGE);
-			FileUtils.deleteDirectory(new File(baseDir.getPath()));
+			FisWorkspace.release(baseDir);
 		}
 		return new PortObject[] { out };
 	}
@@ -173,21 +243,27 @@ public class WMNodeModel extends NodeModel {
 	 *            workspace home path
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution monitor checked for cancellation
 	 * 
 	 * @return true if function is successful, else false
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean wmFunction(String fisDir, String homeDir, String dataName) {
+	private boolean wmFunction(String fisDir, String homeDir, String dataName, ExecutionMonitor exec)
+			throws CanceledExecutionException {
 
 		File home = new File(homeDir);
-		File wm = new File(fisDir, "wm");
 		File data = new File(homeDir, dataName);
 		File cfgFis = new File(homeDir, CFG_FIS);
 		File wmFis = new File(homeDir, WM_FIS);
 		try {
-			String[] cmd = { wm.getPath(), cfgFis.getPath(), data.getPath(), "-o" + WM_FIS };
+			String[] cmd = FisCommand.wm(fisDir, cfgFis.getPath(), data.getPath(), WM_FIS);
 			timeCommandStart = System.currentTimeMillis();
-			Process p = Runtime.getRuntime().exec(cmd, null, home);
-			int control = p.waitFor();
+			FisProcess p = FisProcess.run(cmd, home, exec);
+			timeQueue += p.getQueueTime();
+			int control = p.getExitCode();
 			timeCommandEnd = System.currentTimeMillis();
 			if (control == 0) {
 				if (!wmFis.exists())
@@ -201,20 +277,7 @@ public class WMNodeModel extends NodeModel {
 	}
 
 	/**
-	 * Return the string path of a random directory
-	 * 
-	 * @return random path
-	 */
-	private String getRandomDirectory() {
-
-		File dir = new File(System.getProperty("user.home"), "WM");
-		int rand = (int) (Math.random() * 10000000);
-		dir = new File(dir + "-" + rand);
-		return dir.getPath();
-	}
-
-	/**
-	 * Create csv file from BufferedDataTable
+	 * Create csv file, or FIFO, from BufferedDataTable
 	 * 
 	 * @param t
 	 *            data table
@@ -222,38 +285,24 @@ public class WMNodeModel extends NodeModel {
 	 *            directory to save the file
 	 * @param dataName
 	 *            csv file name
+	 * @param exec
+	 *            execution context
 	 * 
-	 * @return true if creation is successful, else false
+	 * @return the dataset streamed or written for wm, null if creation failed
+	 * 
+	 * @throws CanceledExecutionException
+	 *             if the execution is canceled
 	 */
-	private boolean loadDataset(BufferedDataTable t, String homeDir, String dataName) {
+	private FisDatasetPipe loadDataset(BufferedDataTable t, String homeDir, String dataName, ExecutionContext exec)
+			throws CanceledExecutionException {
 
 		File file = new File(homeDir, dataName);
 		try {
-			FileOutputStream data = new FileOutputStream(file);
-			PrintStream write = new PrintStream(data);
-
-			// write data cell's rows in csv file
-			CloseableRowIterator it = t.iterator();
-			while (it.hasNext()) {
-				String rowStr = "";
-				DataRow row = it.next();
-				for (int i = 0; i < row.getNumCells(); i++) {
-					if (i == 0)
-						rowStr += row.getCell(i).toString();
-					else
-						rowStr += TABLE_SEP + row.getCell(i).toString();
-				}
-				write.println(rowStr);
-			}
-			write.close();
-
-			if (!file.exists())
-				LOGGER.error("Dataset file NOT created.");
-		} catch (FileNotFoundException e) {
+			return FisDatasetPipe.open(t, file, false, exec, "wm");
+		} catch (IOException e) {
 			LOGGER.error("Dataset file NOT created.");
-			return false;
+			return null;
 		}
-		return file.exists();
 	}
 
 	/**
@@ -261,7 +310,9 @@ public class WMNodeModel extends NodeModel {
 	 */
 	@Override
 	protected PortObjectSpec[] configure(final PortObjectSpec[] inSpecs) throws InvalidSettingsException {
-		return new PortObjectSpec[] { new FisModelPortObjectSpec() };
+		// the learned model has the variables of the configuration model
+		FisModelPortObjectSpec cfg = (FisModelPortObjectSpec) inSpecs[0];
+		return new PortObjectSpec[] { cfg != null ? cfg.derive(FIS_FUNC) : new FisModelPortObjectSpec(FIS_FUNC) };
 	}
 
 	/**
@@ -276,6 +327,9 @@ public class WMNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void saveSettingsTo(final NodeSettingsWO settings) {
+		ENGINE.saveSettingsTo(settings);
+		PARALLELISM.saveSettingsTo(settings);
+		UPDATE.saveSettingsTo(settings);
 	}
 
 	/**
@@ -283,6 +337,20 @@ public class WMNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void loadValidatedSettingsFrom(final NodeSettingsRO settings) throws InvalidSettingsException {
+		// nodes saved before the settings existed ran FisPro wm
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.loadSettingsFrom(settings);
+		else
+			ENGINE.setStringValue(ENGINE_FISPRO);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.loadSettingsFrom(settings);
+		else
+			PARALLELISM.setIntValue(DEFAULT_PARALLELISM);
+		// nodes saved before the setting existed learned from the whole table
+		if (settings.containsKey(UPDATE_STR))
+			UPDATE.loadSettingsFrom(settings);
+		else
+			UPDATE.setBooleanValue(false);
 	}
 
 	/**
@@ -290,6 +358,12 @@ public class WMNodeModel extends NodeModel {
 	 */
 	@Override
 	protected void validateSettings(final NodeSettingsRO settings) throws InvalidSettingsException {
+		if (settings.containsKey(ENGINE_STR))
+			ENGINE.validateSettings(settings);
+		if (settings.containsKey(PARALLELISM_STR))
+			PARALLELISM.validateSettings(settings);
+		if (settings.containsKey(UPDATE_STR))
+			UPDATE.validateSettings(settings);
 	}
 
 	/**